@@ -0,0 +1,247 @@
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import sqlite.jmh.SQLiteWorkload;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link SQLiteWorkload} over the generated recognizers; see the interface for
+ * why this lives in the unnamed package.
+ */
+public class SQLiteWorkloads implements SQLiteWorkload {
+	private final SQLiteParseEngine engine = new SQLiteParseEngine();
+	private final SQLiteStatementSplitter splitter = new SQLiteStatementSplitter(engine);
+	private final SQLiteInsertStreamer inserts = new SQLiteInsertStreamer(engine);
+	private final SQLiteCompletionEngine completion = new SQLiteCompletionEngine();
+	private final SQLiteFingerprinter fingerprinter = new SQLiteFingerprinter(engine);
+	private final SQLiteParserPool pool = new SQLiteParserPool(engine);
+	private final SQLiteParseCache<SQLiteDetachedParse> cache = SQLiteParseCache.of(engine, 1024);
+	private final SQLiteReferenceExtractor references = new SQLiteReferenceExtractor(engine);
+	private final SQLiteParseLimits limits = new SQLiteParseLimits.Builder()
+		.timeout(Duration.ofSeconds(10)).maxTokens(1 << 24).maxDepth(1000).maxNodes(1 << 24).build();
+
+	@Override
+	public int lex(String sql) {
+		SQLiteLexer lexer = new SQLiteLexer(CharStreams.fromString(sql));
+		int n = 0;
+		while (lexer.nextToken().getType() != Token.EOF) {
+			n++;
+		}
+		return n;
+	}
+
+	@Override
+	public int lexFast(String sql) {
+		SQLiteFastLexer lexer = new SQLiteFastLexer(sql);
+		int n = 0;
+		while (lexer.nextToken().getType() != Token.EOF) {
+			n++;
+		}
+		return n;
+	}
+
+	@Override
+	public int lexText(String sql, boolean zeroCopy) {
+		SQLiteFastLexer lexer = new SQLiteFastLexer(sql);
+		lexer.setTokenFactory(zeroCopy ? new SQLiteTokenFactory(new SQLiteIdentifierInterner())
+									   : CommonTokenFactory.DEFAULT);
+		int n = 0;
+		for (Token t = lexer.nextToken(); t.getType() != Token.EOF; t = lexer.nextToken()) {
+			if (!zeroCopy || t.getType() == SQLiteLexer.IDENTIFIER) {
+				n += t.getText().length();
+			}
+			else {
+				n += ((CharSequence)t).length();
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public Object parse(String sql, boolean sll) {
+		SQLiteLexer lexer = new SQLiteLexer(CharStreams.fromString(sql));
+		SQLiteParser parser = new SQLiteParser(new CommonTokenStream(lexer));
+		parser.removeErrorListeners();
+		parser.getInterpreter().setPredictionMode(sll ? PredictionMode.SLL : PredictionMode.LL);
+		return parser.parse();
+	}
+
+	@Override
+	public Object parseExpr(String expr, boolean climbing) {
+		if (climbing) {
+			return engine.parseExpr(expr, null);
+		}
+		CommonTokenStream tokens = new CommonTokenStream(new SQLiteLexer(CharStreams.fromString(expr)));
+		return engine.parse(new SQLiteParser(tokens), tokens, new SQLiteParseEngine.ErrorCollector(), SQLiteParser::expr, true);
+	}
+
+	@Override
+	public Object parseTwoStage(String sql) {
+		return engine.parse(sql).getTree();
+	}
+
+	@Override
+	public Object parseLimited(String sql) {
+		return engine.parse(sql, limits).getTree();
+	}
+
+	@Override
+	public Object parseCompact(String sql) {
+		return engine.parseCompact(sql, null);
+	}
+
+	@Override
+	public long streamInserts(String sql) {
+		long[] cells = {0};
+		try {
+			inserts.stream(Channels.newChannel(new ByteArrayInputStream(sql.getBytes(StandardCharsets.UTF_8))),
+						   row -> cells[0] += row.size(), statement -> { });
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return cells[0];
+	}
+
+	@Override
+	public long splitAndParse(String sql) {
+		try {
+			return splitter.split(sql, statement -> { });
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public int splitAndCollect(String sql) {
+		List<SQLiteStatementSplitter.Statement> statements = new ArrayList<>();
+		try {
+			splitter.split(sql, statements::add);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return statements.size();
+	}
+
+	@Override
+	public Object openBatch(int threads) {
+		return new Batch(threads, engine);
+	}
+
+	@Override
+	public int parseBatch(Object batch, String sql) {
+		return ((Batch)batch).parser.parse(sql).size();
+	}
+
+	@Override
+	public void closeBatch(Object batch) {
+		((Batch)batch).executor.shutdown();
+	}
+
+	@Override
+	public Object openIncremental(String sql) {
+		SQLiteIncrementalParser incremental = new SQLiteIncrementalParser(engine);
+		incremental.setText(sql);
+		return incremental;
+	}
+
+	@Override
+	public int edit(Object incremental, int offset, int removed, String inserted) {
+		return ((SQLiteIncrementalParser)incremental).edit(offset, removed, inserted).getInserted();
+	}
+
+	@Override
+	public Object complete(String sql, int caret, Object incremental) {
+		return incremental != null ? completion.complete((SQLiteIncrementalParser)incremental, caret) : completion.complete(sql, caret);
+	}
+
+	@Override
+	public Object parsePooled(String sql) {
+		return pool.parse(sql, null);
+	}
+
+	@Override
+	public Object parseCached(String sql) {
+		return cache.get(sql).getTree();
+	}
+
+	@Override
+	public long fingerprint(String sql) {
+		return fingerprinter.fingerprint(sql);
+	}
+
+	@Override
+	public Object extractReferences(String sql, boolean tree) {
+		return tree ? references.extract(engine.parse(sql).getTree()) : references.extract(sql, null);
+	}
+
+	@Override
+	public int resolveColumns(String sql, boolean cached) {
+		if (cached) {
+			SQLiteDetachedParse result = cache.get(sql);
+			return resolveColumns(result.getScopes(), result.getTree());
+		}
+		SQLiteParseResult result = engine.parse(sql);
+		return resolveColumns(result.getScopes(), result.getTree());
+	}
+
+	private static int resolveColumns(SQLiteScopeTree scopes, ParseTree node) {
+		int n = 0;
+		if (node instanceof SQLiteParser.ExprContext && ((SQLiteParser.ExprContext)node).column_name() != null
+			&& scopes.resolve((SQLiteParser.ExprContext)node).isResolved())
+		{
+			n++;
+		}
+		for (int i = 0; i < node.getChildCount(); i++) {
+			n += resolveColumns(scopes, node.getChild(i));
+		}
+		return n;
+	}
+
+	@Override
+	public int walk(Object tree) {
+		NodeCounter counter = new NodeCounter();
+		ParseTreeWalker.DEFAULT.walk(counter, (ParseTree)tree);
+		return counter.nodes;
+	}
+
+	private static final class Batch {
+		final ExecutorService executor;
+		final SQLiteBatchParser parser;
+
+		Batch(int threads, SQLiteParseEngine engine) {
+			executor = Executors.newFixedThreadPool(threads);
+			parser = new SQLiteBatchParser(executor, threads, engine);
+		}
+	}
+
+	private static final class NodeCounter implements ParseTreeListener {
+		int nodes;
+
+		@Override public void visitTerminal(TerminalNode node) { nodes++; }
+		@Override public void visitErrorNode(ErrorNode node) { nodes++; }
+		@Override public void enterEveryRule(ParserRuleContext ctx) { nodes++; }
+		@Override public void exitEveryRule(ParserRuleContext ctx) { }
+	}
+}
@@ -0,0 +1,61 @@
+package sqlite.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Corpus#DUMP_1MB} through {@code SQLiteBatchParser} on pools of 1 to 32
+ * threads, and split and parsed on the calling thread for reference. Both keep
+ * every statement's tree until the last is parsed, so they retain the same heap,
+ * which is large enough that the collector shows in the results. The parallel
+ * efficiency at {@code n} threads is {@code batch(1) / (n * batch(n))}; it is only
+ * meaningful while {@code n} does not exceed the cores of the machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchBenchmark {
+	@Param({"1", "2", "4", "8", "16", "32"})
+	public int threads;
+
+	private SQLiteWorkload workload;
+	private Object batch;
+	private String sql;
+
+	@Setup
+	public void setup() {
+		workload = SQLiteWorkload.load();
+		batch = workload.openBatch(threads);
+		sql = Corpus.DUMP_1MB.generate();
+	}
+
+	@TearDown
+	public void tearDown() {
+		workload.closeBatch(batch);
+	}
+
+	@Benchmark
+	public int batch() {
+		return workload.parseBatch(batch, sql);
+	}
+
+	@Benchmark
+	public int sequential() {
+		return workload.splitAndCollect(sql);
+	}
+}
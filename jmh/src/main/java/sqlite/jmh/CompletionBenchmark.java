@@ -0,0 +1,52 @@
+package sqlite.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Completion at the end of a 50 KB script, in a {@code WHERE} clause: finding the
+ * statement by scanning the script, and taking it from an incremental parser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss16m")
+public class CompletionBenchmark {
+	private SQLiteWorkload workload;
+	private String script;
+	private Object incremental;
+
+	@Setup
+	public void setup() {
+		workload = SQLiteWorkload.load();
+		String small = Corpus.SMALL.generate();
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 50_000) {
+			sb.append(small);
+		}
+		script = sb.append("SELECT u.name FROM users u JOIN orders o ON o.user_id = u.id WHERE o.total > 10 AND ").toString();
+		incremental = workload.openIncremental(script);
+	}
+
+	@Benchmark
+	public Object scanScript() {
+		return workload.complete(script, script.length(), null);
+	}
+
+	@Benchmark
+	public Object incremental() {
+		return workload.complete(script, script.length(), incremental);
+	}
+}
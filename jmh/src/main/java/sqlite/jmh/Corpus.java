@@ -0,0 +1,129 @@
+package sqlite.jmh;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Synthetic SQL inputs shared by the benchmarks. Every corpus is generated from a
+ * fixed seed so runs are comparable across builds.
+ */
+public enum Corpus {
+	/** A handful of short statements, typical of editor and API traffic. */
+	SMALL {
+		@Override
+		String generate() {
+			return "SELECT id, email FROM users WHERE id = ?;\n"
+				+ "SELECT u.name, count(*) AS n FROM users u JOIN orders o ON o.user_id = u.id "
+				+ "WHERE o.status IN ('open', 'paid') GROUP BY u.name HAVING count(*) > 2 ORDER BY n DESC LIMIT 10;\n"
+				+ "INSERT INTO events (kind, payload) VALUES ('login', '{}');\n"
+				+ "UPDATE users SET last_seen = CURRENT_TIMESTAMP WHERE id = :id;\n"
+				+ "DELETE FROM sessions WHERE expires_at < strftime('%s', 'now');\n";
+		}
+	},
+
+	/** About 1 MB in the shape of {@code sqlite3 .dump} output. */
+	DUMP_1MB {
+		@Override
+		String generate() {
+			Random random = new Random(42);
+			StringBuilder sb = new StringBuilder(1 << 21);
+			sb.append("PRAGMA foreign_keys=OFF;\nBEGIN TRANSACTION;\n");
+			sb.append("CREATE TABLE users (id INTEGER PRIMARY KEY, email TEXT NOT NULL UNIQUE, ")
+			  .append("name TEXT, balance REAL DEFAULT 0, avatar BLOB);\n");
+			sb.append("CREATE TABLE orders (id INTEGER PRIMARY KEY, user_id INTEGER REFERENCES users (id), ")
+			  .append("total REAL, note TEXT);\n");
+			int id = 0;
+			while (sb.length() < 1_000_000) {
+				id++;
+				sb.append("INSERT INTO users VALUES(").append(id).append(",'user").append(id)
+				  .append("@example.com','User ''").append(id).append("''',")
+				  .append(random.nextInt(100_000) / 100.0).append(",")
+				  .append(random.nextBoolean() ? "NULL" : "X'CAFEBABE'").append(");\n");
+				sb.append("INSERT INTO orders VALUES(").append(id).append(",").append(id).append(",")
+				  .append(random.nextInt(10_000) / 10.0).append(",'note ").append(random.nextInt()).append("');\n");
+			}
+			sb.append("CREATE INDEX orders_user ON orders (user_id);\nCOMMIT;\n");
+			return sb.toString();
+		}
+	},
+
+	/** Deeply nested and very long {@code expr} trees. */
+	DEEP_EXPR {
+		@Override
+		String generate() {
+			StringBuilder sb = new StringBuilder("SELECT ");
+			int depth = 100;
+			String[] ops = {" + ", " * ", " - ", " || ", " AND ", " = "};
+			for (int i = 0; i < depth; i++) {
+				sb.append('(').append(i).append(ops[i % ops.length]);
+			}
+			sb.append("x");
+			for (int i = 0; i < depth; i++) {
+				sb.append(')');
+			}
+			sb.append(" FROM t WHERE a = 0");
+			for (int i = 1; i < 500; i++) {
+				sb.append(i % 3 == 0 ? " OR " : " AND ").append("c").append(i).append(" = ").append(i);
+			}
+			return sb.append(";\n").toString();
+		}
+	},
+
+	/** One {@code INSERT ... VALUES} with many wide rows. */
+	WIDE_INSERT {
+		@Override
+		String generate() {
+			int columns = 40;
+			int rows = 500;
+			Random random = new Random(7);
+			StringBuilder sb = new StringBuilder("INSERT INTO wide (");
+			for (int c = 0; c < columns; c++) {
+				sb.append(c == 0 ? "" : ", ").append("c").append(c);
+			}
+			sb.append(") VALUES\n");
+			for (int r = 0; r < rows; r++) {
+				sb.append(r == 0 ? "(" : ",\n(");
+				for (int c = 0; c < columns; c++) {
+					if (c > 0) {
+						sb.append(", ");
+					}
+					switch (c % 4) {
+						case 0: sb.append(random.nextInt()); break;
+						case 1: sb.append(random.nextDouble()); break;
+						case 2: sb.append("'text ").append(random.nextInt(1000)).append('\''); break;
+						default: sb.append("NULL"); break;
+					}
+				}
+				sb.append(')');
+			}
+			return sb.append(";\n").toString();
+		}
+	},
+
+	/**
+	 * An editor buffer of 200 statements like those of {@link #SMALL}, about a
+	 * third of them cut off after a random word and left without a semicolon.
+	 */
+	BROKEN {
+		@Override
+		String generate() {
+			String[] statements = SMALL.generate().split(";\n");
+			Random random = new Random(11);
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 200; i++) {
+				String statement = statements[random.nextInt(statements.length)];
+				if (random.nextInt(3) == 0) {
+					String[] words = statement.split(" ");
+					int keep = 1 + random.nextInt(words.length - 1);
+					sb.append(String.join(" ", Arrays.copyOf(words, keep))).append('\n');
+				}
+				else {
+					sb.append(statement).append(";\n");
+				}
+			}
+			return sb.toString();
+		}
+	};
+
+	abstract String generate();
+}
@@ -0,0 +1,55 @@
+package sqlite.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A keystroke in the middle of a 50 KB script: re-parsing the whole buffer
+ * against {@code SQLiteIncrementalParser}. Each incremental operation types a
+ * char into a {@code WHERE} clause and deletes it again, so it is two edits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss16m")
+public class EditBenchmark {
+	private SQLiteWorkload workload;
+	private String script;
+	private Object incremental;
+	private int caret;
+
+	@Setup
+	public void setup() {
+		workload = SQLiteWorkload.load();
+		String small = Corpus.SMALL.generate();
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 50_000) {
+			sb.append(small);
+		}
+		script = sb.toString();
+		incremental = workload.openIncremental(script);
+		caret = script.indexOf("WHERE id = ?", script.length() / 2) + "WHERE id".length();
+	}
+
+	@Benchmark
+	public long fullReparse() {
+		return workload.splitAndParse(script);
+	}
+
+	@Benchmark
+	public int keystroke() {
+		return workload.edit(incremental, caret, 0, "x") + workload.edit(incremental, caret, 1, "");
+	}
+}
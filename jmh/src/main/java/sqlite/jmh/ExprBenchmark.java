@@ -0,0 +1,78 @@
+package sqlite.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Standalone expressions through the two-stage engine, with the generated
+ * {@code expr} rule and with precedence climbing. SLL prediction in the generated
+ * rule tends to stop an expression early, which forces the full-context stage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss16m")
+public class ExprBenchmark {
+	/** The expressions measured. */
+	public enum Shape {
+		/** A typical mixed {@code WHERE} predicate. */
+		PREDICATE {
+			@Override
+			String generate() {
+				return "a.x = 1 AND (b.y > ? OR b.y IS NULL) AND c.name LIKE 'abc%' ESCAPE '\\\\'"
+					+ " AND d BETWEEN 10 AND 20 AND e NOT IN (1, 2, 3) AND f || g COLLATE nocase <> 'z'"
+					+ " AND h * 2 + i / 3 - j % 4 >= k << 1";
+			}
+		},
+		/** A long chain of comparisons joined by {@code AND} and {@code OR}. */
+		AND_CHAIN {
+			@Override
+			String generate() {
+				Random random = new Random(42);
+				StringBuilder sb = new StringBuilder("c0 = 0");
+				for (int i = 1; i < 100; i++) {
+					sb.append(random.nextInt(4) == 0 ? " OR " : " AND ").append('c').append(i).append(" = ").append(i);
+				}
+				return sb.toString();
+			}
+		};
+
+		abstract String generate();
+	}
+
+	@Param
+	public Shape shape;
+
+	private SQLiteWorkload workload;
+	private String expr;
+
+	@Setup
+	public void setup() {
+		workload = SQLiteWorkload.load();
+		expr = shape.generate();
+	}
+
+	@Benchmark
+	public Object generated() {
+		return workload.parseExpr(expr, false);
+	}
+
+	@Benchmark
+	public Object climbing() {
+		return workload.parseExpr(expr, true);
+	}
+}
@@ -0,0 +1,46 @@
+package sqlite.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Data-heavy scripts through the INSERT row streamer, against a full parse of every statement. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsertBenchmark {
+	@Param({"DUMP_1MB", "WIDE_INSERT"})
+	public Corpus corpus;
+
+	private SQLiteWorkload workload;
+	private String sql;
+
+	@Setup
+	public void setup() {
+		workload = SQLiteWorkload.load();
+		sql = corpus.generate();
+	}
+
+	@Benchmark
+	public long streamRows() {
+		return workload.streamInserts(sql);
+	}
+
+	@Benchmark
+	public long splitAndParse() {
+		return workload.splitAndParse(sql);
+	}
+}
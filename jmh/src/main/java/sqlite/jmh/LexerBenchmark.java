@@ -0,0 +1,57 @@
+package sqlite.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Lexing alone, without building a token stream or parsing. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+	@Param
+	public Corpus corpus;
+
+	private SQLiteWorkload workload;
+	private String sql;
+
+	@Setup
+	public void setup() {
+		workload = SQLiteWorkload.load();
+		sql = corpus.generate();
+	}
+
+	@Benchmark
+	public int lex() {
+		return workload.lex(sql);
+	}
+
+	@Benchmark
+	public int lexFast() {
+		return workload.lexFast(sql);
+	}
+
+	/** Compare with {@link #lexTextZeroCopy()} under {@code -prof gc}. */
+	@Benchmark
+	public int lexTextCommon() {
+		return workload.lexText(sql, false);
+	}
+
+	@Benchmark
+	public int lexTextZeroCopy() {
+		return workload.lexText(sql, true);
+	}
+}
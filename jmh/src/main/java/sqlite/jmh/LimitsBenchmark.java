@@ -0,0 +1,45 @@
+package sqlite.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of parse limits on input within them: the two-stage engine on
+ * {@link Corpus#SMALL}, without limits and with every limit set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss16m")
+public class LimitsBenchmark {
+	private SQLiteWorkload workload;
+	private String script;
+
+	@Setup
+	public void setup() {
+		workload = SQLiteWorkload.load();
+		script = Corpus.SMALL.generate();
+	}
+
+	@Benchmark
+	public Object unlimited() {
+		return workload.parseTwoStage(script);
+	}
+
+	@Benchmark
+	public Object limited() {
+		return workload.parseLimited(script);
+	}
+}
@@ -0,0 +1,78 @@
+package sqlite.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * API-style traffic: statements drawn from 2000 shapes with a Zipf skew, one
+ * in ten a one-off, parsed directly and through {@code SQLiteParseCache}. The
+ * score is per statement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss16m")
+public class ParseCacheBenchmark {
+	private static final int SHAPES = 2000;
+	private static final int TRACE = 1 << 16;
+
+	private SQLiteWorkload workload;
+	private String[] trace;
+	private int next;
+
+	@Setup
+	public void setup() {
+		workload = SQLiteWorkload.load();
+		double[] cdf = new double[SHAPES];
+		double sum = 0;
+		for (int i = 0; i < SHAPES; i++) {
+			cdf[i] = sum += 1 / (i + 1.0);
+		}
+		Random random = new Random(42);
+		trace = new String[TRACE];
+		for (int i = 0; i < TRACE; i++) {
+			int shape;
+			if (i % 10 == 0) {
+				shape = SHAPES + i;
+			}
+			else {
+				double u = random.nextDouble() * sum;
+				shape = 0;
+				while (cdf[shape] < u) {
+					shape++;
+				}
+			}
+			trace[i] = "SELECT u.name, o.total FROM users u JOIN orders o ON o.user_id = u.id WHERE o.kind = "
+				+ shape + " AND u.active = 1 ORDER BY o.total DESC LIMIT 10";
+		}
+	}
+
+	@Benchmark
+	public Object parse() {
+		return workload.parseTwoStage(nextStatement());
+	}
+
+	@Benchmark
+	public Object cached() {
+		return workload.parseCached(nextStatement());
+	}
+
+	private String nextStatement() {
+		String sql = trace[next];
+		next = (next + 1) & (TRACE - 1);
+		return sql;
+	}
+}
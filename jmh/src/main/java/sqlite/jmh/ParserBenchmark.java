@@ -0,0 +1,66 @@
+package sqlite.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lexing plus parsing with the prediction mode fixed to SLL or LL, through the
+ * two-stage engine, into a compact tree, and parsing followed by a full
+ * {@code ParseTreeWalker} walk.
+ * The DFA cache is warm after the first warm-up iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss16m")
+public class ParserBenchmark {
+	@Param
+	public Corpus corpus;
+
+	private SQLiteWorkload workload;
+	private String sql;
+
+	@Setup
+	public void setup() {
+		workload = SQLiteWorkload.load();
+		sql = corpus.generate();
+	}
+
+	@Benchmark
+	public Object parseSll() {
+		return workload.parse(sql, true);
+	}
+
+	@Benchmark
+	public Object parseLl() {
+		return workload.parse(sql, false);
+	}
+
+	@Benchmark
+	public Object parseTwoStage() {
+		return workload.parseTwoStage(sql);
+	}
+
+	@Benchmark
+	public Object parseCompact() {
+		return workload.parseCompact(sql);
+	}
+
+	@Benchmark
+	public int parseAndWalk() {
+		return workload.walk(workload.parse(sql, true));
+	}
+}
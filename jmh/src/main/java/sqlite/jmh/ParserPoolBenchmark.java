@@ -0,0 +1,53 @@
+package sqlite.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The statements of {@link Corpus#SMALL} parsed one at a time with a fresh lexer
+ * and parser each, and with ones leased from {@code SQLiteParserPool}. Run with
+ * {@code -prof gc} to compare the allocation per statement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss16m")
+public class ParserPoolBenchmark {
+	private SQLiteWorkload workload;
+	private String[] statements;
+	private int next;
+
+	@Setup
+	public void setup() {
+		workload = SQLiteWorkload.load();
+		statements = Corpus.SMALL.generate().split("\n");
+	}
+
+	@Benchmark
+	public Object fresh() {
+		return workload.parseTwoStage(nextStatement());
+	}
+
+	@Benchmark
+	public Object pooled() {
+		return workload.parsePooled(nextStatement());
+	}
+
+	private String nextStatement() {
+		String sql = statements[next];
+		next = next + 1 == statements.length ? 0 : next + 1;
+		return sql;
+	}
+}
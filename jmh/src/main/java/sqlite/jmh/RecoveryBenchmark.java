@@ -0,0 +1,46 @@
+package sqlite.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing the half-typed buffer of {@link Corpus#BROKEN} in LL mode with the
+ * default error recovery, against the two-stage engine, whose LL stage predicts
+ * in LL only within statements and caps the recovery of each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss16m")
+public class RecoveryBenchmark {
+	private SQLiteWorkload workload;
+	private String script;
+
+	@Setup
+	public void setup() {
+		workload = SQLiteWorkload.load();
+		script = Corpus.BROKEN.generate();
+	}
+
+	@Benchmark
+	public Object defaultRecovery() {
+		return workload.parse(script, false);
+	}
+
+	@Benchmark
+	public Object engine() {
+		return workload.parseTwoStage(script);
+	}
+}
@@ -0,0 +1,129 @@
+package sqlite.jmh;
+
+/**
+ * The operations measured by the benchmarks.
+ * <p>
+ * The generated recognizers live in the unnamed package, which code in a named
+ * package cannot reference, while JMH refuses benchmarks in the unnamed package.
+ * The benchmarks therefore call through this interface into {@code SQLiteWorkloads},
+ * which is loaded reflectively once per trial; the call sites stay monomorphic.
+ */
+public interface SQLiteWorkload {
+
+	/** Lexes {@code sql} with the generated lexer and returns the token count. */
+	int lex(String sql);
+
+	/** Lexes {@code sql} with the hand-written {@code SQLiteFastLexer} and returns the token count. */
+	int lexFast(String sql);
+
+	/**
+	 * Lexes {@code sql} with {@code SQLiteFastLexer} and reads the text of every
+	 * token, as a listener would, returning the total length. With {@code zeroCopy},
+	 * tokens are {@code SQLiteToken}s with interned identifiers read through their
+	 * {@code CharSequence} view; otherwise they are {@code CommonToken}s.
+	 */
+	int lexText(String sql, boolean zeroCopy);
+
+	/**
+	 * Parses {@code sql} with the prediction mode fixed to SLL or LL and the
+	 * default error strategy, and returns the tree.
+	 */
+	Object parse(String sql, boolean sll);
+
+	/**
+	 * Parses the expression {@code expr} through the two-stage engine with the
+	 * generated {@code expr} rule or, with {@code climbing}, with {@code SQLiteExprParser},
+	 * and returns the tree.
+	 */
+	Object parseExpr(String expr, boolean climbing);
+
+	/** Parses {@code sql} through the two-stage SLL-then-LL engine and returns the tree. */
+	Object parseTwoStage(String sql);
+
+	/** Like {@link #parseTwoStage}, under {@code SQLiteParseLimits} that the input stays within. */
+	Object parseLimited(String sql);
+
+	/** Parses {@code sql} through the two-stage engine into a {@code SQLiteCompactTree} and returns it. */
+	Object parseCompact(String sql);
+
+	/**
+	 * Streams the rows of every {@code INSERT ... VALUES} statement of {@code sql}
+	 * through {@code SQLiteInsertStreamer}, parsing the other statements, and
+	 * returns the number of cells.
+	 */
+	long streamInserts(String sql);
+
+	/** Splits {@code sql} into statements, parses each fully and returns the statement count. */
+	long splitAndParse(String sql);
+
+	/**
+	 * Like {@link #splitAndParse}, but keeps every parsed statement until all are
+	 * done, as a batch parser must, and returns how many there are.
+	 */
+	int splitAndCollect(String sql);
+
+	/**
+	 * Opens a {@code SQLiteBatchParser} on a fixed pool of {@code threads} threads,
+	 * to be released with {@link #closeBatch}.
+	 */
+	Object openBatch(int threads);
+
+	/** Parses {@code sql} with a batch parser returned by {@link #openBatch} and returns the statement count. */
+	int parseBatch(Object batch, String sql);
+
+	/** Shuts down the thread pool of a batch parser returned by {@link #openBatch}. */
+	void closeBatch(Object batch);
+
+	/** Loads {@code sql} into a {@code SQLiteIncrementalParser} and returns it. */
+	Object openIncremental(String sql);
+
+	/**
+	 * Applies an edit to a parser returned by {@link #openIncremental} and returns
+	 * the number of statements it re-parsed.
+	 */
+	int edit(Object incremental, int offset, int removed, String inserted);
+
+	/**
+	 * Collects the completion candidates at {@code caret} with {@code SQLiteCompletionEngine}
+	 * and returns them; with {@code incremental}, the statement boundaries come from
+	 * a parser returned by {@link #openIncremental} over the same script.
+	 */
+	Object complete(String sql, int caret, Object incremental);
+
+	/** Parses {@code sql} through the two-stage engine with a pooled lexer and parser, and returns the tree. */
+	Object parsePooled(String sql);
+
+	/**
+	 * Returns the tree of {@code sql} from a {@code SQLiteParseCache} of 1024
+	 * entries in front of the two-stage engine, parsing it on a miss.
+	 */
+	Object parseCached(String sql);
+
+	/** Fingerprints {@code sql} with {@code SQLiteFingerprinter}. */
+	long fingerprint(String sql);
+
+	/**
+	 * Lists the table and column references of {@code sql} with {@code SQLiteReferenceExtractor}
+	 * while parsing or, with {@code tree}, by walking the tree of a two-stage parse.
+	 */
+	Object extractReferences(String sql, boolean tree);
+
+	/**
+	 * Binds every column reference of {@code sql} with {@code SQLiteScopeTree} and
+	 * returns how many resolved; with {@code cached}, the parse result and its scope
+	 * tree come from the cache of {@link #parseCached}, otherwise both are built.
+	 */
+	int resolveColumns(String sql, boolean cached);
+
+	/** Walks a tree returned by one of the parse methods and returns the number of nodes visited. */
+	int walk(Object tree);
+
+	static SQLiteWorkload load() {
+		try {
+			return (SQLiteWorkload)Class.forName("SQLiteWorkloads").getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("cannot load SQLiteWorkloads", e);
+		}
+	}
+}
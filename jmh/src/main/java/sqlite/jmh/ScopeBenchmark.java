@@ -0,0 +1,53 @@
+package sqlite.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding the column references of the statements of {@link Corpus#SMALL}
+ * with a scope tree built for each parse, against the tree cached with the parse
+ * result; the score is per statement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss16m")
+public class ScopeBenchmark {
+	private SQLiteWorkload workload;
+	private String[] queries;
+	private int next;
+
+	@Setup
+	public void setup() {
+		workload = SQLiteWorkload.load();
+		queries = Corpus.SMALL.generate().split("\n");
+	}
+
+	@Benchmark
+	public int parseAndBuild() {
+		return workload.resolveColumns(nextStatement(), false);
+	}
+
+	@Benchmark
+	public int cached() {
+		return workload.resolveColumns(nextStatement(), true);
+	}
+
+	private String nextStatement() {
+		String sql = queries[next];
+		next = next + 1 == queries.length ? 0 : next + 1;
+		return sql;
+	}
+}
@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Parses the statements of a script in parallel.
+ * <p>
+ * The script is first split with the same rules as {@link SQLiteStatementSplitter},
+ * which only scans characters and is cheap next to parsing. The statements are
+ * then parsed in contiguous slices, one task per slice, on the configured
+ * executor. Every statement gets its own lexer and parser, while all of them
+ * share the DFA of the {@link SQLiteParseEngine} (the generated static DFA, or
+ * the engine's {@link SQLiteDfaCache}), so what one worker learns about the
+ * grammar speeds up the others.
+ * <p>
+ * Results come back in script order, each with its own syntax errors. All of
+ * them are held until the last statement is parsed, so on a large script the
+ * trees of the whole script are live at once; the collector then takes a share
+ * of the time that more threads do not shrink unless it runs in parallel too.
+ */
+public class SQLiteBatchParser {
+	/** Slices per worker; more than one evens out statements of uneven size. */
+	private static final int SLICES_PER_THREAD = 4;
+
+	private final ExecutorService executor;
+	private final int parallelism;
+	private final SQLiteParseEngine engine;
+
+	/** A batch parser on the common {@link ForkJoinPool}. */
+	public SQLiteBatchParser() {
+		this(ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism(), new SQLiteParseEngine());
+	}
+
+	/**
+	 * A batch parser that runs on {@code executor}, cutting each batch into slices
+	 * for {@code parallelism} workers, typically the executor's thread count. The
+	 * executor is not shut down by this class.
+	 */
+	public SQLiteBatchParser(ExecutorService executor, int parallelism, SQLiteParseEngine engine) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+		}
+		this.executor = executor;
+		this.parallelism = parallelism;
+		this.engine = engine;
+	}
+
+	public SQLiteParseEngine getEngine() {
+		return engine;
+	}
+
+	/** Splits {@code script} into statements and parses them in parallel. */
+	public List<SQLiteStatementSplitter.Statement> parse(CharSequence script) {
+		List<Pending> pending = new ArrayList<>();
+		SQLiteStatementSplitter.Scanner scanner = new SQLiteStatementSplitter.Scanner(
+			(ordinal, text, offset, line) -> pending.add(new Pending(text, offset, line)),
+			Integer.MAX_VALUE);
+		try {
+			scanner.feed(script, 0, script.length());
+			scanner.finish();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e); // the sink does no I/O
+		}
+		return parseAll(pending);
+	}
+
+	/**
+	 * Parses already split statements in parallel. Each result has offset 0 and
+	 * line 1, since it stands alone.
+	 */
+	public List<SQLiteStatementSplitter.Statement> parse(List<String> statements) {
+		List<Pending> pending = new ArrayList<>(statements.size());
+		for (String text : statements) {
+			pending.add(new Pending(text, 0, 1));
+		}
+		return parseAll(pending);
+	}
+
+	private List<SQLiteStatementSplitter.Statement> parseAll(List<Pending> pending) {
+		int n = pending.size();
+		SQLiteStatementSplitter.Statement[] results = new SQLiteStatementSplitter.Statement[n];
+		int slices = Math.min(n, parallelism * SLICES_PER_THREAD);
+		List<Future<?>> futures = new ArrayList<>(slices);
+		for (int s = 0; s < slices; s++) {
+			int from = (int)((long)n * s / slices);
+			int to = (int)((long)n * (s + 1) / slices);
+			futures.add(executor.submit(() -> {
+				for (int i = from; i < to; i++) {
+					Pending p = pending.get(i);
+					results[i] = new SQLiteStatementSplitter.Statement(i, p.text, p.offset, p.line, engine.parse(p.text));
+				}
+			}));
+		}
+		try {
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		}
+		catch (InterruptedException e) {
+			futures.forEach(f -> f.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while parsing", e);
+		}
+		catch (ExecutionException e) {
+			futures.forEach(f -> f.cancel(true));
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+		return Arrays.asList(results);
+	}
+
+	private static final class Pending {
+		final String text;
+		final long offset;
+		final int line;
+
+		Pending(String text, long offset, int line) {
+			this.text = text;
+			this.offset = offset;
+			this.line = line;
+		}
+	}
+}
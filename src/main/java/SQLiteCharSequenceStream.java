@@ -0,0 +1,94 @@
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * A {@link CharStream} view over a {@link CharSequence}, without copying it.
+ * <p>
+ * Unlike the streams returned by {@code CharStreams}, indexes are UTF-16 code
+ * units rather than code points, so they line up with {@link String} offsets.
+ * Both agree for input without supplementary characters.
+ */
+public class SQLiteCharSequenceStream implements CharStream {
+	private final CharSequence data;
+	private final String sourceName;
+	private int p;
+
+	public SQLiteCharSequenceStream(CharSequence data) {
+		this(data, IntStream.UNKNOWN_SOURCE_NAME);
+	}
+
+	public SQLiteCharSequenceStream(CharSequence data, String sourceName) {
+		this.data = data;
+		this.sourceName = sourceName;
+	}
+
+	/** The underlying characters. */
+	public CharSequence getData() {
+		return data;
+	}
+
+	@Override
+	public void consume() {
+		if (p >= data.length()) {
+			throw new IllegalStateException("cannot consume EOF");
+		}
+		p++;
+	}
+
+	@Override
+	public int LA(int i) {
+		if (i == 0) {
+			return 0; // undefined
+		}
+		int index = i > 0 ? p + i - 1 : p + i;
+		if (index < 0 || index >= data.length()) {
+			return IntStream.EOF;
+		}
+		return data.charAt(index);
+	}
+
+	@Override
+	public int mark() {
+		return -1;
+	}
+
+	@Override
+	public void release(int marker) {
+	}
+
+	@Override
+	public int index() {
+		return p;
+	}
+
+	@Override
+	public void seek(int index) {
+		p = Math.min(index, data.length());
+	}
+
+	@Override
+	public int size() {
+		return data.length();
+	}
+
+	@Override
+	public String getSourceName() {
+		return sourceName;
+	}
+
+	@Override
+	public String getText(Interval interval) {
+		int start = interval.a;
+		int stop = Math.min(interval.b, data.length() - 1);
+		if (start >= data.length() || stop < start) {
+			return "";
+		}
+		return data.subSequence(start, stop + 1).toString();
+	}
+
+	@Override
+	public String toString() {
+		return data.toString();
+	}
+}
@@ -0,0 +1,671 @@
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A parse tree of rule nodes stored in parallel {@code int} arrays, together with
+ * the token types and offsets and the source text.
+ * <p>
+ * Nodes are numbered in pre-order from 0. For every node the tree keeps its rule
+ * index, the indexes of its first and last token, the number one past its last
+ * descendant and its parent, so the children of {@code n} are {@code n + 1},
+ * then {@code getEnd(n + 1)}, and so on while below {@code getEnd(n)}.
+ * Tokens are not nodes; a node's tokens are the range between its first and last
+ * token index, hidden ones included. That is 20 bytes per node and 12 per token,
+ * with no object references besides the arrays, against well over 100 bytes per
+ * node for a {@code ParserRuleContext} tree plus its {@code Token}s.
+ * <p>
+ * The tree is built by a {@link Builder} registered as a parse listener on a
+ * parser with {@code setBuildParseTree(false)}, so no context outlives its rule;
+ * see {@link SQLiteParseEngine#parseCompact}. {@link Node} and its subclasses
+ * are throw-away views with typed accessors for the main query rules.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ */
+public class SQLiteCompactTree {
+	private final String text;
+	private final int[] tokenType;
+	/** UTF-16 offsets of the first and one past the last character of each token. */
+	private final int[] tokenStart;
+	private final int[] tokenEnd;
+
+	private final int[] kind;
+	private final int[] firstToken;
+	private final int[] lastToken;
+	private final int[] end;
+	private final int[] parent;
+
+	private SQLiteCompactTree(String text, int[] tokenType, int[] tokenStart, int[] tokenEnd,
+							  int[] kind, int[] firstToken, int[] lastToken, int[] end, int[] parent)
+	{
+		this.text = text;
+		this.tokenType = tokenType;
+		this.tokenStart = tokenStart;
+		this.tokenEnd = tokenEnd;
+		this.kind = kind;
+		this.firstToken = firstToken;
+		this.lastToken = lastToken;
+		this.end = end;
+		this.parent = parent;
+	}
+
+	/** The number of nodes. */
+	public int size() {
+		return kind.length;
+	}
+
+	/** The source text the tokens refer to. */
+	public String getText() {
+		return text;
+	}
+
+	/** The rule index of {@code node}, one of the {@code SQLiteParser.RULE_*} constants. */
+	public int getKind(int node) {
+		return kind[node];
+	}
+
+	/** The index of the first token of {@code node}. */
+	public int getFirstToken(int node) {
+		return firstToken[node];
+	}
+
+	/** The index of the last token of {@code node}; below the first for a node that matched nothing. */
+	public int getLastToken(int node) {
+		return lastToken[node];
+	}
+
+	/** One past the last descendant of {@code node}. */
+	public int getEnd(int node) {
+		return end[node];
+	}
+
+	/** The parent of {@code node}, or -1 for a root. */
+	public int getParent(int node) {
+		return parent[node];
+	}
+
+	/** The first child of {@code node}, or -1. */
+	public int getFirstChild(int node) {
+		return node + 1 < end[node] ? node + 1 : -1;
+	}
+
+	/** The next sibling of {@code node}, or -1. */
+	public int getNextSibling(int node) {
+		int next = end[node];
+		int p = parent[node];
+		return next < (p < 0 ? kind.length : end[p]) ? next : -1;
+	}
+
+	/** The source text of {@code node}, hidden tokens included, or "" if it matched nothing. */
+	public String getText(int node) {
+		int first = firstToken[node];
+		int last = lastToken[node];
+		if (first < 0 || last < first) {
+			return "";
+		}
+		return text.substring(tokenStart[first], tokenEnd[last]);
+	}
+
+	public int getTokenCount() {
+		return tokenType.length;
+	}
+
+	public int getTokenType(int token) {
+		return tokenType[token];
+	}
+
+	/** The text of one token; "" for {@code EOF}. */
+	public String getTokenText(int token) {
+		return text.substring(tokenStart[token], tokenEnd[token]);
+	}
+
+	/** The default-channel token before {@code token}, or -1. */
+	public int previousToken(int token) {
+		for (int i = token - 1; i >= 0; i--) {
+			if (SQLiteFastLexer.channelOf(tokenType[i]) == Token.DEFAULT_CHANNEL) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** A view of {@code node}. */
+	public Node node(int node) {
+		if (node < 0 || node >= kind.length) {
+			throw new IndexOutOfBoundsException(node);
+		}
+		return new Node(this, node);
+	}
+
+	/** The roots; a single {@code parse} node unless the tree was built from another rule. */
+	public List<Node> getRoots() {
+		List<Node> roots = new ArrayList<>(1);
+		for (int n = 0; n < kind.length; n = end[n]) {
+			roots.add(new Node(this, n));
+		}
+		return roots;
+	}
+
+	/** The {@code select_core} nodes of the whole tree, in source order. */
+	public List<SelectCore> getSelectCores() {
+		List<SelectCore> cores = new ArrayList<>();
+		for (int n = 0; n < kind.length; n++) {
+			if (kind[n] == SQLiteParser.RULE_select_core) {
+				cores.add(new SelectCore(this, n));
+			}
+		}
+		return cores;
+	}
+
+	/** Pre-order string form, like {@code toStringTree} without the tokens. */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int n = 0; n < kind.length; n++) {
+			if (n > 0) {
+				sb.append(' ');
+			}
+			sb.append('(').append(SQLiteParser.ruleNames[kind[n]]);
+			if (end[n] == n + 1) {
+				sb.append(' ').append(getText(n).replace("\n", "\\n"));
+			}
+			for (int p = n; p >= 0 && end[p] == n + 1; p = parent[p]) {
+				sb.append(')');
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * A view of one node. Views are cheap to create and hold no state but the
+	 * tree and the node number.
+	 */
+	public static class Node {
+		protected final SQLiteCompactTree tree;
+		protected final int index;
+
+		Node(SQLiteCompactTree tree, int index) {
+			this.tree = tree;
+			this.index = index;
+		}
+
+		Node(SQLiteCompactTree tree, int index, int expectedKind) {
+			this(tree, index);
+			if (tree.kind[index] != expectedKind) {
+				throw new IllegalArgumentException("node " + index + " is a " + SQLiteParser.ruleNames[tree.kind[index]]
+												   + ", not a " + SQLiteParser.ruleNames[expectedKind]);
+			}
+		}
+
+		public SQLiteCompactTree getTree() { return tree; }
+
+		public int getIndex() { return index; }
+
+		public int getKind() { return tree.kind[index]; }
+
+		public String getRuleName() { return SQLiteParser.ruleNames[tree.kind[index]]; }
+
+		public int getFirstToken() { return tree.firstToken[index]; }
+
+		public int getLastToken() { return tree.lastToken[index]; }
+
+		public String getText() { return tree.getText(index); }
+
+		/** The parent, or {@code null} for a root. */
+		public Node getParent() {
+			int p = tree.parent[index];
+			return p < 0 ? null : new Node(tree, p);
+		}
+
+		public List<Node> getChildren() {
+			return getChildren(-1);
+		}
+
+		/** The children of rule {@code kind}, or all children if {@code kind} is negative. */
+		public List<Node> getChildren(int kind) {
+			List<Node> children = new ArrayList<>();
+			for (int c = index + 1; c < tree.end[index]; c = tree.end[c]) {
+				if (kind < 0 || tree.kind[c] == kind) {
+					children.add(new Node(tree, c));
+				}
+			}
+			return children;
+		}
+
+		/** The first child of rule {@code kind}, or {@code null}. */
+		public Node getChild(int kind) {
+			int c = child(kind);
+			return c < 0 ? null : new Node(tree, c);
+		}
+
+		/** The descendants of rule {@code kind}, in pre-order. */
+		public List<Node> find(int kind) {
+			List<Node> found = new ArrayList<>();
+			for (int n = index + 1; n < tree.end[index]; n++) {
+				if (tree.kind[n] == kind) {
+					found.add(new Node(tree, n));
+				}
+			}
+			return found;
+		}
+
+		int child(int kind) {
+			for (int c = index + 1; c < tree.end[index]; c = tree.end[c]) {
+				if (tree.kind[c] == kind) {
+					return c;
+				}
+			}
+			return -1;
+		}
+
+		String childText(int kind) {
+			int c = child(kind);
+			return c < 0 ? null : tree.getText(c);
+		}
+
+		/** Whether a direct token of this node, not one of a child, has type {@code type}. */
+		boolean hasToken(int type) {
+			int t = tree.firstToken[index];
+			for (int c = index + 1; c < tree.end[index]; c = tree.end[c]) {
+				for (; t < tree.firstToken[c]; t++) {
+					if (tree.tokenType[t] == type) {
+						return true;
+					}
+				}
+				t = Math.max(t, tree.lastToken[c] + 1);
+			}
+			for (; t <= tree.lastToken[index]; t++) {
+				if (tree.tokenType[t] == type) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return getRuleName() + "[" + index + "] " + getText();
+		}
+	}
+
+	/** A {@code select_stmt}. */
+	public static class SelectStmt extends Node {
+		public SelectStmt(SQLiteCompactTree tree, int index) {
+			super(tree, index, SQLiteParser.RULE_select_stmt);
+		}
+
+		/** The cores of a compound select, in order. */
+		public List<SelectCore> getSelectCores() {
+			List<SelectCore> cores = new ArrayList<>(1);
+			for (int c = index + 1; c < tree.end[index]; c = tree.end[c]) {
+				if (tree.kind[c] == SQLiteParser.RULE_select_core) {
+					cores.add(new SelectCore(tree, c));
+				}
+			}
+			return cores;
+		}
+
+		public Node getWith() { return getChild(SQLiteParser.RULE_common_table_stmt); }
+
+		public Node getOrderBy() { return getChild(SQLiteParser.RULE_order_by_stmt); }
+
+		public Node getLimit() { return getChild(SQLiteParser.RULE_limit_stmt); }
+	}
+
+	/** A {@code select_core}. */
+	public static class SelectCore extends Node {
+		public SelectCore(SQLiteCompactTree tree, int index) {
+			super(tree, index, SQLiteParser.RULE_select_core);
+		}
+
+		/** Whether this is a {@code VALUES} list rather than a {@code SELECT}. */
+		public boolean isValues() {
+			return child(SQLiteParser.RULE_values_clause) >= 0;
+		}
+
+		public boolean isDistinct() {
+			int t = tree.firstToken[index];
+			int next = t + 1;
+			while (next < tree.tokenType.length && SQLiteFastLexer.channelOf(tree.tokenType[next]) != Token.DEFAULT_CHANNEL) {
+				next++;
+			}
+			return next <= tree.lastToken[index] && tree.tokenType[next] == SQLiteParser.DISTINCT_;
+		}
+
+		public List<ResultColumn> getResultColumns() {
+			List<ResultColumn> columns = new ArrayList<>();
+			for (int c = index + 1; c < tree.end[index]; c = tree.end[c]) {
+				if (tree.kind[c] == SQLiteParser.RULE_result_column) {
+					columns.add(new ResultColumn(tree, c));
+				}
+			}
+			return columns;
+		}
+
+		/**
+		 * The tables of the {@code FROM} clause: the comma-separated list, or the
+		 * tables of the join clause.
+		 */
+		public List<TableOrSubquery> getFrom() {
+			JoinClause join = getJoinClause();
+			if (join != null) {
+				return join.getTables();
+			}
+			List<TableOrSubquery> tables = new ArrayList<>();
+			for (int c = index + 1; c < tree.end[index]; c = tree.end[c]) {
+				if (tree.kind[c] == SQLiteParser.RULE_table_or_subquery) {
+					tables.add(new TableOrSubquery(tree, c));
+				}
+			}
+			return tables;
+		}
+
+		public JoinClause getJoinClause() {
+			int c = child(SQLiteParser.RULE_join_clause);
+			return c < 0 ? null : new JoinClause(tree, c);
+		}
+
+		/** The {@code WHERE} expression, or {@code null}. */
+		public Node getWhere() {
+			return clause(SQLiteParser.WHERE_);
+		}
+
+		/** The {@code HAVING} expression, or {@code null}. */
+		public Node getHaving() {
+			return clause(SQLiteParser.HAVING_);
+		}
+
+		public List<Node> getGroupBy() {
+			List<Node> group = new ArrayList<>();
+			for (int c = index + 1; c < tree.end[index]; c = tree.end[c]) {
+				if (tree.kind[c] == SQLiteParser.RULE_expr) {
+					int before = tree.previousToken(tree.firstToken[c]);
+					int type = before < 0 ? Token.INVALID_TYPE : tree.tokenType[before];
+					if (type == SQLiteParser.BY_ || type == SQLiteParser.COMMA) {
+						group.add(new Node(tree, c));
+					}
+				}
+			}
+			return group;
+		}
+
+		/** The {@code expr} child right after a {@code keyword} token. */
+		private Node clause(int keyword) {
+			for (int c = index + 1; c < tree.end[index]; c = tree.end[c]) {
+				if (tree.kind[c] == SQLiteParser.RULE_expr) {
+					int before = tree.previousToken(tree.firstToken[c]);
+					if (before >= 0 && tree.tokenType[before] == keyword) {
+						return new Node(tree, c);
+					}
+				}
+			}
+			return null;
+		}
+	}
+
+	/** A {@code result_column}: {@code *}, {@code table.*} or an expression with an optional alias. */
+	public static class ResultColumn extends Node {
+		public ResultColumn(SQLiteCompactTree tree, int index) {
+			super(tree, index, SQLiteParser.RULE_result_column);
+		}
+
+		/** Whether this is {@code *} or {@code table.*}. */
+		public boolean isStar() {
+			return child(SQLiteParser.RULE_expr) < 0;
+		}
+
+		/** The table of {@code table.*}, or {@code null}. */
+		public String getTableName() {
+			return childText(SQLiteParser.RULE_table_name);
+		}
+
+		public Node getExpr() {
+			return getChild(SQLiteParser.RULE_expr);
+		}
+
+		public String getAlias() {
+			return childText(SQLiteParser.RULE_column_alias);
+		}
+	}
+
+	/** A {@code table_or_subquery}: a table, a table-valued function, a sub-query or a nested join. */
+	public static class TableOrSubquery extends Node {
+		public TableOrSubquery(SQLiteCompactTree tree, int index) {
+			super(tree, index, SQLiteParser.RULE_table_or_subquery);
+		}
+
+		public String getSchemaName() {
+			return childText(SQLiteParser.RULE_schema_name);
+		}
+
+		/** The table name, or {@code null} for anything but a table. */
+		public String getTableName() {
+			return childText(SQLiteParser.RULE_table_name);
+		}
+
+		public String getTableFunctionName() {
+			return childText(SQLiteParser.RULE_table_function_name);
+		}
+
+		public String getAlias() {
+			return childText(SQLiteParser.RULE_table_alias);
+		}
+
+		/** The sub-query, or {@code null}. */
+		public SelectStmt getSelectStmt() {
+			int c = child(SQLiteParser.RULE_select_stmt);
+			return c < 0 ? null : new SelectStmt(tree, c);
+		}
+
+		/** The tables of a parenthesized join or table list; empty for anything else. */
+		public List<TableOrSubquery> getNested() {
+			int join = child(SQLiteParser.RULE_join_clause);
+			if (join >= 0) {
+				return new JoinClause(tree, join).getTables();
+			}
+			List<TableOrSubquery> tables = new ArrayList<>();
+			for (int c = index + 1; c < tree.end[index]; c = tree.end[c]) {
+				if (tree.kind[c] == SQLiteParser.RULE_table_or_subquery) {
+					tables.add(new TableOrSubquery(tree, c));
+				}
+			}
+			return tables;
+		}
+	}
+
+	/** A {@code join_clause}. */
+	public static class JoinClause extends Node {
+		public JoinClause(SQLiteCompactTree tree, int index) {
+			super(tree, index, SQLiteParser.RULE_join_clause);
+		}
+
+		public List<TableOrSubquery> getTables() {
+			List<TableOrSubquery> tables = new ArrayList<>();
+			for (int c = index + 1; c < tree.end[index]; c = tree.end[c]) {
+				if (tree.kind[c] == SQLiteParser.RULE_table_or_subquery) {
+					tables.add(new TableOrSubquery(tree, c));
+				}
+			}
+			return tables;
+		}
+
+		/** The {@code join_constraint}s, which not every join has. */
+		public List<Node> getConstraints() {
+			return getChildren(SQLiteParser.RULE_join_constraint);
+		}
+	}
+
+	/** A {@code qualified_table_name}, the target of {@code UPDATE} and {@code DELETE}. */
+	public static class QualifiedTableName extends Node {
+		public QualifiedTableName(SQLiteCompactTree tree, int index) {
+			super(tree, index, SQLiteParser.RULE_qualified_table_name);
+		}
+
+		public String getSchemaName() {
+			return childText(SQLiteParser.RULE_schema_name);
+		}
+
+		public String getTableName() {
+			return childText(SQLiteParser.RULE_table_name);
+		}
+
+		public String getAlias() {
+			return childText(SQLiteParser.RULE_alias);
+		}
+
+		public boolean isNotIndexed() {
+			return hasToken(SQLiteParser.NOT_);
+		}
+	}
+
+	/**
+	 * Collects rule nodes from parse listener events. Nodes are recorded in
+	 * post-order as their rules exit; a left-recursive context, which the parser
+	 * enters only after its first child has exited, takes over the position of
+	 * that child. {@link #build} turns the result into pre-order.
+	 * <p>
+	 * Not thread-safe; one builder per parser.
+	 */
+	public static class Builder implements ParseTreeListener {
+		private int count;
+		private int[] kind = new int[64];
+		private int[] firstToken = new int[64];
+		private int[] lastToken = new int[64];
+		private int[] size = new int[64];
+
+		/** Post-order position of the first node of each open rule. */
+		private int[] marks = new int[32];
+		private int depth;
+		private ParserRuleContext lastExited;
+		private int lastMark;
+		private int lastConsumed = -1;
+
+		/** Forgets everything recorded so far, as when the parser starts over. */
+		public void reset() {
+			count = 0;
+			depth = 0;
+			lastExited = null;
+			lastConsumed = -1;
+		}
+
+		@Override
+		public void enterEveryRule(ParserRuleContext ctx) {
+			int mark = lastExited != null && lastExited.parent == ctx ? lastMark : count;
+			lastExited = null;
+			if (depth == marks.length) {
+				marks = Arrays.copyOf(marks, depth * 2);
+			}
+			marks[depth++] = mark;
+		}
+
+		@Override
+		public void exitEveryRule(ParserRuleContext ctx) {
+			int mark = marks[--depth];
+			if (count == kind.length) {
+				int n = count * 2;
+				kind = Arrays.copyOf(kind, n);
+				firstToken = Arrays.copyOf(firstToken, n);
+				lastToken = Arrays.copyOf(lastToken, n);
+				size = Arrays.copyOf(size, n);
+			}
+			kind[count] = ctx.getRuleIndex();
+			firstToken[count] = ctx.start != null ? ctx.start.getTokenIndex() : lastConsumed + 1;
+			// the stop token of a left-recursive context is only set after it exits
+			lastToken[count] = lastConsumed;
+			size[count] = count - mark + 1;
+			count++;
+			lastExited = ctx;
+			lastMark = mark;
+		}
+
+		@Override
+		public void visitTerminal(TerminalNode node) {
+			consumed(node.getSymbol());
+		}
+
+		@Override
+		public void visitErrorNode(ErrorNode node) {
+			consumed(node.getSymbol());
+		}
+
+		private void consumed(Token t) {
+			// tokens conjured up by error recovery have no index
+			if (t.getTokenIndex() >= 0 && t.getType() != Token.EOF) {
+				lastConsumed = t.getTokenIndex();
+			}
+		}
+
+		/** Builds the tree over the tokens of {@code tokens}, which are buffered to the end. */
+		public SQLiteCompactTree build(TokenStream tokens) {
+			CharStream input = tokens.getTokenSource().getInputStream();
+			String text = input.size() == 0 ? "" : input.getText(Interval.of(0, input.size() - 1));
+			// the generated lexer counts code points, SQLiteCharSequenceStream UTF-16 units
+			boolean codePoints = !(input instanceof SQLiteCharSequenceStream) && text.length() != input.size();
+			while (tokens.LA(1) != Token.EOF) {
+				tokens.consume();
+			}
+			int n = tokens.size();
+			int[] types = new int[n];
+			int[] starts = new int[n];
+			int[] ends = new int[n];
+			int cp = 0;
+			int offset = 0;
+			for (int i = 0; i < n; i++) {
+				Token t = tokens.get(i);
+				types[i] = t.getType();
+				int start = t.getType() == Token.EOF ? input.size() : t.getStartIndex();
+				int stop = t.getType() == Token.EOF ? start - 1 : t.getStopIndex();
+				if (codePoints) {
+					offset = text.offsetByCodePoints(offset, start - cp);
+					starts[i] = offset;
+					ends[i] = text.offsetByCodePoints(offset, stop + 1 - start);
+					cp = start;
+				}
+				else {
+					starts[i] = start;
+					ends[i] = stop + 1;
+				}
+			}
+
+			int[] preKind = new int[count];
+			int[] preFirst = new int[count];
+			int[] preLast = new int[count];
+			int[] preEnd = new int[count];
+			int[] preParent = new int[count];
+			// a depth-first walk that pushes siblings last to first, so that they
+			// come off the stack in order
+			int[] stack = new int[count];
+			int[] stackParent = new int[count];
+			int sp = 0;
+			for (int r = count - 1; r >= 0; r -= size[r]) {
+				stack[sp] = r;
+				stackParent[sp++] = -1;
+			}
+			int next = 0;
+			while (sp > 0) {
+				int post = stack[--sp];
+				int p = stackParent[sp];
+				int pre = next++;
+				preKind[pre] = kind[post];
+				preFirst[pre] = firstToken[post];
+				preLast[pre] = lastToken[post];
+				preEnd[pre] = pre + size[post];
+				preParent[pre] = p;
+				for (int c = post - 1; c > post - size[post]; c -= size[c]) {
+					stack[sp] = c;
+					stackParent[sp++] = pre;
+				}
+			}
+			return new SQLiteCompactTree(text, types, starts, ends, preKind, preFirst, preLast, preEnd, preParent);
+		}
+	}
+}
@@ -0,0 +1,631 @@
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.AtomTransition;
+import org.antlr.v4.runtime.atn.PrecedencePredicateTransition;
+import org.antlr.v4.runtime.atn.RuleStartState;
+import org.antlr.v4.runtime.atn.RuleTransition;
+import org.antlr.v4.runtime.atn.Transition;
+import org.antlr.v4.runtime.misc.IntervalSet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Code completion by simulating the {@link SQLiteParser} ATN up to a caret.
+ * <p>
+ * Instead of parsing with error recovery and guessing from the tree, the engine
+ * walks every ATN path that the tokens before the caret can take and collects
+ * what each path accepts at the caret: token types, and the <em>preferred rules</em>
+ * ({@code table_name}, {@code column_name}, ...) a path would enter there. A path
+ * is not followed into a preferred rule, so an identifier position is reported as
+ * {@code table_name} rather than as {@code IDENTIFIER} plus every keyword that
+ * {@code any_name} allows. This is the algorithm of the antlr4-c3 code completion core.
+ * <p>
+ * The tokens a rule can start with are computed once per rule start state and
+ * shared by all engines; within one request, the token positions where a rule
+ * invocation can end are memoized per rule, precedence and start position. That
+ * keeps a request within a statement well under a millisecond. Only the statement
+ * around the caret is simulated.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+public class SQLiteCompletionEngine {
+	private static final ATN ATN = SQLiteParser._ATN;
+	/** Per rule start state, the tokens the rule can start with; filled lazily. */
+	private static final AtomicReferenceArray<FollowSets> FOLLOW_SETS = new AtomicReferenceArray<>(ATN.states.size());
+
+	/** The rules reported by {@link #SQLiteCompletionEngine()}. */
+	public static final Set<Integer> DEFAULT_PREFERRED_RULES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+		SQLiteParser.RULE_schema_name, SQLiteParser.RULE_table_name, SQLiteParser.RULE_table_or_index_name,
+		SQLiteParser.RULE_column_name, SQLiteParser.RULE_function_name, SQLiteParser.RULE_simple_func,
+		SQLiteParser.RULE_aggregate_func, SQLiteParser.RULE_table_function_name, SQLiteParser.RULE_index_name,
+		SQLiteParser.RULE_view_name, SQLiteParser.RULE_trigger_name, SQLiteParser.RULE_collation_name,
+		SQLiteParser.RULE_module_name, SQLiteParser.RULE_pragma_name, SQLiteParser.RULE_savepoint_name,
+		SQLiteParser.RULE_window_name, SQLiteParser.RULE_table_alias, SQLiteParser.RULE_column_alias,
+		SQLiteParser.RULE_alias, SQLiteParser.RULE_any_name)));
+
+	private final BitSet preferredRules = new BitSet();
+	private final BitSet ignoredTokens = new BitSet();
+	private final boolean ignoreEof;
+
+	/**
+	 * An engine reporting the {@link #DEFAULT_PREFERRED_RULES} and every token
+	 * type but {@link Token#EOF}.
+	 */
+	public SQLiteCompletionEngine() {
+		this(DEFAULT_PREFERRED_RULES, Collections.singleton(Token.EOF));
+	}
+
+	/**
+	 * An engine reporting the rules with the indexes in {@code preferredRules} and
+	 * the token types not in {@code ignoredTokens}.
+	 */
+	public SQLiteCompletionEngine(Collection<Integer> preferredRules, Collection<Integer> ignoredTokens) {
+		boolean eof = false;
+		for (int rule : preferredRules) {
+			this.preferredRules.set(rule);
+		}
+		for (int type : ignoredTokens) {
+			if (type == Token.EOF) {
+				eof = true;
+			}
+			else {
+				this.ignoredTokens.set(type);
+			}
+		}
+		this.ignoreEof = eof;
+	}
+
+	/**
+	 * The candidates at {@code caret} in {@code sql}, simulating the statement that
+	 * the caret is in. See {@link #complete(CharSequence, int, int)}.
+	 */
+	public Candidates complete(CharSequence sql, int caret) {
+		return complete(sql, statementStart(sql, caret), caret);
+	}
+
+	/**
+	 * The candidates at {@code caret} in the script of {@code script}, which already
+	 * knows where the statements are; unlike {@link #complete(CharSequence, int)},
+	 * this does not scan the script up to the caret.
+	 */
+	public Candidates complete(SQLiteIncrementalParser script, int caret) {
+		int i = script.statementAt(caret);
+		int start = 0;
+		if (i < script.getStatementCount() && script.getStatement(i).getOffset() <= caret) {
+			start = (int)script.getStatement(i).getOffset();
+		}
+		else if (i > 0) {
+			SQLiteStatementSplitter.Statement previous = script.getStatement(i - 1);
+			// a trailing statement without a semicolon is still open
+			start = previous.getText().endsWith(";")
+				? (int)previous.getOffset() + previous.getText().length() : (int)previous.getOffset();
+		}
+		return complete(script.getText(), start, caret);
+	}
+
+	/**
+	 * The candidates at {@code caret} in {@code sql}, simulating {@link SQLiteParser#parse()}
+	 * from {@code statementStart}, which must not be inside a statement; a statement
+	 * offset from {@link SQLiteStatementSplitter} or {@link SQLiteIncrementalParser}
+	 * will do. A word the caret is in or right after is what gets completed: it is
+	 * not matched and its range is reported by {@link Candidates#getPrefixStart()}.
+	 */
+	public Candidates complete(CharSequence sql, int statementStart, int caret) {
+		if (statementStart < 0 || statementStart > caret || caret > sql.length()) {
+			throw new IndexOutOfBoundsException("caret " + caret + " from " + statementStart + " in " + sql.length());
+		}
+		SQLiteFastLexer lexer = new SQLiteFastLexer(CharBuffer.wrap(sql, statementStart, sql.length()));
+		int relative = caret - statementStart;
+		int[] types = new int[16];
+		int count = 0;
+		int prefixStart = caret;
+		for (int type = lexer.scan(); ; type = lexer.scan()) {
+			if (type != Token.EOF && SQLiteFastLexer.channelOf(type) != Token.DEFAULT_CHANNEL) {
+				continue;
+			}
+			int start = lexer.getTokenStart();
+			int end = lexer.getTokenEnd();
+			if (type == Token.EOF || start >= relative) {
+				break;
+			}
+			if (end > relative || end == relative && isWordChar(sql.charAt(caret - 1))) {
+				// the caret is in or right after this token
+				prefixStart = statementStart + start;
+				break;
+			}
+			if (count == types.length - 1) {
+				types = Arrays.copyOf(types, types.length * 2);
+			}
+			types[count++] = type;
+		}
+		types[count++] = Token.EOF; // the caret
+		Candidates candidates = new Run(Arrays.copyOf(types, count)).collect(SQLiteParser.RULE_parse);
+		candidates.prefixStart = prefixStart;
+		candidates.prefixEnd = caret;
+		return candidates;
+	}
+
+	/**
+	 * The candidates at the token with index {@code caretTokenIndex} in {@code tokens},
+	 * simulating the rule of {@code context} from its start token or, if
+	 * {@code context} is {@code null}, {@link SQLiteParser#parse()} from the first
+	 * token. Tokens off the default channel are skipped.
+	 */
+	public Candidates collectCandidates(TokenStream tokens, int caretTokenIndex, ParserRuleContext context) {
+		int from = context != null && context.getStart() != null ? context.getStart().getTokenIndex() : 0;
+		int[] types = new int[16];
+		int count = 0;
+		for (int i = from; i < caretTokenIndex; i++) {
+			Token token = tokens.get(i);
+			if (token.getType() == Token.EOF) {
+				break;
+			}
+			if (token.getChannel() != Token.DEFAULT_CHANNEL) {
+				continue;
+			}
+			if (count == types.length - 1) {
+				types = Arrays.copyOf(types, types.length * 2);
+			}
+			types[count++] = token.getType();
+		}
+		types[count++] = Token.EOF;
+		Candidates candidates = new Run(Arrays.copyOf(types, count))
+			.collect(context != null ? context.getRuleIndex() : SQLiteParser.RULE_parse);
+		Token caret = caretTokenIndex < tokens.size() ? tokens.get(caretTokenIndex) : null;
+		candidates.prefixStart = caret != null ? caret.getStartIndex() : -1;
+		candidates.prefixEnd = candidates.prefixStart;
+		return candidates;
+	}
+
+	/** Start of the statement that {@code caret} is in or before, by the rules of {@link SQLiteStatementSplitter}. */
+	private static int statementStart(CharSequence sql, int caret) {
+		int[] end = {0};
+		SQLiteStatementSplitter.Scanner scanner = new SQLiteStatementSplitter.Scanner(
+			(ordinal, text, offset, line) -> end[0] = (int)offset + text.length(), Integer.MAX_VALUE);
+		try {
+			scanner.feed(sql, 0, caret);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e); // the sink does no I/O
+		}
+		return end[0];
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+	}
+
+	/** What can go at a caret. */
+	public static class Candidates {
+		private final Map<Integer, List<Integer>> tokens = new TreeMap<>();
+		private final Map<Integer, List<Integer>> rules = new TreeMap<>();
+		private int prefixStart;
+		private int prefixEnd;
+
+		/**
+		 * The token types that can go at the caret, each mapped to the token types
+		 * that must follow it, if any ({@code BY} after {@code ORDER}).
+		 */
+		public Map<Integer, List<Integer>> getTokens() {
+			return Collections.unmodifiableMap(tokens);
+		}
+
+		/**
+		 * The preferred rules that can start at the caret, each mapped to the rule
+		 * indexes of the call stack that leads to it, outermost first.
+		 */
+		public Map<Integer, List<Integer>> getRules() {
+			return Collections.unmodifiableMap(rules);
+		}
+
+		public boolean hasRule(int ruleIndex) {
+			return rules.containsKey(ruleIndex);
+		}
+
+		public boolean hasToken(int type) {
+			return tokens.containsKey(type);
+		}
+
+		/** Start offset of the word being completed; {@link #getPrefixEnd()} if there is none. */
+		public int getPrefixStart() {
+			return prefixStart;
+		}
+
+		/** The caret. */
+		public int getPrefixEnd() {
+			return prefixEnd;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("rules=[");
+			for (int rule : rules.keySet()) {
+				sb.append(sb.length() > 7 ? ", " : "").append(SQLiteParser.ruleNames[rule]);
+			}
+			sb.append("], tokens=[");
+			int mark = sb.length();
+			for (Map.Entry<Integer, List<Integer>> e : tokens.entrySet()) {
+				sb.append(sb.length() > mark ? ", " : "").append(SQLiteParser.VOCABULARY.getDisplayName(e.getKey()));
+				for (int following : e.getValue()) {
+					sb.append(' ').append(SQLiteParser.VOCABULARY.getDisplayName(following));
+				}
+			}
+			return sb.append(']').toString();
+		}
+	}
+
+	/** One request: the token types up to the caret and the memoized rule end positions. */
+	private final class Run {
+		private final int[] types;
+		private final int caret;
+		private final Map<Long, BitSet> ruleEnds = new HashMap<>();
+		private final Candidates candidates = new Candidates();
+		private int[] callStack = new int[32];
+		private int depth;
+
+		Run(int[] types) {
+			this.types = types;
+			this.caret = types.length - 1;
+		}
+
+		Candidates collect(int startRule) {
+			processRule(ATN.ruleToStartState[startRule], 0, 0);
+			return candidates;
+		}
+
+		/** The token positions after the invocation of a rule at {@code index}. */
+		private BitSet processRule(RuleStartState start, int index, int precedence) {
+			long key = (long)start.ruleIndex << 40 | (long)precedence << 32 | index;
+			BitSet ends = ruleEnds.get(key);
+			if (ends != null) {
+				return ends;
+			}
+			ends = new BitSet();
+			FollowSets follow = followSets(start);
+			if (depth == callStack.length) {
+				callStack = Arrays.copyOf(callStack, depth * 2);
+			}
+			callStack[depth++] = start.ruleIndex;
+			try {
+				if (index == caret) {
+					if (preferredRules.get(start.ruleIndex)) {
+						translateStack(callStack, depth);
+						ruleEnds.put(key, ends);
+						return ends;
+					}
+					if (!translateStack(callStack, depth)) {
+						for (FollowSet set : follow.sets) {
+							if (!translatePath(set.path)) {
+								addTokens(set.tokens, set.following);
+							}
+						}
+					}
+					if (!follow.canBeEmpty) {
+						ruleEnds.put(key, ends);
+						return ends;
+					}
+				}
+				else if (!follow.canBeEmpty && !follow.combined.contains(types[index])) {
+					ruleEnds.put(key, ends);
+					return ends;
+				}
+				walk(start, index, precedence, ends);
+			}
+			finally {
+				depth--;
+			}
+			ruleEnds.put(key, ends);
+			return ends;
+		}
+
+		/** Follows the ATN from {@code start} to the rule's stop state. */
+		private void walk(ATNState start, int startIndex, int precedence, BitSet ends) {
+			LongSet seen = new LongSet();
+			long[] pipeline = new long[16];
+			int size = 0;
+			pipeline[size++] = (long)start.stateNumber << 32 | startIndex;
+			while (size > 0) {
+				long entry = pipeline[--size];
+				if (!seen.add(entry)) {
+					continue;
+				}
+				ATNState state = ATN.states.get((int)(entry >>> 32));
+				int index = (int)entry;
+				if (state.getStateType() == ATNState.RULE_STOP) {
+					ends.set(index);
+					continue;
+				}
+				boolean atCaret = index == caret;
+				if (!atCaret) {
+					// the LL(1) set of the state, which ANTLR caches on the state
+					IntervalSet look = ATN.nextTokens(state);
+					if (!look.contains(types[index]) && !look.contains(Token.EPSILON)) {
+						continue;
+					}
+				}
+				for (int i = 0; i < state.getNumberOfTransitions(); i++) {
+					Transition t = state.transition(i);
+					long next = -1;
+					switch (t.getSerializationType()) {
+						case Transition.RULE: {
+							RuleTransition rule = (RuleTransition)t;
+							BitSet after = processRule((RuleStartState)rule.target, index, rule.precedence);
+							for (int end = after.nextSetBit(0); end >= 0; end = after.nextSetBit(end + 1)) {
+								if (size == pipeline.length) {
+									pipeline = Arrays.copyOf(pipeline, size * 2);
+								}
+								pipeline[size++] = (long)rule.followState.stateNumber << 32 | end;
+							}
+							break;
+						}
+						case Transition.PRECEDENCE:
+							if (((PrecedencePredicateTransition)t).precedence >= precedence) {
+								next = (long)t.target.stateNumber << 32 | index;
+							}
+							break;
+						default:
+							if (t.isEpsilon()) {
+								next = (long)t.target.stateNumber << 32 | index;
+								break;
+							}
+							IntervalSet label = label(t);
+							if (atCaret) {
+								if (!translateStack(callStack, depth)) {
+									addTokens(label, following(t));
+								}
+							}
+							else if (label.contains(types[index])) {
+								next = (long)t.target.stateNumber << 32 | (index + 1);
+							}
+							break;
+					}
+					if (next >= 0) {
+						if (size == pipeline.length) {
+							pipeline = Arrays.copyOf(pipeline, size * 2);
+						}
+						pipeline[size++] = next;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Records the outermost preferred rule on {@code stack} as a candidate and
+		 * returns whether there was one.
+		 */
+		private boolean translateStack(int[] stack, int length) {
+			for (int i = 0; i < length; i++) {
+				if (preferredRules.get(stack[i])) {
+					if (!candidates.rules.containsKey(stack[i])) {
+						List<Integer> path = new ArrayList<>(i);
+						for (int j = 0; j < i; j++) {
+							path.add(stack[j]);
+						}
+						candidates.rules.put(stack[i], Collections.unmodifiableList(path));
+					}
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/** Like {@link #translateStack} for the rules entered below the call stack. */
+		private boolean translatePath(int[] path) {
+			for (int i = 0; i < path.length; i++) {
+				if (preferredRules.get(path[i])) {
+					if (!candidates.rules.containsKey(path[i])) {
+						List<Integer> stack = new ArrayList<>(depth + i);
+						for (int j = 0; j < depth; j++) {
+							stack.add(callStack[j]);
+						}
+						for (int j = 0; j < i; j++) {
+							stack.add(path[j]);
+						}
+						candidates.rules.put(path[i], Collections.unmodifiableList(stack));
+					}
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void addTokens(IntervalSet set, List<Integer> following) {
+			for (int type : set.toArray()) {
+				if (type == Token.EOF ? ignoreEof : ignoredTokens.get(type)) {
+					continue;
+				}
+				List<Integer> known = candidates.tokens.get(type);
+				if (known == null) {
+					candidates.tokens.put(type, following);
+				}
+				else if (!known.equals(following)) {
+					candidates.tokens.put(type, Collections.<Integer>emptyList());
+				}
+			}
+		}
+	}
+
+	private static FollowSets followSets(RuleStartState start) {
+		FollowSets sets = FOLLOW_SETS.get(start.stateNumber);
+		if (sets == null) {
+			List<FollowSet> collected = new ArrayList<>();
+			boolean exhaustive = collectFollowSets(start, collected, new HashSet<>(), new ArrayList<>());
+			sets = new FollowSets(collected, !exhaustive);
+			FOLLOW_SETS.compareAndSet(start.stateNumber, null, sets);
+		}
+		return sets;
+	}
+
+	/**
+	 * Adds the tokens that can be matched first from {@code state} on, with the rules
+	 * entered to get there, and returns whether every path matches a token before
+	 * reaching a rule stop state.
+	 */
+	private static boolean collectFollowSets(ATNState state, List<FollowSet> sets, Set<ATNState> seen, List<Integer> ruleStack) {
+		if (!seen.add(state)) {
+			return true;
+		}
+		try {
+			if (state.getStateType() == ATNState.RULE_STOP) {
+				return false;
+			}
+			boolean exhaustive = true;
+			for (int i = 0; i < state.getNumberOfTransitions(); i++) {
+				Transition t = state.transition(i);
+				if (t.getSerializationType() == Transition.RULE) {
+					RuleTransition rule = (RuleTransition)t;
+					if (ruleStack.contains(rule.target.ruleIndex)) {
+						continue;
+					}
+					ruleStack.add(rule.target.ruleIndex);
+					boolean ruleExhaustive = collectFollowSets(rule.target, sets, seen, ruleStack);
+					ruleStack.remove(ruleStack.size() - 1);
+					if (!ruleExhaustive) {
+						exhaustive &= collectFollowSets(rule.followState, sets, seen, ruleStack);
+					}
+				}
+				else if (t.isEpsilon()) {
+					exhaustive &= collectFollowSets(t.target, sets, seen, ruleStack);
+				}
+				else {
+					sets.add(new FollowSet(label(t), ruleStack, following(t)));
+				}
+			}
+			return exhaustive;
+		}
+		finally {
+			seen.remove(state);
+		}
+	}
+
+	/** The token types a non-epsilon transition matches. */
+	private static IntervalSet label(Transition t) {
+		switch (t.getSerializationType()) {
+			case Transition.WILDCARD:
+				return IntervalSet.of(Token.MIN_USER_TOKEN_TYPE, ATN.maxTokenType);
+			case Transition.NOT_SET:
+				return t.label().complement(Token.MIN_USER_TOKEN_TYPE, ATN.maxTokenType);
+			default:
+				return t.label();
+		}
+	}
+
+	/** The tokens that must follow the one matched by {@code t}, up to the next decision. */
+	private static List<Integer> following(Transition t) {
+		List<Integer> following = null;
+		ATNState state = t.target;
+		while (state.getNumberOfTransitions() == 1 && state.getStateType() != ATNState.RULE_STOP) {
+			Transition next = state.transition(0);
+			if (next instanceof AtomTransition) {
+				if (following == null) {
+					following = new ArrayList<>(2);
+				}
+				following.add(((AtomTransition)next).label);
+			}
+			else if (next.getSerializationType() != Transition.EPSILON) {
+				break;
+			}
+			state = next.target;
+		}
+		return following == null ? Collections.<Integer>emptyList() : Collections.unmodifiableList(following);
+	}
+
+	/** A set of non-negative longs; boxing them in a {@code HashSet} costs more than the walk. */
+	private static final class LongSet {
+		/** Open addressing; a slot holds the complement of its key, so 0 is free. */
+		private long[] slots = new long[32];
+		private int size;
+
+		boolean add(long key) {
+			if (2 * size >= slots.length) {
+				long[] old = slots;
+				slots = new long[old.length * 2];
+				for (long slot : old) {
+					if (slot != 0) {
+						insert(slot);
+					}
+				}
+			}
+			if (!insert(~key)) {
+				return false;
+			}
+			size++;
+			return true;
+		}
+
+		private boolean insert(long slot) {
+			int mask = slots.length - 1;
+			long h = slot * 0x9E3779B97F4A7C15L;
+			for (int i = (int)(h >>> 40) & mask; ; i = (i + 1) & mask) {
+				if (slots[i] == 0) {
+					slots[i] = slot;
+					return true;
+				}
+				if (slots[i] == slot) {
+					return false;
+				}
+			}
+		}
+	}
+
+	private static final class FollowSet {
+		final IntervalSet tokens;
+		/** The rules entered from the rule start to reach the tokens. */
+		final int[] path;
+		final List<Integer> following;
+
+		FollowSet(IntervalSet tokens, List<Integer> path, List<Integer> following) {
+			this.tokens = new IntervalSet(tokens);
+			this.path = path.stream().mapToInt(Integer::intValue).toArray();
+			this.following = following;
+		}
+	}
+
+	private static final class FollowSets {
+		final FollowSet[] sets;
+		/** All tokens of {@link #sets}. */
+		final IntervalSet combined = new IntervalSet();
+		/** Whether the rule can match no token. */
+		final boolean canBeEmpty;
+
+		FollowSets(List<FollowSet> sets, boolean canBeEmpty) {
+			// one set per path and following tokens, so that keyword alternatives
+			// reached the same way are looked at once
+			Map<List<Object>, FollowSet> merged = new LinkedHashMap<>();
+			for (FollowSet set : sets) {
+				List<Object> key = Arrays.asList(Arrays.toString(set.path), set.following);
+				FollowSet same = merged.get(key);
+				if (same == null) {
+					merged.put(key, set);
+				}
+				else {
+					same.tokens.addAll(set.tokens);
+				}
+			}
+			this.sets = merged.values().toArray(new FollowSet[0]);
+			this.canBeEmpty = canBeEmpty;
+			for (FollowSet set : sets) {
+				combined.addAll(set.tokens);
+			}
+			combined.setReadonly(true);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Check that {@link SQLiteDetachedParse} leaves nothing attached to the parse
+ * it came from: no token in the tree, in a token label of a rule context, or in
+ * a syntax error may have a token source or input stream, and no rule context
+ * may keep its recognition exception. Labels are found by reflection, so a
+ * label added to the grammar is covered without changing this class.
+ * <p>
+ * Runs over the statements of the bundled warm-up corpus and a few that set
+ * labels or fail to parse.
+ * <pre>
+ * java SQLiteDetachedCheck
+ * </pre>
+ * Exits with status 1 if any token is still attached.
+ */
+public class SQLiteDetachedCheck {
+	private static final String[] CASES = {
+		"DROP TABLE t",
+		"DROP INDEX IF EXISTS main.i",
+		"DROP VIEW v",
+		"DROP TRIGGER tr",
+		"CREATE TABLE t (a INTEGER PRIMARY KEY, b) WITHOUT ROWID",
+		"CREATE TABLE t (a",
+		"SELECT FROM WHERE",
+		"DROP garbage",
+	};
+
+	public static void main(String[] args) throws IOException {
+		List<String> statements = new ArrayList<>(List.of(CASES));
+		try (InputStream in = SQLiteDetachedCheck.class.getClassLoader().getResourceAsStream(SQLiteDfaSnapshot.WARMUP_CORPUS)) {
+			if (in == null) {
+				throw new IllegalStateException(SQLiteDfaSnapshot.WARMUP_CORPUS + " not on the classpath");
+			}
+			new SQLiteStatementSplitter(new SQLiteParseEngine())
+				.split(new String(in.readAllBytes(), StandardCharsets.UTF_8), statement -> statements.add(statement.getText()));
+		}
+
+		SQLiteParseEngine engine = new SQLiteParseEngine();
+		int failures = 0;
+		for (String sql : statements) {
+			String problem = check(SQLiteDetachedParse.of(engine.parse(sql)));
+			if (problem != null) {
+				System.out.println(sql);
+				System.out.println("  " + problem);
+				failures++;
+			}
+		}
+
+		System.out.println(statements.size() + " detached trees, " + failures + " failures");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/** Describes the first token or exception of {@code parse} still tied to the parser, or returns {@code null}. */
+	private static String check(SQLiteDetachedParse parse) {
+		Deque<ParseTree> pending = new ArrayDeque<>();
+		pending.push(parse.getTree());
+		while (!pending.isEmpty()) {
+			ParseTree node = pending.pop();
+			if (node instanceof TerminalNode) {
+				if (attached(((TerminalNode)node).getSymbol())) {
+					return "terminal " + node.getText() + " is attached";
+				}
+				continue;
+			}
+			ParserRuleContext ctx = (ParserRuleContext)node;
+			if (attached(ctx.start) || attached(ctx.stop)) {
+				return ctx.getClass().getSimpleName() + " start or stop is attached";
+			}
+			if (ctx.exception != null) {
+				return ctx.getClass().getSimpleName() + " keeps its exception";
+			}
+			for (Field f : ctx.getClass().getFields()) {
+				if (f.getType() == Token.class && !Modifier.isStatic(f.getModifiers())) {
+					try {
+						if (attached((Token)f.get(ctx))) {
+							return ctx.getClass().getSimpleName() + "." + f.getName() + " is attached";
+						}
+					}
+					catch (IllegalAccessException e) {
+						throw new IllegalStateException(e); // public fields of public classes
+					}
+				}
+			}
+			for (int i = ctx.getChildCount() - 1; i >= 0; i--) {
+				pending.push(ctx.getChild(i));
+			}
+		}
+		for (SQLiteSyntaxError e : parse.getErrors()) {
+			if (attached(e.getOffendingToken())) {
+				return "error " + e.getMessage() + " is attached";
+			}
+		}
+		return null;
+	}
+
+	private static boolean attached(Token token) {
+		return token != null && (token.getTokenSource() != null || token.getInputStream() != null);
+	}
+}
@@ -0,0 +1,121 @@
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNodeImpl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tree and syntax errors of a {@link SQLiteParseResult}, cut loose from the
+ * parser, lexer, token stream and input that produced them.
+ * <p>
+ * Every token the tree, a token label or an error refers to is replaced by a
+ * copy that carries its own text and positions but no token source or input
+ * stream, and the recognition exceptions recorded on rule contexts are dropped,
+ * since they point back at the parser. What is left holds no mutable parsing state, so one
+ * instance may be handed to any number of threads, as {@link SQLiteParseCache#of}
+ * does, provided they only read the tree.
+ */
+public final class SQLiteDetachedParse {
+	private final SQLiteParser.ParseContext tree;
+	private final SQLiteParseEngine.Mode mode;
+	private final List<SQLiteSyntaxError> errors;
+	/** Built on first use. */
+	private volatile SQLiteScopeTree scopes;
+
+	private SQLiteDetachedParse(SQLiteParser.ParseContext tree, SQLiteParseEngine.Mode mode, List<SQLiteSyntaxError> errors) {
+		this.tree = tree;
+		this.mode = mode;
+		this.errors = errors;
+	}
+
+	/**
+	 * Detaches the tree and errors of {@code result}. The tree is modified in
+	 * place, so {@code result} must not be used afterwards.
+	 */
+	public static SQLiteDetachedParse of(SQLiteParseResult result) {
+		Map<Token, Token> copies = new IdentityHashMap<>();
+		Deque<ParseTree> pending = new ArrayDeque<>();
+		pending.push(result.getTree());
+		while (!pending.isEmpty()) {
+			ParseTree node = pending.pop();
+			if (node instanceof TerminalNodeImpl) {
+				TerminalNodeImpl terminal = (TerminalNodeImpl)node;
+				terminal.symbol = copy(terminal.symbol, copies);
+				continue;
+			}
+			ParserRuleContext ctx = (ParserRuleContext)node;
+			ctx.start = copy(ctx.start, copies);
+			ctx.stop = copy(ctx.stop, copies);
+			ctx.exception = null;
+			// the only token labels in the grammar; each is also a terminal of the same context
+			if (ctx instanceof SQLiteParser.Drop_stmtContext) {
+				SQLiteParser.Drop_stmtContext drop = (SQLiteParser.Drop_stmtContext)ctx;
+				drop.object = copy(drop.object, copies);
+			}
+			else if (ctx instanceof SQLiteParser.Create_table_stmtContext) {
+				SQLiteParser.Create_table_stmtContext create = (SQLiteParser.Create_table_stmtContext)ctx;
+				create.row_ROW_ID = copy(create.row_ROW_ID, copies);
+			}
+			for (int i = ctx.getChildCount() - 1; i >= 0; i--) {
+				pending.push(ctx.getChild(i));
+			}
+		}
+
+		List<SQLiteSyntaxError> errors = result.getErrors();
+		if (!errors.isEmpty()) {
+			List<SQLiteSyntaxError> detached = new ArrayList<>(errors.size());
+			for (SQLiteSyntaxError e : errors) {
+				detached.add(new SQLiteSyntaxError(e.getLine(), e.getCharPositionInLine(), e.getMessage(),
+												   copy(e.getOffendingToken(), copies)));
+			}
+			errors = Collections.unmodifiableList(detached);
+		}
+		return new SQLiteDetachedParse(result.getTree(), result.getMode(), errors);
+	}
+
+	private static Token copy(Token token, Map<Token, Token> copies) {
+		if (token == null) {
+			return null;
+		}
+		Token c = copies.get(token);
+		if (c == null) {
+			SQLiteToken t = new SQLiteToken(token.getType(), token.getText());
+			t.setChannel(token.getChannel());
+			t.setLine(token.getLine());
+			t.setCharPositionInLine(token.getCharPositionInLine());
+			t.setTokenIndex(token.getTokenIndex());
+			t.setStartIndex(token.getStartIndex());
+			t.setStopIndex(token.getStopIndex());
+			copies.put(token, c = t);
+		}
+		return c;
+	}
+
+	public SQLiteParser.ParseContext getTree() { return tree; }
+
+	/** Which prediction path produced {@link #getTree()}. */
+	public SQLiteParseEngine.Mode getMode() { return mode; }
+
+	public List<SQLiteSyntaxError> getErrors() { return errors; }
+
+	public boolean hasErrors() { return !errors.isEmpty(); }
+
+	/**
+	 * The name scopes of {@link #getTree()}, built on the first call. Two threads
+	 * calling at once may both build it; either tree is the same.
+	 */
+	public SQLiteScopeTree getScopes() {
+		SQLiteScopeTree s = scopes;
+		if (s == null) {
+			scopes = s = SQLiteScopeTree.build(tree);
+		}
+		return s;
+	}
+}
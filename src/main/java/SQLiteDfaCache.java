@@ -0,0 +1,315 @@
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A bounded replacement for the static {@code _decisionToDFA} arrays and
+ * {@code _sharedContextCache} of {@link SQLiteParser} and {@link SQLiteLexer}.
+ * <p>
+ * The DFA and prediction contexts learned by the ATN simulators live in a
+ * {@link Generation}. Recognizers are bound to the current generation when they
+ * are {@linkplain #install(SQLiteParser) installed}, so a generation is shared by
+ * every parse that starts while it is current. {@link #checkpoint()} estimates the
+ * memory retained by the current generation and, once it exceeds the ceiling,
+ * replaces it with an empty one. Parses still running against the old generation
+ * finish normally; the old DFA becomes garbage once they do.
+ * <p>
+ * The estimate counts the DFA states, which costs one read per decision, and
+ * walks them to weigh their edges and configurations only when their number has
+ * doubled since the last walk; in between, new states are taken to weigh what
+ * the walked ones did on average. A generation that keeps growing is thus walked
+ * a logarithmic number of times. The walk reads the DFA without taking the lock
+ * the simulators add states under, so it never holds up a prediction.
+ * <p>
+ * Caches are isolated from each other: a cache obtained through
+ * {@link #forTenant(String)} never shares DFA states with another tenant, so one
+ * tenant's pathological input cannot evict another tenant's warm DFA.
+ */
+public final class SQLiteDfaCache {
+	/** The ceiling used by {@link #forTenant(String)}. */
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	// Rough per-object costs on a 64-bit JVM with compressed oops, used only
+	// for the retained-size estimate.
+	private static final int DFA_STATE_BYTES = 48;
+	private static final int CONFIG_SET_BYTES = 96;
+	private static final int CONFIG_BYTES = 40;
+	private static final int CONTEXT_BYTES = 56;
+	private static final int ARRAY_HEADER_BYTES = 16;
+
+	private static final ConcurrentMap<String, SQLiteDfaCache> TENANTS = new ConcurrentHashMap<>();
+
+	private final String tenant;
+	private final long maxBytes;
+	private final AtomicReference<Generation> current;
+	private final AtomicLong evictions = new AtomicLong();
+
+	/** The last walk of a generation's DFA states. */
+	private volatile Measurement measured;
+
+	public SQLiteDfaCache(String tenant, long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+		}
+		this.tenant = tenant;
+		this.maxBytes = maxBytes;
+		this.current = new AtomicReference<>(new Generation(0));
+	}
+
+	/** Returns the cache of {@code tenant}, creating it with {@link #DEFAULT_MAX_BYTES} if needed. */
+	public static SQLiteDfaCache forTenant(String tenant) {
+		return forTenant(tenant, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Returns the cache of {@code tenant}, creating it with the given ceiling if
+	 * needed. The ceiling of an existing cache is not changed.
+	 */
+	public static SQLiteDfaCache forTenant(String tenant, long maxBytes) {
+		return TENANTS.computeIfAbsent(tenant, t -> new SQLiteDfaCache(t, maxBytes));
+	}
+
+	/** Forgets the cache of {@code tenant}; recognizers already bound to it keep working. */
+	public static void removeTenant(String tenant) {
+		TENANTS.remove(tenant);
+	}
+
+	public String getTenant() { return tenant; }
+
+	public long getMaxBytes() { return maxBytes; }
+
+	/** Binds {@code parser} to the current generation, replacing its interpreter. */
+	public void install(SQLiteParser parser) {
+		Generation g = current.get();
+		parser.setInterpreter(new ParserATNSimulator(parser, SQLiteParser._ATN, g.parserDFA, g.parserContexts));
+	}
+
+	/** Binds {@code lexer} to the current generation, replacing its interpreter. */
+	public void install(SQLiteLexer lexer) {
+		Generation g = current.get();
+		lexer.setInterpreter(new LexerATNSimulator(lexer, SQLiteLexer._ATN, g.lexerDFA, g.lexerContexts));
+	}
+
+	/** The generation new recognizers are bound to. */
+	public Generation getGeneration() {
+		return current.get();
+	}
+
+	/**
+	 * Estimates the current generation and starts a new, empty one when it retains
+	 * more than {@link #getMaxBytes()}. Returns {@code true} if a generation was
+	 * evicted.
+	 */
+	public boolean checkpoint() {
+		Generation g = current.get();
+		if (estimateBytes(g) <= maxBytes) {
+			return false;
+		}
+		if (current.compareAndSet(g, new Generation(g.number + 1))) {
+			evictions.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/** Drops every learned DFA state, regardless of the ceiling. */
+	public void clear() {
+		Generation g = current.get();
+		current.set(new Generation(g.number + 1));
+		evictions.incrementAndGet();
+	}
+
+	public Stats getStats() {
+		Generation g = current.get();
+		return new Stats(tenant, g.number, evictions.get(),
+						 statesPerDecision(g.parserDFA), statesPerDecision(g.lexerDFA),
+						 g.parserContexts.size() + g.lexerContexts.size(),
+						 estimateBytes(g), maxBytes);
+	}
+
+	private long estimateBytes(Generation g) {
+		int states = countStates(g.parserDFA) + countStates(g.lexerDFA);
+		Measurement m = measured;
+		if (m == null || m.generation != g || states >= 2 * m.states && states > m.states) {
+			m = measure(g);
+			measured = m;
+		}
+		long stateBytes = m.stateBytes;
+		if (states > m.states) {
+			stateBytes += (states - m.states) * (m.states > 0 ? m.stateBytes / m.states : DFA_STATE_BYTES);
+		}
+		return stateBytes + (long)(g.parserContexts.size() + g.lexerContexts.size()) * CONTEXT_BYTES;
+	}
+
+	private static Measurement measure(Generation g) {
+		long[] totals = new long[2];
+		weigh(g.parserDFA, totals);
+		weigh(g.lexerDFA, totals);
+		return new Measurement(g, (int)totals[0], totals[1]);
+	}
+
+	private static int countStates(DFA[] dfas) {
+		int n = 0;
+		for (DFA dfa : dfas) {
+			n += dfa.states.size();
+		}
+		return n;
+	}
+
+	private static int[] statesPerDecision(DFA[] dfas) {
+		int[] counts = new int[dfas.length];
+		for (int i = 0; i < dfas.length; i++) {
+			counts[i] = dfas[i].states.size();
+		}
+		return counts;
+	}
+
+	/**
+	 * Adds the states of {@code dfas} and their weight to {@code totals}. A DFA
+	 * that a simulator adds to while it is read is skipped; its states count at
+	 * the average weight until the next walk.
+	 */
+	private static void weigh(DFA[] dfas, long[] totals) {
+		for (DFA dfa : dfas) {
+			int states = 0;
+			long bytes = 0;
+			try {
+				for (DFAState state : dfa.states.keySet()) {
+					states++;
+					bytes += DFA_STATE_BYTES;
+					DFAState[] edges = state.edges;
+					if (edges != null) {
+						bytes += ARRAY_HEADER_BYTES + 4L * edges.length;
+					}
+					if (state.configs != null) {
+						int n = state.configs.size();
+						bytes += CONFIG_SET_BYTES + ARRAY_HEADER_BYTES + 4L * n + (long)CONFIG_BYTES * n;
+					}
+				}
+			}
+			catch (ConcurrentModificationException e) {
+				continue;
+			}
+			totals[0] += states;
+			totals[1] += bytes;
+		}
+	}
+
+	private static DFA[] newDFA(ATN atn) {
+		DFA[] dfa = new DFA[atn.getNumberOfDecisions()];
+		for (int i = 0; i < dfa.length; i++) {
+			dfa[i] = new DFA(atn.getDecisionState(i), i);
+		}
+		return dfa;
+	}
+
+	/** The states of a generation and their weight, when last walked. */
+	private static final class Measurement {
+		final Generation generation;
+		final int states;
+		final long stateBytes;
+
+		Measurement(Generation generation, int states, long stateBytes) {
+			this.generation = generation;
+			this.states = states;
+			this.stateBytes = stateBytes;
+		}
+	}
+
+	/** One set of DFA and prediction context caches for the parser and the lexer. */
+	public static final class Generation {
+		final int number;
+		final DFA[] parserDFA = newDFA(SQLiteParser._ATN);
+		final DFA[] lexerDFA = newDFA(SQLiteLexer._ATN);
+		final PredictionContextCache parserContexts = new PredictionContextCache();
+		final PredictionContextCache lexerContexts = new PredictionContextCache();
+
+		Generation(int number) {
+			this.number = number;
+		}
+
+		/** Increases by one every time a generation is evicted. */
+		public int getNumber() { return number; }
+
+		public DFA[] getParserDFA() { return parserDFA; }
+
+		public DFA[] getLexerDFA() { return lexerDFA; }
+	}
+
+	/** A point-in-time view of a cache's size. */
+	public static final class Stats {
+		private final String tenant;
+		private final int generation;
+		private final long evictions;
+		private final int[] parserStatesPerDecision;
+		private final int[] lexerStatesPerDecision;
+		private final int contexts;
+		private final long bytesRetained;
+		private final long maxBytes;
+
+		Stats(String tenant, int generation, long evictions,
+			  int[] parserStatesPerDecision, int[] lexerStatesPerDecision,
+			  int contexts, long bytesRetained, long maxBytes)
+		{
+			this.tenant = tenant;
+			this.generation = generation;
+			this.evictions = evictions;
+			this.parserStatesPerDecision = parserStatesPerDecision;
+			this.lexerStatesPerDecision = lexerStatesPerDecision;
+			this.contexts = contexts;
+			this.bytesRetained = bytesRetained;
+			this.maxBytes = maxBytes;
+		}
+
+		public String getTenant() { return tenant; }
+
+		public int getGeneration() { return generation; }
+
+		public long getEvictions() { return evictions; }
+
+		/** DFA state count of every parser decision, indexed by decision number. */
+		public int[] getParserStatesPerDecision() { return parserStatesPerDecision.clone(); }
+
+		/** DFA state count of every lexer mode, indexed by mode. */
+		public int[] getLexerStatesPerDecision() { return lexerStatesPerDecision.clone(); }
+
+		public int getParserStates() { return sum(parserStatesPerDecision); }
+
+		public int getLexerStates() { return sum(lexerStatesPerDecision); }
+
+		/** Number of cached prediction contexts. */
+		public int getContexts() { return contexts; }
+
+		/** Estimated heap retained by the current generation. */
+		public long getBytesRetained() { return bytesRetained; }
+
+		public long getMaxBytes() { return maxBytes; }
+
+		private static int sum(int[] values) {
+			int n = 0;
+			for (int v : values) {
+				n += v;
+			}
+			return n;
+		}
+
+		@Override
+		public String toString() {
+			return "SQLiteDfaCache[" + tenant + "] generation=" + generation
+				+ " evictions=" + evictions
+				+ " parserStates=" + getParserStates()
+				+ " lexerStates=" + getLexerStates()
+				+ " contexts=" + contexts
+				+ " bytes=" + bytesRetained + "/" + maxBytes;
+		}
+	}
+}
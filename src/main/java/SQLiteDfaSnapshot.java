@@ -0,0 +1,704 @@
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.RuntimeMetaData;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNConfig;
+import org.antlr.v4.runtime.atn.ATNConfigSet;
+import org.antlr.v4.runtime.atn.ATNSimulator;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.ArrayPredictionContext;
+import org.antlr.v4.runtime.atn.DecisionState;
+import org.antlr.v4.runtime.atn.EmptyPredictionContext;
+import org.antlr.v4.runtime.atn.LexerATNConfig;
+import org.antlr.v4.runtime.atn.LexerAction;
+import org.antlr.v4.runtime.atn.LexerActionExecutor;
+import org.antlr.v4.runtime.atn.OrderedATNConfigSet;
+import org.antlr.v4.runtime.atn.PredictionContext;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.atn.SemanticContext;
+import org.antlr.v4.runtime.atn.SingletonPredictionContext;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persists the DFA learned by the {@link SQLiteParser} and {@link SQLiteLexer}
+ * ATN simulators and preloads it into a fresh process, so a new deployment starts
+ * with a warm prediction cache instead of re-learning it from live traffic.
+ * <p>
+ * A snapshot is a short uncompressed header followed by a gzip-compressed body
+ * that records, for every DFA state, its ATN configurations (with their
+ * prediction and semantic contexts), its flags and its outgoing edges. Loading
+ * rebuilds states that are {@code equals} to the ones the simulator would have
+ * computed, so the simulator treats them exactly like states it learned itself.
+ * <p>
+ * Snapshots are tied to the grammar: the header stores a checksum of
+ * {@link SQLiteParser#_serializedATN} and {@link SQLiteLexer#_serializedATN} and
+ * the ANTLR runtime version, and {@link #read} refuses a snapshot whose
+ * checksums do not match the classes on the classpath.
+ * <p>
+ * {@link #main(String[])} builds a snapshot from the bundled warm-up corpus
+ * ({@value #WARMUP_CORPUS}), which exercises every {@code sql_stmt} alternative.
+ */
+public final class SQLiteDfaSnapshot {
+	/** Classpath resource holding the warm-up corpus. */
+	public static final String WARMUP_CORPUS = "sqlite-warmup.sql";
+
+	/** Classpath resource holding the snapshot built from {@link #WARMUP_CORPUS} at build time. */
+	public static final String BUNDLED_SNAPSHOT = "sqlite-dfa.snapshot";
+
+	private static final int MAGIC = 0x53514446; // "SQDF"
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int CTX_EMPTY = 0;
+	private static final int CTX_SINGLETON = 1;
+	private static final int CTX_ARRAY = 2;
+
+	private static final int SEM_NONE = 0;
+	private static final int SEM_PREDICATE = 1;
+	private static final int SEM_PRECEDENCE = 2;
+	private static final int SEM_AND = 3;
+	private static final int SEM_OR = 4;
+
+	private static final int EDGE_ERROR = -1;
+
+	private SQLiteDfaSnapshot() {
+	}
+
+	/** Writes the DFA of {@code cache}'s current generation to {@code file}. */
+	public static void save(SQLiteDfaCache cache, Path file) throws IOException {
+		SQLiteDfaCache.Generation g = cache.getGeneration();
+		try (OutputStream out = Files.newOutputStream(file)) {
+			write(g.parserDFA, g.lexerDFA, out);
+		}
+	}
+
+	/**
+	 * Loads {@code file} into {@code cache}'s current generation. Returns
+	 * {@code false}, leaving the cache untouched, if the snapshot was built for
+	 * another grammar or runtime.
+	 */
+	public static boolean load(SQLiteDfaCache cache, Path file) throws IOException {
+		SQLiteDfaCache.Generation g = cache.getGeneration();
+		try (InputStream in = Files.newInputStream(file)) {
+			return read(in, g.parserDFA, g.parserContexts, g.lexerDFA, g.lexerContexts);
+		}
+	}
+
+	/**
+	 * Loads the snapshot bundled at build time into {@code cache}. Returns
+	 * {@code false} if there is none or it does not match this grammar.
+	 */
+	public static boolean loadBundled(SQLiteDfaCache cache) throws IOException {
+		try (InputStream in = SQLiteDfaSnapshot.class.getClassLoader().getResourceAsStream(BUNDLED_SNAPSHOT)) {
+			if (in == null) {
+				return false;
+			}
+			SQLiteDfaCache.Generation g = cache.getGeneration();
+			return read(in, g.parserDFA, g.parserContexts, g.lexerDFA, g.lexerContexts);
+		}
+	}
+
+	/** Writes the DFA generated into {@link SQLiteParser} and {@link SQLiteLexer}. */
+	public static void saveGenerated(Path file) throws IOException {
+		try (OutputStream out = Files.newOutputStream(file)) {
+			write(SQLiteParser._decisionToDFA, SQLiteLexer._decisionToDFA, out);
+		}
+	}
+
+	/** Loads {@code file} into the DFA generated into {@link SQLiteParser} and {@link SQLiteLexer}. */
+	public static boolean loadGenerated(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			return read(in, SQLiteParser._decisionToDFA, SQLiteParser._sharedContextCache,
+						SQLiteLexer._decisionToDFA, SQLiteLexer._sharedContextCache);
+		}
+	}
+
+	public static void write(DFA[] parserDFA, DFA[] lexerDFA, OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeInt(FORMAT_VERSION);
+		data.writeUTF(RuntimeMetaData.VERSION);
+		data.writeLong(checksum(SQLiteParser._serializedATN));
+		data.writeLong(checksum(SQLiteLexer._serializedATN));
+		data.flush();
+
+		// the header stays uncompressed so stale snapshots are rejected cheaply
+		GZIPOutputStream zip = new GZIPOutputStream(out, 1 << 16);
+		data = new DataOutputStream(new BufferedOutputStream(zip, 1 << 16));
+		new Writer(data, false).write(parserDFA);
+		new Writer(data, true).write(lexerDFA);
+		data.flush();
+		zip.finish();
+	}
+
+	/**
+	 * Adds the states stored in {@code in} to the given DFA, which should be
+	 * empty. Returns {@code false} if the snapshot does not belong to this
+	 * grammar or runtime.
+	 */
+	public static boolean read(InputStream in,
+							   DFA[] parserDFA, PredictionContextCache parserContexts,
+							   DFA[] lexerDFA, PredictionContextCache lexerContexts) throws IOException
+	{
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC) {
+			throw new IOException("not a DFA snapshot");
+		}
+		if (data.readInt() != FORMAT_VERSION
+			|| !RuntimeMetaData.VERSION.equals(data.readUTF())
+			|| data.readLong() != checksum(SQLiteParser._serializedATN)
+			|| data.readLong() != checksum(SQLiteLexer._serializedATN))
+		{
+			return false;
+		}
+		data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16));
+		new Reader(data, SQLiteParser._ATN, false, parserContexts).read(parserDFA);
+		new Reader(data, SQLiteLexer._ATN, true, lexerContexts).read(lexerDFA);
+		return true;
+	}
+
+	static long checksum(String serializedATN) {
+		CRC32 crc = new CRC32();
+		crc.update(serializedATN.getBytes(StandardCharsets.UTF_8));
+		return crc.getValue();
+	}
+
+	/**
+	 * Builds a snapshot by parsing the bundled warm-up corpus and any additional
+	 * SQL files, then writes it to the first argument.
+	 * <pre>java SQLiteDfaSnapshot out.dfa [extra.sql ...]</pre>
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("usage: SQLiteDfaSnapshot <output> [corpus.sql ...]");
+			System.exit(2);
+		}
+		SQLiteDfaCache cache = new SQLiteDfaCache("snapshot", Long.MAX_VALUE);
+		SQLiteParseEngine engine = new SQLiteParseEngine(cache);
+		try (InputStream corpus = SQLiteDfaSnapshot.class.getClassLoader().getResourceAsStream(WARMUP_CORPUS)) {
+			if (corpus == null) {
+				throw new IOException("missing resource " + WARMUP_CORPUS);
+			}
+			engine.parse(CharStreams.fromStream(corpus, StandardCharsets.UTF_8));
+		}
+		for (int i = 1; i < args.length; i++) {
+			engine.parse(CharStreams.fromPath(Paths.get(args[i]), StandardCharsets.UTF_8));
+		}
+		save(cache, Paths.get(args[0]));
+		System.out.println(cache.getStats());
+	}
+
+	private static final class Writer {
+		final DataOutputStream out;
+		final boolean lexer;
+		final Map<PredictionContext, Integer> contextIds = new HashMap<>();
+		final List<PredictionContext> contexts = new ArrayList<>();
+
+		Writer(DataOutputStream out, boolean lexer) {
+			this.out = out;
+			this.lexer = lexer;
+		}
+
+		void write(DFA[] dfas) throws IOException {
+			List<List<DFAState>> statesByDecision = new ArrayList<>(dfas.length);
+			for (DFA dfa : dfas) {
+				List<DFAState> states;
+				synchronized (dfa.states) {
+					states = new ArrayList<>(dfa.states.keySet());
+				}
+				for (DFAState state : states) {
+					for (ATNConfig c : state.configs) {
+						collect(c.context);
+					}
+				}
+				statesByDecision.add(states);
+			}
+
+			out.writeInt(contexts.size());
+			for (PredictionContext ctx : contexts) {
+				writeContext(ctx);
+			}
+
+			out.writeInt(dfas.length);
+			for (int d = 0; d < dfas.length; d++) {
+				writeDFA(dfas[d], statesByDecision.get(d));
+			}
+		}
+
+		/** Numbers contexts so that parents always precede their children. */
+		private void collect(PredictionContext ctx) {
+			if (ctx == null || contextIds.containsKey(ctx)) {
+				return;
+			}
+			for (int i = 0; i < ctx.size(); i++) {
+				collect(ctx.getParent(i));
+			}
+			contextIds.put(ctx, contexts.size());
+			contexts.add(ctx);
+		}
+
+		private int contextId(PredictionContext ctx) {
+			return ctx == null ? -1 : contextIds.get(ctx);
+		}
+
+		private void writeContext(PredictionContext ctx) throws IOException {
+			if (ctx instanceof EmptyPredictionContext) {
+				out.writeByte(CTX_EMPTY);
+			}
+			else if (ctx instanceof SingletonPredictionContext) {
+				SingletonPredictionContext s = (SingletonPredictionContext)ctx;
+				out.writeByte(CTX_SINGLETON);
+				out.writeInt(contextId(s.parent));
+				out.writeInt(s.returnState);
+			}
+			else {
+				ArrayPredictionContext a = (ArrayPredictionContext)ctx;
+				out.writeByte(CTX_ARRAY);
+				out.writeInt(a.returnStates.length);
+				for (int i = 0; i < a.returnStates.length; i++) {
+					out.writeInt(contextId(a.parents[i]));
+					out.writeInt(a.returnStates[i]);
+				}
+			}
+		}
+
+		private void writeDFA(DFA dfa, List<DFAState> states) throws IOException {
+			Map<DFAState, Integer> ids = new IdentityHashMap<>();
+			for (DFAState state : states) {
+				ids.put(state, ids.size());
+			}
+
+			out.writeInt(dfa.decision);
+			out.writeBoolean(dfa.isPrecedenceDfa());
+			out.writeInt(states.size());
+			for (DFAState state : states) {
+				writeState(state);
+			}
+			for (DFAState state : states) {
+				writeEdges(state.edges, ids);
+			}
+
+			DFAState s0 = dfa.s0;
+			if (dfa.isPrecedenceDfa()) {
+				writeEdges(s0 != null ? s0.edges : null, ids);
+			}
+			else {
+				Integer id = s0 != null ? ids.get(s0) : null;
+				out.writeInt(id != null ? id : -1);
+			}
+		}
+
+		private void writeState(DFAState state) throws IOException {
+			out.writeInt(state.stateNumber);
+			out.writeBoolean(state.isAcceptState);
+			out.writeInt(state.prediction);
+			out.writeBoolean(state.requiresFullContext);
+			writeExecutor(state.lexerActionExecutor);
+
+			if (state.predicates == null) {
+				out.writeInt(-1);
+			}
+			else {
+				out.writeInt(state.predicates.length);
+				for (DFAState.PredPrediction p : state.predicates) {
+					writeSemanticContext(p.pred);
+					out.writeInt(p.alt);
+				}
+			}
+
+			ATNConfigSet configs = state.configs;
+			out.writeBoolean(configs.fullCtx);
+			out.writeInt(configs.uniqueAlt);
+			out.writeBoolean(configs.hasSemanticContext);
+			out.writeBoolean(configs.dipsIntoOuterContext);
+			writeBitSet(lexer ? null : ConfigSets.conflictingAlts(configs));
+			out.writeInt(configs.size());
+			for (ATNConfig c : configs) {
+				out.writeInt(c.state.stateNumber);
+				out.writeInt(c.alt);
+				out.writeInt(contextId(c.context));
+				out.writeInt(c.reachesIntoOuterContext);
+				writeSemanticContext(c.semanticContext);
+				if (lexer) {
+					LexerATNConfig lc = (LexerATNConfig)c;
+					out.writeBoolean(lc.hasPassedThroughNonGreedyDecision());
+					writeExecutor(lc.getLexerActionExecutor());
+				}
+			}
+		}
+
+		private void writeEdges(DFAState[] edges, Map<DFAState, Integer> ids) throws IOException {
+			if (edges == null) {
+				out.writeInt(-1);
+				return;
+			}
+			int count = 0;
+			for (DFAState target : edges) {
+				if (target != null && (target == ATNSimulator.ERROR || ids.containsKey(target))) {
+					count++;
+				}
+			}
+			out.writeInt(edges.length);
+			out.writeInt(count);
+			for (int i = 0; i < edges.length; i++) {
+				DFAState target = edges[i];
+				if (target == ATNSimulator.ERROR) {
+					out.writeInt(i);
+					out.writeInt(EDGE_ERROR);
+				}
+				else if (target != null && ids.containsKey(target)) {
+					out.writeInt(i);
+					out.writeInt(ids.get(target));
+				}
+			}
+		}
+
+		private void writeSemanticContext(SemanticContext ctx) throws IOException {
+			if (ctx == null || ctx == SemanticContext.Empty.Instance) {
+				out.writeByte(SEM_NONE);
+			}
+			else if (ctx instanceof SemanticContext.Predicate) {
+				SemanticContext.Predicate p = (SemanticContext.Predicate)ctx;
+				out.writeByte(SEM_PREDICATE);
+				out.writeInt(p.ruleIndex);
+				out.writeInt(p.predIndex);
+				out.writeBoolean(p.isCtxDependent);
+			}
+			else if (ctx instanceof SemanticContext.PrecedencePredicate) {
+				out.writeByte(SEM_PRECEDENCE);
+				out.writeInt(((SemanticContext.PrecedencePredicate)ctx).precedence);
+			}
+			else {
+				boolean and = ctx instanceof SemanticContext.AND;
+				SemanticContext[] operands = and ? ((SemanticContext.AND)ctx).opnds
+												 : ((SemanticContext.OR)ctx).opnds;
+				out.writeByte(and ? SEM_AND : SEM_OR);
+				out.writeInt(operands.length);
+				for (SemanticContext operand : operands) {
+					writeSemanticContext(operand);
+				}
+			}
+		}
+
+		private void writeExecutor(LexerActionExecutor executor) throws IOException {
+			if (executor == null) {
+				out.writeInt(-1);
+				return;
+			}
+			LexerAction[] actions = executor.getLexerActions();
+			out.writeInt(actions.length);
+			for (LexerAction action : actions) {
+				out.writeInt(lexerActionIndex(action));
+			}
+		}
+
+		private int lexerActionIndex(LexerAction action) {
+			LexerAction[] known = SQLiteLexer._ATN.lexerActions;
+			for (int i = 0; i < known.length; i++) {
+				if (known[i].equals(action)) {
+					return i;
+				}
+			}
+			throw new IllegalStateException("lexer action not declared by the grammar: " + action);
+		}
+
+		private void writeBitSet(BitSet bits) throws IOException {
+			if (bits == null) {
+				out.writeInt(-1);
+				return;
+			}
+			long[] words = bits.toLongArray();
+			out.writeInt(words.length);
+			for (long word : words) {
+				out.writeLong(word);
+			}
+		}
+	}
+
+	private static final class Reader {
+		final DataInputStream in;
+		final ATN atn;
+		final boolean lexer;
+		final PredictionContextCache contextCache;
+		PredictionContext[] contexts;
+
+		Reader(DataInputStream in, ATN atn, boolean lexer, PredictionContextCache contextCache) {
+			this.in = in;
+			this.atn = atn;
+			this.lexer = lexer;
+			this.contextCache = contextCache;
+		}
+
+		void read(DFA[] dfas) throws IOException {
+			contexts = new PredictionContext[in.readInt()];
+			for (int i = 0; i < contexts.length; i++) {
+				PredictionContext ctx = readContext();
+				contexts[i] = contextCache != null ? contextCache.add(ctx) : ctx;
+			}
+
+			int count = in.readInt();
+			if (count != dfas.length) {
+				throw new IOException("snapshot has " + count + " decisions, grammar has " + dfas.length);
+			}
+			for (int d = 0; d < count; d++) {
+				readDFA(dfas[d]);
+			}
+		}
+
+		private PredictionContext context(int id) {
+			return id < 0 ? null : contexts[id];
+		}
+
+		private PredictionContext readContext() throws IOException {
+			int kind = in.readByte();
+			switch (kind) {
+				case CTX_EMPTY:
+					return EmptyPredictionContext.Instance;
+				case CTX_SINGLETON: {
+					PredictionContext parent = context(in.readInt());
+					return SingletonPredictionContext.create(parent, in.readInt());
+				}
+				case CTX_ARRAY: {
+					int n = in.readInt();
+					PredictionContext[] parents = new PredictionContext[n];
+					int[] returnStates = new int[n];
+					for (int i = 0; i < n; i++) {
+						parents[i] = context(in.readInt());
+						returnStates[i] = in.readInt();
+					}
+					return new ArrayPredictionContext(parents, returnStates);
+				}
+				default:
+					throw new IOException("bad prediction context kind " + kind);
+			}
+		}
+
+		private void readDFA(DFA dfa) throws IOException {
+			int decision = in.readInt();
+			boolean precedence = in.readBoolean();
+			if (decision != dfa.decision || precedence != dfa.isPrecedenceDfa()) {
+				throw new IOException("snapshot decision " + decision + " does not match DFA " + dfa.decision);
+			}
+
+			DFAState[] states = new DFAState[in.readInt()];
+			for (int i = 0; i < states.length; i++) {
+				states[i] = readState();
+			}
+			for (DFAState state : states) {
+				state.edges = readEdges(states);
+			}
+
+			synchronized (dfa.states) {
+				for (DFAState state : states) {
+					dfa.states.put(state, state);
+				}
+				if (precedence) {
+					DFAState[] starts = readEdges(states);
+					if (starts != null) {
+						for (int p = 0; p < starts.length; p++) {
+							if (starts[p] != null) {
+								dfa.setPrecedenceStartState(p, starts[p]);
+							}
+						}
+					}
+				}
+				else {
+					int s0 = in.readInt();
+					if (s0 >= 0) {
+						dfa.s0 = states[s0];
+					}
+				}
+			}
+		}
+
+		private DFAState readState() throws IOException {
+			int stateNumber = in.readInt();
+			boolean accept = in.readBoolean();
+			int prediction = in.readInt();
+			boolean requiresFullContext = in.readBoolean();
+			LexerActionExecutor executor = readExecutor();
+
+			DFAState.PredPrediction[] predicates = null;
+			int predicateCount = in.readInt();
+			if (predicateCount >= 0) {
+				predicates = new DFAState.PredPrediction[predicateCount];
+				for (int i = 0; i < predicateCount; i++) {
+					SemanticContext pred = readSemanticContext();
+					predicates[i] = new DFAState.PredPrediction(pred, in.readInt());
+				}
+			}
+
+			boolean fullCtx = in.readBoolean();
+			int uniqueAlt = in.readInt();
+			boolean hasSemanticContext = in.readBoolean();
+			boolean dipsIntoOuterContext = in.readBoolean();
+			BitSet conflictingAlts = readBitSet();
+			ATNConfigSet configs = lexer ? new OrderedATNConfigSet()
+										 : new ConfigSets(fullCtx, conflictingAlts);
+			int configCount = in.readInt();
+			for (int i = 0; i < configCount; i++) {
+				configs.add(readConfig());
+			}
+			configs.uniqueAlt = uniqueAlt;
+			configs.hasSemanticContext = hasSemanticContext;
+			configs.dipsIntoOuterContext = dipsIntoOuterContext;
+			configs.setReadonly(true);
+
+			DFAState state = new DFAState(configs);
+			state.stateNumber = stateNumber;
+			state.isAcceptState = accept;
+			state.prediction = prediction;
+			state.requiresFullContext = requiresFullContext;
+			state.lexerActionExecutor = executor;
+			state.predicates = predicates;
+			return state;
+		}
+
+		private ATNConfig readConfig() throws IOException {
+			ATNState state = atn.states.get(in.readInt());
+			int alt = in.readInt();
+			PredictionContext context = context(in.readInt());
+			int reachesIntoOuterContext = in.readInt();
+			SemanticContext semanticContext = readSemanticContext();
+
+			ATNConfig config;
+			if (lexer) {
+				boolean nonGreedy = in.readBoolean();
+				LexerActionExecutor executor = readExecutor();
+				config = new LexerATNConfig(state, alt, context, executor);
+				if (nonGreedy) {
+					config = passedThroughNonGreedyDecision((LexerATNConfig)config, state, executor);
+				}
+			}
+			else {
+				config = new ATNConfig(state, alt, context, semanticContext);
+			}
+			config.reachesIntoOuterContext = reachesIntoOuterContext;
+			return config;
+		}
+
+		/**
+		 * LexerATNConfig only sets its non-greedy flag when derived from a config
+		 * that passed through a non-greedy decision, so derive one from such a
+		 * decision state.
+		 */
+		private LexerATNConfig passedThroughNonGreedyDecision(LexerATNConfig config, ATNState state,
+															  LexerActionExecutor executor)
+		{
+			for (DecisionState decision : atn.decisionToState) {
+				if (decision.nonGreedy) {
+					LexerATNConfig seed = new LexerATNConfig(config, decision);
+					return new LexerATNConfig(seed, state, executor);
+				}
+			}
+			throw new IllegalStateException("grammar has no non-greedy decision");
+		}
+
+		private DFAState[] readEdges(DFAState[] states) throws IOException {
+			int length = in.readInt();
+			if (length < 0) {
+				return null;
+			}
+			DFAState[] edges = new DFAState[length];
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				int index = in.readInt();
+				int target = in.readInt();
+				edges[index] = target == EDGE_ERROR ? ATNSimulator.ERROR : states[target];
+			}
+			return edges;
+		}
+
+		private SemanticContext readSemanticContext() throws IOException {
+			int kind = in.readByte();
+			switch (kind) {
+				case SEM_NONE:
+					return SemanticContext.Empty.Instance;
+				case SEM_PREDICATE: {
+					int ruleIndex = in.readInt();
+					int predIndex = in.readInt();
+					return new SemanticContext.Predicate(ruleIndex, predIndex, in.readBoolean());
+				}
+				case SEM_PRECEDENCE:
+					return new SemanticContext.PrecedencePredicate(in.readInt());
+				case SEM_AND:
+				case SEM_OR: {
+					int n = in.readInt();
+					SemanticContext result = readSemanticContext();
+					for (int i = 1; i < n; i++) {
+						SemanticContext operand = readSemanticContext();
+						result = kind == SEM_AND ? SemanticContext.and(result, operand)
+												 : SemanticContext.or(result, operand);
+					}
+					return result;
+				}
+				default:
+					throw new IOException("bad semantic context kind " + kind);
+			}
+		}
+
+		private LexerActionExecutor readExecutor() throws IOException {
+			int n = in.readInt();
+			if (n < 0) {
+				return null;
+			}
+			LexerAction[] actions = new LexerAction[n];
+			for (int i = 0; i < n; i++) {
+				actions[i] = SQLiteLexer._ATN.lexerActions[in.readInt()];
+			}
+			return new LexerActionExecutor(actions);
+		}
+
+		private BitSet readBitSet() throws IOException {
+			int n = in.readInt();
+			if (n < 0) {
+				return null;
+			}
+			long[] words = new long[n];
+			for (int i = 0; i < n; i++) {
+				words[i] = in.readLong();
+			}
+			return BitSet.valueOf(words);
+		}
+	}
+
+	/** Gives access to the otherwise protected conflicting-alternatives set. */
+	private static final class ConfigSets extends ATNConfigSet {
+		ConfigSets(boolean fullCtx, BitSet conflictingAlts) {
+			super(fullCtx);
+			this.conflictingAlts = conflictingAlts;
+		}
+
+		private ConfigSets(ATNConfigSet copy) {
+			super(copy);
+		}
+
+		/**
+		 * Only valid for parser configurations, which are unique per state, alt
+		 * and predicate and therefore copy without merging.
+		 */
+		static BitSet conflictingAlts(ATNConfigSet configs) {
+			return new ConfigSets(configs).conflictingAlts;
+		}
+	}
+}
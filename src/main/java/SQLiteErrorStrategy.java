@@ -0,0 +1,202 @@
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.InputMismatchException;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.IntervalSet;
+
+/**
+ * Error recovery for {@link SQLiteParser} that gives up on a broken statement
+ * instead of repairing it token by token.
+ * <p>
+ * Each statement gets a budget of recovery work: every recovery, every token
+ * inserted and every token skipped costs one. Within the budget, recovery is that
+ * of {@link DefaultErrorStrategy}. Once it is spent, the rest of the statement is
+ * skipped up to the next statement boundary, and the rules still open unwind to
+ * {@code parse} without trying to repair or predict anything more. That caps the
+ * prediction work a half-typed buffer causes, and leaves each broken statement a
+ * partial {@link SQLiteParser.Sql_stmtContext} with the skipped tokens as error
+ * nodes, followed by the next statement parsed as if the broken one were not there.
+ * <p>
+ * A boundary is a {@code ;}, the end of input, or a keyword that starts a
+ * statement ({@code SELECT}, {@code INSERT}, {@code CREATE}, ...) at the start of
+ * a line, unless the token before it continues a statement, as {@code (},
+ * {@code AS} or {@code UNION} do; a statement with a missing semicolon is thus
+ * cut where the next one begins. A boundary is never deleted as an extraneous
+ * token, whatever the budget.
+ * <p>
+ * The first error also switches the parser to {@link PredictionMode#SLL}: in a
+ * statement that is already broken, full-context prediction only finds out more
+ * precisely how. {@link SQLiteParseEngine} switches back to LL at the next
+ * statement; a parser used on its own stays in SLL from the first error on.
+ * <p>
+ * Like any error strategy, an instance belongs to one parser.
+ */
+public class SQLiteErrorStrategy extends DefaultErrorStrategy {
+	/** The budget of {@link #SQLiteErrorStrategy()}. */
+	public static final int DEFAULT_BUDGET = 16;
+
+	private static final IntervalSet STATEMENT_KEYWORDS = new IntervalSet(
+		SQLiteParser.ALTER_, SQLiteParser.ANALYZE_, SQLiteParser.ATTACH_, SQLiteParser.COMMIT_,
+		SQLiteParser.CREATE_, SQLiteParser.DELETE_, SQLiteParser.DETACH_, SQLiteParser.DROP_,
+		SQLiteParser.EXPLAIN_, SQLiteParser.INSERT_, SQLiteParser.PRAGMA_, SQLiteParser.REINDEX_,
+		SQLiteParser.RELEASE_, SQLiteParser.ROLLBACK_, SQLiteParser.SAVEPOINT_, SQLiteParser.SELECT_,
+		SQLiteParser.UPDATE_, SQLiteParser.VACUUM_, SQLiteParser.WITH_);
+	/** Tokens after which a statement keyword belongs to the statement. */
+	private static final IntervalSet CONTINUATIONS = new IntervalSet(
+		SQLiteParser.OPEN_PAR, SQLiteParser.AS_, SQLiteParser.UNION_, SQLiteParser.ALL_,
+		SQLiteParser.INTERSECT_, SQLiteParser.EXCEPT_, SQLiteParser.BEGIN_);
+
+	private final int budget;
+	/** The statement the budget is being spent on; {@code null} outside of any. */
+	private ParserRuleContext statement;
+	private int spent;
+	/** The statement given up on last, and the boundary skipping stopped at. */
+	private ParserRuleContext abandonedStatement;
+	private int resumeIndex = -1;
+	private int abandoned;
+
+	public SQLiteErrorStrategy() {
+		this(DEFAULT_BUDGET);
+	}
+
+	/** A strategy allowing {@code budget} units of recovery per statement; 0 abandons at the first error. */
+	public SQLiteErrorStrategy(int budget) {
+		if (budget < 0) {
+			throw new IllegalArgumentException("budget " + budget);
+		}
+		this.budget = budget;
+	}
+
+	public int getBudget() {
+		return budget;
+	}
+
+	/** Statements given up on since the last {@link #reset}. */
+	public int getAbandonedStatements() {
+		return abandoned;
+	}
+
+	@Override
+	public void reset(Parser recognizer) {
+		super.reset(recognizer);
+		statement = null;
+		spent = 0;
+		abandonedStatement = null;
+		resumeIndex = -1;
+		abandoned = 0;
+	}
+
+	@Override
+	public void reportError(Parser recognizer, RecognitionException e) {
+		if (!inErrorRecoveryMode(recognizer)) {
+			recognizer.getInterpreter().setPredictionMode(PredictionMode.SLL);
+		}
+		super.reportError(recognizer, e);
+	}
+
+	@Override
+	public void recover(Parser recognizer, RecognitionException e) {
+		TokenStream input = recognizer.getInputStream();
+		if (isUnwinding(recognizer)) {
+			return;
+		}
+		if (charge(recognizer, 1)) {
+			int before = input.index();
+			super.recover(recognizer, e);
+			if (charge(recognizer, input.index() - before)) {
+				return;
+			}
+		}
+		abandon(recognizer);
+	}
+
+	@Override
+	public Token recoverInline(Parser recognizer) throws RecognitionException {
+		if (isUnwinding(recognizer) || !charge(recognizer, 1)) {
+			throw nextTokensContext == null ? new InputMismatchException(recognizer)
+											: new InputMismatchException(recognizer, nextTokensState, nextTokensContext);
+		}
+		return super.recoverInline(recognizer);
+	}
+
+	@Override
+	public void sync(Parser recognizer) throws RecognitionException {
+		if (inErrorRecoveryMode(recognizer)) {
+			return;
+		}
+		TokenStream input = recognizer.getInputStream();
+		int before = input.index();
+		try {
+			super.sync(recognizer);
+		}
+		finally {
+			if (input.index() > before) {
+				charge(recognizer, input.index() - before);
+			}
+		}
+	}
+
+	@Override
+	protected Token singleTokenDeletion(Parser recognizer) {
+		TokenStream input = recognizer.getInputStream();
+		if (isBoundary(input.LT(1), input.LT(-1))) {
+			return null;
+		}
+		return super.singleTokenDeletion(recognizer);
+	}
+
+	/**
+	 * Adds {@code cost} to the budget of the statement being parsed and returns
+	 * whether it still holds.
+	 */
+	private boolean charge(Parser recognizer, int cost) {
+		ParserRuleContext current = statementOf(recognizer);
+		if (current != statement) {
+			statement = current;
+			spent = 0;
+		}
+		spent += cost;
+		return spent <= budget;
+	}
+
+	/** Skips to the next boundary; the rules still open then fail without recovering. */
+	private void abandon(Parser recognizer) {
+		TokenStream input = recognizer.getInputStream();
+		while (!isBoundary(input.LT(1), input.LT(-1))) {
+			recognizer.consume();
+		}
+		abandonedStatement = statement;
+		resumeIndex = input.index();
+		abandoned++;
+	}
+
+	/**
+	 * Whether a rule of the abandoned statement is failing on its way out. A
+	 * statement that starts at the boundary and fails there recovers as usual,
+	 * which consumes a token if it fails there again.
+	 */
+	private boolean isUnwinding(Parser recognizer) {
+		return recognizer.getInputStream().index() == resumeIndex && statementOf(recognizer) == abandonedStatement;
+	}
+
+	private static ParserRuleContext statementOf(Parser recognizer) {
+		ParserRuleContext ctx = recognizer.getContext();
+		while (ctx != null && !(ctx instanceof SQLiteParser.Sql_stmtContext)) {
+			ctx = ctx.getParent();
+		}
+		return ctx;
+	}
+
+	private static boolean isBoundary(Token token, Token previous) {
+		int type = token.getType();
+		if (type == Token.EOF || type == SQLiteParser.SCOL) {
+			return true;
+		}
+		return STATEMENT_KEYWORDS.contains(type)
+			&& (previous == null || previous.getLine() < token.getLine() && !CONTINUATIONS.contains(previous.getType()));
+	}
+}
@@ -0,0 +1,254 @@
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Differential check of {@link SQLiteExprParser} against the generated
+ * {@link SQLiteParser}, both predicting in full-context ({@link PredictionMode#LL})
+ * mode.
+ * <p>
+ * Every input is parsed both as an {@code expr} and inside a {@code SELECT}
+ * statement, where it appears as a result column, in {@code WHERE} and in
+ * {@code ORDER BY}. On valid input the two parsers must emit the same parse
+ * listener events, rule invoking states and token ranges included, and build the
+ * same tree, and {@link SQLiteParseEngine#parse(CharSequence)} must build it too.
+ * On input the generated parser rejects, the others must reject it as well, but
+ * may recover elsewhere: {@link SQLiteExprParser} takes an operator whose operand
+ * is missing, where full-context prediction backs out before it. Inputs are a list
+ * of edge cases, a long operator chain, and random expressions over every operator
+ * drawn from a fixed seed.
+ * <pre>
+ * java SQLiteExprDiff [-fuzz N] [-seed S]
+ * </pre>
+ * Exits with status 1 if any input differs.
+ */
+public class SQLiteExprDiff {
+	private static final String[] EDGE_CASES = {
+		"a + b * c",
+		"a BETWEEN 1 AND 2 AND b",
+		"a BETWEEN b OR c AND d",
+		"a BETWEEN b AND c BETWEEN d AND e AND f",
+		"a LIKE b ESCAPE c",
+		"a LIKE b AND c LIKE d ESCAPE e",
+		"a LIKE b LIKE c ESCAPE d",
+		"a NOT IN ()",
+		"a IN ()",
+		"a IN s.f(1)",
+		"a NOT IN s.f(1, 2)",
+		"a IN t",
+		"a IN (1, 2) OR b",
+		"a IS NOT NULL",
+		"a IS NOT b",
+		"a IS NOT DISTINCT FROM b",
+		"NOT a = b",
+		"- a * b",
+		"a IN (SELECT 1) OR b",
+		"x = 1 AND y IS NOT NULL OR z LIKE 'a%'",
+		"a + ",
+		"a + + ",
+		"a = ",
+		"a NOT IN (1,",
+		"a BETWEEN 1",
+		"a COLLATE",
+		") a",
+		"a b",
+		"a NOT",
+	};
+
+	private static final String[] OPERANDS = {
+		"a", "1", "'s'", "t.c", "s.t.c", "f(x)", "(a)", "(1, 2)", "-a", "NOT a", "~b", "?", "NULL", "x'00'",
+		"CAST(a AS int)", "CASE a WHEN 1 THEN 2 END", "(SELECT 1)", "EXISTS (SELECT 1)", "count(*) OVER ()",
+	};
+
+	private static final String[] BINARY = {
+		"||", "*", "/", "%", "+", "-", "<<", ">>", "&", "|", "<", "<=", ">", ">=", "=", "==", "!=", "<>",
+		"IS", "IS NOT", "IS DISTINCT FROM", "IS NOT DISTINCT FROM", "IN", "LIKE", "GLOB", "MATCH", "REGEXP",
+		"NOT LIKE", "NOT GLOB", "AND", "OR",
+	};
+
+	private static final String[] IN_TARGETS = {"()", "(1, 2)", "(SELECT 1)", "t", "s.t", "f(1)", "s.f(1)", "s.f()", "(a)"};
+
+	public static void main(String[] args) {
+		int fuzz = 20000;
+		long seed = 0x5EED;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-fuzz": fuzz = Integer.parseInt(args[++i]); break;
+				case "-seed": seed = Long.parseLong(args[++i]); break;
+				default: throw new IllegalArgumentException("unknown argument " + args[i]);
+			}
+		}
+
+		List<String> inputs = new ArrayList<>(Arrays.asList(EDGE_CASES));
+		inputs.add(chain(300, new Random(seed)));
+		Random random = new Random(seed);
+		for (int i = 0; i < fuzz; i++) {
+			inputs.add(expression(random, 1 + random.nextInt(6)));
+		}
+
+		SQLiteParseEngine engine = new SQLiteParseEngine();
+		int failures = 0;
+		for (String input : inputs) {
+			failures += check(engine, input);
+		}
+		System.out.println(inputs.size() + " expressions, " + failures + " mismatches");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Returns 1 and prints the first difference if the parsers disagree on {@code expr},
+	 * otherwise 0. Where the generated parser finds the input invalid, the other one
+	 * only has to find it invalid too.
+	 */
+	static int check(SQLiteParseEngine engine, String expr) {
+		String sql = "SELECT " + expr + " FROM t WHERE " + expr + " ORDER BY " + expr;
+		boolean[] valid = new boolean[2];
+		String expected = trace(new SQLiteParser(tokens(expr)), SQLiteParser::expr, valid, 0);
+		String actual = trace(new SQLiteExprParser(tokens(expr)), SQLiteParser::expr, valid, 1);
+		if (valid[0] ? !expected.equals(actual) : valid[1]) {
+			return report(expr, "expr", expected, actual);
+		}
+
+		expected = trace(new SQLiteParser(tokens(sql)), SQLiteParser::parse, valid, 0);
+		actual = trace(new SQLiteExprParser(tokens(sql)), SQLiteParser::parse, valid, 1);
+		if (valid[0] ? !expected.equals(actual) : valid[1]) {
+			return report(expr, "statement", expected, actual);
+		}
+		SQLiteParseResult result = engine.parse(sql);
+		if (valid[0] == result.hasErrors()) {
+			return report(expr, "engine", expected, result.getErrors().toString());
+		}
+		if (valid[0]) {
+			SQLiteParser reference = new SQLiteParser(tokens(sql));
+			reference.removeErrorListeners();
+			reference.getInterpreter().setPredictionMode(PredictionMode.LL);
+			expected = reference.parse().toStringTree(reference);
+			actual = result.getTree().toStringTree(result.getParser());
+			if (!expected.equals(actual)) {
+				return report(expr, "engine", expected, actual);
+			}
+		}
+		return 0;
+	}
+
+	private static int report(String expr, String what, String expected, String actual) {
+		System.out.println(expr + ": " + what + " differs");
+		System.out.println("  generated " + expected);
+		System.out.println("  climbing  " + actual);
+		return 1;
+	}
+
+	private static CommonTokenStream tokens(String sql) {
+		SQLiteLexer lexer = new SQLiteLexer(CharStreams.fromString(sql));
+		lexer.removeErrorListeners();
+		return new CommonTokenStream(lexer);
+	}
+
+	/**
+	 * The listener events, syntax errors and tree of a full-context parse of
+	 * {@code rule}. Sets {@code valid[i]} to whether the parse consumed the whole
+	 * input without errors.
+	 */
+	private static String trace(SQLiteParser parser, Function<SQLiteParser, ? extends ParserRuleContext> rule,
+								boolean[] valid, int i)
+	{
+		StringBuilder sb = new StringBuilder();
+		int[] errors = new int[1];
+		parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+		parser.removeErrorListeners();
+		parser.addErrorListener(new BaseErrorListener() {
+			@Override
+			public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine,
+									String msg, RecognitionException e)
+			{
+				errors[0]++;
+				sb.append("error ").append(line).append(':').append(charPositionInLine).append(' ').append(msg).append('\n');
+			}
+		});
+		parser.addParseListener(new ParseTreeListener() {
+			@Override
+			public void visitTerminal(TerminalNode node) {
+				sb.append(node.getText()).append(' ');
+			}
+
+			@Override
+			public void visitErrorNode(ErrorNode node) {
+				sb.append('!').append(node.getText()).append(' ');
+			}
+
+			@Override
+			public void enterEveryRule(ParserRuleContext ctx) {
+				sb.append('<').append(ctx.getRuleIndex()).append('@').append(ctx.invokingState).append(' ');
+			}
+
+			@Override
+			public void exitEveryRule(ParserRuleContext ctx) {
+				sb.append('>').append(ctx.getRuleIndex()).append(' ').append(index(ctx.start)).append('-')
+					.append(index(ctx.stop)).append(' ');
+			}
+		});
+		ParserRuleContext tree = rule.apply(parser);
+		valid[i] = errors[0] == 0 && parser.getCurrentToken().getType() == Token.EOF;
+		sb.append("\nat ").append(parser.getCurrentToken().getTokenIndex()).append('\n');
+		return sb.append(tree.toStringTree(parser)).toString();
+	}
+
+	private static int index(Token token) {
+		return token == null ? -1 : token.getTokenIndex();
+	}
+
+	/** A random expression of {@code n} operators. */
+	static String expression(Random random, int n) {
+		StringBuilder sb = new StringBuilder(OPERANDS[random.nextInt(OPERANDS.length)]);
+		for (int i = 0; i < n; i++) {
+			switch (random.nextInt(12)) {
+				case 0:
+					sb.append(" COLLATE nocase");
+					break;
+				case 1:
+					sb.append(random.nextBoolean() ? " ISNULL" : random.nextBoolean() ? " NOTNULL" : " NOT NULL");
+					break;
+				case 2:
+					sb.append(random.nextBoolean() ? " NOT BETWEEN " : " BETWEEN ").append(expression(random, random.nextInt(3)))
+						.append(" AND ").append(OPERANDS[random.nextInt(OPERANDS.length)]);
+					break;
+				case 3:
+					sb.append(random.nextBoolean() ? " NOT IN " : " IN ").append(IN_TARGETS[random.nextInt(IN_TARGETS.length)]);
+					break;
+				case 4:
+					sb.append(" LIKE ").append(OPERANDS[random.nextInt(OPERANDS.length)])
+						.append(" ESCAPE ").append(OPERANDS[random.nextInt(OPERANDS.length)]);
+					break;
+				default:
+					sb.append(' ').append(BINARY[random.nextInt(BINARY.length)]).append(' ')
+						.append(OPERANDS[random.nextInt(OPERANDS.length)]);
+			}
+		}
+		return sb.toString();
+	}
+
+	/** A chain of {@code n} comparisons joined by {@code AND} and {@code OR}. */
+	private static String chain(int n, Random random) {
+		StringBuilder sb = new StringBuilder("c0 = 0");
+		for (int i = 1; i < n; i++) {
+			sb.append(random.nextInt(4) == 0 ? " OR " : " AND ").append('c').append(i).append(" = ").append(i);
+		}
+		return sb.toString();
+	}
+}
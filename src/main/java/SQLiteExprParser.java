@@ -0,0 +1,497 @@
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PrecedencePredicateTransition;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.atn.ProfilingATNSimulator;
+import org.antlr.v4.runtime.atn.RuleTransition;
+import org.antlr.v4.runtime.atn.StarBlockStartState;
+import org.antlr.v4.runtime.atn.StarLoopEntryState;
+import org.antlr.v4.runtime.atn.Transition;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.misc.IntervalSet;
+
+import java.util.Arrays;
+
+/**
+ * A {@link SQLiteParser} that chooses the operators of {@code expr} by precedence
+ * climbing instead of adaptive prediction.
+ * <p>
+ * The generated {@code expr} is left-recursive: after each operand, a loop
+ * decision tells whether another operator follows and a second decision which
+ * one. Both are guarded by {@code precpred} checks, and in full-context mode each
+ * may look ahead to the end of the expression, so a long {@code AND} chain costs
+ * quadratic time in the LL stage. This parser's {@link Simulator} answers the two
+ * decisions from a few tokens of lookahead and a fixed precedence table instead,
+ * and leaves every other decision to the ATN. As the generated rule still runs,
+ * the tree, invoking states and listener events are its own, and the operators
+ * are chosen wherever {@code expr} is called, in statements as in
+ * {@link SQLiteParser#expr()}.
+ * <p>
+ * On valid input the choices are those full-context prediction makes, including
+ * the grammar's quirks: prefix operators bind tighter than any binary operator,
+ * the upper bound of {@code BETWEEN} extends over a following {@code AND}, and
+ * {@code x IN t} is the binary {@code IN} of the equality alternative. On invalid
+ * input the errors may be reported elsewhere, as an operator is taken even when
+ * its operand is missing. {@link SQLiteExprDiff} compares the two on random
+ * expressions and statements.
+ * <p>
+ * The decisions, the precedences and the operator tokens of each alternative are
+ * read from {@link SQLiteParser#_ATN} when the class is loaded, which fails if the
+ * generated rule no longer has the shape the choices rely on.
+ */
+public class SQLiteExprParser extends SQLiteParser {
+	// Operator alternatives, numbered as in the generated rule.
+	private static final int CONCAT = 1;
+	private static final int MULTIPLY = 2;
+	private static final int ADD = 3;
+	private static final int BITWISE = 4;
+	private static final int RELATIONAL = 5;
+	private static final int EQUALITY = 6;
+	private static final int AND = 7;
+	private static final int OR = 8;
+	/** {@code IS NOT? expr}, shadowed by {@link #EQUALITY}. */
+	private static final int IS_EXPR = 9;
+	private static final int BETWEEN = 10;
+	private static final int COLLATE = 11;
+	private static final int LIKE = 12;
+	private static final int NULL_TEST = 13;
+	private static final int IN = 14;
+
+	/** The tokens each alternative starts with. */
+	private static final int[][] OPERATORS = {
+		{},
+		{PIPE2},
+		{STAR, DIV, MOD},
+		{PLUS, MINUS},
+		{LT2, GT2, AMP, PIPE},
+		{LT, LT_EQ, GT, GT_EQ},
+		{ASSIGN, EQ, NOT_EQ1, NOT_EQ2, IS_, IN_, LIKE_, GLOB_, MATCH_, REGEXP_},
+		{AND_},
+		{OR_},
+		{IS_},
+		{NOT_, BETWEEN_},
+		{COLLATE_},
+		{NOT_, LIKE_, GLOB_, MATCH_, REGEXP_},
+		{ISNULL_, NOTNULL_, NOT_},
+		{NOT_, IN_},
+	};
+
+	// Targets of NOT? IN.
+	private static final int IN_LIST = 0;
+	private static final int IN_TABLE = 1;
+	private static final int IN_FUNCTION = 2;
+
+	/** Scope flag of the pattern of a {@code LIKE} that may still take an {@code ESCAPE}. */
+	private static final int ESCAPE_PENDING = 1 << 16;
+
+	/** The decision whether an operator follows an operand. */
+	private static final int LOOP_DECISION;
+	/** The decision which operator alternative follows. */
+	private static final int OPERATOR_DECISION;
+	/** Precedence of each alternative, from its {@code precpred} check. */
+	private static final int[] PRECEDENCE;
+	/** The invoking state of the lower bound of {@code BETWEEN}. */
+	private static final int BETWEEN_LOWER;
+	/** The invoking state of the pattern of {@code LIKE}. */
+	private static final int LIKE_PATTERN;
+	/** The invoking states of operands that inherit the scope of their operator. */
+	private static final boolean[] INHERITS_SCOPE;
+
+	static {
+		ATN atn = _ATN;
+		StarLoopEntryState loop = null;
+		for (ATNState s : atn.states) {
+			if (s instanceof StarLoopEntryState && s.ruleIndex == RULE_expr && ((StarLoopEntryState)s).isPrecedenceDecision) {
+				if (loop != null) {
+					throw new IllegalStateException("expr has more than one operator loop");
+				}
+				loop = (StarLoopEntryState)s;
+			}
+		}
+		if (loop == null || !(loop.transition(0).target instanceof StarBlockStartState)) {
+			throw new IllegalStateException("expr has no operator loop");
+		}
+		StarBlockStartState block = (StarBlockStartState)loop.transition(0).target;
+		if (block.getNumberOfTransitions() != OPERATORS.length - 1) {
+			throw new IllegalStateException("expr has " + block.getNumberOfTransitions() + " operator alternatives, not "
+				+ (OPERATORS.length - 1));
+		}
+		LOOP_DECISION = loop.decision;
+		OPERATOR_DECISION = block.decision;
+
+		PRECEDENCE = new int[OPERATORS.length];
+		for (int alt = 1; alt < OPERATORS.length; alt++) {
+			Transition t = block.transition(alt - 1).target.transition(0);
+			if (!(t instanceof PrecedencePredicateTransition)) {
+				throw new IllegalStateException("expr operator alternative " + alt + " has no precedence");
+			}
+			PRECEDENCE[alt] = ((PrecedencePredicateTransition)t).precedence;
+			IntervalSet first = atn.nextTokens(t.target);
+			if (!first.equals(tokens(OPERATORS[alt]))) {
+				throw new IllegalStateException("expr operator alternative " + alt + " starts with "
+					+ first.toString(VOCABULARY) + ", not " + tokens(OPERATORS[alt]).toString(VOCABULARY));
+			}
+		}
+
+		INHERITS_SCOPE = new boolean[atn.states.size()];
+		int betweenLower = -1;
+		int likePattern = -1;
+		for (ATNState s : atn.states) {
+			if (s == null || s.ruleIndex != RULE_expr) {
+				continue;
+			}
+			for (Transition t : s.getTransitions()) {
+				if (isExprCall(t.target) && !t.isEpsilon() && t.label() != null) {
+					IntervalSet label = t.label();
+					if (label.equals(IntervalSet.of(BETWEEN_))) {
+						betweenLower = t.target.stateNumber;
+					}
+					else if (label.equals(tokens(LIKE_, GLOB_, MATCH_, REGEXP_))) {
+						likePattern = t.target.stateNumber;
+					}
+					else if (label.equals(IntervalSet.of(ESCAPE_))) {
+						INHERITS_SCOPE[t.target.stateNumber] = true;
+					}
+				}
+				if (t instanceof RuleTransition && ((RuleTransition)t).ruleIndex == RULE_expr && ((RuleTransition)t).precedence > 0) {
+					INHERITS_SCOPE[s.stateNumber] = true;
+				}
+			}
+		}
+		if (betweenLower < 0 || likePattern < 0) {
+			throw new IllegalStateException("expr has no BETWEEN lower bound or LIKE pattern operand");
+		}
+		BETWEEN_LOWER = betweenLower;
+		LIKE_PATTERN = likePattern;
+	}
+
+	public SQLiteExprParser(TokenStream input) {
+		super(input);
+		setInterpreter(getInterpreter());
+	}
+
+	/**
+	 * Installs {@code interpreter}, or a {@link Simulator} sharing its DFA and
+	 * prediction contexts if it is not one. A {@link ProfilingATNSimulator} is
+	 * installed as it is, so profiles show the generated decisions.
+	 */
+	@Override
+	public void setInterpreter(ParserATNSimulator interpreter) {
+		if (!(interpreter instanceof Simulator) && !(interpreter instanceof ProfilingATNSimulator)) {
+			Simulator simulator = new Simulator(this, interpreter.decisionToDFA, interpreter.getSharedContextCache());
+			simulator.setPredictionMode(interpreter.getPredictionMode());
+			interpreter = simulator;
+		}
+		super.setInterpreter(interpreter);
+	}
+
+	private static boolean isExprCall(ATNState s) {
+		return s.getNumberOfTransitions() == 1 && s.transition(0) instanceof RuleTransition
+			&& ((RuleTransition)s.transition(0)).ruleIndex == RULE_expr;
+	}
+
+	private static IntervalSet tokens(int... types) {
+		IntervalSet set = new IntervalSet();
+		for (int t : types) {
+			set.add(t);
+		}
+		return set;
+	}
+
+	/**
+	 * A prediction simulator that answers the operator decisions of {@code expr}
+	 * and simulates every other one.
+	 */
+	public static class Simulator extends ParserATNSimulator {
+		/** Invoking states that set the scope, innermost first; reused between decisions. */
+		private int[] scopeStates = new int[8];
+
+		public Simulator(SQLiteParser parser, DFA[] decisionToDFA, PredictionContextCache contexts) {
+			super(parser, _ATN, decisionToDFA, contexts);
+		}
+
+		@Override
+		public int adaptivePredict(TokenStream input, int decision, ParserRuleContext outerContext) {
+			if (decision == LOOP_DECISION) {
+				return alternative(input, outerContext) != 0 ? 1 : 2;
+			}
+			if (decision == OPERATOR_DECISION) {
+				int alt = alternative(input, outerContext);
+				if (alt != 0) {
+					return alt;
+				}
+			}
+			return super.adaptivePredict(input, decision, outerContext);
+		}
+
+		/**
+		 * The operator alternative that continues the expression of
+		 * {@code outerContext} at the current precedence, or 0 when the
+		 * expression ends here.
+		 */
+		private int alternative(TokenStream input, ParserRuleContext outerContext) {
+			int precedence = parser.getPrecedence();
+			int alt;
+			switch (input.LA(1)) {
+			case PIPE2:
+				alt = CONCAT;
+				break;
+			case STAR: case DIV: case MOD:
+				alt = MULTIPLY;
+				break;
+			case PLUS: case MINUS:
+				alt = ADD;
+				break;
+			case LT2: case GT2: case AMP: case PIPE:
+				alt = BITWISE;
+				break;
+			case LT: case LT_EQ: case GT: case GT_EQ:
+				alt = RELATIONAL;
+				break;
+			case ASSIGN: case EQ: case NOT_EQ1: case NOT_EQ2: case IS_:
+				// IS NOT x is IS applied to the prefix NOT x, which the grammar
+				// prefers to its own IS NOT alternative
+				alt = EQUALITY;
+				break;
+			case LIKE_: case GLOB_: case MATCH_: case REGEXP_:
+				// with an ESCAPE, only the LIKE alternative fits, unless an enclosing
+				// LIKE takes the ESCAPE; as it binds looser, a tighter level leaves
+				// the operator to an enclosing one
+				alt = escapeAhead(input) && (scope(outerContext) & ESCAPE_PENDING) == 0 ? LIKE : EQUALITY;
+				break;
+			case IN_:
+				// a list, a table or a function call after IN is also an operand, and the
+				// grammar prefers that; only () and schema.function(...) are not
+				alt = input.LA(2) == OPEN_PAR && input.LA(3) == CLOSE_PAR
+					|| input.LA(3) == DOT && inTarget(input, 2) == IN_FUNCTION ? IN : EQUALITY;
+				break;
+			case AND_:
+				// a BETWEEN lower bound extends over an AND as long as enough are left
+				// for the BETWEENs
+				alt = AND;
+				if (PRECEDENCE[AND] >= precedence) {
+					int ands = scope(outerContext) & ~ESCAPE_PENDING;
+					alt = ands == 0 || andsAhead(input, ands) ? AND : 0;
+				}
+				break;
+			case OR_:
+				alt = OR;
+				break;
+			case BETWEEN_:
+				alt = BETWEEN;
+				break;
+			case COLLATE_:
+				alt = COLLATE;
+				break;
+			case ISNULL_: case NOTNULL_:
+				alt = NULL_TEST;
+				break;
+			case NOT_:
+				switch (input.LA(2)) {
+				case LIKE_: case GLOB_: case MATCH_: case REGEXP_:
+					alt = LIKE;
+					break;
+				case BETWEEN_:
+					alt = BETWEEN;
+					break;
+				case IN_:
+					alt = IN;
+					break;
+				case NULL_:
+					alt = NULL_TEST;
+					break;
+				default:
+					alt = 0;
+				}
+				break;
+			default:
+				alt = 0;
+			}
+			return alt != 0 && PRECEDENCE[alt] >= precedence ? alt : 0;
+		}
+
+		/**
+		 * What the operators enclosing {@code ctx} still expect: the number of
+		 * {@code BETWEEN}s waiting for their {@code AND}, and {@link #ESCAPE_PENDING}.
+		 * Follows the operands up to the first one that starts afresh, such as a
+		 * parenthesized expression or a function argument.
+		 */
+		private int scope(ParserRuleContext outerContext) {
+			int n = 0;
+			for (RuleContext ctx = outerContext; ctx.parent instanceof ExprContext; ctx = ctx.parent) {
+				int state = ctx.invokingState;
+				if (state == BETWEEN_LOWER || state == LIKE_PATTERN) {
+					if (n == scopeStates.length) {
+						scopeStates = Arrays.copyOf(scopeStates, n * 2);
+					}
+					scopeStates[n++] = state;
+				}
+				else if (!INHERITS_SCOPE[state]) {
+					break;
+				}
+			}
+			int scope = 0;
+			while (n > 0) {
+				scope = scopeStates[--n] == BETWEEN_LOWER ? (scope & ~ESCAPE_PENDING) + 1 : scope | ESCAPE_PENDING;
+			}
+			return scope;
+		}
+
+		/** Classifies the target of an {@code IN} whose first token is at {@code i}. */
+		private static int inTarget(TokenStream input, int i) {
+			int la = input.LA(i);
+			if (la == OPEN_PAR) {
+				return IN_LIST;
+			}
+			if (isName(la)) {
+				if (input.LA(i + 1) == DOT && isName(input.LA(i + 2))) {
+					i += 2;
+				}
+				if (input.LA(i + 1) == OPEN_PAR) {
+					return IN_FUNCTION;
+				}
+			}
+			return IN_TABLE;
+		}
+
+		private static boolean isName(int type) {
+			return type == IDENTIFIER || type == STRING_LITERAL || SQLiteKeywords.isKeyword(type);
+		}
+
+		/**
+		 * Whether at least {@code n} more {@code AND}s follow the one at the current
+		 * token before the expression ends, not counting those of {@code BETWEEN}s
+		 * in between.
+		 */
+		private static boolean andsAhead(TokenStream input, int n) {
+			int depth = 0;
+			int betweens = 0;
+			for (int i = 2; ; i++) {
+				switch (input.LA(i)) {
+				case Token.EOF:
+				case SCOL:
+					return false;
+				case OPEN_PAR:
+				case CASE_:
+					depth++;
+					break;
+				case CLOSE_PAR:
+				case END_:
+					if (depth-- == 0) {
+						return false;
+					}
+					break;
+				case COMMA:
+				case WHEN_:
+				case THEN_:
+				case ELSE_:
+					if (depth == 0) {
+						return false;
+					}
+					break;
+				case BETWEEN_:
+					if (depth == 0) {
+						betweens++;
+					}
+					break;
+				case AND_:
+					if (depth == 0) {
+						if (betweens > 0) {
+							betweens--;
+						}
+						else if (--n == 0) {
+							return true;
+						}
+					}
+					break;
+				default:
+					if (depth == 0 && endsExpression(input, i)) {
+						return false;
+					}
+					break;
+				}
+			}
+		}
+
+		/**
+		 * Whether the token at {@code i} is a clause keyword that ends the expression,
+		 * rather than a keyword used as a name where an operand is expected.
+		 */
+		private static boolean endsExpression(TokenStream input, int i) {
+			switch (input.LA(i)) {
+			case FROM_: case WHERE_: case GROUP_: case HAVING_: case ORDER_: case LIMIT_: case OFFSET_:
+			case WINDOW_: case UNION_: case INTERSECT_: case EXCEPT_: case AS_: case ON_: case USING_:
+			case RETURNING_: case DO_: case ASC_: case DESC_: case NULLS_:
+				return !expectsOperand(input.LA(i - 1));
+			default:
+				return false;
+			}
+		}
+
+		/** Whether an operand follows a token of type {@code type}. */
+		private static boolean expectsOperand(int type) {
+			switch (type) {
+			case OPEN_PAR: case COMMA: case PIPE2: case STAR: case DIV: case MOD: case PLUS: case MINUS: case TILDE:
+			case LT2: case GT2: case AMP: case PIPE: case LT: case LT_EQ: case GT: case GT_EQ:
+			case ASSIGN: case EQ: case NOT_EQ1: case NOT_EQ2: case IS_: case NOT_: case IN_: case LIKE_: case GLOB_:
+			case MATCH_: case REGEXP_: case ESCAPE_: case BETWEEN_: case AND_: case OR_: case CASE_: case WHEN_:
+			case THEN_: case ELSE_: case DISTINCT_: case FROM_:
+				return true;
+			default:
+				return false;
+			}
+		}
+
+		/**
+		 * Whether an {@code ESCAPE} follows the pattern operand of the {@code LIKE} at
+		 * the current token, before the expression ends or another {@code LIKE} starts.
+		 */
+		private static boolean escapeAhead(TokenStream input) {
+			int depth = 0;
+			for (int i = 2; ; i++) {
+				switch (input.LA(i)) {
+				case Token.EOF:
+				case SCOL:
+					return false;
+				case OPEN_PAR:
+				case CASE_:
+					depth++;
+					break;
+				case CLOSE_PAR:
+				case END_:
+					if (depth-- == 0) {
+						return false;
+					}
+					break;
+				case COMMA:
+				case WHEN_:
+				case THEN_:
+				case ELSE_:
+				case LIKE_:
+				case GLOB_:
+				case MATCH_:
+				case REGEXP_:
+					if (depth == 0) {
+						return false;
+					}
+					break;
+				case ESCAPE_:
+					if (depth == 0) {
+						return true;
+					}
+					break;
+				default:
+					if (depth == 0 && endsExpression(input, i)) {
+						return false;
+					}
+					break;
+				}
+			}
+		}
+	}
+}
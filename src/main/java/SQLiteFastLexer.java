@@ -0,0 +1,521 @@
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * A hand-written scanner for the SQLite grammar that produces the same token
+ * types and channels as {@link SQLiteLexer}, without running the lexer ATN.
+ * <p>
+ * The first character of every token is classified through a 128-entry table;
+ * each class has a dedicated scanning loop that applies the longest-match rules
+ * of {@code SQLiteLexer.g4} directly, including its fallbacks for unterminated
+ * literals and comments (which lex as {@link SQLiteLexer#UNEXPECTED_CHAR},
+ * {@link SQLiteLexer#MINUS} or {@link SQLiteLexer#DIV}, like the generated lexer).
+ * Identifiers are scanned once and then classified by {@link SQLiteKeywords}.
+ * <p>
+ * Token indexes are UTF-16 offsets into the input; see {@link SQLiteCharSequenceStream}.
+ * Tokens are {@link SQLiteToken}s by default, which view the input instead of copying it.
+ * Use {@link SQLiteLexerDiff} to compare the output against {@link SQLiteLexer}.
+ */
+public class SQLiteFastLexer implements TokenSource {
+	// character classes of the first character of a token
+	private static final byte C_OTHER = 0;
+	private static final byte C_SPACE = 1;
+	private static final byte C_IDENT = 2;
+	private static final byte C_DIGIT = 3;
+	private static final byte C_X = 4;
+	private static final byte C_SINGLE = 5;
+	private static final byte C_STRING = 6;
+	private static final byte C_QUOTED_ID = 7;
+	private static final byte C_BRACKET = 8;
+	private static final byte C_DOT = 9;
+	private static final byte C_MINUS = 10;
+	private static final byte C_SLASH = 11;
+	private static final byte C_LT = 12;
+	private static final byte C_GT = 13;
+	private static final byte C_EQ = 14;
+	private static final byte C_BANG = 15;
+	private static final byte C_PIPE = 16;
+	private static final byte C_QUESTION = 17;
+	private static final byte C_BIND = 18;
+
+	private static final byte[] CLASS = new byte[128];
+	/** Token type of the {@link #C_SINGLE} characters. */
+	private static final int[] SINGLE_TYPE = new int[128];
+	/** ASCII characters allowed after the first character of an unquoted identifier. */
+	private static final boolean[] IDENT_PART = new boolean[128];
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			CLASS[c] = C_IDENT;
+			CLASS[Character.toUpperCase(c)] = C_IDENT;
+			IDENT_PART[c] = true;
+			IDENT_PART[Character.toUpperCase(c)] = true;
+		}
+		CLASS['_'] = C_IDENT;
+		IDENT_PART['_'] = true;
+		CLASS[0x7F] = C_IDENT;
+		IDENT_PART[0x7F] = true;
+		CLASS['x'] = C_X;
+		CLASS['X'] = C_X;
+		for (char c = '0'; c <= '9'; c++) {
+			CLASS[c] = C_DIGIT;
+			IDENT_PART[c] = true;
+		}
+		for (char c : new char[] {' ', '\u000B', '\t', '\r', '\n'}) {
+			CLASS[c] = C_SPACE;
+		}
+		single(';', SQLiteLexer.SCOL);
+		single('(', SQLiteLexer.OPEN_PAR);
+		single(')', SQLiteLexer.CLOSE_PAR);
+		single(',', SQLiteLexer.COMMA);
+		single('*', SQLiteLexer.STAR);
+		single('+', SQLiteLexer.PLUS);
+		single('~', SQLiteLexer.TILDE);
+		single('%', SQLiteLexer.MOD);
+		single('&', SQLiteLexer.AMP);
+		CLASS['\''] = C_STRING;
+		CLASS['"'] = C_QUOTED_ID;
+		CLASS['`'] = C_QUOTED_ID;
+		CLASS['['] = C_BRACKET;
+		CLASS['.'] = C_DOT;
+		CLASS['-'] = C_MINUS;
+		CLASS['/'] = C_SLASH;
+		CLASS['<'] = C_LT;
+		CLASS['>'] = C_GT;
+		CLASS['='] = C_EQ;
+		CLASS['!'] = C_BANG;
+		CLASS['|'] = C_PIPE;
+		CLASS['?'] = C_QUESTION;
+		CLASS[':'] = C_BIND;
+		CLASS['@'] = C_BIND;
+		CLASS['$'] = C_BIND;
+	}
+
+	private static void single(char c, int type) {
+		CLASS[c] = C_SINGLE;
+		SINGLE_TYPE[c] = type;
+	}
+
+	private final CharSequence input;
+	private final int length;
+	private final SQLiteCharSequenceStream stream;
+	private final Pair<TokenSource, CharStream> source;
+	private TokenFactory<?> factory = SQLiteTokenFactory.DEFAULT;
+
+	/** Start of the next token. */
+	private int pos;
+	private int line = 1;
+	private int charPositionInLine;
+
+	// the token most recently returned by scan()
+	private int tokenStart;
+	private int tokenLine;
+	private int tokenCharPositionInLine;
+
+	public SQLiteFastLexer(CharSequence input) {
+		this.input = input;
+		this.length = input.length();
+		this.stream = new SQLiteCharSequenceStream(input);
+		this.source = new Pair<TokenSource, CharStream>(this, stream);
+	}
+
+	@Override
+	public Token nextToken() {
+		int type = scan();
+		if (type == Token.EOF) {
+			return factory.create(source, Token.EOF, null, Token.DEFAULT_CHANNEL,
+								  pos, pos - 1, line, charPositionInLine);
+		}
+		return factory.create(source, type, null, channelOf(type),
+							  tokenStart, pos - 1, tokenLine, tokenCharPositionInLine);
+	}
+
+	/**
+	 * Scans the next token without creating a {@link Token} and returns its type,
+	 * or {@link Token#EOF}. The token spans {@link #getTokenStart()} (inclusive)
+	 * to {@link #getTokenEnd()} (exclusive).
+	 */
+	public int scan() {
+		tokenStart = pos;
+		tokenLine = line;
+		tokenCharPositionInLine = charPositionInLine;
+		if (pos >= length) {
+			return Token.EOF;
+		}
+		int type = match(pos);
+		advance(tokenEnd);
+		return type;
+	}
+
+	/** Start offset of the token most recently returned by {@link #scan()}. */
+	public int getTokenStart() {
+		return tokenStart;
+	}
+
+	/** End offset (exclusive) of the token most recently returned by {@link #scan()}. */
+	public int getTokenEnd() {
+		return pos;
+	}
+
+	public CharSequence getInput() {
+		return input;
+	}
+
+	public static int channelOf(int type) {
+		return type == SQLiteLexer.SPACES
+			|| type == SQLiteLexer.SINGLE_LINE_COMMENT
+			|| type == SQLiteLexer.MULTILINE_COMMENT ? Token.HIDDEN_CHANNEL : Token.DEFAULT_CHANNEL;
+	}
+
+	/** End of the token matched by {@link #match(int)}. */
+	private int tokenEnd;
+
+	/** Matches the token starting at {@code i}, setting {@link #tokenEnd}. */
+	private int match(int i) {
+		char c = input.charAt(i);
+		if (c >= 128) {
+			if (isSupplementary(i)) {
+				tokenEnd = i + 2;
+				return SQLiteLexer.UNEXPECTED_CHAR;
+			}
+			return identifier(i);
+		}
+		switch (CLASS[c]) {
+			case C_SPACE:
+				tokenEnd = i + 1;
+				return SQLiteLexer.SPACES;
+			case C_IDENT:
+				return identifier(i);
+			case C_X:
+				if (charAt(i + 1) == '\'') {
+					int end = quoted(i + 1, '\'', true);
+					if (end > 0) {
+						tokenEnd = end;
+						return SQLiteLexer.BLOB_LITERAL;
+					}
+				}
+				return identifier(i);
+			case C_DIGIT:
+				return number(i);
+			case C_SINGLE:
+				tokenEnd = i + 1;
+				return SINGLE_TYPE[c];
+			case C_STRING:
+				return quotedOrUnexpected(i, quoted(i, '\'', true), SQLiteLexer.STRING_LITERAL);
+			case C_QUOTED_ID:
+				return quotedOrUnexpected(i, quoted(i, c, true), SQLiteLexer.IDENTIFIER);
+			case C_BRACKET:
+				return quotedOrUnexpected(i, quoted(i, ']', false), SQLiteLexer.IDENTIFIER);
+			case C_DOT:
+				if (isDigit(charAt(i + 1))) {
+					return number(i);
+				}
+				tokenEnd = i + 1;
+				return SQLiteLexer.DOT;
+			case C_MINUS:
+				if (charAt(i + 1) == '-') {
+					int end = lineComment(i + 2);
+					if (end > 0) {
+						tokenEnd = end;
+						return SQLiteLexer.SINGLE_LINE_COMMENT;
+					}
+				}
+				tokenEnd = i + 1;
+				return SQLiteLexer.MINUS;
+			case C_SLASH:
+				if (charAt(i + 1) == '*') {
+					int end = indexOf("*/", i + 2);
+					if (end >= 0) {
+						tokenEnd = end + 2;
+						return SQLiteLexer.MULTILINE_COMMENT;
+					}
+				}
+				tokenEnd = i + 1;
+				return SQLiteLexer.DIV;
+			case C_LT: {
+				int next = charAt(i + 1);
+				tokenEnd = i + 2;
+				switch (next) {
+					case '<': return SQLiteLexer.LT2;
+					case '=': return SQLiteLexer.LT_EQ;
+					case '>': return SQLiteLexer.NOT_EQ2;
+					default:
+						tokenEnd = i + 1;
+						return SQLiteLexer.LT;
+				}
+			}
+			case C_GT: {
+				int next = charAt(i + 1);
+				tokenEnd = i + 2;
+				switch (next) {
+					case '>': return SQLiteLexer.GT2;
+					case '=': return SQLiteLexer.GT_EQ;
+					default:
+						tokenEnd = i + 1;
+						return SQLiteLexer.GT;
+				}
+			}
+			case C_EQ:
+				if (charAt(i + 1) == '=') {
+					tokenEnd = i + 2;
+					return SQLiteLexer.EQ;
+				}
+				tokenEnd = i + 1;
+				return SQLiteLexer.ASSIGN;
+			case C_BANG:
+				if (charAt(i + 1) == '=') {
+					tokenEnd = i + 2;
+					return SQLiteLexer.NOT_EQ1;
+				}
+				tokenEnd = i + 1;
+				return SQLiteLexer.UNEXPECTED_CHAR;
+			case C_PIPE:
+				if (charAt(i + 1) == '|') {
+					tokenEnd = i + 2;
+					return SQLiteLexer.PIPE2;
+				}
+				tokenEnd = i + 1;
+				return SQLiteLexer.PIPE;
+			case C_QUESTION: {
+				int end = i + 1;
+				while (isDigit(charAt(end))) {
+					end++;
+				}
+				tokenEnd = end;
+				return SQLiteLexer.BIND_PARAMETER;
+			}
+			case C_BIND: {
+				int end = anyIdentifier(i + 1);
+				if (end > 0) {
+					tokenEnd = end;
+					return SQLiteLexer.BIND_PARAMETER;
+				}
+				tokenEnd = i + 1;
+				return SQLiteLexer.UNEXPECTED_CHAR;
+			}
+			default:
+				tokenEnd = i + 1;
+				return SQLiteLexer.UNEXPECTED_CHAR;
+		}
+	}
+
+	private int identifier(int i) {
+		int end = unquotedIdentifierEnd(i);
+		tokenEnd = end;
+		return keywordOrIdentifier(i, end);
+	}
+
+	/**
+	 * Returns the keyword token type of {@code input[start, end)}, or
+	 * {@link SQLiteLexer#IDENTIFIER} if it is not a keyword.
+	 */
+	protected int keywordOrIdentifier(int start, int end) {
+		return SQLiteKeywords.lookup(input, start, end);
+	}
+
+	/** End of the unquoted identifier starting at {@code i}, whose first character is known to be valid. */
+	private int unquotedIdentifierEnd(int i) {
+		int end = i + 1;
+		while (end < length) {
+			char c = input.charAt(end);
+			if (c < 128) {
+				if (!IDENT_PART[c]) {
+					break;
+				}
+			}
+			else if (isSupplementary(end)) {
+				break;
+			}
+			end++;
+		}
+		return end;
+	}
+
+	/** End of any IDENTIFIER alternative starting at {@code i}, or -1; used for bind parameters. */
+	private int anyIdentifier(int i) {
+		if (i >= length) {
+			return -1;
+		}
+		char c = input.charAt(i);
+		if (c >= 128) {
+			return isSupplementary(i) ? -1 : unquotedIdentifierEnd(i);
+		}
+		switch (c) {
+			case '"':
+			case '`':
+				return quoted(i, c, true);
+			case '[':
+				return quoted(i, ']', false);
+			default:
+				return CLASS[c] == C_IDENT || CLASS[c] == C_X ? unquotedIdentifierEnd(i) : -1;
+		}
+	}
+
+	/**
+	 * End of the literal opened at {@code i} and closed by {@code close}, or -1 if
+	 * it is not terminated. With {@code doubling}, a doubled closing character is
+	 * part of the literal unless the literal is never closed after it, in which
+	 * case the first character of the pair closes it (the longest match).
+	 */
+	private int quoted(int i, char close, boolean doubling) {
+		int accepted = -1;
+		int j = i + 1;
+		while (j < length) {
+			if (input.charAt(j) == close) {
+				if (doubling && j + 1 < length && input.charAt(j + 1) == close) {
+					accepted = j + 1;
+					j += 2;
+					continue;
+				}
+				return j + 1;
+			}
+			j++;
+		}
+		return accepted;
+	}
+
+	private int quotedOrUnexpected(int i, int end, int type) {
+		if (end > 0) {
+			tokenEnd = end;
+			return type;
+		}
+		tokenEnd = i + 1;
+		return SQLiteLexer.UNEXPECTED_CHAR;
+	}
+
+	/**
+	 * NUMERIC_LITERAL starting with a digit or with '.' followed by a digit:
+	 * {@code DIGIT+ ('.' DIGIT*)? | '.' DIGIT+}, an optional exponent, or
+	 * {@code 0x HEX_DIGIT+}.
+	 */
+	private int number(int i) {
+		if (input.charAt(i) == '0' && (charAt(i + 1) | 0x20) == 'x' && isHexDigit(charAt(i + 2))) {
+			int end = i + 3;
+			while (isHexDigit(charAt(end))) {
+				end++;
+			}
+			tokenEnd = end;
+			return SQLiteLexer.NUMERIC_LITERAL;
+		}
+		int end = i;
+		while (isDigit(charAt(end))) {
+			end++;
+		}
+		if (charAt(end) == '.') {
+			end++;
+			while (isDigit(charAt(end))) {
+				end++;
+			}
+		}
+		if ((charAt(end) | 0x20) == 'e') {
+			int digits = end + 1;
+			int sign = charAt(digits);
+			if (sign == '+' || sign == '-') {
+				digits++;
+			}
+			if (isDigit(charAt(digits))) {
+				end = digits + 1;
+				while (isDigit(charAt(end))) {
+					end++;
+				}
+			}
+		}
+		tokenEnd = end;
+		return SQLiteLexer.NUMERIC_LITERAL;
+	}
+
+	/**
+	 * End of a {@code --} comment whose body starts at {@code i}, or -1 if it ends
+	 * in a '\r' not followed by '\n', which the grammar does not accept.
+	 */
+	private int lineComment(int i) {
+		int j = i;
+		while (j < length) {
+			char c = input.charAt(j);
+			if (c == '\n') {
+				return j + 1;
+			}
+			if (c == '\r') {
+				return charAt(j + 1) == '\n' ? j + 2 : -1;
+			}
+			j++;
+		}
+		return length;
+	}
+
+	private int indexOf(String s, int from) {
+		char first = s.charAt(0);
+		char second = s.charAt(1);
+		for (int j = from; j + 1 < length; j++) {
+			if (input.charAt(j) == first && input.charAt(j + 1) == second) {
+				return j;
+			}
+		}
+		return -1;
+	}
+
+	/** Moves to {@code end}, keeping line and column in step with {@link SQLiteLexer}. */
+	private void advance(int end) {
+		for (int i = pos; i < end; i++) {
+			char c = input.charAt(i);
+			if (c == '\n') {
+				line++;
+				charPositionInLine = 0;
+			}
+			else if (!Character.isLowSurrogate(c) || i == 0 || !Character.isHighSurrogate(input.charAt(i - 1))) {
+				charPositionInLine++;
+			}
+		}
+		pos = end;
+	}
+
+	private int charAt(int i) {
+		return i < length ? input.charAt(i) : -1;
+	}
+
+	private boolean isSupplementary(int i) {
+		return Character.isHighSurrogate(input.charAt(i)) && i + 1 < length
+			&& Character.isLowSurrogate(input.charAt(i + 1));
+	}
+
+	private static boolean isDigit(int c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isHexDigit(int c) {
+		return c >= '0' && c <= '9' || (c | 0x20) >= 'a' && (c | 0x20) <= 'f';
+	}
+
+	@Override
+	public int getLine() {
+		return line;
+	}
+
+	@Override
+	public int getCharPositionInLine() {
+		return charPositionInLine;
+	}
+
+	@Override
+	public CharStream getInputStream() {
+		return stream;
+	}
+
+	@Override
+	public String getSourceName() {
+		return stream.getSourceName();
+	}
+
+	@Override
+	public void setTokenFactory(TokenFactory<?> factory) {
+		this.factory = factory;
+	}
+
+	@Override
+	public TokenFactory<?> getTokenFactory() {
+		return factory;
+	}
+}
@@ -0,0 +1,64 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Regression check of {@link SQLiteFingerprinter}: each case gives a query and
+ * the normalized text it must reduce to. The fingerprint must also be the
+ * FNV-1a hash of that text, computed here independently, so the hash-only path
+ * and the text agree.
+ * <pre>
+ * java SQLiteFingerprintCheck
+ * </pre>
+ * Exits with status 1 if any case fails.
+ */
+public class SQLiteFingerprintCheck {
+	/** SQL, then its normalized text. */
+	private static final String[][] CASES = {
+		{"select * from t where a = -1 and b in (1, 2, 3) -- test", "SELECT * FROM t WHERE a = ? AND b IN (...)"},
+		{"SELECT -1, +2.5, (-3)", "SELECT ?, ?, (?)"},
+		{"select a - -1 from t", "SELECT a - ? FROM t"},
+		{"SELECT 1 - 1", "SELECT ? - ?"},
+		{"select a in (-1, +2) from t", "SELECT a IN (...) FROM t"},
+		// a keyword naming a column ends an operand, so the + or - after it is an operator
+		{"SELECT key - 1 FROM t", "SELECT KEY - ? FROM t"},
+		{"SELECT key + 1 FROM t", "SELECT KEY + ? FROM t"},
+		{"SELECT x.action - 1 FROM t x", "SELECT x.ACTION - ? FROM t x"},
+		{"select row-1, no +2 from t", "SELECT ROW - ?, NO + ? FROM t"},
+		{"select f(x) - 1, count(*) -1, 'a' -1, NULL - 1 from t", "SELECT f(x) - ?, count(*) - ?, ? - ?, NULL - ? FROM t"},
+		{"SELECT CASE WHEN a THEN -1 ELSE -2 END - 1 FROM t", "SELECT CASE WHEN a THEN ? ELSE ? END - ? FROM t"},
+		{"update t set a = -1, b = b - 2 where c between -1 and +1 limit -1 offset -2",
+			"UPDATE t SET a = ?, b = b - ? WHERE c BETWEEN ? AND ? LIMIT ? OFFSET ?"},
+		{"select a from t where b not between -1 and 2 and c is -1", "SELECT a FROM t WHERE b NOT BETWEEN ? AND ? AND c IS ?"},
+		{"CREATE TABLE t (a INTEGER DEFAULT -1)", "CREATE TABLE t(a INTEGER DEFAULT ?)"},
+		{"PRAGMA cache_size = -2000", "PRAGMA cache_size = ?"},
+		{"SELECT * FROM 'users' WHERE 'name' = 'bob'", "SELECT * FROM 'users' WHERE ? = ?"},
+		{"select replace(a, 'x', 'y'), a like (b), key like (c) from t;;", "SELECT REPLACE(a, ?, ?), a LIKE (b), KEY LIKE (c) FROM t"},
+	};
+
+	public static void main(String[] args) {
+		SQLiteFingerprinter fingerprinter = new SQLiteFingerprinter();
+		int failures = 0;
+		for (String[] c : CASES) {
+			String normalized = fingerprinter.normalize(c[0]);
+			long fingerprint = fingerprinter.fingerprint(c[0]);
+			if (!normalized.equals(c[1]) || fingerprint != fnv(c[1])) {
+				System.out.println(c[0]);
+				System.out.println("  expected   " + c[1] + "  " + Long.toHexString(fnv(c[1])));
+				System.out.println("  normalized " + normalized + "  " + Long.toHexString(fingerprint));
+				failures++;
+			}
+		}
+
+		System.out.println(CASES.length + " fingerprint cases, " + failures + " failures");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static long fnv(String text) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+			hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+		}
+		return hash;
+	}
+}
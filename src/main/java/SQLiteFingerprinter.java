@@ -0,0 +1,430 @@
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Reduces a query to its shape and a 64-bit fingerprint of that shape, for
+ * grouping query logs.
+ * <p>
+ * The query is scanned with {@link SQLiteFastLexer} and rewritten token by
+ * token: comments and whitespace go, tokens are separated by single spaces
+ * (none after {@code (} and {@code .}, before {@code )}, {@code ,}, {@code .}
+ * and {@code ;}, or between a function name and {@code (}), keywords and operators are written in their canonical upper
+ * case spelling, numeric, string and blob literals and bind parameters become
+ * {@code ?}, a sign in front of a numeric literal is dropped, {@code IN} lists of
+ * such values become {@code IN (...)} and trailing semicolons are removed.
+ * Identifiers are kept as written. So
+ * <pre>
+ * select * from t where a = -1 and b in (1, 2, 3) -- test
+ * </pre>
+ * becomes {@code SELECT * FROM t WHERE a = ? AND b IN (...)}.
+ * <p>
+ * The fingerprint is the 64-bit FNV-1a hash of the UTF-8 bytes of that text, so
+ * it is stable across runs and can be recomputed elsewhere. Computing it does not
+ * allocate per token: tokens are kept as offsets in arrays that are reused from
+ * one query to the next, and the text is only built if asked for.
+ * <p>
+ * SQLite also accepts a string literal where a name is expected
+ * ({@code SELECT * FROM 'users'}). When a string literal follows or precedes a
+ * token that suggests a name, the query is parsed and the strings the tree has
+ * as names (of a table, column, alias and so on) are kept; every other string
+ * is a value, as in queries that are never parsed. A {@code PRAGMA} value is a
+ * value even where the grammar reads it as a name.
+ * <p>
+ * Keywords that also name functions, such as {@code replace}, {@code like} or
+ * {@code row_number}, are written as calls, without a space before {@code (},
+ * where they start an operand; {@code a LIKE (b)} keeps its space.
+ * <p>
+ * Not thread-safe; use one instance per thread.
+ */
+public class SQLiteFingerprinter {
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	/** Canonical text of the token types that have one, such as keywords and operators. */
+	private static final String[] FIXED = new String[SQLiteLexer.VOCABULARY.getMaxTokenType() + 1];
+	/** Keywords that are also the names of built-in functions. */
+	private static final boolean[] FUNCTION_KEYWORDS = new boolean[FIXED.length];
+
+	static {
+		for (int type = 1; type < FIXED.length; type++) {
+			String literal = SQLiteLexer.VOCABULARY.getLiteralName(type);
+			if (literal != null && literal.length() > 2) {
+				FIXED[type] = literal.substring(1, literal.length() - 1);
+			}
+		}
+		for (int type : new int[] {
+			SQLiteLexer.REPLACE_, SQLiteLexer.LIKE_, SQLiteLexer.GLOB_, SQLiteLexer.MATCH_, SQLiteLexer.REGEXP_,
+			SQLiteLexer.CUME_DIST_, SQLiteLexer.DENSE_RANK_, SQLiteLexer.FIRST_VALUE_, SQLiteLexer.LAG_,
+			SQLiteLexer.LAST_VALUE_, SQLiteLexer.LEAD_, SQLiteLexer.NTH_VALUE_, SQLiteLexer.NTILE_,
+			SQLiteLexer.PERCENT_RANK_, SQLiteLexer.RANK_, SQLiteLexer.ROW_NUMBER_ })
+		{
+			FUNCTION_KEYWORDS[type] = true;
+		}
+	}
+
+	private final SQLiteParseEngine engine;
+
+	// the significant tokens of the current query
+	private int[] types = new int[64];
+	private int[] starts = new int[64];
+	private int[] ends = new int[64];
+	private int count;
+	private CharSequence sql;
+	/** Start offsets of the string literals that are names, when the tree had to decide. */
+	private BitSet names;
+
+	// output state
+	private StringBuilder out;
+	private long hash;
+	private int previous;
+	/** The type emitted before {@link #previous}. */
+	private int beforePrevious;
+	private char highSurrogate;
+
+	public SQLiteFingerprinter() {
+		this(new SQLiteParseEngine());
+	}
+
+	/** A fingerprinter parsing ambiguous queries with {@code engine}. */
+	public SQLiteFingerprinter(SQLiteParseEngine engine) {
+		this.engine = engine;
+	}
+
+	/** The fingerprint of {@code sql}. */
+	public long fingerprint(CharSequence sql) {
+		return fingerprint(sql, null);
+	}
+
+	/** The normalized text of {@code sql}. */
+	public String normalize(CharSequence sql) {
+		StringBuilder sb = new StringBuilder(sql.length());
+		fingerprint(sql, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Appends the normalized text of {@code sql} to {@code normalized}, unless that
+	 * is {@code null}, and returns the fingerprint.
+	 */
+	public long fingerprint(CharSequence sql, StringBuilder normalized) {
+		this.sql = sql;
+		this.out = normalized;
+		hash = FNV_OFFSET;
+		previous = Token.INVALID_TYPE;
+		beforePrevious = Token.INVALID_TYPE;
+		highSurrogate = 0;
+		names = null;
+		try {
+			lex();
+			if (needsTree()) {
+				names = namesFromTree();
+			}
+			int last = count;
+			while (last > 0 && types[last - 1] == SQLiteLexer.SCOL) {
+				last--;
+			}
+			for (int i = 0; i < last; i++) {
+				int type = types[i];
+				if (type == SQLiteLexer.IN_ && i + 1 < last && types[i + 1] == SQLiteLexer.OPEN_PAR) {
+					int close = valueListEnd(i + 2, last);
+					if (close >= 0) {
+						emit(type, FIXED[type]);
+						emit(SQLiteLexer.OPEN_PAR, "(");
+						emit(SQLiteLexer.IDENTIFIER, "...");
+						emit(SQLiteLexer.CLOSE_PAR, ")");
+						i = close;
+						continue;
+					}
+				}
+				if ((type == SQLiteLexer.MINUS || type == SQLiteLexer.PLUS) && i + 1 < last
+					&& types[i + 1] == SQLiteLexer.NUMERIC_LITERAL && startsOperand(previous)) {
+					continue; // the sign of a literal
+				}
+				if (isValue(i)) {
+					emit(SQLiteLexer.BIND_PARAMETER, "?");
+				}
+				else if (FIXED[type] != null) {
+					emit(type, FIXED[type]);
+				}
+				else {
+					emit(type, starts[i], ends[i]);
+				}
+			}
+			return hash;
+		}
+		finally {
+			this.sql = null;
+			this.out = null;
+		}
+	}
+
+	private void lex() {
+		SQLiteFastLexer lexer = new SQLiteFastLexer(sql);
+		count = 0;
+		for (int type = lexer.scan(); type != Token.EOF; type = lexer.scan()) {
+			if (SQLiteFastLexer.channelOf(type) != Token.DEFAULT_CHANNEL) {
+				continue;
+			}
+			if (count == types.length) {
+				types = Arrays.copyOf(types, count * 2);
+				starts = Arrays.copyOf(starts, count * 2);
+				ends = Arrays.copyOf(ends, count * 2);
+			}
+			types[count] = type;
+			starts[count] = lexer.getTokenStart();
+			ends[count++] = lexer.getTokenEnd();
+		}
+	}
+
+	/** Whether token {@code i} is a value that becomes {@code ?}. */
+	private boolean isValue(int i) {
+		switch (types[i]) {
+			case SQLiteLexer.NUMERIC_LITERAL:
+			case SQLiteLexer.BLOB_LITERAL:
+			case SQLiteLexer.BIND_PARAMETER:
+				return true;
+			case SQLiteLexer.STRING_LITERAL:
+				return names == null || !names.get(starts[i]);
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * If tokens from {@code i} are values separated by commas up to a closing
+	 * parenthesis, the index of that parenthesis; otherwise -1.
+	 */
+	private int valueListEnd(int i, int last) {
+		while (i < last) {
+			if ((types[i] == SQLiteLexer.MINUS || types[i] == SQLiteLexer.PLUS)
+				&& i + 1 < last && types[i + 1] == SQLiteLexer.NUMERIC_LITERAL) {
+				i++;
+			}
+			if (!isValue(i) && types[i] != SQLiteLexer.NULL_) {
+				return -1;
+			}
+			if (++i == last) {
+				return -1;
+			}
+			if (types[i] == SQLiteLexer.CLOSE_PAR) {
+				return i;
+			}
+			if (types[i++] != SQLiteLexer.COMMA) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Whether a {@code +} or {@code -} after a token of this type is the sign of
+	 * an operand: at the start, after an opening parenthesis, a comma or an
+	 * operator, and after a keyword that an expression follows. After anything
+	 * else, a name included, it is a binary operator; keywords can name columns.
+	 */
+	private static boolean startsOperand(int type) {
+		switch (type) {
+			case Token.INVALID_TYPE:
+			case SQLiteLexer.OPEN_PAR:
+			case SQLiteLexer.COMMA:
+			case SQLiteLexer.SCOL:
+			case SQLiteLexer.ASSIGN:
+			case SQLiteLexer.STAR:
+			case SQLiteLexer.PLUS:
+			case SQLiteLexer.MINUS:
+			case SQLiteLexer.TILDE:
+			case SQLiteLexer.PIPE2:
+			case SQLiteLexer.DIV:
+			case SQLiteLexer.MOD:
+			case SQLiteLexer.LT2:
+			case SQLiteLexer.GT2:
+			case SQLiteLexer.AMP:
+			case SQLiteLexer.PIPE:
+			case SQLiteLexer.LT:
+			case SQLiteLexer.LT_EQ:
+			case SQLiteLexer.GT:
+			case SQLiteLexer.GT_EQ:
+			case SQLiteLexer.EQ:
+			case SQLiteLexer.NOT_EQ1:
+			case SQLiteLexer.NOT_EQ2:
+			case SQLiteLexer.SELECT_:
+			case SQLiteLexer.DISTINCT_:
+			case SQLiteLexer.ALL_:
+			case SQLiteLexer.WHERE_:
+			case SQLiteLexer.HAVING_:
+			case SQLiteLexer.ON_:
+			case SQLiteLexer.BY_:
+			case SQLiteLexer.AND_:
+			case SQLiteLexer.OR_:
+			case SQLiteLexer.NOT_:
+			case SQLiteLexer.IS_:
+			case SQLiteLexer.IN_:
+			case SQLiteLexer.LIKE_:
+			case SQLiteLexer.GLOB_:
+			case SQLiteLexer.MATCH_:
+			case SQLiteLexer.REGEXP_:
+			case SQLiteLexer.ESCAPE_:
+			case SQLiteLexer.BETWEEN_:
+			case SQLiteLexer.CASE_:
+			case SQLiteLexer.WHEN_:
+			case SQLiteLexer.THEN_:
+			case SQLiteLexer.ELSE_:
+			case SQLiteLexer.LIMIT_:
+			case SQLiteLexer.OFFSET_:
+			case SQLiteLexer.SET_:
+			case SQLiteLexer.DEFAULT_:
+			case SQLiteLexer.RETURNING_:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/** Whether a string literal sits where a name could be. */
+	private boolean needsTree() {
+		for (int i = 0; i < count; i++) {
+			if (types[i] != SQLiteLexer.STRING_LITERAL) {
+				continue;
+			}
+			if (i + 1 < count && (types[i + 1] == SQLiteLexer.DOT || types[i + 1] == SQLiteLexer.OPEN_PAR)) {
+				return true;
+			}
+			if (i > 0) {
+				switch (types[i - 1]) {
+					case SQLiteLexer.FROM_:
+					case SQLiteLexer.JOIN_:
+					case SQLiteLexer.INTO_:
+					case SQLiteLexer.UPDATE_:
+					case SQLiteLexer.TABLE_:
+					case SQLiteLexer.VIEW_:
+					case SQLiteLexer.INDEX_:
+					case SQLiteLexer.TRIGGER_:
+					case SQLiteLexer.EXISTS_:
+					case SQLiteLexer.ON_:
+					case SQLiteLexer.AS_:
+					case SQLiteLexer.DOT:
+						return true;
+					default:
+						break;
+				}
+			}
+		}
+		return false;
+	}
+
+	/** Start offsets of the string literals that the parser took for names. */
+	private BitSet namesFromTree() {
+		BitSet names = new BitSet();
+		collectNames(engine.parse(new SQLiteCharSequenceStream(sql)).getTree(), names);
+		return names;
+	}
+
+	private static void collectNames(ParseTree tree, BitSet names) {
+		if (tree instanceof TerminalNode) {
+			Token token = ((TerminalNode)tree).getSymbol();
+			if (token.getType() == SQLiteLexer.STRING_LITERAL && isName(tree.getParent())) {
+				names.set(token.getStartIndex());
+			}
+			return;
+		}
+		if (tree instanceof SQLiteParser.Pragma_valueContext) {
+			return; // PRAGMA x = 'v' reads 'v' as a name, but it is the value set
+		}
+		for (int i = 0; i < tree.getChildCount(); i++) {
+			collectNames(tree.getChild(i), names);
+		}
+	}
+
+	private static boolean isName(ParseTree parent) {
+		return parent instanceof SQLiteParser.Any_nameContext || parent instanceof SQLiteParser.Column_aliasContext;
+	}
+
+	private void emit(int type, String text) {
+		space(type);
+		for (int i = 0; i < text.length(); i++) {
+			put(text.charAt(i));
+		}
+		if (out != null) {
+			out.append(text);
+		}
+		beforePrevious = previous;
+		previous = type;
+	}
+
+	private void emit(int type, int start, int end) {
+		space(type);
+		for (int i = start; i < end; i++) {
+			put(sql.charAt(i));
+		}
+		if (out != null) {
+			out.append(sql, start, end);
+		}
+		beforePrevious = previous;
+		previous = type;
+	}
+
+	private void space(int type) {
+		if (previous == Token.INVALID_TYPE || previous == SQLiteLexer.OPEN_PAR || previous == SQLiteLexer.DOT) {
+			return;
+		}
+		if (type == SQLiteLexer.OPEN_PAR && isCall()) {
+			return;
+		}
+		switch (type) {
+			case SQLiteLexer.CLOSE_PAR:
+			case SQLiteLexer.COMMA:
+			case SQLiteLexer.DOT:
+			case SQLiteLexer.SCOL:
+				return;
+			default:
+				put(' ');
+				if (out != null) {
+					out.append(' ');
+				}
+		}
+	}
+
+	/** Whether the token emitted last names a function that a {@code (} calls. */
+	private boolean isCall() {
+		if (previous == SQLiteLexer.IDENTIFIER) {
+			return true;
+		}
+		// replace(a, b, c) starts an operand; a LIKE (b) and a NOT LIKE (b) follow one
+		return previous < FUNCTION_KEYWORDS.length && previous > 0 && FUNCTION_KEYWORDS[previous]
+			&& startsOperand(beforePrevious) && beforePrevious != SQLiteLexer.NOT_;
+	}
+
+	/** Feeds one UTF-16 unit to the hash as UTF-8. */
+	private void put(char c) {
+		if (c < 0x80) {
+			hashByte(c);
+		}
+		else if (c < 0x800) {
+			hashByte(0xC0 | c >> 6);
+			hashByte(0x80 | c & 0x3F);
+		}
+		else if (Character.isHighSurrogate(c)) {
+			highSurrogate = c;
+		}
+		else if (Character.isLowSurrogate(c) && highSurrogate != 0) {
+			int cp = Character.toCodePoint(highSurrogate, c);
+			highSurrogate = 0;
+			hashByte(0xF0 | cp >> 18);
+			hashByte(0x80 | cp >> 12 & 0x3F);
+			hashByte(0x80 | cp >> 6 & 0x3F);
+			hashByte(0x80 | cp & 0x3F);
+		}
+		else {
+			hashByte(0xE0 | c >> 12);
+			hashByte(0x80 | c >> 6 & 0x3F);
+			hashByte(0x80 | c & 0x3F);
+		}
+	}
+
+	private void hashByte(int b) {
+		hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+	}
+}
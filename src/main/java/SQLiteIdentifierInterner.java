@@ -0,0 +1,112 @@
+import java.util.Arrays;
+
+/**
+ * Canonical {@link String} instances for identifier text, looked up by the
+ * characters of a span so that a hit allocates nothing.
+ * <p>
+ * The table is open-addressed and stops growing at its capacity; beyond that,
+ * unknown identifiers are returned as fresh strings without being added. It is
+ * not thread-safe: use one interner per lexer, or per thread.
+ */
+public class SQLiteIdentifierInterner {
+	/** Capacity used by the no-argument constructor. */
+	public static final int DEFAULT_CAPACITY = 1 << 14;
+
+	private final int capacity;
+	private String[] strings;
+	private int[] hashes;
+	private int size;
+
+	public SQLiteIdentifierInterner() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/** An interner holding at most {@code capacity} identifiers. */
+	public SQLiteIdentifierInterner(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		int slots = Integer.highestOneBit(Math.min(capacity, 256) * 2 - 1) << 1;
+		strings = new String[slots];
+		hashes = new int[slots];
+	}
+
+	/** Returns the canonical string with the characters of {@code text[start, end)}. */
+	public String intern(CharSequence text, int start, int end) {
+		int h = hash(text, start, end);
+		int mask = strings.length - 1;
+		for (int i = h & mask; ; i = (i + 1) & mask) {
+			String s = strings[i];
+			if (s == null) {
+				String fresh = text.subSequence(start, end).toString();
+				if (size < capacity) {
+					strings[i] = fresh;
+					hashes[i] = h;
+					if (++size * 2 > strings.length) {
+						rehash();
+					}
+				}
+				return fresh;
+			}
+			if (hashes[i] == h && equals(s, text, start, end)) {
+				return s;
+			}
+		}
+	}
+
+	public String intern(CharSequence text) {
+		return intern(text, 0, text.length());
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public void clear() {
+		Arrays.fill(strings, null);
+		size = 0;
+	}
+
+	private void rehash() {
+		String[] oldStrings = strings;
+		int[] oldHashes = hashes;
+		strings = new String[oldStrings.length * 2];
+		hashes = new int[oldStrings.length * 2];
+		int mask = strings.length - 1;
+		for (int j = 0; j < oldStrings.length; j++) {
+			if (oldStrings[j] != null) {
+				int i = oldHashes[j] & mask;
+				while (strings[i] != null) {
+					i = (i + 1) & mask;
+				}
+				strings[i] = oldStrings[j];
+				hashes[i] = oldHashes[j];
+			}
+		}
+	}
+
+	private static int hash(CharSequence text, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			h = 31 * h + text.charAt(i);
+		}
+		return h ^ h >>> 16;
+	}
+
+	private static boolean equals(String s, CharSequence text, int start, int end) {
+		if (s.length() != end - start) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) != text.charAt(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
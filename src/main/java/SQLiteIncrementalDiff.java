@@ -0,0 +1,146 @@
+import org.antlr.v4.runtime.Token;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Differential check of {@link SQLiteIncrementalParser} against a full reparse.
+ * <p>
+ * Starting from the bundled warm-up corpus, a seeded sequence of random edits
+ * is applied to an incremental parser. After every edit the script is split and
+ * parsed from scratch with {@link SQLiteStatementSplitter}, and every statement
+ * must match on ordinal, offset, line and text, on its tree, and on its syntax
+ * errors with their positions in the script. Edits cluster around the previous
+ * one, as typing does, with some jumps, and insert fragments that move statement
+ * boundaries: semicolons, quotes, comments and trigger bodies.
+ * <pre>
+ * java SQLiteIncrementalDiff [-edits N] [-seed S]
+ * </pre>
+ * Exits with status 1 if the two ever differ.
+ */
+public class SQLiteIncrementalDiff {
+	private static final String[] FRAGMENTS = {
+		";", ";\n", " ", "\n", "x", "e", "1", "'", "''", "\"", "`", "[", "]", "/*", "*/", "--", "(", ")", ",",
+		"SELECT 1", "SELECT a FROM t WHERE ", "INSERT INTO t VALUES (1, 'a');", "CASE WHEN a THEN b END",
+		"CREATE TRIGGER tr AFTER INSERT ON t BEGIN ", "BEGIN", "END", "END;", "; END;", "WHERE", "FROM",
+	};
+
+	/** Scripts are kept around this size by favouring removals once they grow past it. */
+	private static final int MAX_LENGTH = 16 * 1024;
+
+	public static void main(String[] args) throws IOException {
+		int edits = 2000;
+		long seed = 0x5EED;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-edits": edits = Integer.parseInt(args[++i]); break;
+				case "-seed": seed = Long.parseLong(args[++i]); break;
+				default: throw new IllegalArgumentException("unknown argument " + args[i]);
+			}
+		}
+
+		String text;
+		try (InputStream in = SQLiteIncrementalDiff.class.getClassLoader().getResourceAsStream(SQLiteDfaSnapshot.WARMUP_CORPUS)) {
+			if (in == null) {
+				throw new IllegalStateException(SQLiteDfaSnapshot.WARMUP_CORPUS + " not on the classpath");
+			}
+			text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+
+		SQLiteParseEngine engine = new SQLiteParseEngine();
+		SQLiteStatementSplitter splitter = new SQLiteStatementSplitter(engine);
+		SQLiteIncrementalParser incremental = new SQLiteIncrementalParser(engine);
+		incremental.setText(text);
+		int failures = check(splitter, incremental, text, "initial text");
+
+		Random random = new Random(seed);
+		int caret = 0;
+		for (int i = 0; i < edits && failures == 0; i++) {
+			caret = random.nextInt(4) == 0 ? random.nextInt(text.length() + 1)
+				: Math.max(0, Math.min(text.length(), caret + random.nextInt(201) - 100));
+			int removed = 0;
+			if (text.length() > MAX_LENGTH || random.nextInt(3) == 0) {
+				removed = Math.min(text.length() - caret, random.nextInt(4) == 0 ? random.nextInt(500) : random.nextInt(10));
+			}
+			String inserted;
+			switch (random.nextInt(8)) {
+				case 0:
+					inserted = "";
+					break;
+				case 1: {
+					// a paste of another part of the script
+					int from = random.nextInt(text.length() + 1);
+					inserted = text.substring(from, Math.min(text.length(), from + random.nextInt(300)));
+					break;
+				}
+				default:
+					inserted = FRAGMENTS[random.nextInt(FRAGMENTS.length)];
+			}
+
+			incremental.edit(caret, removed, inserted);
+			text = text.substring(0, caret) + inserted + text.substring(caret + removed);
+			failures += check(splitter, incremental, text,
+							  "edit " + i + " at " + caret + ": removed " + removed + ", inserted " + escape(inserted));
+			caret += inserted.length();
+		}
+
+		System.out.println(edits + " edits, " + failures + " mismatches");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/** Returns 1 and prints the first difference if {@code incremental} does not hold {@code text} as parsed afresh, otherwise 0. */
+	static int check(SQLiteStatementSplitter splitter, SQLiteIncrementalParser incremental, String text, String edit) {
+		if (!incremental.getText().equals(text)) {
+			System.out.println(edit + ": text differs");
+			return 1;
+		}
+		List<String> expected = new ArrayList<>();
+		try {
+			splitter.split(text, statement -> expected.add(describe(statement)));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e); // no I/O on a string
+		}
+		List<SQLiteStatementSplitter.Statement> statements = incremental.getStatements();
+		for (int i = 0; i < Math.max(expected.size(), statements.size()); i++) {
+			String e = i < expected.size() ? expected.get(i) : "(none)";
+			String a = i < statements.size() ? describe(statements.get(i)) : "(none)";
+			if (!e.equals(a)) {
+				System.out.println(edit + ": statement " + i + " of " + expected.size() + " differs");
+				System.out.println("  reparsed    " + e);
+				System.out.println("  incremental " + a);
+				return 1;
+			}
+		}
+		return 0;
+	}
+
+	/** The position, text, tree and errors of {@code statement}, with error positions in script offsets. */
+	private static String describe(SQLiteStatementSplitter.Statement statement) {
+		StringBuilder sb = new StringBuilder();
+		sb.append('#').append(statement.getOrdinal()).append(" at ").append(statement.getOffset())
+			.append(" line ").append(statement.getLine()).append(' ').append(escape(statement.getText()))
+			.append("\n    ").append(statement.getResult().getTree().toStringTree(Arrays.asList(SQLiteParser.ruleNames)));
+		for (SQLiteSyntaxError e : statement.getResult().getErrors()) {
+			Token token = e.getOffendingToken();
+			sb.append("\n    error ").append(statement.getLine() + e.getLine() - 1).append(':').append(e.getCharPositionInLine());
+			if (token != null && token.getStartIndex() >= 0) {
+				sb.append(" @").append(statement.getOffset() + token.getStartIndex());
+			}
+			sb.append(' ').append(e.getMessage());
+		}
+		return sb.toString();
+	}
+
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+	}
+}
@@ -0,0 +1,360 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps an edited script parsed, statement by statement.
+ * <p>
+ * The script is split with the rules of {@link SQLiteStatementSplitter} and each
+ * statement is lexed and parsed on its own. An {@link #edit} re-scans from the
+ * start of the first statement the edit touches only until the statement
+ * boundaries line up with the old ones again, re-parses the statements in
+ * between and keeps the parse results of all others, so the work done for a
+ * keystroke depends on the size of the statements around it, not on the size
+ * of the script.
+ * <p>
+ * Positions inside a statement's {@link SQLiteParseResult} are relative to the
+ * statement: token offsets count from {@link SQLiteStatementSplitter.Statement#getOffset()}
+ * and lines from {@link SQLiteStatementSplitter.Statement#getLine()}. That is what
+ * lets a parse result be reused unchanged after an edit further up shifts its
+ * statement. Offsets of the statements after an edit are adjusted lazily, so an
+ * edit costs time in proportion to the number of statements between it and the
+ * previous edit, not to the number of statements in the script.
+ * <p>
+ * Not thread-safe.
+ */
+public class SQLiteIncrementalParser {
+	private final SQLiteParseEngine engine;
+	private final GapBuffer text = new GapBuffer();
+	private final ArrayList<Entry> entries = new ArrayList<>();
+	/** Entries from this index on are {@link #offsetShift} chars and {@link #lineShift} lines further down. */
+	private int shiftFrom;
+	private int offsetShift;
+	private int lineShift;
+
+	public SQLiteIncrementalParser() {
+		this(new SQLiteParseEngine());
+	}
+
+	public SQLiteIncrementalParser(SQLiteParseEngine engine) {
+		this.engine = engine;
+	}
+
+	public SQLiteParseEngine getEngine() {
+		return engine;
+	}
+
+	/** Replaces the whole script and parses every statement. */
+	public void setText(CharSequence script) {
+		text.delete(0, text.length());
+		text.insert(0, script);
+		entries.clear();
+		shiftFrom = 0;
+		offsetShift = 0;
+		lineShift = 0;
+		entries.addAll(scan(0, 1, text.length(), Collections.<Entry>emptyList(), null));
+	}
+
+	/** The current script. */
+	public String getText() {
+		return text.toString();
+	}
+
+	public int length() {
+		return text.length();
+	}
+
+	public int getStatementCount() {
+		return entries.size();
+	}
+
+	public SQLiteStatementSplitter.Statement getStatement(int i) {
+		Entry e = entries.get(i);
+		return new SQLiteStatementSplitter.Statement(i, e.text, offset(i), line(i), e.result);
+	}
+
+	public List<SQLiteStatementSplitter.Statement> getStatements() {
+		List<SQLiteStatementSplitter.Statement> statements = new ArrayList<>(entries.size());
+		for (int i = 0; i < entries.size(); i++) {
+			statements.add(getStatement(i));
+		}
+		return statements;
+	}
+
+	/**
+	 * The index of the statement that contains or, failing that, follows the
+	 * char at {@code offset}; {@link #getStatementCount()} if there is none.
+	 */
+	public int statementAt(int offset) {
+		int lo = 0;
+		int hi = entries.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (end(mid) <= offset) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Replaces {@code removed} chars at {@code offset} with {@code inserted} and
+	 * re-parses the statements the edit changed.
+	 */
+	public Change edit(int offset, int removed, CharSequence inserted) {
+		if (offset < 0 || removed < 0 || offset + removed > text.length()) {
+			throw new IndexOutOfBoundsException("edit [" + offset + ", " + (offset + removed) + ") of " + text.length());
+		}
+		int removedEnd = offset + removed;
+		int delta = inserted.length() - removed;
+		int lineDelta = newlines(inserted, 0, inserted.length()) - newlines(text, offset, removedEnd);
+
+		// the first statement that ends at or after the edit, and the clean
+		// scanner state at the end of the one before it
+		int first = offset == 0 ? 0 : statementAt(offset - 1);
+		while (first > 0 && end(first - 1) >= offset) {
+			first--;
+		}
+		int scanStart = first == 0 ? 0 : end(first - 1);
+		int scanLine = first == 0 ? 1 : line(first - 1) + entries.get(first - 1).lines;
+		// old statements whose end lies beyond the edit are where the new
+		// boundaries may line up with the old ones again
+		int candidate = first;
+		while (candidate < entries.size() && end(candidate) < removedEnd) {
+			candidate++;
+		}
+		int[] oldEnds = new int[entries.size() - candidate];
+		for (int i = candidate; i < entries.size(); i++) {
+			oldEnds[i - candidate] = end(i);
+		}
+
+		text.delete(offset, removed);
+		text.insert(offset, inserted);
+
+		List<Entry> replaced = entries.subList(first, entries.size());
+		Resync resync = new Resync(oldEnds, delta);
+		List<Entry> fresh = scan(scanStart, scanLine, text.length(), replaced, resync);
+		int last = resync.matched < 0 ? entries.size() : candidate + resync.matched + 1;
+
+		// apply the pending shift to the entries between it and this edit, and
+		// fold this edit's shift into it; only the entries in between are touched
+		for (int i = shiftFrom; i < first; i++) {
+			entries.get(i).move(offsetShift, lineShift);
+		}
+		int pendingFrom = last;
+		if (shiftFrom > last) {
+			for (int i = last; i < shiftFrom; i++) {
+				entries.get(i).move(delta, lineDelta);
+			}
+			pendingFrom = shiftFrom;
+		}
+		entries.subList(first, last).clear();
+		entries.addAll(first, fresh);
+		shiftFrom = pendingFrom - (last - first) + fresh.size();
+		offsetShift += delta;
+		lineShift += lineDelta;
+		return new Change(first, last - first, fresh.size());
+	}
+
+	/**
+	 * Splits the script from {@code start}, a statement boundary on line
+	 * {@code line}, and parses the statements, reusing the results of
+	 * {@code previous} statements with the same text. With a {@code resync},
+	 * scanning stops as soon as a new boundary coincides with an old one.
+	 */
+	private List<Entry> scan(int start, int line, int end, List<Entry> previous, Resync resync) {
+		Map<String, SQLiteParseResult> reusable = new HashMap<>();
+		for (Entry e : previous) {
+			reusable.put(e.text, e.result);
+		}
+		List<Entry> fresh = new ArrayList<>();
+		int[] lastEnd = {-1};
+		SQLiteStatementSplitter.Scanner scanner = new SQLiteStatementSplitter.Scanner((ordinal, s, offset, l) -> {
+			SQLiteParseResult result = reusable.get(s);
+			fresh.add(new Entry(s, start + (int)offset, line + l - 1, result != null ? result : engine.parse(s)));
+			lastEnd[0] = start + (int)offset + s.length();
+		}, Integer.MAX_VALUE);
+		try {
+			int pos = start;
+			if (resync != null) {
+				for (int i = 0; i < resync.oldEnds.length; i++) {
+					int boundary = resync.oldEnds[i] + resync.delta;
+					if (boundary <= pos) {
+						continue;
+					}
+					scanner.feed(text, pos, boundary);
+					pos = boundary;
+					if (lastEnd[0] == boundary) {
+						resync.matched = i;
+						return fresh;
+					}
+				}
+			}
+			scanner.feed(text, pos, end);
+			scanner.finish();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e); // the sink does no I/O
+		}
+		return fresh;
+	}
+
+	private int offset(int i) {
+		return entries.get(i).offset + (i >= shiftFrom ? offsetShift : 0);
+	}
+
+	private int end(int i) {
+		return offset(i) + entries.get(i).text.length();
+	}
+
+	private int line(int i) {
+		return entries.get(i).line + (i >= shiftFrom ? lineShift : 0);
+	}
+
+	private static int newlines(CharSequence s, int start, int end) {
+		int n = 0;
+		for (int i = start; i < end; i++) {
+			if (s.charAt(i) == '\n') {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/** Which statements an {@link #edit} replaced. */
+	public static class Change {
+		private final int first;
+		private final int removed;
+		private final int inserted;
+
+		Change(int first, int removed, int inserted) {
+			this.first = first;
+			this.removed = removed;
+			this.inserted = inserted;
+		}
+
+		/** Index of the first statement replaced. */
+		public int getFirst() { return first; }
+
+		/** How many old statements were replaced. */
+		public int getRemoved() { return removed; }
+
+		/** How many statements replaced them, starting at {@link #getFirst()}. */
+		public int getInserted() { return inserted; }
+
+		@Override
+		public String toString() {
+			return "Change[first=" + first + ", removed=" + removed + ", inserted=" + inserted + "]";
+		}
+	}
+
+	private static final class Entry {
+		final String text;
+		final SQLiteParseResult result;
+		/** Newlines in {@link #text}. */
+		final int lines;
+		int offset;
+		int line;
+
+		Entry(String text, int offset, int line, SQLiteParseResult result) {
+			this.text = text;
+			this.offset = offset;
+			this.line = line;
+			this.result = result;
+			this.lines = newlines(text, 0, text.length());
+		}
+
+		void move(int offsetDelta, int lineDelta) {
+			offset += offsetDelta;
+			line += lineDelta;
+		}
+	}
+
+	private static final class Resync {
+		/** Ends of the old statements that may line up, in old offsets. */
+		final int[] oldEnds;
+		final int delta;
+		/** Index into {@link #oldEnds} of the boundary that lined up, or -1. */
+		int matched = -1;
+
+		Resync(int[] oldEnds, int delta) {
+			this.oldEnds = oldEnds;
+			this.delta = delta;
+		}
+	}
+
+	/** The script text, with a gap at the last edit so that nearby edits move few chars. */
+	private static final class GapBuffer implements CharSequence {
+		private char[] chars = new char[256];
+		private int gapStart;
+		private int gapEnd = chars.length;
+
+		@Override
+		public int length() {
+			return chars.length - (gapEnd - gapStart);
+		}
+
+		@Override
+		public char charAt(int i) {
+			return i < gapStart ? chars[i] : chars[i + gapEnd - gapStart];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			StringBuilder sb = new StringBuilder(end - start);
+			for (int i = start; i < end; i++) {
+				sb.append(charAt(i));
+			}
+			return sb.toString();
+		}
+
+		@Override
+		public String toString() {
+			return new StringBuilder(length()).append(chars, 0, gapStart).append(chars, gapEnd, chars.length - gapEnd).toString();
+		}
+
+		void insert(int at, CharSequence s) {
+			int n = s.length();
+			moveGap(at);
+			if (gapEnd - gapStart < n) {
+				int size = Math.max(chars.length * 2, length() + n + 256);
+				char[] grown = new char[size];
+				System.arraycopy(chars, 0, grown, 0, gapStart);
+				int tail = chars.length - gapEnd;
+				System.arraycopy(chars, gapEnd, grown, size - tail, tail);
+				chars = grown;
+				gapEnd = size - tail;
+			}
+			for (int i = 0; i < n; i++) {
+				chars[gapStart++] = s.charAt(i);
+			}
+		}
+
+		void delete(int at, int n) {
+			moveGap(at);
+			gapEnd += n;
+		}
+
+		private void moveGap(int at) {
+			if (at < gapStart) {
+				int n = gapStart - at;
+				System.arraycopy(chars, at, chars, gapEnd - n, n);
+				gapStart = at;
+				gapEnd -= n;
+			}
+			else if (at > gapStart) {
+				int n = at - gapStart;
+				System.arraycopy(chars, gapEnd, chars, gapStart, n);
+				gapStart = at;
+				gapEnd += n;
+			}
+		}
+	}
+}
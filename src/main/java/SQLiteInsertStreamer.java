@@ -0,0 +1,747 @@
+import org.antlr.v4.runtime.Token;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Streams the rows of {@code INSERT ... VALUES} statements as typed columns,
+ * without building a parse tree for them.
+ * <p>
+ * The statement header ({@code INSERT [OR ...] | REPLACE}, {@code INTO}, the
+ * table and the optional column list) and the rows are read straight from
+ * {@link SQLiteFastLexer} tokens. A cell that is a single literal, optionally
+ * signed if numeric, is converted to a {@code long}, {@code double},
+ * {@code String}, {@code byte[]} or {@code null}, following SQLite: integers that
+ * do not fit in 64 bits become doubles, and {@code TRUE}/{@code FALSE} are 1 and 0.
+ * Any other cell is parsed with the full {@code expr} rule and delivered as an
+ * {@link SQLiteParser.ExprContext}.
+ * <p>
+ * The {@code VALUES} list is read twice. The first pass only lexes it, checking
+ * that every row is well formed and that the statement ends after the rows, and
+ * parses the cells that are not literals; those trees are kept until their row is
+ * delivered. The second pass converts the literals and delivers each row once its
+ * closing parenthesis has been read. A statement the first pass rejects, because
+ * of a syntax error or because its {@code VALUES} list is part of a compound
+ * select, delivers no rows and is parsed in full instead, so each statement ends
+ * up either as rows or as a parse, never both. An {@code ON CONFLICT} or
+ * {@code RETURNING} clause after the rows is checked for syntax errors by the
+ * first pass but not interpreted, only returned as {@link Result#getTrailer() text}. Statements of any other shape, including
+ * those with a {@code WITH} clause, are not streamed.
+ */
+public class SQLiteInsertStreamer {
+	/** Column types of a {@link Row}. */
+	public enum ColumnType {
+		NULL,
+		LONG,
+		DOUBLE,
+		STRING,
+		BLOB,
+		/** A cell that is not a literal; see {@link Row#getExpr(int)}. */
+		EXPR
+	}
+
+	/** Receives the rows of a statement. */
+	public interface RowHandler {
+		/** Called once per row; {@code row} is reused and only valid during the call. */
+		void row(Row row);
+	}
+
+	private final SQLiteParseEngine engine;
+
+	public SQLiteInsertStreamer() {
+		this(new SQLiteParseEngine());
+	}
+
+	/** {@code engine} parses non-literal cells, statements that are not streamed and malformed ones. */
+	public SQLiteInsertStreamer(SQLiteParseEngine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Streams the rows of {@code sql}, a single {@code INSERT ... VALUES} statement.
+	 * Returns {@code null}, having delivered nothing, if {@code sql} does not start
+	 * as such a statement. If it does but cannot be streamed, nothing is delivered
+	 * either and the result holds the {@linkplain Result#getParse() full parse}.
+	 */
+	public Result stream(CharSequence sql, RowHandler handler) {
+		return new Reader(sql).read(handler);
+	}
+
+	/**
+	 * Streams a script: the rows of every {@code INSERT ... VALUES} statement go
+	 * to {@code rows}, and every other statement is parsed and passed to
+	 * {@code others}, as by {@link SQLiteStatementSplitter#split(Path, Consumer)}.
+	 * {@code INSERT} statements that cannot be streamed, including those with
+	 * syntax errors, go to {@code others} as well, and none of their rows to
+	 * {@code rows}. Returns the number of statements.
+	 */
+	public long stream(Path script, RowHandler rows, Consumer<SQLiteStatementSplitter.Statement> others)
+		throws IOException
+	{
+		SQLiteStatementSplitter splitter = new SQLiteStatementSplitter(engine);
+		return splitter.scan(script, sink(rows, others));
+	}
+
+	/** Like {@link #stream(Path, RowHandler, Consumer)}, reading from a channel. */
+	public long stream(ReadableByteChannel script, RowHandler rows,
+					   Consumer<SQLiteStatementSplitter.Statement> others) throws IOException
+	{
+		SQLiteStatementSplitter splitter = new SQLiteStatementSplitter(engine);
+		return splitter.scan(script, sink(rows, others));
+	}
+
+	private SQLiteStatementSplitter.Scanner.Sink sink(RowHandler rows,
+													  Consumer<SQLiteStatementSplitter.Statement> others)
+	{
+		return (ordinal, text, offset, line) -> {
+			Result result = stream(text, rows);
+			if (result == null) {
+				others.accept(new SQLiteStatementSplitter.Statement(ordinal, text, offset, line, engine.parse(text)));
+			}
+			else if (!result.isStreamed()) {
+				others.accept(new SQLiteStatementSplitter.Statement(ordinal, text, offset, line, result.getParse()));
+			}
+		};
+	}
+
+	/** Reads one statement. */
+	private final class Reader {
+		private final CharSequence sql;
+		private SQLiteFastLexer lexer;
+		private int type;
+		private int start;
+		private int end;
+
+		Reader(CharSequence sql) {
+			this.sql = sql;
+			this.lexer = new SQLiteFastLexer(sql);
+			next();
+		}
+
+		/** Moves to the next token on the default channel. */
+		private void next() {
+			do {
+				type = lexer.scan();
+			}
+			while (type != Token.EOF && SQLiteFastLexer.channelOf(type) != Token.DEFAULT_CHANNEL);
+			start = lexer.getTokenStart();
+			end = lexer.getTokenEnd();
+		}
+
+		private boolean accept(int t) {
+			if (type == t) {
+				next();
+				return true;
+			}
+			return false;
+		}
+
+		private boolean isName() {
+			return type == SQLiteLexer.IDENTIFIER || type == SQLiteLexer.STRING_LITERAL || SQLiteKeywords.isKeyword(type);
+		}
+
+		/** Reads and unquotes a name, or returns {@code null}. */
+		private String name() {
+			if (!isName()) {
+				return null;
+			}
+			String name = unquote(sql, start, end);
+			next();
+			return name;
+		}
+
+		Result read(RowHandler handler) {
+			if (accept(SQLiteLexer.INSERT_)) {
+				if (accept(SQLiteLexer.OR_)) {
+					switch (type) {
+						case SQLiteLexer.REPLACE_:
+						case SQLiteLexer.ROLLBACK_:
+						case SQLiteLexer.ABORT_:
+						case SQLiteLexer.FAIL_:
+						case SQLiteLexer.IGNORE_:
+							next();
+							break;
+						default:
+							return null;
+					}
+				}
+			}
+			else if (!accept(SQLiteLexer.REPLACE_)) {
+				return null;
+			}
+			if (!accept(SQLiteLexer.INTO_)) {
+				return null;
+			}
+			String schema = null;
+			String table = name();
+			if (table == null) {
+				return null;
+			}
+			if (accept(SQLiteLexer.DOT)) {
+				schema = table;
+				table = name();
+				if (table == null) {
+					return null;
+				}
+			}
+			if (accept(SQLiteLexer.AS_) && name() == null) {
+				return null;
+			}
+			List<String> columns = Collections.emptyList();
+			if (accept(SQLiteLexer.OPEN_PAR)) {
+				columns = new ArrayList<>();
+				do {
+					String column = name();
+					if (column == null) {
+						return null;
+					}
+					columns.add(column);
+				}
+				while (accept(SQLiteLexer.COMMA));
+				if (!accept(SQLiteLexer.CLOSE_PAR)) {
+					return null;
+				}
+				columns = Collections.unmodifiableList(columns);
+			}
+			if (type != SQLiteLexer.VALUES_) {
+				return null;
+			}
+			next();
+
+			int rowsStart = start;
+			Map<Integer, SQLiteParser.ExprContext> exprs = new HashMap<>();
+			if (!check(exprs)) {
+				return new Result(0, null, engine.parse(sql));
+			}
+			lexer = new SQLiteFastLexer(sql);
+			do {
+				next();
+			}
+			while (start < rowsStart);
+
+			Row row = new Row(schema, table, columns);
+			long rows = 0;
+			do {
+				if (!row(row, exprs)) {
+					throw new IllegalStateException("row " + rows + " was read differently by the two passes");
+				}
+				row.number = rows++;
+				handler.row(row);
+			}
+			while (accept(SQLiteLexer.COMMA));
+
+			String trailer = null;
+			if (type == SQLiteLexer.ON_ || type == SQLiteLexer.RETURNING_) {
+				int trailerStart = start;
+				int trailerEnd = start;
+				while (type != Token.EOF && type != SQLiteLexer.SCOL) {
+					trailerEnd = end;
+					next();
+				}
+				trailer = sql.subSequence(trailerStart, trailerEnd).toString();
+			}
+			return new Result(rows, trailer, null);
+		}
+
+		/**
+		 * The first pass: reads the rows from the current token to the end of the
+		 * statement without delivering them, putting the cells that are not a
+		 * single, optionally signed, literal into {@code exprs} by offset. Returns
+		 * {@code false} if a row is malformed, or if anything other than valid
+		 * {@code ON CONFLICT} and {@code RETURNING} clauses and semicolons follows
+		 * the rows; the clauses are checked by parsing them after a stand-in row.
+		 */
+		private boolean check(Map<Integer, SQLiteParser.ExprContext> exprs) {
+			do {
+				if (!accept(SQLiteLexer.OPEN_PAR)) {
+					return false;
+				}
+				do {
+					if (!checkCell(exprs)) {
+						return false;
+					}
+				}
+				while (accept(SQLiteLexer.COMMA));
+				if (!accept(SQLiteLexer.CLOSE_PAR)) {
+					return false;
+				}
+			}
+			while (accept(SQLiteLexer.COMMA));
+			if (type == SQLiteLexer.ON_ || type == SQLiteLexer.RETURNING_) {
+				int trailerStart = start;
+				int trailerEnd = start;
+				while (type != Token.EOF && type != SQLiteLexer.SCOL) {
+					trailerEnd = end;
+					next();
+				}
+				// the clauses do not depend on the rows, so one row stands in for them
+				String stub = "INSERT INTO t VALUES (NULL) " + sql.subSequence(trailerStart, trailerEnd);
+				if (engine.parse(stub).hasErrors()) {
+					return false;
+				}
+			}
+			while (accept(SQLiteLexer.SCOL)) {
+				// trailing semicolons
+			}
+			return type == Token.EOF;
+		}
+
+		private boolean checkCell(Map<Integer, SQLiteParser.ExprContext> exprs) {
+			int cellStart = start;
+			if (type == SQLiteLexer.MINUS || type == SQLiteLexer.PLUS) {
+				next();
+			}
+			switch (type) {
+				case SQLiteLexer.NUMERIC_LITERAL:
+				case SQLiteLexer.STRING_LITERAL:
+				case SQLiteLexer.BLOB_LITERAL:
+				case SQLiteLexer.NULL_:
+				case SQLiteLexer.TRUE_:
+				case SQLiteLexer.FALSE_:
+					next();
+					if (type == SQLiteLexer.COMMA || type == SQLiteLexer.CLOSE_PAR) {
+						return true;
+					}
+					break;
+				default:
+					break;
+			}
+			if (!skipExpr() || start == cellStart) {
+				return false;
+			}
+			List<SQLiteSyntaxError> errors = new ArrayList<>();
+			SQLiteParser.ExprContext expr = engine.parseExpr(sql.subSequence(cellStart, start), errors);
+			if (!errors.isEmpty()) {
+				return false;
+			}
+			exprs.put(cellStart, expr);
+			return true;
+		}
+
+		/**
+		 * The second pass: reads one parenthesized row into {@code row}, taking the
+		 * trees of its non-literal cells from {@code exprs}. Returns {@code false} if
+		 * it is malformed.
+		 */
+		private boolean row(Row row, Map<Integer, SQLiteParser.ExprContext> exprs) {
+			if (!accept(SQLiteLexer.OPEN_PAR)) {
+				return false;
+			}
+			row.clear();
+			do {
+				if (!cell(row, exprs)) {
+					return false;
+				}
+			}
+			while (accept(SQLiteLexer.COMMA));
+			return accept(SQLiteLexer.CLOSE_PAR);
+		}
+
+		private boolean cell(Row row, Map<Integer, SQLiteParser.ExprContext> exprs) {
+			int cellStart = start;
+			boolean negative = false;
+			boolean signed = type == SQLiteLexer.MINUS || type == SQLiteLexer.PLUS;
+			if (signed) {
+				negative = type == SQLiteLexer.MINUS;
+				next();
+			}
+			switch (type) {
+				case Token.EOF:
+				case SQLiteLexer.SCOL:
+				case SQLiteLexer.COMMA:
+				case SQLiteLexer.CLOSE_PAR:
+					return false;
+				case SQLiteLexer.NUMERIC_LITERAL:
+				case SQLiteLexer.STRING_LITERAL:
+				case SQLiteLexer.BLOB_LITERAL:
+				case SQLiteLexer.NULL_:
+				case SQLiteLexer.TRUE_:
+				case SQLiteLexer.FALSE_: {
+					int literal = type;
+					int literalStart = start;
+					int literalEnd = end;
+					next();
+					if ((type == SQLiteLexer.COMMA || type == SQLiteLexer.CLOSE_PAR)
+						&& literal(row, literal, literalStart, literalEnd, signed, negative))
+					{
+						return true;
+					}
+					break;
+				}
+				default:
+					break;
+			}
+			if (!skipExpr()) {
+				return false;
+			}
+			SQLiteParser.ExprContext expr = exprs.remove(cellStart);
+			if (expr == null) {
+				// a literal the fast path does not convert, such as a signed string
+				List<SQLiteSyntaxError> errors = new ArrayList<>();
+				expr = engine.parseExpr(sql.subSequence(cellStart, start), errors);
+				if (!errors.isEmpty()) {
+					return false;
+				}
+			}
+			row.addExpr(expr);
+			return true;
+		}
+
+		/** Adds a literal cell; returns {@code false} if the token is not one this fast path converts. */
+		private boolean literal(Row row, int literal, int from, int to, boolean signed, boolean negative) {
+			switch (literal) {
+				case SQLiteLexer.NUMERIC_LITERAL:
+					return number(row, from, to, negative);
+				case SQLiteLexer.STRING_LITERAL:
+					if (signed) {
+						return false;
+					}
+					row.addObject(ColumnType.STRING, unquote(sql, from, to));
+					return true;
+				case SQLiteLexer.BLOB_LITERAL: {
+					byte[] blob = signed ? null : blob(from + 2, to - 1);
+					if (blob == null) {
+						return false;
+					}
+					row.addObject(ColumnType.BLOB, blob);
+					return true;
+				}
+				case SQLiteLexer.NULL_:
+					if (signed) {
+						return false;
+					}
+					row.addObject(ColumnType.NULL, null);
+					return true;
+				case SQLiteLexer.TRUE_:
+				case SQLiteLexer.FALSE_:
+					if (signed) {
+						return false;
+					}
+					row.addLong(literal == SQLiteLexer.TRUE_ ? 1 : 0);
+					return true;
+				default:
+					return false;
+			}
+		}
+
+		private boolean number(Row row, int from, int to, boolean negative) {
+			if (to - from > 2 && sql.charAt(from) == '0' && (sql.charAt(from + 1) | 0x20) == 'x') {
+				// SQLite reads up to 16 hex digits as a 64-bit two's complement integer
+				if (to - from - 2 > 16) {
+					return false;
+				}
+				long value = 0;
+				for (int i = from + 2; i < to; i++) {
+					value = value << 4 | Character.digit(sql.charAt(i), 16);
+				}
+				row.addLong(negative ? -value : value);
+				return true;
+			}
+			long value = 0;
+			boolean overflow = false;
+			for (int i = from; i < to; i++) {
+				char c = sql.charAt(i);
+				if (c < '0' || c > '9') {
+					row.addDouble(parseDouble(from, to, negative));
+					return true;
+				}
+				int digit = c - '0';
+				// accumulate negatively so that Long.MIN_VALUE is representable
+				if (value < (Long.MIN_VALUE + digit) / 10) {
+					overflow = true;
+				}
+				value = value * 10 - digit;
+			}
+			if (overflow || !negative && value == Long.MIN_VALUE) {
+				row.addDouble(parseDouble(from, to, negative));
+			}
+			else {
+				row.addLong(negative ? value : -value);
+			}
+			return true;
+		}
+
+		private double parseDouble(int from, int to, boolean negative) {
+			double d = Double.parseDouble(sql.subSequence(from, to).toString());
+			return negative ? -d : d;
+		}
+
+		/** Decodes the hex digits of a blob literal, or returns {@code null} if they are malformed. */
+		private byte[] blob(int from, int to) {
+			if (((to - from) & 1) != 0) {
+				return null;
+			}
+			byte[] bytes = new byte[(to - from) / 2];
+			for (int i = 0; i < bytes.length; i++) {
+				int hi = Character.digit(sql.charAt(from + 2 * i), 16);
+				int lo = Character.digit(sql.charAt(from + 2 * i + 1), 16);
+				if (hi < 0 || lo < 0) {
+					return null;
+				}
+				bytes[i] = (byte)(hi << 4 | lo);
+			}
+			return bytes;
+		}
+
+		/**
+		 * Skips to the comma or closing parenthesis that ends the current cell;
+		 * returns {@code false} if the statement ends first.
+		 */
+		private boolean skipExpr() {
+			int depth = 0;
+			while (true) {
+				switch (type) {
+					case Token.EOF:
+					case SQLiteLexer.SCOL:
+						return false;
+					case SQLiteLexer.OPEN_PAR:
+						depth++;
+						break;
+					case SQLiteLexer.CLOSE_PAR:
+						if (depth == 0) {
+							return true;
+						}
+						depth--;
+						break;
+					case SQLiteLexer.COMMA:
+						if (depth == 0) {
+							return true;
+						}
+						break;
+					default:
+						break;
+				}
+				next();
+			}
+		}
+	}
+
+	/**
+	 * Returns the value of a name or string token: the text between the quotes
+	 * with doubled quotes collapsed, or the text itself if it is not quoted.
+	 */
+	static String unquote(CharSequence text, int start, int end) {
+		char open = text.charAt(start);
+		char close;
+		switch (open) {
+			case '\'':
+			case '"':
+			case '`':
+				close = open;
+				break;
+			case '[':
+				return text.subSequence(start + 1, end - 1).toString();
+			default:
+				return text.subSequence(start, end).toString();
+		}
+		StringBuilder buf = null;
+		int from = start + 1;
+		for (int i = start + 1; i < end - 1; i++) {
+			if (text.charAt(i) == close) {
+				if (buf == null) {
+					buf = new StringBuilder(end - start);
+				}
+				buf.append(text, from, i + 1);
+				i++;
+				from = i + 1;
+			}
+		}
+		if (buf == null) {
+			return text.subSequence(start + 1, end - 1).toString();
+		}
+		return buf.append(text, from, end - 1).toString();
+	}
+
+	/**
+	 * One row of a {@code VALUES} list. The same instance is refilled for every
+	 * row of a statement.
+	 */
+	public static final class Row {
+		private final String schema;
+		private final String table;
+		private final List<String> columns;
+		long number;
+		private int size;
+		private ColumnType[] types = new ColumnType[8];
+		private long[] longs = new long[8];
+		private double[] doubles = new double[8];
+		private Object[] objects = new Object[8];
+
+		Row(String schema, String table, List<String> columns) {
+			this.schema = schema;
+			this.table = table;
+			this.columns = columns;
+		}
+
+		/** The schema name, unquoted, or {@code null}. */
+		public String getSchema() { return schema; }
+
+		/** The table name, unquoted. */
+		public String getTable() { return table; }
+
+		/** The column list of the statement, unquoted; empty if it has none. */
+		public List<String> getColumns() { return columns; }
+
+		/** Position of the row in its statement, counting from 0. */
+		public long getNumber() { return number; }
+
+		public int size() { return size; }
+
+		public ColumnType getType(int i) {
+			check(i);
+			return types[i];
+		}
+
+		public boolean isNull(int i) {
+			return getType(i) == ColumnType.NULL;
+		}
+
+		public long getLong(int i) {
+			expect(i, ColumnType.LONG);
+			return longs[i];
+		}
+
+		public double getDouble(int i) {
+			expect(i, ColumnType.DOUBLE);
+			return doubles[i];
+		}
+
+		public String getString(int i) {
+			expect(i, ColumnType.STRING);
+			return (String)objects[i];
+		}
+
+		/** The bytes of a blob cell; the array belongs to the caller. */
+		public byte[] getBytes(int i) {
+			expect(i, ColumnType.BLOB);
+			return (byte[])objects[i];
+		}
+
+		public SQLiteParser.ExprContext getExpr(int i) {
+			expect(i, ColumnType.EXPR);
+			return (SQLiteParser.ExprContext)objects[i];
+		}
+
+		/** The cell as a boxed value: a {@code Long}, {@code Double}, {@code String}, {@code byte[]}, {@code ExprContext} or {@code null}. */
+		public Object getValue(int i) {
+			switch (getType(i)) {
+				case LONG: return longs[i];
+				case DOUBLE: return doubles[i];
+				default: return objects[i];
+			}
+		}
+
+		void clear() {
+			Arrays.fill(objects, 0, size, null);
+			size = 0;
+		}
+
+		void addLong(long value) {
+			int i = add(ColumnType.LONG);
+			longs[i] = value;
+		}
+
+		void addDouble(double value) {
+			int i = add(ColumnType.DOUBLE);
+			doubles[i] = value;
+		}
+
+		void addObject(ColumnType type, Object value) {
+			int i = add(type);
+			objects[i] = value;
+		}
+
+		void addExpr(SQLiteParser.ExprContext expr) {
+			addObject(ColumnType.EXPR, expr);
+		}
+
+		private int add(ColumnType type) {
+			if (size == types.length) {
+				int n = size * 2;
+				types = Arrays.copyOf(types, n);
+				longs = Arrays.copyOf(longs, n);
+				doubles = Arrays.copyOf(doubles, n);
+				objects = Arrays.copyOf(objects, n);
+			}
+			types[size] = type;
+			return size++;
+		}
+
+		private void check(int i) {
+			if (i < 0 || i >= size) {
+				throw new IndexOutOfBoundsException("column " + i + " of " + size);
+			}
+		}
+
+		private void expect(int i, ColumnType type) {
+			if (getType(i) != type) {
+				throw new IllegalStateException("column " + i + " is " + types[i] + ", not " + type);
+			}
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder buf = new StringBuilder(table).append('#').append(number).append('(');
+			for (int i = 0; i < size; i++) {
+				if (i > 0) {
+					buf.append(", ");
+				}
+				switch (types[i]) {
+					case BLOB: buf.append("x'").append(hex((byte[])objects[i])).append('\''); break;
+					case STRING: buf.append('\'').append(objects[i]).append('\''); break;
+					case EXPR: buf.append(((SQLiteParser.ExprContext)objects[i]).getText()); break;
+					default: buf.append(getValue(i));
+				}
+			}
+			return buf.append(')').toString();
+		}
+
+		private static String hex(byte[] bytes) {
+			StringBuilder buf = new StringBuilder();
+			for (byte b : bytes) {
+				buf.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return buf.toString();
+		}
+	}
+
+	/** The outcome of streaming one statement. */
+	public static final class Result {
+		private final long rows;
+		private final String trailer;
+		private final SQLiteParseResult parse;
+
+		Result(long rows, String trailer, SQLiteParseResult parse) {
+			this.rows = rows;
+			this.trailer = trailer;
+			this.parse = parse;
+		}
+
+		/** Number of rows delivered. */
+		public long getRows() { return rows; }
+
+		/** The {@code ON CONFLICT} or {@code RETURNING} text after the rows, or {@code null}. */
+		public String getTrailer() { return trailer; }
+
+		/** Whether the rows were delivered; if not, {@link #getParse()} holds the statement. */
+		public boolean isStreamed() { return parse == null; }
+
+		/** The full parse of a statement that was not streamed, or {@code null}. */
+		public SQLiteParseResult getParse() { return parse; }
+
+		/** The syntax errors of a statement that was not streamed; streamed statements have none. */
+		public List<SQLiteSyntaxError> getErrors() {
+			return parse == null ? Collections.<SQLiteSyntaxError>emptyList() : parse.getErrors();
+		}
+
+		public boolean hasErrors() { return !getErrors().isEmpty(); }
+	}
+}
@@ -0,0 +1,160 @@
+import java.util.Arrays;
+
+/**
+ * Case-insensitive recognition of the SQLite keyword tokens, {@link SQLiteLexer#ABORT_}
+ * through {@link SQLiteLexer#NOTHING_}, with a minimal-probe perfect hash.
+ * <p>
+ * The table uses hash-and-displace: a first hash picks a bucket, the bucket's
+ * displacement seeds a second hash that picks the slot, and the displacements
+ * are chosen when the class is initialized so that no two keywords share a slot.
+ * A lookup therefore hashes the candidate twice and compares it with at most one
+ * keyword, folding ASCII case on the fly; it never allocates.
+ * <p>
+ * As in {@code SQLiteLexer.g4}, only ASCII letters fold: an identifier containing
+ * any other character is never a keyword.
+ */
+public final class SQLiteKeywords {
+	private static final int SLOTS = 256;
+	private static final int BUCKETS = 64;
+
+	/** Keyword text in upper case, by slot; {@code null} for an empty slot. */
+	private static final char[][] TEXT = new char[SLOTS][];
+	private static final int[] TYPE = new int[SLOTS];
+	private static final int[] DISPLACEMENT = new int[BUCKETS];
+	private static final int MIN_LENGTH;
+	private static final int MAX_LENGTH;
+
+	static {
+		int count = SQLiteLexer.NOTHING_ - SQLiteLexer.ABORT_ + 1;
+		char[][] keywords = new char[count][];
+		int min = Integer.MAX_VALUE;
+		int max = 0;
+		for (int i = 0; i < count; i++) {
+			String literal = SQLiteLexer.VOCABULARY.getLiteralName(SQLiteLexer.ABORT_ + i);
+			keywords[i] = literal.substring(1, literal.length() - 1).toCharArray();
+			min = Math.min(min, keywords[i].length);
+			max = Math.max(max, keywords[i].length);
+		}
+		MIN_LENGTH = min;
+		MAX_LENGTH = max;
+
+		// group the keywords by bucket, then place the largest buckets first
+		int[][] buckets = new int[BUCKETS][];
+		int[] sizes = new int[BUCKETS];
+		for (int i = 0; i < count; i++) {
+			int b = bucket(hash(keywords[i], 0));
+			if (buckets[b] == null) {
+				buckets[b] = new int[4];
+			}
+			else if (sizes[b] == buckets[b].length) {
+				buckets[b] = Arrays.copyOf(buckets[b], sizes[b] * 2);
+			}
+			buckets[b][sizes[b]++] = i;
+		}
+		Integer[] order = new Integer[BUCKETS];
+		for (int b = 0; b < BUCKETS; b++) {
+			order[b] = b;
+		}
+		Arrays.sort(order, (x, y) -> sizes[y] - sizes[x]);
+
+		int[] slots = new int[sizes[order[0]]];
+		for (int b : order) {
+			if (sizes[b] == 0) {
+				continue;
+			}
+			placement:
+			for (int d = 1; ; d++) {
+				for (int k = 0; k < sizes[b]; k++) {
+					int slot = slot(hash(keywords[buckets[b][k]], d));
+					if (TEXT[slot] != null) {
+						continue placement;
+					}
+					for (int j = 0; j < k; j++) {
+						if (slots[j] == slot) {
+							continue placement;
+						}
+					}
+					slots[k] = slot;
+				}
+				for (int k = 0; k < sizes[b]; k++) {
+					TEXT[slots[k]] = keywords[buckets[b][k]];
+					TYPE[slots[k]] = SQLiteLexer.ABORT_ + buckets[b][k];
+				}
+				DISPLACEMENT[b] = d;
+				break;
+			}
+		}
+	}
+
+	private SQLiteKeywords() {
+	}
+
+	/**
+	 * Returns the keyword token type of {@code text[start, end)}, ignoring ASCII
+	 * case, or {@link SQLiteLexer#IDENTIFIER} if it is not a keyword.
+	 */
+	public static int lookup(CharSequence text, int start, int end) {
+		int length = end - start;
+		if (length < MIN_LENGTH || length > MAX_LENGTH) {
+			return SQLiteLexer.IDENTIFIER;
+		}
+		int h = hash(text, start, end, 0);
+		if (h == -1) {
+			return SQLiteLexer.IDENTIFIER;
+		}
+		int slot = slot(hash(text, start, end, DISPLACEMENT[bucket(h)]));
+		char[] keyword = TEXT[slot];
+		if (keyword == null || keyword.length != length) {
+			return SQLiteLexer.IDENTIFIER;
+		}
+		for (int i = 0; i < length; i++) {
+			if (fold(text.charAt(start + i)) != keyword[i]) {
+				return SQLiteLexer.IDENTIFIER;
+			}
+		}
+		return TYPE[slot];
+	}
+
+	/** Returns the keyword token type of {@code text}, or {@link SQLiteLexer#IDENTIFIER}. */
+	public static int lookup(CharSequence text) {
+		return lookup(text, 0, text.length());
+	}
+
+	public static boolean isKeyword(int tokenType) {
+		return tokenType >= SQLiteLexer.ABORT_ && tokenType <= SQLiteLexer.NOTHING_;
+	}
+
+	/** Upper-cases ASCII letters and leaves every other character alone. */
+	static int fold(char c) {
+		return c >= 'a' && c <= 'z' ? c - ('a' - 'A') : c;
+	}
+
+	/** FNV-1a over the case-folded characters, or -1 if one of them is not ASCII. */
+	private static int hash(CharSequence text, int start, int end, int seed) {
+		int h = 0x811C9DC5 ^ seed * 0x9E3779B9;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c >= 128) {
+				return -1;
+			}
+			h = (h ^ fold(c)) * 0x01000193;
+		}
+		return (h ^ h >>> 15) & 0x7FFFFFFF;
+	}
+
+	private static int hash(char[] keyword, int seed) {
+		int h = 0x811C9DC5 ^ seed * 0x9E3779B9;
+		for (char c : keyword) {
+			h = (h ^ c) * 0x01000193;
+		}
+		return (h ^ h >>> 15) & 0x7FFFFFFF;
+	}
+
+	private static int bucket(int h) {
+		return h % BUCKETS;
+	}
+
+	private static int slot(int h) {
+		return h & (SLOTS - 1);
+	}
+}
@@ -0,0 +1,173 @@
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Differential check of {@link SQLiteFastLexer} against the generated {@link SQLiteLexer}.
+ * <p>
+ * Every input is tokenized by both lexers and the token sequences are compared
+ * on type, channel, text, line and column (and start/stop index when the input
+ * has no supplementary characters, where both index schemes agree). Inputs are
+ * the bundled warm-up corpus, a list of lexer edge cases, random SQL-like
+ * strings drawn from a fixed seed, and any files given on the command line.
+ * <pre>
+ * java SQLiteLexerDiff [-fuzz N] [-seed S] [file.sql ...]
+ * </pre>
+ * Exits with status 1 if any input differs.
+ */
+public class SQLiteLexerDiff {
+	private static final String[] EDGE_CASES = {
+		"",
+		" ",
+		"select * from t;",
+		"SeLeCt\tA,b\r\nFROM \"t\"\"x\" JOIN `q``r` JOIN [a b];",
+		"x'00ff' X'' x 'abc' xy'' x'unterminated",
+		"'it''s' '' ''''",
+		"'unterminated",
+		"\"unterminated",
+		"`unterminated",
+		"[unterminated",
+		"1 1. .1 1.5 1e5 1E+5 1e-5 1.e5 .5e1 1e 1e+ 0x 0x1F 0XaB 0x1e5 00x1 12.34.56",
+		"a.b .a . 1.a",
+		"-- comment\nselect 1 -- trailing",
+		"--\r\n--\r--x\rselect",
+		"/* comment */ /**/ /*/ */ /* unterminated",
+		"a/b a*/b",
+		"< <= << <> > >= >> = == != ! | || ~ + - * / % & , ; ( )",
+		"? ?1 ?123 :a @b $c :\"q\" @[x] $`y` : @ $ :1 $$a",
+		"_a a_1 \u00e9t\u00e9 caf\u00e9 \u007f \u0080x \u4e2d\u6587 \uffff",
+		"sel\ud83d\ude00ect \ud83d\ude00 '\ud83d\ude00' \ud800 a\udc00b",
+		"CURRENT_TIMESTAMP current_timestamp_ CURRENT_TIMESTAMPS notnull NOTHING nothing_ abort",
+		"CREATE TRIGGER t AFTER INSERT ON x BEGIN SELECT 1; END;",
+		"\u000b\t \r\n\n",
+		"#^\\{}",
+	};
+
+	private static final String[] FRAGMENTS = {
+		" ", "\t", "\n", "\r", "\r\n", "\u000b", "select", "FROM", "where", "x", "X", "e", "0x", "_",
+		"abc", "notnull", "current_date", "1", "0", "9", ".", "e5", "E-", "+", "-", "--", "/*", "*/",
+		"*", "/", "'", "''", "\"", "`", "[", "]", "?", ":", "@", "$", "<", ">", "=", "!", "|", "&",
+		";", ",", "(", ")", "~", "%", "\u00e9", "\u4e2d", "\ud83d\ude00", "\ud800", "#",
+	};
+
+	public static void main(String[] args) throws IOException {
+		int fuzz = 20000;
+		long seed = 0x5EED;
+		List<String> files = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-fuzz": fuzz = Integer.parseInt(args[++i]); break;
+				case "-seed": seed = Long.parseLong(args[++i]); break;
+				default: files.add(args[i]);
+			}
+		}
+
+		int failures = 0;
+		int inputs = 0;
+		try (InputStream in = SQLiteLexerDiff.class.getClassLoader().getResourceAsStream(SQLiteDfaSnapshot.WARMUP_CORPUS)) {
+			if (in != null) {
+				failures += check(SQLiteDfaSnapshot.WARMUP_CORPUS, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+				inputs++;
+			}
+		}
+		for (String file : files) {
+			failures += check(file, Files.readString(Paths.get(file)));
+			inputs++;
+		}
+		for (int i = 0; i < EDGE_CASES.length; i++) {
+			failures += check("edge case " + i, EDGE_CASES[i]);
+			inputs++;
+		}
+		Random random = new Random(seed);
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < fuzz; i++) {
+			buf.setLength(0);
+			int n = random.nextInt(24);
+			for (int j = 0; j < n; j++) {
+				buf.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+			}
+			failures += check("fuzz " + i, buf.toString());
+			inputs++;
+		}
+
+		System.out.println(inputs + " inputs, " + failures + " mismatches");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/** Returns 1 and prints the first difference if the lexers disagree on {@code input}, otherwise 0. */
+	static int check(String name, String input) {
+		SQLiteLexer reference = new SQLiteLexer(CharStreams.fromString(input));
+		reference.removeErrorListeners();
+		SQLiteFastLexer fast = new SQLiteFastLexer(input);
+		boolean compareIndexes = input.codePointCount(0, input.length()) == input.length();
+
+		for (int n = 0; ; n++) {
+			Token expected = reference.nextToken();
+			Token actual = fast.nextToken();
+			String diff = compare(expected, actual, compareIndexes);
+			if (diff != null) {
+				System.out.println(name + ": token " + n + " differs in " + diff);
+				System.out.println("  expected " + describe(reference, expected));
+				System.out.println("  actual   " + describe(fast, actual));
+				System.out.println("  input    " + escape(input));
+				return 1;
+			}
+			if (expected.getType() == Token.EOF) {
+				return 0;
+			}
+		}
+	}
+
+	private static String compare(Token expected, Token actual, boolean compareIndexes) {
+		if (expected.getType() != actual.getType()) {
+			return "type";
+		}
+		if (expected.getChannel() != actual.getChannel()) {
+			return "channel";
+		}
+		if (!expected.getText().equals(actual.getText())) {
+			return "text";
+		}
+		if (expected.getLine() != actual.getLine() || expected.getCharPositionInLine() != actual.getCharPositionInLine()) {
+			return "position";
+		}
+		if (compareIndexes && (expected.getStartIndex() != actual.getStartIndex()
+							   || expected.getStopIndex() != actual.getStopIndex()))
+		{
+			return "index";
+		}
+		return null;
+	}
+
+	private static String describe(TokenSource source, Token t) {
+		String type = t.getType() == Token.EOF ? "EOF" : SQLiteLexer.VOCABULARY.getSymbolicName(t.getType());
+		return type + " '" + escape(t.getText()) + "' channel=" + t.getChannel()
+			+ " " + t.getLine() + ":" + t.getCharPositionInLine()
+			+ " [" + t.getStartIndex() + ".." + t.getStopIndex() + "]";
+	}
+
+	private static String escape(String s) {
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= ' ' && c < 0x7F) {
+				buf.append(c);
+			}
+			else {
+				buf.append(String.format("\\u%04x", (int)c));
+			}
+		}
+		return buf.toString();
+	}
+}
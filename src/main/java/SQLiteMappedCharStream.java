@@ -0,0 +1,322 @@
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A {@link CharStream} over a UTF-8 file mapped into memory, decoded as it is
+ * read instead of up front.
+ * <p>
+ * Indexes are code points, as with {@code CharStreams.fromPath}, so the stream
+ * can replace one for {@link SQLiteLexer} or {@link SQLiteParseEngine#parse(CharStream)}.
+ * Where that decodes the whole file into an array of code points (up to 4 bytes
+ * per character on top of the file), this one keeps the byte offset of every 1024th
+ * code point, recorded as reading first gets there: 8 bytes per 1024 characters.
+ * Reading forwards decodes one code point at a time from the mapped bytes, with a
+ * single comparison for ASCII; a {@link #seek(int)} starts from the nearest
+ * recorded offset, and within a stretch of 1024 ASCII characters computes the
+ * byte offset directly. Malformed UTF-8, overlong forms and encoded surrogates
+ * included, reads as U+FFFD, one per byte that does not start a well-formed
+ * sequence, which may not match how the JDK decoder groups the replaced bytes.
+ * <p>
+ * The file is mapped in chunks of at most 1 GB, so a stream may cover a region
+ * anywhere in a file larger than 2 GB. A region may hold at most
+ * {@link Integer#MAX_VALUE} - 1 code points, the limit of {@link CharStream}
+ * indexes; larger files are opened a region at a time, or split into statements
+ * with {@link SQLiteStatementSplitter#scan(Path, SQLiteStatementSplitter.Scanner.Sink)}.
+ * A region of more bytes than 4 such code points take is rejected when opened; one
+ * of fewer bytes that still holds too many fails with an {@link IllegalStateException}
+ * when reading reaches the limit.
+ * <p>
+ * Not thread-safe. The mapping lives until the stream is garbage collected.
+ */
+public class SQLiteMappedCharStream implements CharStream {
+	private static final int CHUNK_BITS = 30;
+	private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+	/** Code points between two recorded byte offsets. */
+	private static final int BLOCK_BITS = 10;
+	private static final int BLOCK = 1 << BLOCK_BITS;
+	private static final int REPLACEMENT = 0xFFFD;
+	/** The code points a region may hold, with {@link Integer#MAX_VALUE} left for the index past the end. */
+	private static final int MAX_CODE_POINTS = Integer.MAX_VALUE - 1;
+
+	private final MappedByteBuffer[] chunks;
+	/** First byte of the region in the first chunk. */
+	private final long base;
+	private final long length;
+	private final String sourceName;
+
+	/** Byte offset of code point {@code k * BLOCK}, for every block reached so far. */
+	private long[] blocks = new long[16];
+	private int blockCount = 1;
+	/** Code points from the start of the region, or -1 until the end was reached. */
+	private int size = -1;
+
+	// the current code point
+	private int p;
+	private long position;
+
+	/**
+	 * Maps {@code length} bytes of {@code path} starting at byte {@code offset}.
+	 *
+	 * @throws IllegalArgumentException if the region is more than 4 bytes for each
+	 *         code point a stream may hold
+	 */
+	public static SQLiteMappedCharStream open(Path path, long offset, long length) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			if (offset < 0 || length < 0 || offset + length > fileSize) {
+				throw new IndexOutOfBoundsException("region [" + offset + ", " + (offset + length) + ") of " + fileSize + " bytes");
+			}
+			if (length > 4L * MAX_CODE_POINTS) {
+				throw new IllegalArgumentException("region of " + length + " bytes holds more than " + MAX_CODE_POINTS
+					+ " code points; open it a region at a time");
+			}
+			// chunks are aligned to the file so that a chunk never straddles the 2 GB limit of a mapping
+			long first = offset & ~CHUNK_MASK;
+			int n = (int)((offset + length - first + CHUNK_MASK) >>> CHUNK_BITS);
+			MappedByteBuffer[] chunks = new MappedByteBuffer[Math.max(n, 1)];
+			for (int i = 0; i < n; i++) {
+				long start = first + ((long)i << CHUNK_BITS);
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << CHUNK_BITS, offset + length - start));
+			}
+			if (n == 0) {
+				chunks[0] = channel.map(FileChannel.MapMode.READ_ONLY, first, 0);
+			}
+			return new SQLiteMappedCharStream(chunks, offset - first, length, path.toString());
+		}
+	}
+
+	/** Maps the whole file at {@code path}. */
+	public static SQLiteMappedCharStream open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return open(path, 0, channel.size());
+		}
+	}
+
+	private SQLiteMappedCharStream(MappedByteBuffer[] chunks, long base, long length, String sourceName) {
+		this.chunks = chunks;
+		this.base = base;
+		this.length = length;
+		this.sourceName = sourceName;
+	}
+
+	/** Bytes in the region. */
+	public long getByteLength() {
+		return length;
+	}
+
+	/** The offset, in bytes from the start of the region, of the code point at {@code index}. */
+	public long getByteOffset(int index) {
+		if (index < 0) {
+			throw new IndexOutOfBoundsException("index " + index);
+		}
+		return locate(index);
+	}
+
+	@Override
+	public void consume() {
+		if (position >= length) {
+			throw new IllegalStateException("cannot consume EOF");
+		}
+		position += width(position);
+		advanced(++p, position);
+	}
+
+	@Override
+	public int LA(int i) {
+		if (i == 0) {
+			return 0; // undefined
+		}
+		long at = position;
+		if (i > 0) {
+			for (int k = 1; k < i && at < length; k++) {
+				at += width(at);
+			}
+			return at < length ? decode(at) : IntStream.EOF;
+		}
+		if (p + i < 0) {
+			return IntStream.EOF;
+		}
+		for (int k = 0; k > i; k--) {
+			at = previous(at);
+		}
+		return decode(at);
+	}
+
+	@Override
+	public int mark() {
+		return -1;
+	}
+
+	@Override
+	public void release(int marker) {
+	}
+
+	@Override
+	public int index() {
+		return p;
+	}
+
+	@Override
+	public void seek(int index) {
+		if (index <= p && p - index < BLOCK && (size < 0 || p <= size)) {
+			while (p > index) {
+				position = previous(position);
+				p--;
+			}
+			return;
+		}
+		// like CodePointCharStream, an index past the end is kept and reads EOF
+		position = locate(index);
+		p = index;
+	}
+
+	@Override
+	public int size() {
+		if (size < 0) {
+			locate(Integer.MAX_VALUE);
+		}
+		return size;
+	}
+
+	@Override
+	public String getSourceName() {
+		return sourceName;
+	}
+
+	@Override
+	public String getText(Interval interval) {
+		int start = interval.a;
+		int stop = interval.b;
+		if (start < 0 || stop < start) {
+			return "";
+		}
+		long from = locate(start);
+		long to = stop == Integer.MAX_VALUE ? length : locate(stop + 1);
+		StringBuilder sb = new StringBuilder((int)Math.min(to - from, Integer.MAX_VALUE - 8));
+		for (long at = from; at < to; at += width(at)) {
+			sb.appendCodePoint(decode(at));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return getText(Interval.of(0, Integer.MAX_VALUE));
+	}
+
+	/**
+	 * The byte offset of the code point at {@code index}, or {@link #length} if the
+	 * region ends before it. Records block offsets on the way.
+	 */
+	private long locate(int index) {
+		int block = index >>> BLOCK_BITS;
+		int known = Math.min(block, blockCount - 1);
+		long at = blocks[known];
+		int i = known << BLOCK_BITS;
+		if (known < blockCount - 1 && blocks[known + 1] - at == BLOCK) {
+			return at + (index - i); // an ASCII block
+		}
+		while (i < index && at < length) {
+			at += width(at);
+			advanced(++i, at);
+		}
+		if (at >= length && size < 0) {
+			size = i;
+		}
+		return Math.min(at, length);
+	}
+
+	/** Notes that code point {@code index} starts at byte {@code at}. */
+	private void advanced(int index, long at) {
+		if (at >= length) {
+			if (size < 0) {
+				size = index;
+			}
+			return;
+		}
+		if (index > MAX_CODE_POINTS) {
+			throw new IllegalStateException(sourceName + " holds more than " + MAX_CODE_POINTS
+				+ " code points; open it a region at a time");
+		}
+		if ((index & (BLOCK - 1)) == 0 && index >>> BLOCK_BITS == blockCount) {
+			if (blockCount == blocks.length) {
+				blocks = Arrays.copyOf(blocks, blockCount * 2);
+			}
+			blocks[blockCount++] = at;
+		}
+	}
+
+	private int byteAt(long offset) {
+		long absolute = base + offset;
+		return chunks[(int)(absolute >>> CHUNK_BITS)].get((int)(absolute & CHUNK_MASK)) & 0xFF;
+	}
+
+	/**
+	 * Bytes taken by the code point at {@code at}; 1 for a byte that does not start
+	 * a well-formed sequence, including the lead of an overlong form, an encoded
+	 * surrogate or a code point past U+10FFFF.
+	 */
+	private int width(long at) {
+		int b = byteAt(at);
+		if (b < 0x80) {
+			return 1;
+		}
+		int n = b >= 0xF0 ? (b < 0xF5 ? 4 : 0) : b >= 0xE0 ? 3 : b >= 0xC2 ? 2 : 0;
+		if (n == 0 || at + n > length) {
+			return 1;
+		}
+		int second = byteAt(at + 1);
+		// the ranges of the second byte that the lead alone leaves open (RFC 3629)
+		if (b == 0xE0 && second < 0xA0 || b == 0xED && second > 0x9F
+			|| b == 0xF0 && second < 0x90 || b == 0xF4 && second > 0x8F)
+		{
+			return 1;
+		}
+		for (int k = 1; k < n; k++) {
+			if ((byteAt(at + k) & 0xC0) != 0x80) {
+				return 1;
+			}
+		}
+		return n;
+	}
+
+	private int decode(long at) {
+		int b = byteAt(at);
+		if (b < 0x80) {
+			return b;
+		}
+		switch (width(at)) {
+			case 2:
+				return (b & 0x1F) << 6 | byteAt(at + 1) & 0x3F;
+			case 3:
+				return (b & 0x0F) << 12 | (byteAt(at + 1) & 0x3F) << 6 | byteAt(at + 2) & 0x3F;
+			case 4:
+				return (b & 0x07) << 18 | (byteAt(at + 1) & 0x3F) << 12 | (byteAt(at + 2) & 0x3F) << 6 | byteAt(at + 3) & 0x3F;
+			default:
+				return REPLACEMENT;
+		}
+	}
+
+	/** The start of the code point before the one at {@code at}. */
+	private long previous(long at) {
+		// a well-formed sequence is at most 3 continuation bytes after its lead
+		for (int back = 1; back <= 4 && at - back >= 0; back++) {
+			long lead = at - back;
+			if ((byteAt(lead) & 0xC0) != 0x80 || back == 4) {
+				if (lead + width(lead) == at) {
+					return lead;
+				}
+				break;
+			}
+		}
+		return at - 1;
+	}
+}
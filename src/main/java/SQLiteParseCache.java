@@ -0,0 +1,420 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A size-bounded cache of parse results keyed by the exact SQL text, for
+ * services that parse the same statements over and over.
+ * <p>
+ * Eviction follows W-TinyLFU: new entries enter a small LRU window, and an entry
+ * leaving the window only displaces the least recently used entry of the main
+ * space if it has been requested more often, according to a 4-bit count-min
+ * sketch that is halved periodically so that old popularity fades. The main
+ * space is a segmented LRU whose protected segment holds entries requested again
+ * since they were admitted. One-off statements therefore pass through the window
+ * without pushing out the statements that make up most of the traffic.
+ * <p>
+ * Lookups are lock-free: a hit is a {@link ConcurrentHashMap} read plus a write
+ * to a small striped ring of recent accesses, which is replayed into the sketch
+ * and the LRU order under a lock once a ring fills up. A ring that is full when a
+ * reader comes by loses the access, which only makes the policy slightly less
+ * precise. A miss parses outside the lock; two threads missing the same key at
+ * once both parse, and the first result is kept.
+ * <p>
+ * The key is the text as given, not a normalized form: the cached tree carries
+ * the literals and positions of the text it was parsed from, so two statements
+ * that only differ in spacing or literal values must not share it. Cached values
+ * are handed to every thread that asks for the same text, so they should hold no
+ * parsing state and must be treated as read-only.
+ *
+ * @param <V> what is cached per statement, such as a {@link SQLiteDetachedParse}
+ */
+public class SQLiteParseCache<V> {
+	/** Share of the capacity given to the admission window. */
+	private static final double WINDOW_SHARE = 0.01;
+	/** Share of the main space given to the protected segment. */
+	private static final double PROTECTED_SHARE = 0.8;
+	private static final int RING_SIZE = 16;
+
+	private final Function<? super String, ? extends V> parser;
+	private final int maximumSize;
+	private final int maxWindow;
+	private final int maxProtected;
+	private final ConcurrentHashMap<String, Node<V>> map;
+
+	private final AtomicReferenceArray<Node<V>>[] rings;
+	private final AtomicInteger[] ringWrites;
+	private final ReentrantLock lock = new ReentrantLock();
+
+	// guarded by lock
+	private final FrequencySketch sketch;
+	private final Node<V> window = Node.sentinel();
+	private final Node<V> probation = Node.sentinel();
+	private final Node<V> protect = Node.sentinel();
+	private int windowSize;
+	private int protectedSize;
+	private int mainSize;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * A cache of at most {@code maximumSize} results, computing missing ones with
+	 * {@code parser}.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public SQLiteParseCache(int maximumSize, Function<? super String, ? extends V> parser) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+		}
+		this.parser = parser;
+		this.maximumSize = maximumSize;
+		this.maxWindow = Math.max(1, (int)(maximumSize * WINDOW_SHARE));
+		this.maxProtected = (int)((maximumSize - maxWindow) * PROTECTED_SHARE);
+		this.map = new ConcurrentHashMap<>(Math.min(maximumSize, 1 << 16));
+		this.sketch = new FrequencySketch(maximumSize);
+		int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+		rings = new AtomicReferenceArray[stripes];
+		ringWrites = new AtomicInteger[stripes];
+		for (int i = 0; i < stripes; i++) {
+			rings[i] = new AtomicReferenceArray<>(RING_SIZE);
+			ringWrites[i] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * A cache of {@link SQLiteParseEngine#parse(CharSequence)} results, each
+	 * {@linkplain SQLiteDetachedParse detached} from its parser and token stream
+	 * before it is shared.
+	 */
+	public static SQLiteParseCache<SQLiteDetachedParse> of(SQLiteParseEngine engine, int maximumSize) {
+		return new SQLiteParseCache<>(maximumSize, sql -> SQLiteDetachedParse.of(engine.parse(sql)));
+	}
+
+	/** The cached result for {@code sql}, parsing and caching it if there is none. */
+	public V get(CharSequence sql) {
+		String key = sql.toString();
+		Node<V> node = map.get(key);
+		if (node != null) {
+			hits.increment();
+			recordAccess(node);
+			return node.value;
+		}
+		misses.increment();
+		V value = parser.apply(key);
+		Node<V> fresh = new Node<>(key, value, spread(key.hashCode()));
+		lock.lock();
+		try {
+			Node<V> raced = map.putIfAbsent(key, fresh);
+			if (raced != null) {
+				return raced.value;
+			}
+			drainRings();
+			sketch.increment(fresh.hash);
+			fresh.queue = Node.WINDOW;
+			fresh.linkFirst(window);
+			windowSize++;
+			evict();
+			return value;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/** The cached result for {@code sql}, without parsing or counting a request. */
+	public V getIfPresent(CharSequence sql) {
+		Node<V> node = map.get(sql.toString());
+		return node != null ? node.value : null;
+	}
+
+	/** Drops the result for {@code sql}, if cached. */
+	public void invalidate(CharSequence sql) {
+		lock.lock();
+		try {
+			Node<V> node = map.remove(sql.toString());
+			if (node != null) {
+				unlink(node);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/** Drops every result; the statistics and access frequencies are kept. */
+	public void clear() {
+		lock.lock();
+		try {
+			drainRings();
+			for (Node<V> node : map.values()) {
+				unlink(node);
+			}
+			map.clear();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	public Stats getStats() {
+		return new Stats(hits.sum(), misses.sum(), evictions.sum());
+	}
+
+	private void recordAccess(Node<V> node) {
+		int stripe = (int)Thread.currentThread().getId() & (rings.length - 1);
+		int w = ringWrites[stripe].getAndIncrement();
+		rings[stripe].lazySet(w & (RING_SIZE - 1), node);
+		if ((w & (RING_SIZE - 1)) == RING_SIZE - 1 && lock.tryLock()) {
+			try {
+				drainRings();
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private void drainRings() {
+		for (AtomicReferenceArray<Node<V>> ring : rings) {
+			for (int i = 0; i < RING_SIZE; i++) {
+				Node<V> node = ring.getAndSet(i, null);
+				if (node != null) {
+					onAccess(node);
+				}
+			}
+		}
+	}
+
+	/** Replays a hit: counts it and moves the entry up its LRU order. */
+	private void onAccess(Node<V> node) {
+		sketch.increment(node.hash);
+		switch (node.queue) {
+			case Node.WINDOW:
+				node.unlink();
+				node.linkFirst(window);
+				break;
+			case Node.PROBATION:
+				node.unlink();
+				node.queue = Node.PROTECTED;
+				node.linkFirst(protect);
+				protectedSize++;
+				while (protectedSize > maxProtected) {
+					Node<V> demoted = protect.prev;
+					demoted.unlink();
+					demoted.queue = Node.PROBATION;
+					demoted.linkFirst(probation);
+					protectedSize--;
+				}
+				break;
+			case Node.PROTECTED:
+				node.unlink();
+				node.linkFirst(protect);
+				break;
+			default:
+				break; // evicted since it was recorded
+		}
+	}
+
+	/**
+	 * Moves entries that overflow the window into probation and, while the cache
+	 * is over its size, evicts whichever of the oldest candidate and the oldest
+	 * probation entry is requested less often.
+	 */
+	private void evict() {
+		while (windowSize > maxWindow) {
+			Node<V> node = window.prev;
+			node.unlink();
+			windowSize--;
+			node.queue = Node.PROBATION;
+			node.linkFirst(probation);
+			mainSize++;
+		}
+		while (windowSize + mainSize > maximumSize) {
+			// the newest probation entry came from the window last; the oldest
+			// one is the incumbent it competes with
+			Node<V> candidate = probation.next;
+			Node<V> victim = probation.prev;
+			if (candidate == victim) {
+				// probation holds one entry or none; compete with protected
+				victim = protect.prev != protect ? protect.prev : candidate;
+				if (candidate == probation) {
+					candidate = victim;
+				}
+			}
+			Node<V> loser = candidate == victim || sketch.frequency(candidate.hash) <= sketch.frequency(victim.hash)
+				? candidate : victim;
+			map.remove(loser.key, loser);
+			unlink(loser);
+			evictions.increment();
+		}
+	}
+
+	private void unlink(Node<V> node) {
+		switch (node.queue) {
+			case Node.WINDOW:
+				windowSize--;
+				break;
+			case Node.PROTECTED:
+				protectedSize--;
+				mainSize--;
+				break;
+			case Node.PROBATION:
+				mainSize--;
+				break;
+			default:
+				return;
+		}
+		node.unlink();
+		node.queue = Node.NONE;
+	}
+
+	private static int spread(int h) {
+		h *= 0x9E3779B9;
+		return h ^ h >>> 16;
+	}
+
+	/** Request counts since the cache was created. */
+	public static class Stats {
+		private final long hits;
+		private final long misses;
+		private final long evictions;
+
+		Stats(long hits, long misses, long evictions) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+		}
+
+		public long getHits() { return hits; }
+
+		/** Requests that had to parse. */
+		public long getMisses() { return misses; }
+
+		public long getEvictions() { return evictions; }
+
+		public long getRequests() { return hits + misses; }
+
+		/** Hits per request, or 1 before the first request. */
+		public double getHitRate() {
+			long requests = hits + misses;
+			return requests == 0 ? 1.0 : (double)hits / requests;
+		}
+
+		@Override
+		public String toString() {
+			return "Stats[hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+				+ ", hitRate=" + String.format("%.3f", getHitRate()) + "]";
+		}
+	}
+
+	private static final class Node<V> {
+		static final int NONE = 0;
+		static final int WINDOW = 1;
+		static final int PROBATION = 2;
+		static final int PROTECTED = 3;
+
+		final String key;
+		final V value;
+		final int hash;
+		/** Which list the node is in; guarded by the cache lock. */
+		int queue;
+		Node<V> prev;
+		Node<V> next;
+
+		Node(String key, V value, int hash) {
+			this.key = key;
+			this.value = value;
+			this.hash = hash;
+		}
+
+		static <V> Node<V> sentinel() {
+			Node<V> s = new Node<>(null, null, 0);
+			s.prev = s;
+			s.next = s;
+			return s;
+		}
+
+		/** Links this node right after {@code head}, as the most recently used. */
+		void linkFirst(Node<V> head) {
+			prev = head;
+			next = head.next;
+			head.next.prev = this;
+			head.next = this;
+		}
+
+		void unlink() {
+			prev.next = next;
+			next.prev = prev;
+			prev = null;
+			next = null;
+		}
+	}
+
+	/**
+	 * Count-min sketch of 4-bit counters, 16 to a {@code long}. Each key has one
+	 * counter in each of four words; after ten increments per cache entry every
+	 * counter is halved.
+	 */
+	private static final class FrequencySketch {
+		private static final long[] SEEDS = {
+			0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+		};
+
+		private final long[] table;
+		private final int sampleSize;
+		private int additions;
+
+		FrequencySketch(int maximumSize) {
+			table = new long[Integer.highestOneBit(Math.max(maximumSize, 8) * 2 - 1)];
+			sampleSize = 10 * Math.max(maximumSize, 8);
+		}
+
+		int frequency(int hash) {
+			int start = (hash & 3) << 2;
+			int min = 15;
+			for (int i = 0; i < 4; i++) {
+				int count = (int)(table[index(hash, i)] >>> ((start + i) << 2)) & 0xF;
+				min = Math.min(min, count);
+			}
+			return min;
+		}
+
+		void increment(int hash) {
+			int start = (hash & 3) << 2;
+			boolean added = false;
+			for (int i = 0; i < 4; i++) {
+				int index = index(hash, i);
+				long mask = 0xFL << ((start + i) << 2);
+				if ((table[index] & mask) != mask) {
+					table[index] += 1L << ((start + i) << 2);
+					added = true;
+				}
+			}
+			if (added && ++additions == sampleSize) {
+				for (int i = 0; i < table.length; i++) {
+					table[i] = table[i] >>> 1 & 0x7777777777777777L;
+				}
+				additions /= 2;
+			}
+		}
+
+		private int index(int hash, int i) {
+			long h = (hash + SEEDS[i]) * SEEDS[i];
+			h += h >>> 32;
+			return (int)h & (table.length - 1);
+		}
+	}
+}
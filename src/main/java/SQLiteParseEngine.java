@@ -0,0 +1,423 @@
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Two-stage entry point for {@link SQLiteParser#parse()}.
+ * <p>
+ * The first attempt runs the prediction simulator in {@link PredictionMode#SLL}
+ * with a {@link BailErrorStrategy}, which is considerably cheaper than full-context
+ * prediction and is exact for every input that SLL accepts. Only when that
+ * attempt bails out is the token stream rewound and re-parsed in full
+ * {@link PredictionMode#LL} mode with a {@link SQLiteErrorStrategy}, so valid SQL
+ * never pays for LL and invalid SQL still gets the usual error reporting, with the
+ * recovery work per statement capped.
+ * <p>
+ * Parsers are {@link SQLiteExprParser}s, which choose the operators of
+ * expressions by precedence instead of adaptive prediction.
+ * <p>
+ * An engine created with a {@link SQLiteDfaCache} binds its recognizers to that
+ * cache instead of the generated static DFA, and gives the cache a chance to
+ * evict after every parse.
+ * <p>
+ * Parses of a whole script, including those of pooled recognizers, are
+ * instrumented: they emit the {@link SQLiteParserEvents} that a Flight Recorder
+ * recording enables, and an engine created with {@link SQLiteParserMetrics}
+ * records into them. When neither is the case a parse pays one check; otherwise
+ * the tokens are read ahead of the parse so that lexing and parsing are timed
+ * apart, and the tree is counted.
+ * <p>
+ * SQL from untrusted sources can be parsed under {@link SQLiteParseLimits}, which
+ * stop a parse that takes too long, is cancelled, or grows too large or too deep
+ * with a {@link SQLiteParseLimitException}.
+ */
+public class SQLiteParseEngine {
+
+	/** Which prediction path produced a parse tree. */
+	public enum Mode {
+		/** The SLL fast path succeeded. */
+		SLL,
+		/** SLL bailed out and the input was re-parsed in full LL mode. */
+		LL
+	}
+
+	private final SQLiteDfaCache cache;
+	private final SQLiteParserMetrics metrics;
+
+	/** An engine using the DFA cache generated into {@link SQLiteParser} and {@link SQLiteLexer}. */
+	public SQLiteParseEngine() {
+		this(null);
+	}
+
+	public SQLiteParseEngine(SQLiteDfaCache cache) {
+		this(cache, null);
+	}
+
+	/** An engine recording into {@code metrics}, which may be {@code null} or shared with other engines. */
+	public SQLiteParseEngine(SQLiteDfaCache cache, SQLiteParserMetrics metrics) {
+		this.cache = cache;
+		this.metrics = metrics;
+	}
+
+	/** The DFA cache recognizers are bound to, or {@code null} for the generated one. */
+	public SQLiteDfaCache getDfaCache() {
+		return cache;
+	}
+
+	/** The metrics parses are recorded into, or {@code null}. */
+	public SQLiteParserMetrics getMetrics() {
+		return metrics;
+	}
+
+	public SQLiteParseResult parse(CharSequence sql) {
+		return parse(CharStreams.fromString(sql.toString()));
+	}
+
+	public SQLiteParseResult parse(CharStream input) {
+		SQLiteLexer lexer = new SQLiteLexer(input);
+		ErrorCollector errors = new ErrorCollector();
+		lexer.removeErrorListeners();
+		lexer.addErrorListener(errors);
+
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		SQLiteParser parser = new SQLiteExprParser(tokens);
+		if (cache != null) {
+			cache.install(lexer);
+			cache.install(parser);
+		}
+		try {
+			return parse(parser, tokens, errors);
+		}
+		finally {
+			if (cache != null) {
+				cache.checkpoint();
+			}
+		}
+	}
+
+	/** Parses {@code sql} within {@code limits}; see {@link #parse(CharStream, SQLiteParseLimits)}. */
+	public SQLiteParseResult parse(CharSequence sql, SQLiteParseLimits limits) {
+		return parse(CharStreams.fromString(sql.toString()), limits);
+	}
+
+	/**
+	 * Parses {@code input} within {@code limits}, which count from this call and
+	 * cover lexing and both stages. A parse running on a pooled thread can be
+	 * stopped by interrupting it, as {@code Future.cancel(true)} does. A parse that
+	 * reaches a limit, or overflows the stack, throws a {@link SQLiteParseLimitException}
+	 * and leaves no result; syntax errors are reported in the result as usual.
+	 */
+	public SQLiteParseResult parse(CharStream input, SQLiteParseLimits limits) {
+		SQLiteParseLimits.Guard guard = limits.start();
+		SQLiteLexer lexer = new SQLiteLexer(input);
+		ErrorCollector errors = new ErrorCollector();
+		lexer.removeErrorListeners();
+		lexer.addErrorListener(errors);
+
+		CommonTokenStream tokens = guard.tokens(lexer);
+		SQLiteParser parser = new SQLiteExprParser(tokens);
+		if (cache != null) {
+			cache.install(lexer);
+			cache.install(parser);
+		}
+		parser.addParseListener(guard);
+		try {
+			return parse(parser, tokens, errors, p -> {
+				guard.restart();
+				return p.parse();
+			});
+		}
+		catch (StackOverflowError e) {
+			throw guard.overflow();
+		}
+		finally {
+			guard.finish();
+			parser.removeParseListener(guard);
+			if (cache != null) {
+				cache.checkpoint();
+			}
+		}
+	}
+
+	/**
+	 * Parses {@code sql} with the same two stages into a {@link SQLiteCompactTree}.
+	 * The parser builds no context tree; the compact tree is recorded by a listener
+	 * and restarted if the input has to be parsed again in LL mode. Syntax errors
+	 * are added to {@code errors}, which may be {@code null}.
+	 */
+	public SQLiteCompactTree parseCompact(CharSequence sql, List<SQLiteSyntaxError> errors) {
+		SQLiteLexer lexer = new SQLiteLexer(CharStreams.fromString(sql.toString()));
+		ErrorCollector collector = new ErrorCollector();
+		lexer.removeErrorListeners();
+		lexer.addErrorListener(collector);
+
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		SQLiteParser parser = new SQLiteExprParser(tokens);
+		if (cache != null) {
+			cache.install(lexer);
+			cache.install(parser);
+		}
+		SQLiteCompactTree.Builder builder = new SQLiteCompactTree.Builder();
+		parser.setBuildParseTree(false);
+		parser.addParseListener(builder);
+		try {
+			parse(parser, tokens, collector, p -> {
+				builder.reset();
+				return p.parse();
+			}, false);
+			return builder.build(tokens);
+		}
+		finally {
+			if (cache != null) {
+				cache.checkpoint();
+			}
+			if (errors != null) {
+				errors.addAll(collector.errors);
+			}
+		}
+	}
+
+	/**
+	 * Parses a single expression, such as a cell of a {@code VALUES} row, with the
+	 * same two stages. The whole input must be the expression. Syntax errors are
+	 * added to {@code errors}, which may be {@code null}.
+	 */
+	public SQLiteParser.ExprContext parseExpr(CharSequence expr, List<SQLiteSyntaxError> errors) {
+		SQLiteLexer lexer = new SQLiteLexer(CharStreams.fromString(expr.toString()));
+		ErrorCollector collector = new ErrorCollector();
+		lexer.removeErrorListeners();
+		lexer.addErrorListener(collector);
+
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		SQLiteParser parser = new SQLiteExprParser(tokens);
+		if (cache != null) {
+			cache.install(lexer);
+			cache.install(parser);
+		}
+		try {
+			return parse(parser, tokens, collector, SQLiteParser::expr, true);
+		}
+		finally {
+			if (cache != null) {
+				cache.checkpoint();
+			}
+			if (errors != null) {
+				errors.addAll(collector.errors);
+			}
+		}
+	}
+
+	/**
+	 * Runs both stages on an already wired parser. The parser's error listeners,
+	 * error strategy and prediction mode are replaced.
+	 */
+	protected SQLiteParseResult parse(SQLiteParser parser, CommonTokenStream tokens, ErrorCollector errors) {
+		return parse(parser, tokens, errors, SQLiteParser::parse);
+	}
+
+	private SQLiteParseResult parse(SQLiteParser parser, CommonTokenStream tokens, ErrorCollector errors,
+									Function<SQLiteParser, SQLiteParser.ParseContext> rule)
+	{
+		SQLiteParserEvents.Lex lexEvent = new SQLiteParserEvents.Lex();
+		SQLiteParserEvents.Parse parseEvent = new SQLiteParserEvents.Parse();
+		if (metrics == null && !lexEvent.isEnabled() && !parseEvent.isEnabled()) {
+			SQLiteParser.ParseContext tree = parse(parser, tokens, errors, rule, false);
+			return new SQLiteParseResult(tree, tokens, parser, modeOf(parser), errors.errors);
+		}
+
+		long start = System.nanoTime();
+		lexEvent.begin();
+		tokens.fill();
+		lexEvent.end();
+		long lexed = System.nanoTime();
+		parseEvent.begin();
+		SQLiteParser.ParseContext tree = parse(parser, tokens, errors, rule, false);
+		parseEvent.end();
+		long parsed = System.nanoTime();
+
+		Mode mode = modeOf(parser);
+		int tokenCount = tokens.size();
+		int nodes = metrics != null || parseEvent.shouldCommit() ? countNodes(tree) : 0;
+		if (lexEvent.shouldCommit()) {
+			lexEvent.chars = tokens.getTokenSource().getInputStream().size();
+			lexEvent.tokens = tokenCount;
+			lexEvent.commit();
+		}
+		if (parseEvent.shouldCommit()) {
+			parseEvent.mode = mode.name();
+			parseEvent.tokens = tokenCount;
+			parseEvent.treeNodes = nodes;
+			parseEvent.errors = errors.errors.size();
+			parseEvent.commit();
+		}
+		if (metrics != null) {
+			metrics.recordParse(cache, lexed - start, parsed - lexed, tokenCount, nodes, mode == Mode.LL, errors.errors.size());
+		}
+		return new SQLiteParseResult(tree, tokens, parser, mode, errors.errors);
+	}
+
+	/**
+	 * Walks {@code tree} with {@code listener}, emitting a {@link SQLiteParserEvents.Walk}
+	 * and recording the time into the metrics if there are any.
+	 */
+	public void walk(ParseTreeListener listener, ParseTree tree) {
+		SQLiteParserEvents.Walk event = new SQLiteParserEvents.Walk();
+		if (metrics == null && !event.isEnabled()) {
+			ParseTreeWalker.DEFAULT.walk(listener, tree);
+			return;
+		}
+		long start = System.nanoTime();
+		event.begin();
+		ParseTreeWalker.DEFAULT.walk(listener, tree);
+		event.end();
+		if (metrics != null) {
+			metrics.recordWalk(System.nanoTime() - start);
+		}
+		if (event.shouldCommit()) {
+			event.listener = listener.getClass().getName();
+			event.commit();
+		}
+	}
+
+	private static Mode modeOf(SQLiteParser parser) {
+		return parser.getInterpreter().getPredictionMode() == PredictionMode.SLL ? Mode.SLL : Mode.LL;
+	}
+
+	private static int countNodes(ParseTree root) {
+		int n = 0;
+		ArrayDeque<ParseTree> stack = new ArrayDeque<>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			ParseTree node = stack.pop();
+			n++;
+			for (int i = 0; i < node.getChildCount(); i++) {
+				stack.push(node.getChild(i));
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Runs both stages of {@code rule}. With {@code toEof}, input left over after
+	 * the rule is an error; rules that end in {@code EOF} check that themselves.
+	 * The parser is left in the prediction mode of the stage that produced the tree.
+	 */
+	protected <T extends ParserRuleContext> T parse(SQLiteParser parser, CommonTokenStream tokens, ErrorCollector errors,
+													Function<SQLiteParser, T> rule, boolean toEof)
+	{
+		parser.removeErrorListeners();
+		parser.setErrorHandler(new BailErrorStrategy());
+		parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+		try {
+			T tree = rule.apply(parser);
+			if (!toEof || parser.getCurrentToken().getType() == Token.EOF) {
+				return tree;
+			}
+		}
+		catch (SQLiteParseLimitException ex) {
+			throw ex;
+		}
+		catch (ParseCancellationException ex) {
+			// SLL could not decide or the input is invalid; fall through to LL
+		}
+
+		tokens.seek(0);
+		parser.reset();
+		// reset() keeps the ATN state the SLL stage stopped in; the start rule
+		// must see none, or error recovery follows a bogus invoking state
+		parser.setState(ATNState.INVALID_STATE_NUMBER);
+		parser.addErrorListener(errors);
+		parser.setErrorHandler(new SQLiteErrorStrategy());
+		parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+		StatementPrediction prediction = new StatementPrediction(parser);
+		parser.addParseListener(prediction);
+		T tree;
+		try {
+			tree = rule.apply(parser);
+		}
+		finally {
+			parser.removeParseListener(prediction);
+			parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+		}
+		Token extra = parser.getCurrentToken();
+		if (toEof && extra.getType() != Token.EOF) {
+			parser.notifyErrorListeners(extra, "extraneous input '" + extra.getText() + "' expecting <EOF>", null);
+		}
+		return tree;
+	}
+
+	/**
+	 * Predicts in LL mode only within a statement. Between statements the
+	 * decisions of {@code sql_stmt_list} are ambiguous, as a {@code ;} can end one
+	 * list or continue it, and so is the choice between {@code update_stmt} and
+	 * {@code update_stmt_limited} (or the delete ones) in {@code sql_stmt};
+	 * full-context prediction reads on to the end of the input, or of a broken
+	 * statement and those after it, to find that out. SLL takes the first
+	 * alternative, as LL does in the end and as the SLL stage does.
+	 */
+	private static final class StatementPrediction implements ParseTreeListener {
+		private final SQLiteParser parser;
+
+		StatementPrediction(SQLiteParser parser) {
+			this.parser = parser;
+		}
+
+		@Override
+		public void enterEveryRule(ParserRuleContext ctx) {
+			if (ctx.getRuleIndex() == SQLiteParser.RULE_sql_stmt_list) {
+				parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+			}
+			else if (ctx.getParent() instanceof SQLiteParser.Sql_stmtContext) {
+				parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+			}
+		}
+
+		@Override
+		public void exitEveryRule(ParserRuleContext ctx) {
+			if (ctx.getRuleIndex() == SQLiteParser.RULE_sql_stmt) {
+				parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+			}
+		}
+
+		@Override
+		public void visitTerminal(TerminalNode node) {
+		}
+
+		@Override
+		public void visitErrorNode(ErrorNode node) {
+		}
+	}
+
+	/** Collects syntax errors from both the lexer and the LL stage. */
+	protected static class ErrorCollector extends BaseErrorListener {
+		final List<SQLiteSyntaxError> errors = new ArrayList<>();
+
+		@Override
+		public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+								int line, int charPositionInLine, String msg,
+								RecognitionException e)
+		{
+			Token token = offendingSymbol instanceof Token ? (Token)offendingSymbol : null;
+			errors.add(new SQLiteSyntaxError(line, charPositionInLine, msg, token));
+		}
+	}
+}
@@ -0,0 +1,67 @@
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+/**
+ * Thrown when a parse reaches one of its {@link SQLiteParseLimits}. The parse
+ * is abandoned; there is no partial tree. A parse stopped by an interrupt leaves
+ * the thread's interrupt flag set.
+ */
+public class SQLiteParseLimitException extends ParseCancellationException {
+	private static final long serialVersionUID = 1L;
+
+	private final SQLiteParseLimits.Limit limit;
+	private final long threshold;
+	private final int line;
+	private final int charPositionInLine;
+	private final int offset;
+
+	SQLiteParseLimitException(SQLiteParseLimits.Limit limit, long threshold, Token at) {
+		super(message(limit, threshold, at));
+		this.limit = limit;
+		this.threshold = threshold;
+		this.line = at != null ? at.getLine() : 0;
+		this.charPositionInLine = at != null ? at.getCharPositionInLine() : -1;
+		this.offset = at != null ? at.getStartIndex() : -1;
+	}
+
+	/** The limit that was reached. */
+	public SQLiteParseLimits.Limit getLimit() {
+		return limit;
+	}
+
+	/**
+	 * The configured value of the limit: milliseconds for {@link SQLiteParseLimits.Limit#TIMEOUT},
+	 * a count for the others; -1 for an interrupt or a stack overflow.
+	 */
+	public long getThreshold() {
+		return threshold;
+	}
+
+	/** Line of the token the parser was reading, 1-based; 0 if it had read none. */
+	public int getLine() {
+		return line;
+	}
+
+	public int getCharPositionInLine() {
+		return charPositionInLine;
+	}
+
+	/** Character offset of the token the parser was reading, or -1. */
+	public int getOffset() {
+		return offset;
+	}
+
+	private static String message(SQLiteParseLimits.Limit limit, long threshold, Token at) {
+		String where = at != null ? " at line " + at.getLine() + ":" + at.getCharPositionInLine() : "";
+		switch (limit) {
+			case TIMEOUT:
+				return "parse timed out after " + threshold + " ms" + where;
+			case INTERRUPTED:
+				return "parse interrupted" + where;
+			case STACK:
+				return "parse ran out of stack" + where;
+			default:
+				return "parse exceeded " + limit.name().toLowerCase() + " limit of " + threshold + where;
+		}
+	}
+}
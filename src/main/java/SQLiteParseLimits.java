@@ -0,0 +1,264 @@
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.time.Duration;
+
+/**
+ * Bounds on one parse of untrusted SQL, for {@link SQLiteParseEngine#parse(CharSequence, SQLiteParseLimits)}:
+ * <ul>
+ * <li>a timeout, from the call to the end of both stages, during which the
+ * parsing thread may also be {@linkplain Thread#interrupt() interrupted}, as
+ * {@code Future.cancel(true)} does
+ * <li>the number of tokens lexed, hidden ones included
+ * <li>the depth of the tree; a left-recursive chain such as {@code 1 + 1 + ...}
+ * nests one {@code expr} per operator
+ * <li>the number of tree nodes, rules and tokens
+ * </ul>
+ * They are checked as the parser enters a rule and adds a token, and as
+ * prediction reads ahead, so that a decision scanning far ahead is stopped too;
+ * the clock and the interrupt flag are read every 64 tokens and rules. A parse
+ * that reaches a limit, or runs out of stack first, throws a
+ * {@link SQLiteParseLimitException} naming it.
+ * <p>
+ * A nesting depth of a few hundred is plenty for hand-written SQL; on a thread
+ * with the default 1 MB stack, the parser overflows at about 1500 nested
+ * parentheses. Instances are immutable.
+ */
+public final class SQLiteParseLimits {
+	/** No limits. */
+	public static final SQLiteParseLimits NONE = new Builder().build();
+
+	private static final int CHECK_INTERVAL = 64;
+
+	/** The limit a parse ran into. */
+	public enum Limit {
+		TIMEOUT,
+		/** The parsing thread was interrupted. */
+		INTERRUPTED,
+		TOKENS,
+		DEPTH,
+		NODES,
+		/** The parser ran out of stack before reaching {@link #DEPTH}. */
+		STACK
+	}
+
+	private final long timeoutNanos;
+	private final int maxTokens;
+	private final int maxDepth;
+	private final int maxNodes;
+
+	private SQLiteParseLimits(Builder builder) {
+		this.timeoutNanos = builder.timeoutNanos;
+		this.maxTokens = builder.maxTokens;
+		this.maxDepth = builder.maxDepth;
+		this.maxNodes = builder.maxNodes;
+	}
+
+	/** The timeout, or {@code null} for none. */
+	public Duration getTimeout() {
+		return timeoutNanos == Long.MAX_VALUE ? null : Duration.ofNanos(timeoutNanos);
+	}
+
+	public int getMaxTokens() { return maxTokens; }
+
+	public int getMaxDepth() { return maxDepth; }
+
+	public int getMaxNodes() { return maxNodes; }
+
+	/** Starts the clock of one parse. */
+	Guard start() {
+		return new Guard(this);
+	}
+
+	@Override
+	public String toString() {
+		return "SQLiteParseLimits[timeout=" + getTimeout() + ", maxTokens=" + maxTokens
+			+ ", maxDepth=" + maxDepth + ", maxNodes=" + maxNodes + "]";
+	}
+
+	/** Collects limits; each one is unlimited unless set. */
+	public static class Builder {
+		private long timeoutNanos = Long.MAX_VALUE;
+		private int maxTokens = Integer.MAX_VALUE;
+		private int maxDepth = Integer.MAX_VALUE;
+		private int maxNodes = Integer.MAX_VALUE;
+
+		/** The time a parse may take, lexing included; {@code null} for no limit. */
+		public Builder timeout(Duration timeout) {
+			if (timeout != null && timeout.isNegative()) {
+				throw new IllegalArgumentException("timeout " + timeout);
+			}
+			timeoutNanos = timeout == null ? Long.MAX_VALUE : saturatedNanos(timeout);
+			return this;
+		}
+
+		public Builder maxTokens(int maxTokens) {
+			this.maxTokens = positive("maxTokens", maxTokens);
+			return this;
+		}
+
+		public Builder maxDepth(int maxDepth) {
+			this.maxDepth = positive("maxDepth", maxDepth);
+			return this;
+		}
+
+		public Builder maxNodes(int maxNodes) {
+			this.maxNodes = positive("maxNodes", maxNodes);
+			return this;
+		}
+
+		public SQLiteParseLimits build() {
+			return new SQLiteParseLimits(this);
+		}
+
+		private static int positive(String name, int value) {
+			if (value <= 0) {
+				throw new IllegalArgumentException(name + " " + value);
+			}
+			return value;
+		}
+
+		private static long saturatedNanos(Duration timeout) {
+			try {
+				return timeout.toNanos();
+			}
+			catch (ArithmeticException e) {
+				return Long.MAX_VALUE;
+			}
+		}
+	}
+
+	/**
+	 * The limits of one parse in progress: a parse listener counting rules and
+	 * tokens, and the token stream the parser and its prediction read through.
+	 */
+	static final class Guard implements ParseTreeListener {
+		private final SQLiteParseLimits limits;
+		private final long start = System.nanoTime();
+		private Stream tokens;
+		private int depth;
+		private int nodes;
+		private int countdown = CHECK_INTERVAL;
+		private boolean done;
+
+		Guard(SQLiteParseLimits limits) {
+			this.limits = limits;
+		}
+
+		/** The token stream to parse from; one per guard. */
+		CommonTokenStream tokens(TokenSource source) {
+			tokens = new Stream(source, this);
+			return tokens;
+		}
+
+		/** Forgets the tree of a stage that was abandoned. */
+		void restart() {
+			depth = 0;
+			nodes = 0;
+		}
+
+		/** Stops checking, so that the result can be used after the time is up. */
+		void finish() {
+			done = true;
+		}
+
+		SQLiteParseLimitException overflow() {
+			return new SQLiteParseLimitException(Limit.STACK, -1, current());
+		}
+
+		@Override
+		public void enterEveryRule(ParserRuleContext ctx) {
+			if (++depth > limits.maxDepth) {
+				throw trip(Limit.DEPTH, limits.maxDepth, current());
+			}
+			node();
+		}
+
+		@Override
+		public void exitEveryRule(ParserRuleContext ctx) {
+			depth--;
+		}
+
+		@Override
+		public void visitTerminal(TerminalNode node) {
+			node();
+		}
+
+		@Override
+		public void visitErrorNode(ErrorNode node) {
+			node();
+		}
+
+		private void node() {
+			if (++nodes > limits.maxNodes) {
+				throw trip(Limit.NODES, limits.maxNodes, current());
+			}
+			tick();
+		}
+
+		void tick() {
+			if (--countdown > 0 || done) {
+				return;
+			}
+			countdown = CHECK_INTERVAL;
+			if (Thread.currentThread().isInterrupted()) {
+				throw trip(Limit.INTERRUPTED, -1, current());
+			}
+			if (limits.timeoutNanos != Long.MAX_VALUE && System.nanoTime() - start > limits.timeoutNanos) {
+				throw trip(Limit.TIMEOUT, limits.timeoutNanos / 1_000_000, current());
+			}
+		}
+
+		void fetched(int lexed, Token last) {
+			if (lexed > limits.maxTokens && !done) {
+				throw trip(Limit.TOKENS, limits.maxTokens, last);
+			}
+		}
+
+		private SQLiteParseLimitException trip(Limit limit, long threshold, Token at) {
+			done = true;
+			return new SQLiteParseLimitException(limit, threshold, at);
+		}
+
+		/** The token the parser or its prediction is at, without lexing further. */
+		private Token current() {
+			if (tokens == null || tokens.size() == 0) {
+				return null;
+			}
+			return tokens.get(Math.max(0, Math.min(tokens.index(), tokens.size() - 1)));
+		}
+	}
+
+	/** Counts the tokens lexed, and ticks the clock as tokens are lexed and read, by the parser or by prediction. */
+	private static final class Stream extends CommonTokenStream {
+		private final Guard guard;
+
+		Stream(TokenSource source, Guard guard) {
+			super(source);
+			this.guard = guard;
+		}
+
+		@Override
+		protected int fetch(int n) {
+			int fetched = super.fetch(n);
+			int lexed = tokens.size();
+			if (fetched > 0) {
+				Token last = tokens.get(lexed - 1);
+				guard.fetched(last.getType() == Token.EOF ? lexed - 1 : lexed, last);
+				guard.tick();
+			}
+			return fetched;
+		}
+
+		@Override
+		public void consume() {
+			super.consume();
+			guard.tick();
+		}
+	}
+}
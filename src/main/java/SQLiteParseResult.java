@@ -0,0 +1,58 @@
+import org.antlr.v4.runtime.CommonTokenStream;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a {@link SQLiteParseEngine} parse: the tree, the tokens it was
+ * built from, which prediction path produced it and any syntax errors.
+ */
+public class SQLiteParseResult {
+	private final SQLiteParser.ParseContext tree;
+	private final CommonTokenStream tokens;
+	private final SQLiteParser parser;
+	private final SQLiteParseEngine.Mode mode;
+	private final List<SQLiteSyntaxError> errors;
+	/** Built on first use. */
+	private volatile SQLiteScopeTree scopes;
+
+	public SQLiteParseResult(SQLiteParser.ParseContext tree,
+							 CommonTokenStream tokens,
+							 SQLiteParser parser,
+							 SQLiteParseEngine.Mode mode,
+							 List<SQLiteSyntaxError> errors)
+	{
+		this.tree = tree;
+		this.tokens = tokens;
+		this.parser = parser;
+		this.mode = mode;
+		this.errors = errors.isEmpty() ? Collections.<SQLiteSyntaxError>emptyList()
+									   : Collections.unmodifiableList(errors);
+	}
+
+	public SQLiteParser.ParseContext getTree() { return tree; }
+
+	public CommonTokenStream getTokens() { return tokens; }
+
+	/** The parser that built the tree; needed for {@code toStringTree(parser)}. */
+	public SQLiteParser getParser() { return parser; }
+
+	/** Which prediction path produced {@link #getTree()}. */
+	public SQLiteParseEngine.Mode getMode() { return mode; }
+
+	public List<SQLiteSyntaxError> getErrors() { return errors; }
+
+	public boolean hasErrors() { return !errors.isEmpty(); }
+
+	/**
+	 * The name scopes of {@link #getTree()}, built on the first call. Two threads
+	 * calling at once may both build it; either tree is the same.
+	 */
+	public SQLiteScopeTree getScopes() {
+		SQLiteScopeTree s = scopes;
+		if (s == null) {
+			scopes = s = SQLiteScopeTree.build(tree);
+		}
+		return s;
+	}
+}
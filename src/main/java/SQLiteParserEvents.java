@@ -0,0 +1,61 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events emitted by {@link SQLiteParseEngine}. Like all
+ * custom events they are off unless a recording turns them on, with an
+ * {@code <event name="sqlite.Parse">} entry in its {@code .jfc} settings or with
+ * {@code Recording.enable("sqlite.Parse")}; while they are off, emitting one
+ * costs a check of a static field.
+ */
+public final class SQLiteParserEvents {
+	private SQLiteParserEvents() {
+	}
+
+	@Name("sqlite.Lex")
+	@Label("SQLite Lex")
+	@Category("SQLite")
+	@Description("Tokenizing one input ahead of parsing it")
+	@StackTrace(false)
+	public static final class Lex extends Event {
+		@Label("Chars")
+		public int chars;
+
+		@Label("Tokens")
+		public int tokens;
+	}
+
+	@Name("sqlite.Parse")
+	@Label("SQLite Parse")
+	@Category("SQLite")
+	@Description("Both prediction stages of one parse, not counting the lexing")
+	@StackTrace(false)
+	public static final class Parse extends Event {
+		@Label("Prediction Mode")
+		@Description("SLL, or LL when the SLL stage had to fall back")
+		public String mode;
+
+		@Label("Tokens")
+		public int tokens;
+
+		@Label("Tree Nodes")
+		public int treeNodes;
+
+		@Label("Syntax Errors")
+		public int errors;
+	}
+
+	@Name("sqlite.Walk")
+	@Label("SQLite Walk")
+	@Category("SQLite")
+	@Description("One listener walk over a parse tree")
+	@StackTrace(false)
+	public static final class Walk extends Event {
+		@Label("Listener")
+		public String listener;
+	}
+}
@@ -0,0 +1,248 @@
+import org.antlr.v4.runtime.dfa.DFA;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters, histograms and gauges for the parses of one or more
+ * {@link SQLiteParseEngine}s created with this object.
+ * <p>
+ * The meters are named like Micrometer meters and {@link #getValues()} flattens
+ * them into one map, so that a registry can poll them with function counters and
+ * gauges without this library depending on one:
+ * <ul>
+ * <li>{@value #PARSES}, {@value #LL_FALLBACKS} and {@value #SYNTAX_ERRORS}: counters
+ * <li>{@value #LEX_TIME}, {@value #PARSE_TIME} and {@value #WALK_TIME}: histograms
+ * of nanoseconds
+ * <li>{@value #TOKENS} and {@value #TREE_NODES}: histograms per parse
+ * <li>{@value #DFA_STATES}: gauge of the parser and lexer DFA states in the
+ * cache the engine last parsed with
+ * </ul>
+ * Histograms keep eight buckets per power of two, so their percentiles are
+ * within 12.5% of the recorded values. Recording is lock-free.
+ */
+public class SQLiteParserMetrics {
+	public static final String PARSES = "sqlite.parses";
+	public static final String LL_FALLBACKS = "sqlite.parse.ll.fallbacks";
+	public static final String SYNTAX_ERRORS = "sqlite.parse.errors";
+	public static final String LEX_TIME = "sqlite.lex.time";
+	public static final String PARSE_TIME = "sqlite.parse.time";
+	public static final String WALK_TIME = "sqlite.walk.time";
+	public static final String TOKENS = "sqlite.parse.tokens";
+	public static final String TREE_NODES = "sqlite.parse.tree.nodes";
+	public static final String DFA_STATES = "sqlite.dfa.states";
+
+	private final LongAdder parses = new LongAdder();
+	private final LongAdder fallbacks = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final Histogram lexTime = new Histogram();
+	private final Histogram parseTime = new Histogram();
+	private final Histogram walkTime = new Histogram();
+	private final Histogram tokens = new Histogram();
+	private final Histogram treeNodes = new Histogram();
+	/** The DFA cache of the last parse; {@code null} for the generated DFA. */
+	private volatile SQLiteDfaCache cache;
+
+	void recordParse(SQLiteDfaCache cache, long lexNanos, long parseNanos, int tokenCount, int nodes,
+					 boolean fallback, int errorCount)
+	{
+		parses.increment();
+		if (fallback) {
+			fallbacks.increment();
+		}
+		if (errorCount > 0) {
+			errors.add(errorCount);
+		}
+		lexTime.record(lexNanos);
+		parseTime.record(parseNanos);
+		tokens.record(tokenCount);
+		treeNodes.record(nodes);
+		if (this.cache != cache) {
+			this.cache = cache;
+		}
+	}
+
+	void recordWalk(long nanos) {
+		walkTime.record(nanos);
+	}
+
+	public long getParses() { return parses.sum(); }
+
+	/** Parses whose SLL stage bailed out and that were re-parsed in LL mode. */
+	public long getLlFallbacks() { return fallbacks.sum(); }
+
+	/** Lexer and parser errors over all parses. */
+	public long getSyntaxErrors() { return errors.sum(); }
+
+	public Histogram getLexTime() { return lexTime; }
+
+	public Histogram getParseTime() { return parseTime; }
+
+	public Histogram getWalkTime() { return walkTime; }
+
+	public Histogram getTokens() { return tokens; }
+
+	public Histogram getTreeNodes() { return treeNodes; }
+
+	/** DFA states of the parser and the lexer, counted now. */
+	public long getDfaStates() {
+		SQLiteDfaCache c = cache;
+		if (c != null) {
+			SQLiteDfaCache.Generation g = c.getGeneration();
+			return countStates(g.getParserDFA()) + countStates(g.getLexerDFA());
+		}
+		return countStates(SQLiteParser._decisionToDFA) + countStates(SQLiteLexer._decisionToDFA);
+	}
+
+	private static long countStates(DFA[] dfas) {
+		long n = 0;
+		for (DFA dfa : dfas) {
+			n += dfa.states.size();
+		}
+		return n;
+	}
+
+	/**
+	 * Every meter as a name and a value: counters and gauges under their names,
+	 * histograms under their names plus {@code .count}, {@code .sum}, {@code .max},
+	 * {@code .p50}, {@code .p90} and {@code .p99}.
+	 */
+	public Map<String, Number> getValues() {
+		Map<String, Number> values = new LinkedHashMap<>();
+		values.put(PARSES, getParses());
+		values.put(LL_FALLBACKS, getLlFallbacks());
+		values.put(SYNTAX_ERRORS, getSyntaxErrors());
+		lexTime.putValues(LEX_TIME, values);
+		parseTime.putValues(PARSE_TIME, values);
+		walkTime.putValues(WALK_TIME, values);
+		tokens.putValues(TOKENS, values);
+		treeNodes.putValues(TREE_NODES, values);
+		values.put(DFA_STATES, getDfaStates());
+		return values;
+	}
+
+	/** Forgets all recorded values. */
+	public void reset() {
+		parses.reset();
+		fallbacks.reset();
+		errors.reset();
+		lexTime.reset();
+		parseTime.reset();
+		walkTime.reset();
+		tokens.reset();
+		treeNodes.reset();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("SQLiteParserMetrics[");
+		String separator = "";
+		for (Map.Entry<String, Number> e : getValues().entrySet()) {
+			sb.append(separator).append(e.getKey()).append('=').append(e.getValue());
+			separator = ", ";
+		}
+		return sb.append(']').toString();
+	}
+
+	/** A distribution of non-negative values in log-linear buckets. */
+	public static class Histogram {
+		private static final int SUB_BITS = 3;
+		private static final int SUB = 1 << SUB_BITS;
+
+		private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BITS + 1) * SUB);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		Histogram() {
+		}
+
+		void record(long value) {
+			long v = Math.max(0, value);
+			buckets.incrementAndGet(bucket(v));
+			count.increment();
+			sum.add(v);
+			max.accumulate(v);
+		}
+
+		public long getCount() { return count.sum(); }
+
+		public long getSum() { return sum.sum(); }
+
+		public long getMax() { return max.get(); }
+
+		public double getMean() {
+			long n = count.sum();
+			return n == 0 ? 0 : (double)sum.sum() / n;
+		}
+
+		/**
+		 * The smallest bucket bound at or below which a {@code quantile} share of
+		 * the values lie, capped at {@link #getMax()}; 0 if nothing was recorded.
+		 */
+		public long getPercentile(double quantile) {
+			long total = 0;
+			for (int i = 0; i < buckets.length(); i++) {
+				total += buckets.get(i);
+			}
+			if (total == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long)Math.ceil(quantile * total));
+			long seen = 0;
+			for (int i = 0; i < buckets.length(); i++) {
+				seen += buckets.get(i);
+				if (seen >= rank) {
+					return Math.min(upperBound(i), getMax());
+				}
+			}
+			return getMax();
+		}
+
+		void reset() {
+			for (int i = 0; i < buckets.length(); i++) {
+				buckets.set(i, 0);
+			}
+			count.reset();
+			sum.reset();
+			max.reset();
+		}
+
+		void putValues(String name, Map<String, Number> values) {
+			values.put(name + ".count", getCount());
+			values.put(name + ".sum", getSum());
+			values.put(name + ".max", getMax());
+			values.put(name + ".p50", getPercentile(0.5));
+			values.put(name + ".p90", getPercentile(0.9));
+			values.put(name + ".p99", getPercentile(0.99));
+		}
+
+		private static int bucket(long v) {
+			if (v < SUB) {
+				return (int)v;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(v);
+			int sub = (int)(v >>> (exponent - SUB_BITS)) & (SUB - 1);
+			return (exponent - SUB_BITS + 1) * SUB + sub;
+		}
+
+		private static long upperBound(int bucket) {
+			if (bucket < SUB) {
+				return bucket;
+			}
+			int exponent = bucket / SUB + SUB_BITS - 1;
+			long sub = bucket % SUB;
+			long lower = (1L << exponent) + (sub << (exponent - SUB_BITS));
+			return lower + (1L << (exponent - SUB_BITS)) - 1;
+		}
+
+		@Override
+		public String toString() {
+			return "Histogram[count=" + getCount() + ", mean=" + String.format("%.1f", getMean())
+				+ ", p50=" + getPercentile(0.5) + ", p99=" + getPercentile(0.99) + ", max=" + getMax() + "]";
+		}
+	}
+}
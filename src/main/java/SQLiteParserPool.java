@@ -0,0 +1,262 @@
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.dfa.DFA;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Reuses {@link SQLiteLexer}, {@link CommonTokenStream} and {@link SQLiteParser}
+ * triples across parses, with the two stages of a {@link SQLiteParseEngine}.
+ * <p>
+ * A {@link Lease} is one triple bound to one input. Leasing resets the lexer, the
+ * stream and the parser to their initial state, undoing whatever the previous
+ * holder changed (interpreter, token factory, listeners, tree building), and
+ * returning it drops every reference to the previous input and tree, including
+ * the ones the prediction simulator keeps from its last decision, so an idle
+ * triple retains nothing of its last parse.
+ * <p>
+ * Idle triples sit in a fixed array of slots taken and returned with
+ * compare-and-set, starting at a slot picked from the thread id. There is no
+ * thread-local state and no lock, so the pool serves virtual threads as well as
+ * platform threads: a thread that finds no idle triple builds a new one, and a
+ * triple returned to a full pool is dropped.
+ * <p>
+ * The tree of a parse stays valid after its lease is closed; the token stream and
+ * parser of the lease's {@link SQLiteParseResult} do not.
+ */
+public class SQLiteParserPool {
+	private static final CharStream EMPTY = CharStreams.fromString("");
+
+	private final SQLiteParseEngine engine;
+	private final AtomicReferenceArray<Lease> idle;
+	private final AtomicLong created = new AtomicLong();
+
+	/** A pool of twice as many triples as there are processors, over a default engine. */
+	public SQLiteParserPool() {
+		this(new SQLiteParseEngine());
+	}
+
+	public SQLiteParserPool(SQLiteParseEngine engine) {
+		this(engine, 2 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/** A pool keeping at most {@code capacity} idle triples, parsing with {@code engine}. */
+	public SQLiteParserPool(SQLiteParseEngine engine, int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		this.engine = engine;
+		this.idle = new AtomicReferenceArray<>(capacity);
+	}
+
+	public SQLiteParseEngine getEngine() {
+		return engine;
+	}
+
+	public int getCapacity() {
+		return idle.length();
+	}
+
+	/** How many triples the pool has built; stops growing once the pool is warm. */
+	public long getCreatedCount() {
+		return created.get();
+	}
+
+	/**
+	 * Parses {@code sql} with a pooled triple and returns the tree. Syntax errors
+	 * are added to {@code errors}, which may be {@code null}.
+	 */
+	public SQLiteParser.ParseContext parse(CharSequence sql, List<SQLiteSyntaxError> errors) {
+		return parse(CharStreams.fromString(sql.toString()), errors);
+	}
+
+	public SQLiteParser.ParseContext parse(CharStream input, List<SQLiteSyntaxError> errors) {
+		try (Lease lease = acquire(input)) {
+			SQLiteParseResult result = lease.parse();
+			if (errors != null) {
+				errors.addAll(result.getErrors());
+			}
+			return result.getTree();
+		}
+	}
+
+	/** Takes an idle triple, or builds one, and binds it to {@code input}. */
+	public Lease acquire(CharStream input) {
+		Lease lease = take();
+		if (lease == null) {
+			lease = new Lease(this);
+			created.incrementAndGet();
+		}
+		lease.bind(input);
+		return lease;
+	}
+
+	private Lease take() {
+		int n = idle.length();
+		int start = start(n);
+		for (int i = 0; i < n; i++) {
+			int slot = (start + i) % n;
+			Lease lease = idle.get(slot);
+			if (lease != null && idle.compareAndSet(slot, lease, null)) {
+				return lease;
+			}
+		}
+		return null;
+	}
+
+	private void give(Lease lease) {
+		int n = idle.length();
+		int start = start(n);
+		for (int i = 0; i < n; i++) {
+			int slot = (start + i) % n;
+			if (idle.get(slot) == null && idle.compareAndSet(slot, null, lease)) {
+				return;
+			}
+		}
+	}
+
+	private static int start(int n) {
+		long id = Thread.currentThread().getId();
+		int h = (int)(id ^ id >>> 32) * 0x9E3779B9;
+		return ((h ^ h >>> 16) & Integer.MAX_VALUE) % n;
+	}
+
+	/**
+	 * A lexer, token stream and parser bound to one input until {@link #close()},
+	 * which returns them to the pool. Not thread-safe, and not to be used after
+	 * closing.
+	 */
+	public static final class Lease implements AutoCloseable {
+		private final SQLiteParserPool pool;
+		private final SQLiteLexer lexer;
+		private final CommonTokenStream tokens;
+		private final SQLiteParser parser;
+		private final Forwarder lexerErrors = new Forwarder();
+		/** Installed between leases, so that no strategy of a past parse is kept. */
+		private final DefaultErrorStrategy idleStrategy = new DefaultErrorStrategy();
+		private LexerATNSimulator lexerSimulator;
+		private Simulator parserSimulator;
+		/** The DFA cache generation the simulators were built for, or {@code null} for the generated DFA. */
+		private SQLiteDfaCache.Generation generation;
+		private SQLiteParseEngine.ErrorCollector errors;
+		private boolean leased;
+
+		Lease(SQLiteParserPool pool) {
+			this.pool = pool;
+			lexer = new SQLiteLexer(EMPTY);
+			tokens = new CommonTokenStream(lexer);
+			parser = new SQLiteExprParser(tokens);
+		}
+
+		public SQLiteLexer getLexer() { return lexer; }
+
+		public CommonTokenStream getTokens() { return tokens; }
+
+		public SQLiteParser getParser() { return parser; }
+
+		/**
+		 * Runs both stages of the pool's engine on the input. The result's token
+		 * stream and parser belong to this lease.
+		 */
+		public SQLiteParseResult parse() {
+			SQLiteDfaCache cache = pool.engine.getDfaCache();
+			try {
+				return pool.engine.parse(parser, tokens, errors);
+			}
+			finally {
+				if (cache != null) {
+					cache.checkpoint();
+				}
+			}
+		}
+
+		/** Returns the triple to the pool; a second call does nothing. */
+		@Override
+		public void close() {
+			if (!leased) {
+				return;
+			}
+			leased = false;
+			lexer.setInputStream(EMPTY);
+			tokens.setTokenSource(lexer);
+			parser.setTokenStream(tokens);
+			parser.setErrorHandler(idleStrategy);
+			parser.removeErrorListeners();
+			parser.removeParseListeners();
+			parserSimulator.forget();
+			lexerErrors.target = null;
+			errors = null;
+			pool.give(this);
+		}
+
+		void bind(CharStream input) {
+			leased = true;
+			errors = new SQLiteParseEngine.ErrorCollector();
+			SQLiteDfaCache cache = pool.engine.getDfaCache();
+			SQLiteDfaCache.Generation current = cache != null ? cache.getGeneration() : null;
+			if (parserSimulator == null || generation != current) {
+				DFA[] parserDFA = current != null ? current.parserDFA : SQLiteParser._decisionToDFA;
+				PredictionContextCache parserContexts = current != null ? current.parserContexts : SQLiteParser._sharedContextCache;
+				DFA[] lexerDFA = current != null ? current.lexerDFA : SQLiteLexer._decisionToDFA;
+				PredictionContextCache lexerContexts = current != null ? current.lexerContexts : SQLiteLexer._sharedContextCache;
+				parserSimulator = new Simulator(parser, parserDFA, parserContexts);
+				lexerSimulator = new LexerATNSimulator(lexer, SQLiteLexer._ATN, lexerDFA, lexerContexts);
+				generation = current;
+			}
+			lexer.setInterpreter(lexerSimulator);
+			lexer.setTokenFactory(CommonTokenFactory.DEFAULT);
+			if (lexer.getErrorListeners().size() != 1 || lexer.getErrorListeners().get(0) != lexerErrors) {
+				lexer.removeErrorListeners();
+				lexer.addErrorListener(lexerErrors);
+			}
+			lexerErrors.target = errors;
+			lexer.setInputStream(input);
+			tokens.setTokenSource(lexer);
+			parser.setInterpreter(parserSimulator);
+			parser.setTokenStream(tokens);
+			parser.setBuildParseTree(true);
+			parser.setTrimParseTree(false);
+			parser.removeParseListeners();
+		}
+	}
+
+	/** The lexer's error listener for the whole life of a triple, forwarding to the current lease. */
+	private static final class Forwarder extends BaseErrorListener {
+		ANTLRErrorListener target;
+
+		@Override
+		public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+								int line, int charPositionInLine, String msg,
+								RecognitionException e)
+		{
+			if (target != null) {
+				target.syntaxError(recognizer, offendingSymbol, line, charPositionInLine, msg, e);
+			}
+		}
+	}
+
+	/** A prediction simulator that can let go of the last decision's input and context. */
+	private static final class Simulator extends SQLiteExprParser.Simulator {
+		Simulator(SQLiteParser parser, DFA[] decisionToDFA, PredictionContextCache contexts) {
+			super(parser, decisionToDFA, contexts);
+		}
+
+		void forget() {
+			_input = null;
+			_outerContext = null;
+			_dfa = null;
+			mergeCache = null;
+		}
+	}
+}
@@ -0,0 +1,561 @@
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.AtomTransition;
+import org.antlr.v4.runtime.atn.BasicBlockStartState;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+import org.antlr.v4.runtime.atn.DecisionState;
+import org.antlr.v4.runtime.atn.LookaheadEventInfo;
+import org.antlr.v4.runtime.atn.PlusBlockStartState;
+import org.antlr.v4.runtime.atn.PlusLoopbackState;
+import org.antlr.v4.runtime.atn.RuleTransition;
+import org.antlr.v4.runtime.atn.StarBlockStartState;
+import org.antlr.v4.runtime.atn.StarLoopEntryState;
+import org.antlr.v4.runtime.atn.Transition;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses with {@link SQLiteParser#setProfile(boolean) profiling} on and adds up
+ * the {@link DecisionInfo} of every parse per prediction decision: invocations,
+ * time spent predicting, SLL and LL lookahead depth, fallbacks to full-context
+ * prediction, ambiguities, context sensitivities and prediction errors.
+ * <p>
+ * A {@link Report} ranks the decisions by time and names each one by its rule,
+ * its ordinal among the decisions of that rule, the kind of block it decides and
+ * its line in {@code SQLiteParser.g4}. The rule line is exact; the decision line
+ * is that of the first symbol of the decision's first alternative within the
+ * rule, which is a good but not infallible guess. Lines are only known when the
+ * grammar is on the classpath, as it is in the jar. Reports are exported as text
+ * or as JSON.
+ * <p>
+ * Profiling is much slower than parsing; use it to find the decisions behind a
+ * slow query, not in production. Parses may run on several threads at once.
+ * <pre>
+ * java -cp ... SQLiteParserProfiler [--json] script.sql
+ * </pre>
+ */
+public class SQLiteParserProfiler {
+	private static final int SAMPLE_LENGTH = 80;
+	private static final DecisionMeta[] META = describeDecisions();
+
+	private final SQLiteParseEngine engine;
+	// guarded by this
+	private Totals[] totals;
+	private int parses;
+
+	public SQLiteParserProfiler() {
+		this(new SQLiteParseEngine());
+	}
+
+	public SQLiteParserProfiler(SQLiteParseEngine engine) {
+		this.engine = engine;
+		reset();
+	}
+
+	/** Parses {@code sql} through both stages of the engine and records the decisions taken. */
+	public SQLiteParseResult parse(CharSequence sql) {
+		return parse(CharStreams.fromString(sql.toString()));
+	}
+
+	public SQLiteParseResult parse(CharStream input) {
+		SQLiteLexer lexer = new SQLiteLexer(input);
+		SQLiteParseEngine.ErrorCollector errors = new SQLiteParseEngine.ErrorCollector();
+		lexer.removeErrorListeners();
+		lexer.addErrorListener(errors);
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		SQLiteParser parser = new SQLiteParser(tokens);
+		SQLiteDfaCache cache = engine.getDfaCache();
+		if (cache != null) {
+			cache.install(lexer);
+			cache.install(parser);
+		}
+		parser.setProfile(true);
+		try {
+			SQLiteParseResult result = engine.parse(parser, tokens, errors);
+			record(parser.getParseInfo().getDecisionInfo());
+			return result;
+		}
+		finally {
+			if (cache != null) {
+				cache.checkpoint();
+			}
+		}
+	}
+
+	/** Forgets everything recorded so far. */
+	public synchronized void reset() {
+		totals = new Totals[META.length];
+		for (int d = 0; d < totals.length; d++) {
+			totals[d] = new Totals();
+		}
+		parses = 0;
+	}
+
+	/** The decisions invoked since the last {@link #reset()}, the most expensive first. */
+	public synchronized Report getReport() {
+		List<Decision> decisions = new ArrayList<>();
+		for (int d = 0; d < totals.length; d++) {
+			if (totals[d].invocations > 0) {
+				decisions.add(new Decision(META[d], totals[d].copy()));
+			}
+		}
+		decisions.sort(Comparator.comparingLong(Decision::getTimeNanos).reversed()
+			.thenComparing(Comparator.comparingLong(Decision::getInvocations).reversed())
+			.thenComparingInt(Decision::getDecision));
+		return new Report(parses, decisions);
+	}
+
+	private synchronized void record(DecisionInfo[] infos) {
+		parses++;
+		for (DecisionInfo info : infos) {
+			if (info.invocations > 0) {
+				totals[info.decision].add(info);
+			}
+		}
+	}
+
+	/** Profiles the statements of a script and prints the report. */
+	public static void main(String[] args) throws IOException {
+		boolean json = args.length > 0 && args[0].equals("--json");
+		if (args.length != (json ? 2 : 1)) {
+			System.err.println("usage: SQLiteParserProfiler [--json] <script.sql>");
+			System.exit(2);
+		}
+		SQLiteParserProfiler profiler = new SQLiteParserProfiler();
+		new SQLiteStatementSplitter(profiler.engine).scan(Paths.get(args[json ? 1 : 0]),
+			(ordinal, text, offset, line) -> profiler.parse(text));
+		Report report = profiler.getReport();
+		System.out.print(json ? report.toJson() : report.toText(30));
+	}
+
+	/** Per-decision totals, as recorded. */
+	private static final class Totals {
+		long invocations;
+		long timeNanos;
+		long sllTotalLook;
+		long sllMaxLook;
+		long llFallbacks;
+		long llTotalLook;
+		long llMaxLook;
+		long ambiguities;
+		long contextSensitivities;
+		long errors;
+		long sllATNTransitions;
+		long sllDFATransitions;
+		long llATNTransitions;
+		long llDFATransitions;
+		String maxLookSample;
+
+		Totals copy() {
+			Totals copy = new Totals();
+			copy.invocations = invocations;
+			copy.timeNanos = timeNanos;
+			copy.sllTotalLook = sllTotalLook;
+			copy.sllMaxLook = sllMaxLook;
+			copy.llFallbacks = llFallbacks;
+			copy.llTotalLook = llTotalLook;
+			copy.llMaxLook = llMaxLook;
+			copy.ambiguities = ambiguities;
+			copy.contextSensitivities = contextSensitivities;
+			copy.errors = errors;
+			copy.sllATNTransitions = sllATNTransitions;
+			copy.sllDFATransitions = sllDFATransitions;
+			copy.llATNTransitions = llATNTransitions;
+			copy.llDFATransitions = llDFATransitions;
+			copy.maxLookSample = maxLookSample;
+			return copy;
+		}
+
+		void add(DecisionInfo info) {
+			invocations += info.invocations;
+			timeNanos += info.timeInPrediction;
+			sllTotalLook += info.SLL_TotalLook;
+			llFallbacks += info.LL_Fallback;
+			llTotalLook += info.LL_TotalLook;
+			ambiguities += info.ambiguities.size();
+			contextSensitivities += info.contextSensitivities.size();
+			errors += info.errors.size();
+			sllATNTransitions += info.SLL_ATNTransitions;
+			sllDFATransitions += info.SLL_DFATransitions;
+			llATNTransitions += info.LL_ATNTransitions;
+			llDFATransitions += info.LL_DFATransitions;
+			if (Math.max(info.SLL_MaxLook, info.LL_MaxLook) > Math.max(sllMaxLook, llMaxLook)) {
+				maxLookSample = sample(info.LL_MaxLook > info.SLL_MaxLook ? info.LL_MaxLookEvent : info.SLL_MaxLookEvent);
+			}
+			sllMaxLook = Math.max(sllMaxLook, info.SLL_MaxLook);
+			llMaxLook = Math.max(llMaxLook, info.LL_MaxLook);
+		}
+
+		private static String sample(LookaheadEventInfo event) {
+			if (event == null) {
+				return null;
+			}
+			String text = event.input.getText(Interval.of(event.startIndex, event.stopIndex));
+			text = text.replaceAll("\\s+", " ");
+			return text.length() <= SAMPLE_LENGTH ? text : text.substring(0, SAMPLE_LENGTH - 3) + "...";
+		}
+	}
+
+	/** What a decision is, independent of any parse. */
+	private static final class DecisionMeta {
+		final int decision;
+		final String rule;
+		final int ordinal;
+		final int count;
+		final String kind;
+		final int ruleLine;
+		final int line;
+
+		DecisionMeta(int decision, String rule, int ordinal, int count, String kind, int ruleLine, int line) {
+			this.decision = decision;
+			this.rule = rule;
+			this.ordinal = ordinal;
+			this.count = count;
+			this.kind = kind;
+			this.ruleLine = ruleLine;
+			this.line = line;
+		}
+	}
+
+	private static DecisionMeta[] describeDecisions() {
+		ATN atn = SQLiteParser._ATN;
+		int n = atn.getNumberOfDecisions();
+		int[] perRule = new int[SQLiteParser.ruleNames.length];
+		int[] ordinal = new int[n];
+		for (int d = 0; d < n; d++) {
+			ordinal[d] = ++perRule[atn.getDecisionState(d).ruleIndex];
+		}
+		List<String> grammar = readGrammar();
+		int[] ruleLines = ruleLines(grammar);
+		DecisionMeta[] meta = new DecisionMeta[n];
+		for (int d = 0; d < n; d++) {
+			DecisionState state = atn.getDecisionState(d);
+			int rule = state.ruleIndex;
+			int ruleLine = ruleLines[rule];
+			int line = ruleLine;
+			String symbol = leadingSymbol(state.transition(0).target);
+			if (ruleLine > 0 && symbol != null) {
+				int end = grammar.size() + 1;
+				for (int other : ruleLines) {
+					if (other > ruleLine && other < end) {
+						end = other;
+					}
+				}
+				Pattern word = Pattern.compile("(?<![\\w'])" + Pattern.quote(symbol) + "(?![\\w'])");
+				for (int i = ruleLine; i < end - 1; i++) {
+					if (word.matcher(stripComment(grammar.get(i))).find()) {
+						line = i + 1;
+						break;
+					}
+				}
+			}
+			meta[d] = new DecisionMeta(d, SQLiteParser.ruleNames[rule], ordinal[d], perRule[rule], kind(state), ruleLine, line);
+		}
+		return meta;
+	}
+
+	private static String kind(DecisionState state) {
+		if (state instanceof StarLoopEntryState) {
+			return "(...)* loop";
+		}
+		if (state instanceof PlusLoopbackState) {
+			return "(...)+ loop";
+		}
+		if (state instanceof StarBlockStartState) {
+			return "(...)* alternatives";
+		}
+		if (state instanceof PlusBlockStartState) {
+			return "(...)+ alternatives";
+		}
+		if (state instanceof BasicBlockStartState) {
+			return state.getNumberOfTransitions() == 2 && isEmptyAlternative(state.transition(1).target)
+				? "(...)?" : "alternatives";
+		}
+		return state.getClass().getSimpleName();
+	}
+
+	private static boolean isEmptyAlternative(ATNState state) {
+		return state.getStateType() == ATNState.BASIC && state.getNumberOfTransitions() == 1
+			&& state.transition(0).target.getStateType() == ATNState.BLOCK_END;
+	}
+
+	/** The first token or rule reached from {@code start} through epsilon transitions. */
+	private static String leadingSymbol(ATNState start) {
+		BitSet seen = new BitSet();
+		Deque<ATNState> queue = new ArrayDeque<>();
+		queue.add(start);
+		while (!queue.isEmpty()) {
+			ATNState state = queue.poll();
+			if (seen.get(state.stateNumber)) {
+				continue;
+			}
+			seen.set(state.stateNumber);
+			for (Transition t : state.getTransitions()) {
+				if (t instanceof RuleTransition) {
+					return SQLiteParser.ruleNames[((RuleTransition)t).target.ruleIndex];
+				}
+				if (t instanceof AtomTransition) {
+					return SQLiteParser.VOCABULARY.getSymbolicName(((AtomTransition)t).label);
+				}
+				if (t.isEpsilon()) {
+					queue.add(t.target);
+				}
+			}
+		}
+		return null;
+	}
+
+	private static List<String> readGrammar() {
+		InputStream in = SQLiteParserProfiler.class.getResourceAsStream("/SQLiteParser.g4");
+		if (in == null) {
+			return Collections.emptyList();
+		}
+		List<String> lines = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				lines.add(line);
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return lines;
+	}
+
+	/** The 1-based line each rule is defined on, or 0. */
+	private static int[] ruleLines(List<String> grammar) {
+		int[] lines = new int[SQLiteParser.ruleNames.length];
+		Pattern header = Pattern.compile("^(\\w+)\\s*(:.*)?$");
+		for (int i = 0; i < grammar.size(); i++) {
+			Matcher m = header.matcher(grammar.get(i));
+			if (!m.matches()) {
+				continue;
+			}
+			boolean colon = m.group(2) != null
+				|| (i + 1 < grammar.size() && grammar.get(i + 1).trim().startsWith(":"));
+			if (!colon) {
+				continue;
+			}
+			for (int r = 0; r < lines.length; r++) {
+				if (SQLiteParser.ruleNames[r].equals(m.group(1)) && lines[r] == 0) {
+					lines[r] = i + 1;
+				}
+			}
+		}
+		return lines;
+	}
+
+	private static String stripComment(String line) {
+		int comment = line.indexOf("//");
+		return comment < 0 ? line : line.substring(0, comment);
+	}
+
+	/** One decision's totals over the profiled parses. */
+	public static class Decision {
+		private final DecisionMeta meta;
+		private final Totals totals;
+
+		Decision(DecisionMeta meta, Totals totals) {
+			this.meta = meta;
+			this.totals = totals;
+		}
+
+		/** The decision number, as in {@code SQLiteParser._decisionToDFA}. */
+		public int getDecision() { return meta.decision; }
+
+		public String getRuleName() { return meta.rule; }
+
+		/** Which of the rule's decisions this is, from 1. */
+		public int getOrdinalInRule() { return meta.ordinal; }
+
+		public int getDecisionsInRule() { return meta.count; }
+
+		/** The kind of block decided, such as {@code (...)*} loop or alternatives. */
+		public String getKind() { return meta.kind; }
+
+		/** The line of the rule in {@code SQLiteParser.g4}, or 0 if the grammar was not found. */
+		public int getRuleLine() { return meta.ruleLine; }
+
+		/** The best guess at the line of the decision; see the class comment. */
+		public int getGrammarLine() { return meta.line; }
+
+		public long getInvocations() { return totals.invocations; }
+
+		public long getTimeNanos() { return totals.timeNanos; }
+
+		public long getSllTotalLook() { return totals.sllTotalLook; }
+
+		public long getSllMaxLook() { return totals.sllMaxLook; }
+
+		/** Invocations that fell back to full-context (LL) prediction. */
+		public long getLlFallbacks() { return totals.llFallbacks; }
+
+		public long getLlTotalLook() { return totals.llTotalLook; }
+
+		public long getLlMaxLook() { return totals.llMaxLook; }
+
+		public long getAmbiguities() { return totals.ambiguities; }
+
+		public long getContextSensitivities() { return totals.contextSensitivities; }
+
+		public long getErrors() { return totals.errors; }
+
+		public long getSllAtnTransitions() { return totals.sllATNTransitions; }
+
+		public long getSllDfaTransitions() { return totals.sllDFATransitions; }
+
+		public long getLlAtnTransitions() { return totals.llATNTransitions; }
+
+		public long getLlDfaTransitions() { return totals.llDFATransitions; }
+
+		/** The tokens of the deepest SLL or LL lookahead seen, possibly shortened, or {@code null}. */
+		public String getMaxLookSample() { return totals.maxLookSample; }
+
+		/** Average SLL tokens looked at per invocation. */
+		public double getAverageSllLook() {
+			return totals.invocations == 0 ? 0 : (double)totals.sllTotalLook / totals.invocations;
+		}
+
+		/** {@code rule[ordinal/count] kind (SQLiteParser.g4:line)}. */
+		public String getLocation() {
+			String where = meta.line > 0 ? " (SQLiteParser.g4:" + meta.line + ")" : "";
+			return meta.rule + "[" + meta.ordinal + "/" + meta.count + "] " + meta.kind + where;
+		}
+
+		@Override
+		public String toString() {
+			return "Decision[" + meta.decision + " " + getLocation() + ", invocations=" + totals.invocations
+				+ ", timeNanos=" + totals.timeNanos + "]";
+		}
+	}
+
+	/** A ranked snapshot of the profiled decisions. */
+	public static class Report {
+		private final int parses;
+		private final List<Decision> decisions;
+
+		Report(int parses, List<Decision> decisions) {
+			this.parses = parses;
+			this.decisions = Collections.unmodifiableList(decisions);
+		}
+
+		/** How many parses were profiled. */
+		public int getParses() { return parses; }
+
+		/** The decisions that were invoked, by descending time. */
+		public List<Decision> getDecisions() { return decisions; }
+
+		public long getTotalTimeNanos() {
+			long sum = 0;
+			for (Decision d : decisions) {
+				sum += d.getTimeNanos();
+			}
+			return sum;
+		}
+
+		/** A table of the {@code limit} most expensive decisions. */
+		public String toText(int limit) {
+			long total = Math.max(1, getTotalTimeNanos());
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("%d parses, %.3f ms in prediction over %d decisions%n",
+				parses, total / 1e6, decisions.size()));
+			sb.append(String.format("%4s %5s %9s %10s %6s %6s %6s %6s %6s %6s  %s%n",
+				"rank", "dec", "calls", "time ms", "time%", "avgSLL", "maxSLL", "LLfall", "maxLL", "ambig", "location"));
+			for (int i = 0; i < Math.min(limit, decisions.size()); i++) {
+				Decision d = decisions.get(i);
+				sb.append(String.format("%4d %5d %9d %10.3f %5.1f%% %6.2f %6d %6d %6d %6d  %s%n",
+					i + 1, d.getDecision(), d.getInvocations(), d.getTimeNanos() / 1e6,
+					100.0 * d.getTimeNanos() / total, d.getAverageSllLook(), d.getSllMaxLook(),
+					d.getLlFallbacks(), d.getLlMaxLook(), d.getAmbiguities(), d.getLocation()));
+				if (d.getMaxLookSample() != null && (d.getSllMaxLook() > 2 || d.getLlFallbacks() > 0)) {
+					sb.append(String.format("%40s deepest lookahead: %s%n", "", d.getMaxLookSample()));
+				}
+			}
+			return sb.toString();
+		}
+
+		public String toJson() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("{\n  \"parses\": ").append(parses);
+			sb.append(",\n  \"totalTimeNanos\": ").append(getTotalTimeNanos());
+			sb.append(",\n  \"decisions\": [");
+			for (int i = 0; i < decisions.size(); i++) {
+				Decision d = decisions.get(i);
+				sb.append(i == 0 ? "\n" : ",\n").append("    {");
+				sb.append("\"decision\": ").append(d.getDecision());
+				sb.append(", \"rule\": ");
+				quote(sb, d.getRuleName());
+				sb.append(", \"ordinalInRule\": ").append(d.getOrdinalInRule());
+				sb.append(", \"decisionsInRule\": ").append(d.getDecisionsInRule());
+				sb.append(", \"kind\": ");
+				quote(sb, d.getKind());
+				sb.append(", \"ruleLine\": ").append(d.getRuleLine());
+				sb.append(", \"grammarLine\": ").append(d.getGrammarLine());
+				sb.append(", \"invocations\": ").append(d.getInvocations());
+				sb.append(", \"timeNanos\": ").append(d.getTimeNanos());
+				sb.append(", \"sllTotalLook\": ").append(d.getSllTotalLook());
+				sb.append(", \"sllMaxLook\": ").append(d.getSllMaxLook());
+				sb.append(", \"llFallbacks\": ").append(d.getLlFallbacks());
+				sb.append(", \"llTotalLook\": ").append(d.getLlTotalLook());
+				sb.append(", \"llMaxLook\": ").append(d.getLlMaxLook());
+				sb.append(", \"ambiguities\": ").append(d.getAmbiguities());
+				sb.append(", \"contextSensitivities\": ").append(d.getContextSensitivities());
+				sb.append(", \"errors\": ").append(d.getErrors());
+				sb.append(", \"sllAtnTransitions\": ").append(d.getSllAtnTransitions());
+				sb.append(", \"sllDfaTransitions\": ").append(d.getSllDfaTransitions());
+				sb.append(", \"llAtnTransitions\": ").append(d.getLlAtnTransitions());
+				sb.append(", \"llDfaTransitions\": ").append(d.getLlDfaTransitions());
+				sb.append(", \"maxLookSample\": ");
+				quote(sb, d.getMaxLookSample());
+				sb.append('}');
+			}
+			sb.append(decisions.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+			return sb.toString();
+		}
+
+		private static void quote(StringBuilder sb, String s) {
+			if (s == null) {
+				sb.append("null");
+				return;
+			}
+			sb.append('"');
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				if (c == '"' || c == '\\') {
+					sb.append('\\').append(c);
+				}
+				else if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int)c));
+				}
+				else {
+					sb.append(c);
+				}
+			}
+			sb.append('"');
+		}
+
+		@Override
+		public String toString() {
+			return toText(Integer.MAX_VALUE);
+		}
+	}
+}
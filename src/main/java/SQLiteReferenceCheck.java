@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Regression check of {@link SQLiteReferenceExtractor}: each case lists the tables
+ * and columns a statement must report, as {@link SQLiteReferenceExtractor.Reference#toString()}
+ * writes them. Every case is extracted both while parsing and from a parse tree,
+ * and both must give the expected references; on the bundled warm-up corpus the
+ * two must agree with each other.
+ * <pre>
+ * java SQLiteReferenceCheck
+ * </pre>
+ * Exits with status 1 if any case fails.
+ */
+public class SQLiteReferenceCheck {
+	/** SQL, then the expected tables, then the expected columns. */
+	private static final String[][] CASES = {
+		{"SELECT a, t.b, u.c FROM main.t JOIN u AS uu ON t.id = uu.id WHERE d > 1",
+			"[READ main.t, READ u]", "[READ ?.a, READ main.t.b, READ main.t.id, READ u.id, READ ?.d, READ u.c]"},
+		{"SELECT * FROM t, u", "[READ t, READ u]", "[READ t.*, READ u.*]"},
+		{"SELECT a FROM t WHERE b IN (SELECT c FROM u WHERE u.d = t.e)",
+			"[READ t, READ u]", "[READ u.c, READ u.d, READ t.a, READ t.b, READ t.e]"},
+		{"WITH c AS (SELECT a FROM t) SELECT c.a, z FROM c", "[READ t]", "[READ t.a]"},
+		{"INSERT INTO s.t (a, b) SELECT c, d FROM u ON CONFLICT (a) DO UPDATE SET b = excluded.b",
+			"[WRITE s.t, READ u]", "[WRITE s.t.a, WRITE s.t.b, READ u.c, READ u.d, READ s.t.a, READ s.t.b]"},
+		{"UPDATE t SET a = 1 FROM u WHERE t.id = u.id", "[WRITE t, READ u]", "[WRITE t.a, READ t.id, READ u.id]"},
+		{"DELETE FROM t AS q WHERE q.a = 1", "[WRITE t]", "[READ t.a]"},
+		{"CREATE TRIGGER tr AFTER UPDATE OF a ON t WHEN NEW.a > OLD.a BEGIN INSERT INTO log (x) VALUES (NEW.a); END",
+			"[WRITE t, WRITE log]", "[WRITE log.x, READ t.a]"},
+		{"SELECT a FROM (SELECT b AS a FROM t) s WHERE s.a > 0", "[READ t]", "[READ t.b]"},
+		// x IN tbl parses as expr IN expr, with the table as a column
+		{"select a from t where a in u", "[READ t, READ u]", "[READ t.a]"},
+		{"select a from t where a not in u", "[READ t, READ u]", "[READ t.a]"},
+		{"select a from t where a in main.u", "[READ t, READ main.u]", "[READ t.a]"},
+		{"select a from t where a in u and b = 1", "[READ t, READ u]", "[READ t.a, READ t.b]"},
+		{"with c as (select x from v) delete from u where x in c", "[READ v, WRITE u]", "[READ v.x, READ u.x]"},
+		{"select a from t where a in (u)", "[READ t]", "[READ t.a, READ t.u]"},
+		{"select a from t where a in (select b from u)", "[READ t, READ u]", "[READ u.b, READ t.a]"},
+		// a WITH only hides tables inside the statement that declares it
+		{"SELECT * FROM (WITH users AS (SELECT 1) SELECT * FROM users) s, users", "[READ users]", "[READ users.*]"},
+		{"SELECT (WITH secrets AS (SELECT 1) SELECT 1) FROM secrets", "[READ secrets]", "[]"},
+	};
+
+	public static void main(String[] args) throws IOException {
+		SQLiteParseEngine engine = new SQLiteParseEngine();
+		SQLiteReferenceExtractor extractor = new SQLiteReferenceExtractor(engine);
+		int failures = 0;
+		for (String[] c : CASES) {
+			String expected = c[1] + " " + c[2];
+			String listened = describe(extractor.extract(c[0], null));
+			String walked = describe(extractor.extract(engine.parse(c[0]).getTree()));
+			if (!expected.equals(listened) || !expected.equals(walked)) {
+				System.out.println(c[0]);
+				System.out.println("  expected " + expected);
+				System.out.println("  parsing  " + listened);
+				System.out.println("  tree     " + walked);
+				failures++;
+			}
+		}
+		try (InputStream in = SQLiteReferenceCheck.class.getClassLoader().getResourceAsStream(SQLiteDfaSnapshot.WARMUP_CORPUS)) {
+			if (in != null) {
+				String corpus = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+				if (!extractor.extract(corpus, null).toString().equals(extractor.extract(engine.parse(corpus).getTree()).toString())) {
+					System.out.println(SQLiteDfaSnapshot.WARMUP_CORPUS + ": parsing and tree disagree");
+					failures++;
+				}
+			}
+		}
+
+		System.out.println(CASES.length + " reference cases, " + failures + " failures");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static String describe(SQLiteReferenceExtractor.References references) {
+		return references.getTables() + " " + references.getColumns();
+	}
+}
@@ -0,0 +1,829 @@
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lists the schemas, tables and columns that SQL statements refer to, each marked
+ * as read or written, for access checks that do not need the parse tree.
+ * <p>
+ * The references are collected by a parse listener on a parser with
+ * {@code setBuildParseTree(false)}, through both stages of a
+ * {@link SQLiteParseEngine}; {@link #extract(ParseTree)} runs the same listener
+ * over a tree that was already built.
+ * <p>
+ * A statement writes the table it inserts into, updates or deletes from, and the
+ * table or view it creates, alters or drops, including the table of a new index
+ * or trigger; the columns it assigns or defines are written to. Everything else
+ * it names is read, and so is everything under {@code EXPLAIN}. Columns are
+ * attributed to a table through the aliases and the {@code FROM} sources of the
+ * query block they appear in, then of the enclosing blocks; {@code NEW} and
+ * {@code OLD} in a trigger stand for its table, {@code excluded} in an upsert for
+ * the table inserted into, and the table of {@code x IN tbl} is read, although
+ * the grammar parses it as a column. A column whose block has several
+ * sources and that is not qualified cannot be attributed without a schema and has
+ * no table; a {@code *} stands for every table of its block. Common table
+ * expressions and subqueries are not tables: the references inside them are
+ * reported, the columns read from them are not.
+ * <p>
+ * An extractor may be shared between threads.
+ */
+public class SQLiteReferenceExtractor {
+
+	/** Whether a statement reads or writes a table or column. */
+	public enum Access {
+		READ,
+		WRITE
+	}
+
+	private final SQLiteParseEngine engine;
+
+	public SQLiteReferenceExtractor() {
+		this(new SQLiteParseEngine());
+	}
+
+	public SQLiteReferenceExtractor(SQLiteParseEngine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * The references of the statements in {@code sql}. Syntax errors are added to
+	 * {@code errors}, which may be {@code null}; the references of a statement with
+	 * errors are those of the part the parser recovered.
+	 */
+	public References extract(CharSequence sql, List<SQLiteSyntaxError> errors) {
+		// the hand-written lexer has no errors to report; it lexes everything the generated one does
+		return extract(new CommonTokenStream(new SQLiteFastLexer(sql)), new SQLiteParseEngine.ErrorCollector(), errors);
+	}
+
+	public References extract(CharStream input, List<SQLiteSyntaxError> errors) {
+		SQLiteLexer lexer = new SQLiteLexer(input);
+		SQLiteParseEngine.ErrorCollector collector = new SQLiteParseEngine.ErrorCollector();
+		lexer.removeErrorListeners();
+		lexer.addErrorListener(collector);
+		SQLiteDfaCache cache = engine.getDfaCache();
+		if (cache != null) {
+			cache.install(lexer);
+		}
+		return extract(new CommonTokenStream(lexer), collector, errors);
+	}
+
+	private References extract(CommonTokenStream tokens, SQLiteParseEngine.ErrorCollector collector,
+							   List<SQLiteSyntaxError> errors)
+	{
+		SQLiteParser parser = new SQLiteExprParser(tokens);
+		SQLiteDfaCache cache = engine.getDfaCache();
+		if (cache != null) {
+			cache.install(parser);
+		}
+		Collector references = new Collector();
+		parser.setBuildParseTree(false);
+		parser.addParseListener(references);
+		try {
+			engine.parse(parser, tokens, collector, p -> {
+				references.reset();
+				return p.parse();
+			}, false);
+			return references.build();
+		}
+		finally {
+			if (cache != null) {
+				cache.checkpoint();
+			}
+			if (errors != null) {
+				errors.addAll(collector.errors);
+			}
+		}
+	}
+
+	/** The references of a tree built by {@link SQLiteParser#parse()}. */
+	public References extract(ParseTree tree) {
+		Collector references = new Collector();
+		ParseTreeWalker.DEFAULT.walk(references, tree);
+		return references.build();
+	}
+
+	/** A table, or a column of one. Names are unquoted. */
+	public static final class Reference {
+		private final String schema;
+		private final String table;
+		private final String column;
+		private final Access access;
+
+		Reference(String schema, String table, String column, Access access) {
+			this.schema = schema;
+			this.table = table;
+			this.column = column;
+			this.access = access;
+		}
+
+		/** The schema the name was qualified with, or {@code null}. */
+		public String getSchema() { return schema; }
+
+		/** The table, or {@code null} for a column that could not be attributed. */
+		public String getTable() { return table; }
+
+		/** The column, {@code *} for all of them, or {@code null} for a reference to the table itself. */
+		public String getColumn() { return column; }
+
+		public Access getAccess() { return access; }
+
+		public boolean isColumn() {
+			return column != null;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(access.name()).append(' ');
+			if (schema != null) {
+				sb.append(schema).append('.');
+			}
+			sb.append(table != null ? table : "?");
+			if (column != null) {
+				sb.append('.').append(column);
+			}
+			return sb.toString();
+		}
+	}
+
+	/** One top-level statement: what it is and whether it can change the database. */
+	public static final class Statement {
+		private final int kind;
+		private final boolean explain;
+
+		Statement(int kind, boolean explain) {
+			this.kind = kind;
+			this.explain = explain;
+		}
+
+		/**
+		 * The rule index of the statement, such as {@link SQLiteParser#RULE_select_stmt},
+		 * or {@link SQLiteParser#RULE_sql_stmt} if it could not be parsed.
+		 */
+		public int getKind() { return kind; }
+
+		public boolean isExplain() { return explain; }
+
+		/**
+		 * {@link Access#READ} for the statements {@code sqlite3_stmt_readonly} is
+		 * true for: queries, {@code EXPLAIN}, transaction control, {@code ATTACH}
+		 * and {@code DETACH}. {@link Access#WRITE} for the rest, {@code PRAGMA}
+		 * included.
+		 */
+		public Access getAccess() {
+			if (explain) {
+				return Access.READ;
+			}
+			switch (kind) {
+				case SQLiteParser.RULE_select_stmt:
+				case SQLiteParser.RULE_begin_stmt:
+				case SQLiteParser.RULE_commit_stmt:
+				case SQLiteParser.RULE_rollback_stmt:
+				case SQLiteParser.RULE_savepoint_stmt:
+				case SQLiteParser.RULE_release_stmt:
+				case SQLiteParser.RULE_attach_stmt:
+				case SQLiteParser.RULE_detach_stmt:
+					return Access.READ;
+				default:
+					return Access.WRITE;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return (explain ? "EXPLAIN " : "") + SQLiteParser.ruleNames[kind] + " " + getAccess();
+		}
+	}
+
+	/** The references of a script, each listed once. Immutable. */
+	public static final class References {
+		private final List<Statement> statements;
+		private final List<String> schemas;
+		private final List<Reference> tables;
+		private final List<Reference> columns;
+
+		References(List<Statement> statements, List<String> schemas, List<Reference> tables, List<Reference> columns) {
+			this.statements = Collections.unmodifiableList(statements);
+			this.schemas = Collections.unmodifiableList(schemas);
+			this.tables = Collections.unmodifiableList(tables);
+			this.columns = Collections.unmodifiableList(columns);
+		}
+
+		public List<Statement> getStatements() { return statements; }
+
+		/** The schemas named anywhere, once each ignoring case. */
+		public List<String> getSchemas() { return schemas; }
+
+		/** Table references in order of appearance; a table both read and written is listed twice. */
+		public List<Reference> getTables() { return tables; }
+
+		/** Column references in order of attribution. */
+		public List<Reference> getColumns() { return columns; }
+
+		/** Whether no statement can change the database. */
+		public boolean isReadOnly() {
+			for (Statement s : statements) {
+				if (s.getAccess() == Access.WRITE) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "References[statements=" + statements + ", tables=" + tables + ", columns=" + columns + "]";
+		}
+	}
+
+	/** A table or subquery in scope of a query block. */
+	private static final class Source {
+		final String schema;
+		/** {@code null} for a subquery, a common table expression or a table-valued function. */
+		final String table;
+		String alias;
+
+		Source(String schema, String table, String alias) {
+			this.schema = schema;
+			this.table = table;
+			this.alias = alias;
+		}
+
+		boolean matches(String qualifier) {
+			String name = alias != null ? alias : table;
+			return name != null && SQLiteSchemaCatalog.fold(name).equals(SQLiteSchemaCatalog.fold(qualifier));
+		}
+	}
+
+	/** A column waiting for the sources of its block. */
+	private static final class ColumnRef {
+		final String schema;
+		final String qualifier;
+		final String name;
+
+		ColumnRef(String schema, String qualifier, String name) {
+			this.schema = schema;
+			this.qualifier = qualifier;
+			this.name = name;
+		}
+	}
+
+	/** A query block, a DML or DDL statement, or the top-level statement. */
+	private static final class Block {
+		final List<Source> sources = new ArrayList<>(2);
+		final List<ColumnRef> columns = new ArrayList<>(4);
+		final int rule;
+		/** How the block's columns are used; the arguments of a virtual table define them. */
+		final Access access;
+		/** Folded names of the common table expressions its {@code WITH} declares, or {@code null}. */
+		Set<String> ctes;
+
+		Block(int rule, Access access) {
+			this.rule = rule;
+			this.access = access;
+		}
+
+		/** Whether {@code qualifier} is {@code NEW} or {@code OLD} in a trigger, or {@code excluded} in an upsert. */
+		boolean isPseudoTable(String qualifier) {
+			if (sources.isEmpty()) {
+				return false;
+			}
+			String q = SQLiteSchemaCatalog.fold(qualifier);
+			return rule == SQLiteParser.RULE_create_trigger_stmt ? q.equals("new") || q.equals("old")
+				: rule == SQLiteParser.RULE_insert_stmt && q.equals("excluded");
+		}
+	}
+
+	/**
+	 * Collects references from listener events. Names are read off the rule that
+	 * holds them and the rule around it, which the parser sets even when it builds
+	 * no tree.
+	 * <p>
+	 * Not thread-safe; one collector per parser.
+	 */
+	static final class Collector implements ParseTreeListener {
+		private final List<Statement> statements = new ArrayList<>();
+		private final Map<String, String> schemas = new LinkedHashMap<>();
+		private final Map<String, Reference> tables = new LinkedHashMap<>();
+		private final Map<String, Reference> columns = new LinkedHashMap<>();
+
+		// the current statement
+		private final List<Reference> pending = new ArrayList<>();
+		private final List<Block> blocks = new ArrayList<>();
+		private int kind;
+		private boolean explain;
+		/** The table last written to, owner of the columns assigned or defined next. */
+		private String targetSchema;
+		private String target;
+		/** The table of the {@code REFERENCES} clause being read. */
+		private String foreign;
+
+		/** The last name token consumed. */
+		private Token name;
+		// the types of the last three tokens consumed
+		private int last;
+		private int lastButOne;
+		private int lastButTwo;
+		// a schema_name waiting for the name after its dot
+		private String schema;
+		private ParserRuleContext schemaOwner;
+		// a table_name in an expression, which may qualify a column
+		private String qualifier;
+		private String qualifierSchema;
+		private ParserRuleContext qualifierOwner;
+		/** The last expression that started right after {@code IN}. */
+		private ParserRuleContext afterIn;
+		// the last source and the rule it was named in, for its alias
+		private Source lastSource;
+		private ParserRuleContext lastSourceOwner;
+
+		void reset() {
+			statements.clear();
+			schemas.clear();
+			tables.clear();
+			columns.clear();
+			pending.clear();
+			blocks.clear();
+			name = null;
+			schemaOwner = null;
+			qualifierOwner = null;
+			afterIn = null;
+			lastSourceOwner = null;
+		}
+
+		References build() {
+			return new References(new ArrayList<>(statements), new ArrayList<>(schemas.values()),
+								  new ArrayList<>(tables.values()), new ArrayList<>(columns.values()));
+		}
+
+		@Override
+		public void enterEveryRule(ParserRuleContext ctx) {
+			switch (ctx.getRuleIndex()) {
+				case SQLiteParser.RULE_sql_stmt:
+					pending.clear();
+					blocks.clear();
+					kind = SQLiteParser.RULE_sql_stmt;
+					explain = false;
+					target = null;
+					targetSchema = null;
+					foreign = null;
+					blocks.add(new Block(SQLiteParser.RULE_sql_stmt, Access.READ));
+					break;
+				case SQLiteParser.RULE_select_stmt:
+				case SQLiteParser.RULE_select_core:
+				case SQLiteParser.RULE_insert_stmt:
+				case SQLiteParser.RULE_update_stmt:
+				case SQLiteParser.RULE_update_stmt_limited:
+				case SQLiteParser.RULE_delete_stmt:
+				case SQLiteParser.RULE_delete_stmt_limited:
+				case SQLiteParser.RULE_create_table_stmt:
+				case SQLiteParser.RULE_create_index_stmt:
+				case SQLiteParser.RULE_create_trigger_stmt:
+					blocks.add(new Block(ctx.getRuleIndex(), Access.READ));
+					break;
+				case SQLiteParser.RULE_create_virtual_table_stmt:
+					blocks.add(new Block(ctx.getRuleIndex(), Access.WRITE));
+					break;
+				case SQLiteParser.RULE_expr:
+					if (last == SQLiteParser.IN_) {
+						afterIn = ctx;
+					}
+					break;
+				default:
+					break;
+			}
+			if (ctx.parent != null && ((ParserRuleContext)ctx.parent).getRuleIndex() == SQLiteParser.RULE_sql_stmt) {
+				kind = ctx.getRuleIndex();
+			}
+		}
+
+		@Override
+		public void exitEveryRule(ParserRuleContext ctx) {
+			if (blocks.isEmpty()) {
+				return; // outside any statement, as after an error
+			}
+			ParserRuleContext owner = (ParserRuleContext)ctx.parent;
+			int in = owner != null ? owner.getRuleIndex() : -1;
+			switch (ctx.getRuleIndex()) {
+				case SQLiteParser.RULE_schema_name: {
+					String s = name(ctx);
+					if (s != null) {
+						schemas.putIfAbsent(SQLiteSchemaCatalog.fold(s), s);
+						schema = s;
+						schemaOwner = owner;
+					}
+					break;
+				}
+				case SQLiteParser.RULE_table_name:
+					tableName(ctx, owner, in);
+					break;
+				case SQLiteParser.RULE_table_or_index_name: {
+					String s = schemaFor(owner);
+					String t = name(ctx);
+					if (t != null) {
+						table(s, t, Access.READ);
+					}
+					break;
+				}
+				case SQLiteParser.RULE_view_name: {
+					String s = schemaFor(owner);
+					String t = name(ctx);
+					if (t != null) {
+						table(s, t, Access.WRITE);
+					}
+					break;
+				}
+				case SQLiteParser.RULE_foreign_table:
+					foreign = name(ctx);
+					if (foreign != null) {
+						table(null, foreign, Access.READ);
+					}
+					break;
+				case SQLiteParser.RULE_any_name:
+					if (in == SQLiteParser.RULE_drop_stmt) {
+						Token object = ((SQLiteParser.Drop_stmtContext)owner).object;
+						String s = schemaFor(owner);
+						String t = name(ctx);
+						if (t != null && object != null
+							&& (object.getType() == SQLiteParser.TABLE_ || object.getType() == SQLiteParser.VIEW_))
+						{
+							table(s, t, Access.WRITE);
+						}
+					}
+					break;
+				case SQLiteParser.RULE_index_name:
+				case SQLiteParser.RULE_trigger_name:
+				case SQLiteParser.RULE_pragma_name:
+					schemaFor(owner);
+					break;
+				case SQLiteParser.RULE_table_function_name:
+					if (in == SQLiteParser.RULE_table_or_subquery) {
+						String s = schemaFor(owner);
+						source(new Source(s, null, name(ctx)), owner);
+					}
+					break;
+				case SQLiteParser.RULE_table_alias:
+				case SQLiteParser.RULE_alias: {
+					String a = name(ctx);
+					if (a == null) {
+						break;
+					}
+					if (lastSourceOwner == owner) {
+						lastSource.alias = a;
+					}
+					else if (in == SQLiteParser.RULE_table_or_subquery) {
+						source(new Source(null, null, a), owner); // ( select ) AS a
+					}
+					break;
+				}
+				case SQLiteParser.RULE_column_name:
+					columnName(ctx, owner, in);
+					break;
+				case SQLiteParser.RULE_expr:
+					if (qualifierOwner == ctx) {
+						// expr IN table_name
+						qualifierOwner = null;
+						if (!isCte(qualifierSchema, qualifier)) {
+							table(qualifierSchema, qualifier, Access.READ);
+						}
+					}
+					break;
+				case SQLiteParser.RULE_select_core: {
+					Block block = pop();
+					if (in == SQLiteParser.RULE_select_stmt) {
+						// ORDER BY and LIMIT after the last core see its sources
+						Block statement = blocks.get(blocks.size() - 1);
+						statement.sources.clear();
+						statement.sources.addAll(block.sources);
+					}
+					break;
+				}
+				case SQLiteParser.RULE_select_stmt:
+				case SQLiteParser.RULE_insert_stmt:
+				case SQLiteParser.RULE_update_stmt:
+				case SQLiteParser.RULE_update_stmt_limited:
+				case SQLiteParser.RULE_delete_stmt:
+				case SQLiteParser.RULE_delete_stmt_limited:
+				case SQLiteParser.RULE_create_table_stmt:
+				case SQLiteParser.RULE_create_virtual_table_stmt:
+				case SQLiteParser.RULE_create_index_stmt:
+				case SQLiteParser.RULE_create_trigger_stmt:
+					pop();
+					break;
+				case SQLiteParser.RULE_sql_stmt:
+					endStatement();
+					break;
+				default:
+					break;
+			}
+		}
+
+		@Override
+		public void visitTerminal(TerminalNode node) {
+			Token t = node.getSymbol();
+			lastButTwo = lastButOne;
+			lastButOne = last;
+			last = t.getType();
+			switch (t.getType()) {
+				case SQLiteParser.OPEN_PAR:
+				case SQLiteParser.CLOSE_PAR:
+					break;
+				case SQLiteParser.EXPLAIN_:
+					explain = true;
+					break;
+				case SQLiteParser.STAR:
+					if (((ParserRuleContext)node.getParent()).getRuleIndex() == SQLiteParser.RULE_result_column
+						&& !blocks.isEmpty())
+					{
+						// a bare *; t.* is recorded with its table_name
+						blocks.get(blocks.size() - 1).columns.add(new ColumnRef(null, null, "*"));
+					}
+					break;
+				default:
+					name = t;
+					break;
+			}
+		}
+
+		@Override
+		public void visitErrorNode(ErrorNode node) {
+		}
+
+		private void tableName(ParserRuleContext ctx, ParserRuleContext owner, int in) {
+			String s = schemaFor(owner);
+			String t = name(ctx);
+			if (t == null) {
+				return;
+			}
+			switch (in) {
+				case SQLiteParser.RULE_insert_stmt:
+				case SQLiteParser.RULE_qualified_table_name:
+				case SQLiteParser.RULE_create_table_stmt:
+				case SQLiteParser.RULE_create_virtual_table_stmt:
+				case SQLiteParser.RULE_create_index_stmt:
+				case SQLiteParser.RULE_create_trigger_stmt:
+					table(s, t, Access.WRITE);
+					source(new Source(s, t, null), owner);
+					break;
+				case SQLiteParser.RULE_alter_table_stmt:
+					table(s, t, Access.WRITE);
+					break;
+				case SQLiteParser.RULE_table_or_subquery:
+					if (isCte(s, t)) {
+						source(new Source(null, null, t), owner);
+					}
+					else {
+						table(s, t, Access.READ);
+						source(new Source(s, t, null), owner);
+					}
+					break;
+				case SQLiteParser.RULE_expr:
+					// a column qualifier, or the table of expr IN table_name
+					qualifier = t;
+					qualifierSchema = s;
+					qualifierOwner = owner;
+					break;
+				case SQLiteParser.RULE_result_column:
+					blocks.get(blocks.size() - 1).columns.add(new ColumnRef(null, t, "*"));
+					break;
+				case SQLiteParser.RULE_cte_table_name:
+				case SQLiteParser.RULE_common_table_expression: {
+					// the WITH belongs to the innermost statement, which the name is in scope of
+					Block block = blocks.get(blocks.size() - 1);
+					if (block.ctes == null) {
+						block.ctes = new HashSet<>(4);
+					}
+					block.ctes.add(SQLiteSchemaCatalog.fold(t));
+					break;
+				}
+				case SQLiteParser.RULE_reindex_stmt:
+					table(s, t, Access.READ);
+					break;
+				default:
+					break;
+			}
+		}
+
+		private void columnName(ParserRuleContext ctx, ParserRuleContext owner, int in) {
+			String c = name(ctx);
+			if (c == null) {
+				return;
+			}
+			Block block = blocks.get(blocks.size() - 1);
+			switch (in) {
+				case SQLiteParser.RULE_expr:
+					if (lastButTwo == SQLiteParser.RAISE_ && lastButOne == SQLiteParser.OPEN_PAR) {
+						break; // RAISE(IGNORE) read as a call with a column argument
+					}
+					if (afterIn == owner && ctx.getStart().getType() != SQLiteParser.OPEN_PAR) {
+						// x IN tbl and x IN schema.tbl parse as expr IN expr, the table as a column;
+						// x IN (c) parses the same, with c as a parenthesized name
+						String s = qualifierOwner == owner ? qualifier : null;
+						qualifierOwner = null;
+						afterIn = null;
+						if (!isCte(s, c)) {
+							table(s, c, Access.READ);
+						}
+					}
+					else if (qualifierOwner == owner) {
+						qualifierOwner = null;
+						block.columns.add(new ColumnRef(qualifierSchema, qualifier, c));
+					}
+					else {
+						block.columns.add(new ColumnRef(null, null, c));
+					}
+					break;
+				case SQLiteParser.RULE_insert_stmt:
+				case SQLiteParser.RULE_update_stmt:
+				case SQLiteParser.RULE_update_stmt_limited:
+				case SQLiteParser.RULE_upsert_clause:
+				case SQLiteParser.RULE_column_name_list:
+				case SQLiteParser.RULE_alter_table_stmt:
+				case SQLiteParser.RULE_column_def:
+				case SQLiteParser.RULE_table_constraint:
+				case SQLiteParser.RULE_create_view_stmt:
+					column(targetSchema, target, c, Access.WRITE);
+					break;
+				case SQLiteParser.RULE_foreign_key_clause:
+					column(null, foreign, c, Access.READ);
+					break;
+				case SQLiteParser.RULE_indexed_column:
+					if (owner.parent != null && ((ParserRuleContext)owner.parent).getRuleIndex() == SQLiteParser.RULE_table_constraint) {
+						column(targetSchema, target, c, Access.WRITE);
+					}
+					else {
+						block.columns.add(new ColumnRef(null, null, c));
+					}
+					break;
+				case SQLiteParser.RULE_join_constraint:
+				case SQLiteParser.RULE_create_trigger_stmt:
+					block.columns.add(new ColumnRef(null, null, c));
+					break;
+				default:
+					break; // the columns of a common table expression
+			}
+		}
+
+		/** The schema named before the name in {@code owner}, or {@code null}. */
+		private String schemaFor(ParserRuleContext owner) {
+			if (schemaOwner != owner) {
+				return null;
+			}
+			schemaOwner = null;
+			return schema;
+		}
+
+		/** Whether {@code table} names a common table expression of the innermost block or one enclosing it. */
+		private boolean isCte(String schema, String table) {
+			if (schema != null) {
+				return false;
+			}
+			String key = null;
+			for (int i = blocks.size() - 1; i >= 0; i--) {
+				Set<String> ctes = blocks.get(i).ctes;
+				if (ctes != null) {
+					if (key == null) {
+						key = SQLiteSchemaCatalog.fold(table);
+					}
+					if (ctes.contains(key)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		private void source(Source source, ParserRuleContext owner) {
+			blocks.get(blocks.size() - 1).sources.add(source);
+			lastSource = source;
+			lastSourceOwner = owner;
+		}
+
+		private void table(String schema, String table, Access access) {
+			pending.add(new Reference(schema, table, null, access));
+			if (access == Access.WRITE) {
+				target = table;
+				targetSchema = schema;
+			}
+		}
+
+		private void column(String schema, String table, String column, Access access) {
+			pending.add(new Reference(schema, table, column, access));
+		}
+
+		/** Attributes the columns of the innermost block; the rest move out to the enclosing one. */
+		private Block pop() {
+			// removed last, so that isCte still sees the block's own WITH
+			Block block = blocks.get(blocks.size() - 1);
+			Block outer = blocks.size() == 1 ? null : blocks.get(blocks.size() - 2);
+			for (ColumnRef ref : block.columns) {
+				if (!attribute(ref, block)) {
+					if (outer != null) {
+						outer.columns.add(ref);
+					}
+					else if (ref.qualifier == null) {
+						column(null, null, ref.name, block.access);
+					}
+					else if (!isCte(ref.schema, ref.qualifier)) {
+						column(ref.schema, ref.qualifier, ref.name, block.access);
+					}
+				}
+			}
+			blocks.remove(blocks.size() - 1);
+			return block;
+		}
+
+		/** Records {@code ref} if {@code block} decides its table; false to leave it to the enclosing block. */
+		private boolean attribute(ColumnRef ref, Block block) {
+			List<Source> sources = block.sources;
+			if (ref.qualifier != null) {
+				if (block.isPseudoTable(ref.qualifier)) {
+					Source s = sources.get(0);
+					column(s.schema, s.table, ref.name, block.access);
+					return true;
+				}
+				for (Source s : sources) {
+					if (s.matches(ref.qualifier)) {
+						if (s.table != null) {
+							column(s.schema, s.table, ref.name, block.access);
+						}
+						return true;
+					}
+				}
+				return false;
+			}
+			if (sources.isEmpty()) {
+				return false;
+			}
+			if (ref.name.equals("*")) {
+				for (Source s : sources) {
+					if (s.table != null) {
+						column(s.schema, s.table, ref.name, block.access);
+					}
+				}
+			}
+			else if (sources.size() == 1) {
+				Source s = sources.get(0);
+				if (s.table != null) {
+					column(s.schema, s.table, ref.name, block.access);
+				}
+			}
+			else {
+				column(null, null, ref.name, block.access);
+			}
+			return true;
+		}
+
+		private void endStatement() {
+			while (!blocks.isEmpty()) {
+				pop();
+			}
+			statements.add(new Statement(kind, explain));
+			for (Reference r : pending) {
+				Access access = explain ? Access.READ : r.access;
+				if (r.column == null) {
+					tables.putIfAbsent(key(r, access), access == r.access ? r : new Reference(r.schema, r.table, null, access));
+				}
+				else {
+					columns.putIfAbsent(key(r, access), access == r.access ? r : new Reference(r.schema, r.table, r.column, access));
+				}
+			}
+			pending.clear();
+			schemaOwner = null;
+			qualifierOwner = null;
+			afterIn = null;
+			lastSourceOwner = null;
+		}
+
+		private static String key(Reference r, Access access) {
+			StringBuilder sb = new StringBuilder(32).append(access.ordinal());
+			sb.append(r.schema != null ? SQLiteSchemaCatalog.fold(r.schema) : "").append('\0');
+			sb.append(r.table != null ? SQLiteSchemaCatalog.fold(r.table) : "").append('\0');
+			return sb.append(r.column != null ? SQLiteSchemaCatalog.fold(r.column) : "").toString();
+		}
+
+		/** The unquoted name of the name rule {@code ctx}, or {@code null} if error recovery left it out. */
+		private String name(ParserRuleContext ctx) {
+			Token t = name;
+			if (t == null || t.getTokenIndex() < 0 || ctx.start == null || t.getTokenIndex() < ctx.start.getTokenIndex()) {
+				return null;
+			}
+			String text = t.getText();
+			return text.isEmpty() ? null : SQLiteInsertStreamer.unquote(text, 0, text.length());
+		}
+	}
+}
@@ -0,0 +1,958 @@
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tables and columns of a database, indexed for completion.
+ * <p>
+ * Table names and column names each go into a radix trie over their ASCII
+ * case-folded spelling, the way SQLite compares identifiers. The trie is laid
+ * out in flat arrays in breadth-first order; a node stores the range of the
+ * sorted names below it, the length of the shortest of them and a bit mask of the
+ * characters they contain. {@link #completeTables}/{@link #completeColumns}
+ * return the {@code k} shortest names with a prefix by a best-first walk that
+ * never looks at more than {@code k} names; {@link #searchTables}/{@link #searchColumns}
+ * match a pattern as a subsequence, skipping subtrees that lack one of its
+ * characters, and rank the matches by where the characters fall (word starts,
+ * runs). A column name shared by many tables is stored once.
+ * <p>
+ * A catalog is immutable: build it once with a {@link Builder}, from names or
+ * from parsed DDL, and share it between sessions and threads.
+ */
+public class SQLiteSchemaCatalog {
+	// tables, by index
+	private final String[] tableSchemas;
+	private final int[] tableNames;
+	/** Columns of table {@code t} are {@code [columnStart[t], columnStart[t + 1])}. */
+	private final int[] columnStart;
+	// columns, by index
+	private final int[] columnNames;
+	private final String[] columnTypes;
+
+	private final Trie tables;
+	private final Trie columns;
+
+	private SQLiteSchemaCatalog(Builder builder) {
+		List<TableDef> defs = new ArrayList<>(builder.tables.values());
+		int columnCount = 0;
+		for (TableDef def : defs) {
+			columnCount += def.columns.size();
+		}
+		tableSchemas = new String[defs.size()];
+		tableNames = new int[defs.size()];
+		columnStart = new int[defs.size() + 1];
+		columnNames = new int[columnCount];
+		columnTypes = new String[columnCount];
+		String[] tableSpellings = new String[defs.size()];
+		String[] columnSpellings = new String[columnCount];
+		int[] columnTables = new int[columnCount];
+		int c = 0;
+		for (int t = 0; t < defs.size(); t++) {
+			TableDef def = defs.get(t);
+			tableSchemas[t] = def.schema;
+			tableSpellings[t] = def.name;
+			columnStart[t] = c;
+			for (Map.Entry<String, String> column : def.columns.values()) {
+				columnSpellings[c] = column.getKey();
+				columnTypes[c] = column.getValue();
+				columnTables[c] = t;
+				c++;
+			}
+		}
+		columnStart[defs.size()] = c;
+		tables = new Trie(tableSpellings, tableNames, null);
+		columns = new Trie(columnSpellings, columnNames, columnTables);
+	}
+
+	public int getTableCount() {
+		return tableNames.length;
+	}
+
+	public int getColumnCount() {
+		return columnNames.length;
+	}
+
+	public List<Table> getTables() {
+		return new AbstractList<Table>() {
+			@Override
+			public Table get(int i) {
+				return new Table(i);
+			}
+
+			@Override
+			public int size() {
+				return tableNames.length;
+			}
+		};
+	}
+
+	/** The table named {@code name} in {@code schema}, or in any schema if that is {@code null}; {@code null} if there is none. */
+	public Table getTable(String schema, String name) {
+		int id = tables.find(name);
+		if (id < 0) {
+			return null;
+		}
+		for (int i = tables.entryStart[id]; i < tables.entryStart[id + 1]; i++) {
+			int t = tables.entries[i];
+			if (schema == null || tableSchemas[t] != null && fold(tableSchemas[t]).equals(fold(schema))) {
+				return new Table(t);
+			}
+		}
+		return null;
+	}
+
+	/** The {@code k} shortest table names starting with {@code prefix}, ignoring case, shortest and then alphabetically first. */
+	public List<Match> completeTables(String prefix, int k) {
+		return tables.complete(prefix, k, false);
+	}
+
+	/** Like {@link #completeTables} for column names; a match lists every table with such a column. */
+	public List<Match> completeColumns(String prefix, int k) {
+		return columns.complete(prefix, k, true);
+	}
+
+	/**
+	 * The {@code k} best table names containing the characters of {@code pattern}
+	 * in order, ignoring case; prefixes and matches at word starts rank first.
+	 */
+	public List<Match> searchTables(String pattern, int k) {
+		return tables.search(pattern, k, false);
+	}
+
+	/** Like {@link #searchTables} for column names. */
+	public List<Match> searchColumns(String pattern, int k) {
+		return columns.search(pattern, k, true);
+	}
+
+	/** SQLite compares identifiers ignoring the case of ASCII letters only. */
+	static String fold(String name) {
+		for (int i = 0; i < name.length(); i++) {
+			char ch = name.charAt(i);
+			if (ch >= 'A' && ch <= 'Z') {
+				char[] chars = name.toCharArray();
+				for (int j = i; j < chars.length; j++) {
+					if (chars[j] >= 'A' && chars[j] <= 'Z') {
+						chars[j] += 'a' - 'A';
+					}
+				}
+				return new String(chars);
+			}
+		}
+		return name;
+	}
+
+	/** A table of the catalog. */
+	public class Table {
+		private final int index;
+
+		Table(int index) {
+			this.index = index;
+		}
+
+		/** The schema the table was declared in, {@code temp} for temporary tables, or {@code null}. */
+		public String getSchema() {
+			return tableSchemas[index];
+		}
+
+		public String getName() {
+			return tables.spellings[tableNames[index]];
+		}
+
+		public List<Column> getColumns() {
+			int start = columnStart[index];
+			int size = columnStart[index + 1] - start;
+			return new AbstractList<Column>() {
+				@Override
+				public Column get(int i) {
+					if (i < 0 || i >= size) {
+						throw new IndexOutOfBoundsException(i);
+					}
+					return new Column(start + i, Table.this);
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+
+		/** The column named {@code name}, ignoring case, or {@code null}. */
+		public Column getColumn(String name) {
+			int id = columns.find(name);
+			for (int c = columnStart[index]; id >= 0 && c < columnStart[index + 1]; c++) {
+				if (columnNames[c] == id) {
+					return new Column(c, this);
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Table && ((Table)o).index == index && ((Table)o).catalog() == catalog();
+		}
+
+		@Override
+		public int hashCode() {
+			return index;
+		}
+
+		@Override
+		public String toString() {
+			return getSchema() != null ? getSchema() + "." + getName() : getName();
+		}
+
+		private SQLiteSchemaCatalog catalog() {
+			return SQLiteSchemaCatalog.this;
+		}
+	}
+
+	/** A column of a {@link Table}. */
+	public class Column {
+		private final int index;
+		private final Table table;
+
+		Column(int index, Table table) {
+			this.index = index;
+			this.table = table;
+		}
+
+		public Table getTable() {
+			return table;
+		}
+
+		public String getName() {
+			return columns.spellings[columnNames[index]];
+		}
+
+		/** The declared type as written, or {@code null}. */
+		public String getType() {
+			return columnTypes[index];
+		}
+
+		@Override
+		public String toString() {
+			return table + "." + getName();
+		}
+	}
+
+	/** A name found by a lookup. */
+	public class Match {
+		private final Trie trie;
+		private final int name;
+		private final int score;
+		private final boolean column;
+
+		Match(Trie trie, int name, int score, boolean column) {
+			this.trie = trie;
+			this.name = name;
+			this.score = score;
+			this.column = column;
+		}
+
+		/** The name as first declared. */
+		public String getName() {
+			return trie.spellings[name];
+		}
+
+		/** Higher is better; comparable within one result list only. */
+		public int getScore() {
+			return score;
+		}
+
+		/** The tables with this name or, for a column name, with a column of this name. */
+		public List<Table> getTables() {
+			List<Table> result = new ArrayList<>();
+			for (int i = trie.entryStart[name]; i < trie.entryStart[name + 1]; i++) {
+				result.add(new Table(column ? trie.owners[i] : trie.entries[i]));
+			}
+			return result;
+		}
+
+		/** The columns with this name; empty for a table name. */
+		public List<Column> getColumns() {
+			if (!column) {
+				return Collections.emptyList();
+			}
+			List<Column> result = new ArrayList<>();
+			for (int i = trie.entryStart[name]; i < trie.entryStart[name + 1]; i++) {
+				result.add(new Column(trie.entries[i], new Table(trie.owners[i])));
+			}
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return getName() + " (" + score + ")";
+		}
+	}
+
+	/**
+	 * A radix trie over the folded names, in breadth-first order so that the
+	 * children of a node are contiguous. The names are sorted, so the names below a
+	 * node are a range of them.
+	 */
+	private final class Trie {
+		/** Distinct names, sorted by folded spelling. */
+		final String[] keys;
+		/** The first spelling of each name. */
+		final String[] spellings;
+		/** Table or column indexes of name {@code i} are {@code entries[entryStart[i], entryStart[i + 1])}. */
+		final int[] entryStart;
+		final int[] entries;
+		/** For column names, the table of each entry. */
+		final int[] owners;
+
+		// nodes
+		/** Length of the prefix a node stands for. */
+		final int[] depth;
+		/** Children of node {@code n} are {@code [childStart[n], childStart[n + 1])}. */
+		final int[] childStart;
+		/** Names below node {@code n} are {@code [lo[n], hi[n])}. */
+		final int[] lo;
+		final int[] hi;
+		final int[] minLength;
+		/** The {@link #charBit characters} of the names below each node. */
+		final long[] mask;
+
+		/**
+		 * Indexes {@code spellings[i]} for every entry {@code i}, storing the name
+		 * index of each entry into {@code nameOf}.
+		 */
+		Trie(String[] entrySpellings, int[] nameOf, int[] entryOwners) {
+			// number the distinct folded names in order of appearance, then sort them
+			Map<String, Integer> firstId = new HashMap<>();
+			List<String> distinct = new ArrayList<>();
+			List<String> firstSpelling = new ArrayList<>();
+			int[] provisional = new int[entrySpellings.length];
+			for (int i = 0; i < entrySpellings.length; i++) {
+				String key = fold(entrySpellings[i]);
+				Integer id = firstId.get(key);
+				if (id == null) {
+					id = distinct.size();
+					firstId.put(key, id);
+					distinct.add(key);
+					firstSpelling.add(entrySpellings[i]);
+				}
+				provisional[i] = id;
+			}
+			keys = distinct.toArray(new String[0]);
+			Arrays.sort(keys);
+			spellings = new String[keys.length];
+			int[] rank = new int[keys.length];
+			for (int id = 0; id < keys.length; id++) {
+				int first = firstId.get(keys[id]);
+				rank[first] = id;
+				spellings[id] = firstSpelling.get(first);
+			}
+			entryStart = new int[keys.length + 1];
+			for (int i = 0; i < provisional.length; i++) {
+				nameOf[i] = rank[provisional[i]];
+				entryStart[nameOf[i] + 1]++;
+			}
+			for (int id = 0; id < keys.length; id++) {
+				entryStart[id + 1] += entryStart[id];
+			}
+			entries = new int[entrySpellings.length];
+			owners = entryOwners != null ? new int[entrySpellings.length] : null;
+			int[] fill = Arrays.copyOf(entryStart, keys.length);
+			for (int i = 0; i < provisional.length; i++) {
+				int e = fill[nameOf[i]]++;
+				entries[e] = i;
+				if (owners != null) {
+					owners[e] = entryOwners[i];
+				}
+			}
+
+			// breadth-first construction; a radix trie has fewer than 2n nodes
+			int capacity = Math.max(1, 2 * keys.length);
+			int[] nodeDepth = new int[capacity];
+			int[] nodeChildStart = new int[capacity + 1];
+			int[] nodeLo = new int[capacity];
+			int[] nodeHi = new int[capacity];
+			int[] nodeParent = new int[capacity];
+			int count = 1;
+			nodeLo[0] = 0;
+			nodeHi[0] = keys.length;
+			nodeParent[0] = -1;
+			for (int n = 0; n < count; n++) {
+				int from = nodeLo[n];
+				int to = nodeHi[n];
+				int d = from == to ? 0 : from + 1 == to ? keys[from].length() : commonPrefix(keys[from], keys[to - 1]);
+				nodeDepth[n] = d;
+				nodeChildStart[n] = count;
+				int i = from;
+				if (i < to && keys[i].length() == d) {
+					i++; // the name ending here
+				}
+				while (i < to) {
+					char ch = keys[i].charAt(d);
+					int j = i + 1;
+					while (j < to && keys[j].charAt(d) == ch) {
+						j++;
+					}
+					nodeLo[count] = i;
+					nodeHi[count] = j;
+					nodeParent[count] = n;
+					count++;
+					i = j;
+				}
+			}
+			nodeChildStart[count] = count;
+			depth = Arrays.copyOf(nodeDepth, count);
+			childStart = Arrays.copyOf(nodeChildStart, count + 1);
+			lo = Arrays.copyOf(nodeLo, count);
+			hi = Arrays.copyOf(nodeHi, count);
+			minLength = new int[count];
+			mask = new long[count];
+			Arrays.fill(minLength, Integer.MAX_VALUE);
+			for (int n = count - 1; n >= 0; n--) {
+				if (lo[n] < hi[n] && keys[lo[n]].length() == depth[n]) {
+					minLength[n] = depth[n];
+					mask[n] |= charMask(keys[lo[n]]);
+				}
+				int parent = nodeParent[n];
+				if (parent >= 0) {
+					minLength[parent] = Math.min(minLength[parent], minLength[n]);
+					mask[parent] |= mask[n];
+				}
+			}
+		}
+
+		/** The index of the name {@code name}, ignoring case, or -1. */
+		int find(String name) {
+			String key = fold(name);
+			int id = Arrays.binarySearch(keys, key);
+			return id >= 0 ? id : -1;
+		}
+
+		/** The node whose names are those starting with {@code prefix}, or -1. */
+		private int prefixNode(String prefix) {
+			int n = 0;
+			if (lo[0] == hi[0]) {
+				return -1;
+			}
+			int matched = 0;
+			while (true) {
+				String key = keys[lo[n]];
+				int end = Math.min(depth[n], prefix.length());
+				for (; matched < end; matched++) {
+					if (key.charAt(matched) != prefix.charAt(matched)) {
+						return -1;
+					}
+				}
+				if (matched == prefix.length()) {
+					return n;
+				}
+				n = child(n, prefix.charAt(matched));
+				if (n < 0) {
+					return -1;
+				}
+			}
+		}
+
+		/** The child of {@code n} whose names continue with {@code ch}, or -1. */
+		private int child(int n, char ch) {
+			int a = childStart[n];
+			int b = childStart[n + 1] - 1;
+			while (a <= b) {
+				int mid = (a + b) >>> 1;
+				char c = keys[lo[mid]].charAt(depth[n]);
+				if (c < ch) {
+					a = mid + 1;
+				}
+				else if (c > ch) {
+					b = mid - 1;
+				}
+				else {
+					return mid;
+				}
+			}
+			return -1;
+		}
+
+		List<Match> complete(String prefix, int k, boolean column) {
+			List<Match> result = new ArrayList<>(Math.min(k, 16));
+			int start = k > 0 ? prefixNode(fold(prefix)) : -1;
+			if (start < 0) {
+				return result;
+			}
+			// best-first by (length, name); a node's key is a lower bound of its names'
+			Heap heap = new Heap();
+			heap.push((long)minLength[start] << 32 | lo[start], start);
+			while (heap.size > 0 && result.size() < k) {
+				long key = heap.topKey();
+				int item = heap.pop();
+				if (item < 0) {
+					int id = ~item;
+					result.add(new Match(this, id, -keys[id].length(), column));
+					continue;
+				}
+				if (keys[lo[item]].length() == depth[item]) {
+					heap.push((long)depth[item] << 32 | lo[item], ~lo[item]);
+				}
+				for (int c = childStart[item]; c < childStart[item + 1]; c++) {
+					heap.push((long)minLength[c] << 32 | lo[c], c);
+				}
+			}
+			return result;
+		}
+
+		List<Match> search(String pattern, int k, boolean column) {
+			List<Match> result = new ArrayList<>();
+			String query = fold(pattern);
+			if (k <= 0 || lo[0] == hi[0]) {
+				return result;
+			}
+			if (query.isEmpty()) {
+				return complete("", k, column);
+			}
+			long[] suffixMask = new long[query.length() + 1];
+			for (int i = query.length() - 1; i >= 0; i--) {
+				suffixMask[i] = suffixMask[i + 1] | charBit(query.charAt(i));
+			}
+			// a min-heap of the best k so far, by (score, -name)
+			Heap best = new Heap();
+			// pending nodes, with the query chars matched above them and their parent's depth
+			int[] stackNode = new int[64];
+			int[] stackMatched = new int[64];
+			int[] stackFrom = new int[64];
+			int size = 0;
+			stackNode[size] = 0;
+			stackMatched[size] = 0;
+			stackFrom[size++] = 0;
+			Scorer scorer = new Scorer(query);
+			while (size > 0) {
+				int n = stackNode[--size];
+				int matched = stackMatched[size];
+				int from = stackFrom[size];
+				if ((mask[n] & suffixMask[matched]) != suffixMask[matched]) {
+					continue;
+				}
+				// the edge into n, then the name ending at n and the children
+				String key = keys[lo[n]];
+				for (int i = from; i < depth[n] && matched < query.length(); i++) {
+					if (key.charAt(i) == query.charAt(matched)) {
+						matched++;
+					}
+				}
+				int first = lo[n];
+				if (first < hi[n] && key.length() == depth[n]) {
+					if (matched == query.length()) {
+						offer(best, k, first, scorer.score(spellings[first], keys[first]));
+					}
+					first++;
+				}
+				if (matched == query.length()) {
+					// every name below matches
+					for (int id = first; id < hi[n]; id++) {
+						offer(best, k, id, scorer.score(spellings[id], keys[id]));
+					}
+					continue;
+				}
+				for (int c = childStart[n + 1] - 1; c >= childStart[n]; c--) {
+					if (size == stackNode.length) {
+						stackNode = Arrays.copyOf(stackNode, size * 2);
+						stackMatched = Arrays.copyOf(stackMatched, size * 2);
+						stackFrom = Arrays.copyOf(stackFrom, size * 2);
+					}
+					stackNode[size] = c;
+					stackMatched[size] = matched;
+					stackFrom[size++] = depth[n];
+				}
+			}
+			int[] ids = new int[best.size];
+			int[] scores = new int[best.size];
+			for (int i = best.size - 1; i >= 0; i--) {
+				scores[i] = (int)(best.topKey() >> 32);
+				ids[i] = best.pop();
+			}
+			for (int i = 0; i < ids.length; i++) {
+				result.add(new Match(this, ids[i], scores[i], column));
+			}
+			return result;
+		}
+
+		private void offer(Heap best, int k, int id, int score) {
+			// ties go to the alphabetically first name, which must compare as better
+			long key = (long)score << 32 | (0x7FFFFFFFL - id);
+			if (best.size < k) {
+				best.push(key, id);
+			}
+			else if (key > best.topKey()) {
+				best.pop();
+				best.push(key, id);
+			}
+		}
+	}
+
+	/** Scores a subsequence match by its best alignment. */
+	private static final class Scorer {
+		private static final int MATCH = 16;
+		private static final int WORD_START = 48;
+		private static final int RUN = 32;
+
+		private final String query;
+		private int[] previous = new int[32];
+		private int[] current = new int[32];
+
+		Scorer(String query) {
+			this.query = query;
+		}
+
+		/** The score of the best alignment of the query in {@code folded}, which has one. */
+		int score(String spelling, String folded) {
+			int n = folded.length();
+			if (previous.length < n) {
+				previous = new int[n];
+				current = new int[n];
+			}
+			int none = Integer.MIN_VALUE / 2;
+			// previous[j]: best score with the query so far ending at char j
+			for (int i = 0; i < query.length(); i++) {
+				char q = query.charAt(i);
+				int bestBefore = i == 0 ? 0 : none;
+				for (int j = 0; j < n; j++) {
+					int s = none;
+					if (folded.charAt(j) == q) {
+						int bonus = MATCH + (isWordStart(spelling, j) ? WORD_START : 0);
+						int run = i > 0 && j > 0 ? previous[j - 1] + RUN : none;
+						s = Math.max(bestBefore, run) + bonus;
+					}
+					if (i > 0 && j > 0) {
+						bestBefore = Math.max(bestBefore, previous[j - 1]);
+					}
+					current[j] = s;
+				}
+				int[] swap = previous;
+				previous = current;
+				current = swap;
+			}
+			int best = none;
+			for (int j = 0; j < n; j++) {
+				best = Math.max(best, previous[j]);
+			}
+			return best - (n - query.length());
+		}
+
+		private static boolean isWordStart(String s, int i) {
+			if (i == 0) {
+				return true;
+			}
+			char p = s.charAt(i - 1);
+			char c = s.charAt(i);
+			return !Character.isLetterOrDigit(p) || Character.isLowerCase(p) && Character.isUpperCase(c)
+				|| Character.isDigit(c) != Character.isDigit(p);
+		}
+	}
+
+	/** A binary min-heap of long keys with an int payload. */
+	private static final class Heap {
+		private long[] keys = new long[16];
+		private int[] values = new int[16];
+		int size;
+
+		void push(long key, int value) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (keys[parent] <= key) {
+					break;
+				}
+				keys[i] = keys[parent];
+				values[i] = values[parent];
+				i = parent;
+			}
+			keys[i] = key;
+			values[i] = value;
+		}
+
+		long topKey() {
+			return keys[0];
+		}
+
+		int pop() {
+			int top = values[0];
+			long key = keys[--size];
+			int value = values[size];
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size) {
+					break;
+				}
+				if (child + 1 < size && keys[child + 1] < keys[child]) {
+					child++;
+				}
+				if (keys[child] >= key) {
+					break;
+				}
+				keys[i] = keys[child];
+				values[i] = values[child];
+				i = child;
+			}
+			keys[i] = key;
+			values[i] = value;
+			return top;
+		}
+	}
+
+	/** One bit per letter, digit and {@code _}; other characters share the remaining bits. */
+	private static long charBit(char ch) {
+		if (ch >= 'a' && ch <= 'z') {
+			return 1L << (ch - 'a');
+		}
+		if (ch >= '0' && ch <= '9') {
+			return 1L << (26 + ch - '0');
+		}
+		if (ch == '_') {
+			return 1L << 36;
+		}
+		return 1L << (37 + ch % 27);
+	}
+
+	private static long charMask(String key) {
+		long mask = 0;
+		for (int i = 0; i < key.length(); i++) {
+			mask |= charBit(key.charAt(i));
+		}
+		return mask;
+	}
+
+	private static int commonPrefix(String a, String b) {
+		int n = Math.min(a.length(), b.length());
+		int i = 0;
+		while (i < n && a.charAt(i) == b.charAt(i)) {
+			i++;
+		}
+		return i;
+	}
+
+	private static final class TableDef {
+		final String schema;
+		String name;
+		/** Folded name to spelling and type. */
+		final LinkedHashMap<String, Map.Entry<String, String>> columns = new LinkedHashMap<>();
+
+		TableDef(String schema, String name) {
+			this.schema = schema;
+			this.name = name;
+		}
+	}
+
+	/**
+	 * Collects tables and columns for a catalog. DDL is applied in order, so a
+	 * script's {@code CREATE}, {@code ALTER} and {@code DROP} statements leave the
+	 * schema the script ends with.
+	 */
+	public static class Builder {
+		private final LinkedHashMap<String, TableDef> tables = new LinkedHashMap<>();
+		/** One instance per distinct name and type, shared by all tables. */
+		private final Map<String, String> strings = new HashMap<>();
+
+		/** Adds a table, or finds the one already added. */
+		public Builder addTable(String schema, String table) {
+			def(schema, table, true);
+			return this;
+		}
+
+		/** Adds a column, and its table if need be; {@code type} may be {@code null}. */
+		public Builder addColumn(String schema, String table, String column, String type) {
+			column(def(schema, table, true), column, type);
+			return this;
+		}
+
+		/** Applies the DDL statements found in {@code tree}, in order. */
+		public Builder add(ParseTree tree) {
+			if (tree instanceof SQLiteParser.Create_table_stmtContext) {
+				return add((SQLiteParser.Create_table_stmtContext)tree);
+			}
+			if (tree instanceof SQLiteParser.Create_virtual_table_stmtContext) {
+				SQLiteParser.Create_virtual_table_stmtContext ctx = (SQLiteParser.Create_virtual_table_stmtContext)tree;
+				return addTable(name(ctx.schema_name()), name(ctx.table_name()));
+			}
+			if (tree instanceof SQLiteParser.Create_view_stmtContext) {
+				SQLiteParser.Create_view_stmtContext ctx = (SQLiteParser.Create_view_stmtContext)tree;
+				String schema = ctx.TEMP_() != null || ctx.TEMPORARY_() != null ? "temp" : name(ctx.schema_name());
+				String view = name(ctx.view_name());
+				replace(schema, view);
+				for (SQLiteParser.Column_nameContext column : ctx.column_name()) {
+					addColumn(schema, view, name(column), null);
+				}
+				return this;
+			}
+			if (tree instanceof SQLiteParser.Alter_table_stmtContext) {
+				return alter((SQLiteParser.Alter_table_stmtContext)tree);
+			}
+			if (tree instanceof SQLiteParser.Drop_stmtContext) {
+				SQLiteParser.Drop_stmtContext ctx = (SQLiteParser.Drop_stmtContext)tree;
+				if (ctx.object != null && (ctx.object.getType() == SQLiteParser.TABLE_ || ctx.object.getType() == SQLiteParser.VIEW_)) {
+					TableDef def = resolve(name(ctx.schema_name()), name(ctx.any_name()));
+					if (def != null) {
+						tables.remove(key(def.schema, def.name));
+					}
+				}
+				return this;
+			}
+			if (tree instanceof SQLiteParser.Sql_stmtContext || tree instanceof SQLiteParser.Sql_stmt_listContext
+				|| tree instanceof SQLiteParser.ParseContext) {
+				for (int i = 0; i < tree.getChildCount(); i++) {
+					add(tree.getChild(i));
+				}
+			}
+			return this;
+		}
+
+		/** Adds the table of a {@code CREATE TABLE}, replacing one of the same name, with its columns. */
+		public Builder add(SQLiteParser.Create_table_stmtContext ctx) {
+			String schema = ctx.TEMP_() != null || ctx.TEMPORARY_() != null ? "temp" : name(ctx.schema_name());
+			String table = name(ctx.table_name());
+			if (ctx.IF_() != null && tables.containsKey(key(schema, table))) {
+				return this;
+			}
+			replace(schema, table);
+			for (SQLiteParser.Column_defContext column : ctx.column_def()) {
+				add(schema, table, column);
+			}
+			return this;
+		}
+
+		/** Adds a column of the table {@code table}, which is added if need be. */
+		public Builder add(String schema, String table, SQLiteParser.Column_defContext column) {
+			return addColumn(schema, table, name(column.column_name()), text(column.type_name()));
+		}
+
+		public SQLiteSchemaCatalog build() {
+			return new SQLiteSchemaCatalog(this);
+		}
+
+		private Builder alter(SQLiteParser.Alter_table_stmtContext ctx) {
+			String schema = name(ctx.schema_name());
+			String table = name(ctx.table_name(0));
+			TableDef def = resolve(schema, table);
+			if (def == null) {
+				return this;
+			}
+			if (ctx.column_def() != null) {
+				column(def, name(ctx.column_def().column_name()), text(ctx.column_def().type_name()));
+			}
+			else if (ctx.new_table_name != null) {
+				tables.remove(key(def.schema, def.name));
+				def.name = share(name(ctx.new_table_name));
+				tables.put(key(def.schema, def.name), def);
+			}
+			else if (ctx.new_column_name != null) {
+				Map.Entry<String, String> old = def.columns.get(fold(name(ctx.old_column_name)));
+				if (old != null) {
+					// keep the column's position
+					LinkedHashMap<String, Map.Entry<String, String>> renamed = new LinkedHashMap<>();
+					String newName = name(ctx.new_column_name);
+					for (Map.Entry<String, Map.Entry<String, String>> e : def.columns.entrySet()) {
+						if (e.getValue() == old) {
+							renamed.put(fold(newName), new AbstractMap.SimpleImmutableEntry<>(share(newName), old.getValue()));
+						}
+						else {
+							renamed.put(e.getKey(), e.getValue());
+						}
+					}
+					def.columns.clear();
+					def.columns.putAll(renamed);
+				}
+			}
+			else if (ctx.DROP_() != null && ctx.column_name(0) != null) {
+				def.columns.remove(fold(name(ctx.column_name(0))));
+			}
+			return this;
+		}
+
+		private void replace(String schema, String table) {
+			tables.remove(key(schema, table));
+			def(schema, table, true);
+		}
+
+		private void column(TableDef def, String column, String type) {
+			def.columns.put(fold(column), new AbstractMap.SimpleImmutableEntry<>(share(column), share(type)));
+		}
+
+		/** The table an existing-table reference names: unqualified, a temp table hides a main one. */
+		private TableDef resolve(String schema, String table) {
+			if (schema != null) {
+				return tables.get(key(schema, table));
+			}
+			TableDef def = tables.get(key("temp", table));
+			if (def == null) {
+				def = tables.get(key(null, table));
+			}
+			if (def == null) {
+				String folded = fold(table);
+				for (TableDef candidate : tables.values()) {
+					if (fold(candidate.name).equals(folded)) {
+						return candidate;
+					}
+				}
+			}
+			return def;
+		}
+
+		private TableDef def(String schema, String table, boolean create) {
+			String key = key(schema, table);
+			TableDef def = tables.get(key);
+			if (def == null && create) {
+				def = new TableDef(share(schema), share(table));
+				tables.put(key, def);
+			}
+			return def;
+		}
+
+		private String share(String s) {
+			if (s == null) {
+				return null;
+			}
+			String shared = strings.putIfAbsent(s, s);
+			return shared != null ? shared : s;
+		}
+
+		/** {@code main.t} and an unqualified {@code t} are the same table. */
+		private static String key(String schema, String table) {
+			String folded = schema == null ? "main" : fold(schema);
+			return folded + "." + fold(table);
+		}
+
+		/** The unquoted name of a name rule such as {@code table_name}, or {@code null}. */
+		static String name(ParserRuleContext ctx) {
+			if (ctx == null) {
+				return null;
+			}
+			SQLiteParser.Any_nameContext any = ctx instanceof SQLiteParser.Any_nameContext
+				? (SQLiteParser.Any_nameContext)ctx : ctx.getRuleContext(SQLiteParser.Any_nameContext.class, 0);
+			while (any != null && any.any_name() != null) {
+				any = any.any_name(); // ( any_name )
+			}
+			String text = any != null ? any.getText() : ctx.getText();
+			return text.isEmpty() ? text : SQLiteInsertStreamer.unquote(text, 0, text.length());
+		}
+
+		/** The source text of {@code ctx}, spaces included, or {@code null}. */
+		private static String text(ParserRuleContext ctx) {
+			if (ctx == null || ctx.getStop() == null || ctx.getStop().getStopIndex() < ctx.getStart().getStartIndex()) {
+				return null;
+			}
+			return ctx.getStart().getInputStream().getText(Interval.of(ctx.getStart().getStartIndex(), ctx.getStop().getStopIndex()));
+		}
+	}
+}
@@ -0,0 +1,777 @@
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The name scopes of a parse tree: which tables, subqueries and common table
+ * expressions each query block can refer to and by what names, and which result
+ * column aliases it defines.
+ * <p>
+ * A {@link Scope} is opened by every {@code select_stmt} (its common table
+ * expressions, and the sources of its last core for {@code ORDER BY}), every
+ * {@code select_core} (its {@code FROM} sources and result column aliases), every
+ * {@code INSERT}, {@code UPDATE} and {@code DELETE} (the target, {@code WITH}
+ * and the {@code FROM} of an update), and every {@code CREATE TRIGGER}
+ * ({@code NEW} and {@code OLD}). {@code NEW}, {@code OLD} and the {@code excluded}
+ * row of an upsert are only reached qualified, as in SQLite: an unqualified
+ * name never binds to them. Sources, aliases and common table expressions
+ * are hashed by their case-folded names. The tree is built in one walk, is
+ * immutable and may be shared between threads; {@link SQLiteParseResult#getScopes()}
+ * builds it once per parse.
+ * <p>
+ * {@link #resolve} binds a column reference the way SQLite does, looking in the
+ * block of the reference and then in the enclosing ones, and follows a column of
+ * a subquery or common table expression to the table column it selects. Without
+ * a {@link SQLiteSchemaCatalog} the columns of a table are unknown, so an
+ * unqualified name in a block with several tables is ambiguous, unless the other
+ * sources are subqueries whose columns are known.
+ */
+public class SQLiteScopeTree {
+	/** Subqueries and common table expressions followed before giving up on a cycle. */
+	private static final int MAX_TRACE = 32;
+
+	private final List<Scope> scopes;
+	private final Map<ParserRuleContext, Scope> byOwner;
+	/** Start offsets of the statements, and where the semicolon after each one is. */
+	private final int[] statementStart;
+	private final int[] statementEnd;
+
+	private SQLiteScopeTree(List<Scope> scopes, Map<ParserRuleContext, Scope> byOwner, int[] statementStart, int[] statementEnd) {
+		this.scopes = scopes;
+		this.byOwner = byOwner;
+		this.statementStart = statementStart;
+		this.statementEnd = statementEnd;
+	}
+
+	/** Builds the scopes of {@code tree}, usually the tree of {@link SQLiteParser#parse()}. */
+	public static SQLiteScopeTree build(ParseTree tree) {
+		Builder builder = new Builder();
+		ParseTreeWalker.DEFAULT.walk(builder, tree);
+		int n = builder.statementStarts.size();
+		int[] starts = new int[n];
+		int[] ends = new int[n];
+		for (int i = 0; i < n; i++) {
+			starts[i] = builder.statementStarts.get(i);
+			ends[i] = builder.statementEnds.get(i);
+		}
+		return new SQLiteScopeTree(Collections.unmodifiableList(builder.scopes), builder.byOwner, starts, ends);
+	}
+
+	/** Every scope, outer ones before the ones they contain. */
+	public List<Scope> getScopes() {
+		return scopes;
+	}
+
+	/** The scope opened by {@code owner}, or {@code null} if it opens none. */
+	public Scope getScopeOf(ParserRuleContext owner) {
+		return byOwner.get(owner);
+	}
+
+	/** The innermost scope around {@code node}, or {@code null} if it is in none. */
+	public Scope getScope(ParseTree node) {
+		for (ParseTree p = node; p != null; p = p.getParent()) {
+			if (p instanceof ParserRuleContext) {
+				Scope scope = byOwner.get(p);
+				if (scope != null) {
+					return scope;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The innermost scope at the character {@code offset}, for completion.
+	 * <p>
+	 * An incomplete statement, such as one ending in {@code WHERE} or {@code ON},
+	 * leaves its last scopes before the caret; the scope that reaches furthest
+	 * towards the caret is taken, the innermost of those that reach equally far.
+	 * A caret past the semicolon of a statement is in none of its scopes.
+	 */
+	public Scope scopeAt(int offset) {
+		int statement = -1;
+		for (int i = 0; i < statementStart.length && statementStart[i] <= offset; i++) {
+			statement = i;
+		}
+		if (statement < 0 || offset > statementEnd[statement]) {
+			return null;
+		}
+		Scope best = null;
+		int bestReach = -1;
+		for (Scope scope : scopes) {
+			if (scope.statement != statement || scope.start > offset) {
+				continue;
+			}
+			int reach = Math.min(scope.end, offset);
+			if (reach > bestReach || reach == bestReach && best != null && scope.depth > best.depth) {
+				best = scope;
+				bestReach = reach;
+			}
+		}
+		return best;
+	}
+
+	/** Binds {@code ref} without a catalog; see {@link #resolve(SQLiteParser.ExprContext, SQLiteSchemaCatalog)}. */
+	public Binding resolve(SQLiteParser.ExprContext ref) {
+		return resolve(ref, null);
+	}
+
+	/**
+	 * Binds the column reference {@code ref}, an {@code expr} of the form
+	 * {@code [[schema.]table.]column}, to a source of its scope or of an enclosing
+	 * one, or to a result column alias. {@code catalog}, which may be {@code null},
+	 * tells which tables have the column. In {@code ORDER BY} an alias wins over a
+	 * column of the same name, elsewhere a column known to exist does.
+	 */
+	public Binding resolve(SQLiteParser.ExprContext ref, SQLiteSchemaCatalog catalog) {
+		if (ref.column_name() == null) {
+			throw new IllegalArgumentException("not a column reference: " + ref.getText());
+		}
+		boolean orderBy = false;
+		for (ParseTree p = ref.getParent(); p != null && !byOwner.containsKey(p); p = p.getParent()) {
+			if (p instanceof SQLiteParser.Ordering_termContext) {
+				orderBy = true;
+			}
+		}
+		String qualifier = ref.table_name() != null ? SQLiteSchemaCatalog.Builder.name(ref.table_name()) : null;
+		return resolve(getScope(ref), qualifier, SQLiteSchemaCatalog.Builder.name(ref.column_name()), catalog, orderBy, 0);
+	}
+
+	/**
+	 * Binds the column {@code column}, qualified by {@code qualifier} unless that is
+	 * {@code null}, as if it were referred to in {@code scope}.
+	 */
+	public Binding resolve(Scope scope, String qualifier, String column, SQLiteSchemaCatalog catalog) {
+		return resolve(scope, qualifier, column, catalog, false, 0);
+	}
+
+	private Binding resolve(Scope scope, String qualifier, String column, SQLiteSchemaCatalog catalog,
+							boolean preferAlias, int depth)
+	{
+		for (Scope s = scope; s != null; s = s.getOuter()) {
+			if (qualifier != null) {
+				Source source = s.getSource(qualifier);
+				if (source != null) {
+					return bind(source, column, catalog, depth);
+				}
+				continue;
+			}
+			// the aliases of an enclosing block are not visible in a subquery
+			SQLiteParser.Result_columnContext alias = s == scope ? s.getColumnAlias(column) : null;
+			if (alias != null && preferAlias) {
+				return new Binding(null, column, alias, Collections.<Source>emptyList(), null);
+			}
+			List<Source> known = new ArrayList<>(2);
+			List<Source> possible = new ArrayList<>(2);
+			for (Source source : s.getSources()) {
+				Boolean has = hasColumn(source, column, catalog);
+				if (has == null) {
+					possible.add(source);
+				}
+				else if (has) {
+					known.add(source);
+				}
+			}
+			List<Source> candidates = !known.isEmpty() ? known : alias != null ? known : possible;
+			if (candidates.size() == 1) {
+				return bind(candidates.get(0), column, catalog, depth);
+			}
+			if (candidates.size() > 1) {
+				return new Binding(null, column, null, Collections.unmodifiableList(candidates), null);
+			}
+			if (alias != null) {
+				return new Binding(null, column, alias, Collections.<Source>emptyList(), null);
+			}
+		}
+		return new Binding(null, column, null, Collections.<Source>emptyList(), null);
+	}
+
+	private Binding bind(Source source, String column, SQLiteSchemaCatalog catalog, int depth) {
+		Binding origin = null;
+		if (source.table != null) {
+			origin = new Binding(source, column, null, Collections.<Source>emptyList(), null);
+		}
+		else if (source.query != null && depth < MAX_TRACE) {
+			origin = trace(source, column, catalog, depth + 1);
+		}
+		return new Binding(source, column, null, Collections.<Source>emptyList(), origin);
+	}
+
+	/** The table column that {@code column} of a subquery or common table expression selects, or {@code null}. */
+	private Binding trace(Source source, String column, SQLiteSchemaCatalog catalog, int depth) {
+		// a compound select takes its column names from its first core
+		SQLiteParser.Select_coreContext core = source.query.select_core(0);
+		Scope scope = core != null ? byOwner.get(core) : null;
+		if (scope == null) {
+			return null;
+		}
+		List<SQLiteParser.Result_columnContext> results = core.result_column();
+		SQLiteParser.Result_columnContext result = null;
+		if (source.declaredColumns != null) {
+			int i = indexOf(source.declaredColumns, column);
+			if (i < 0 || i >= results.size() || hasStar(results)) {
+				return null;
+			}
+			result = results.get(i);
+		}
+		else {
+			for (SQLiteParser.Result_columnContext r : results) {
+				if (column.equalsIgnoreCase(resultName(r))) {
+					result = r;
+					break;
+				}
+			}
+		}
+		Binding binding;
+		if (result != null) {
+			SQLiteParser.ExprContext expr = result.expr();
+			if (expr == null || expr.column_name() == null) {
+				return null; // computed
+			}
+			String qualifier = expr.table_name() != null ? SQLiteSchemaCatalog.Builder.name(expr.table_name()) : null;
+			binding = resolve(scope, qualifier, SQLiteSchemaCatalog.Builder.name(expr.column_name()), catalog, false, depth);
+		}
+		else {
+			SQLiteParser.Result_columnContext star = null;
+			for (SQLiteParser.Result_columnContext r : results) {
+				if (r.STAR() != null) {
+					star = r;
+					break;
+				}
+			}
+			if (star == null) {
+				return null;
+			}
+			String qualifier = star.table_name() != null ? SQLiteSchemaCatalog.Builder.name(star.table_name()) : null;
+			binding = resolve(scope, qualifier, column, catalog, false, depth);
+		}
+		return binding.getOrigin();
+	}
+
+	/** Whether {@code source} has {@code column}; {@code null} if that is not known. */
+	private static Boolean hasColumn(Source source, String column, SQLiteSchemaCatalog catalog) {
+		if (source.table != null) {
+			if (catalog == null) {
+				return null;
+			}
+			SQLiteSchemaCatalog.Table table = catalog.getTable(source.schema, source.table);
+			if (table == null) {
+				return null;
+			}
+			return table.getColumn(column) != null || isRowid(column);
+		}
+		if (source.query == null) {
+			return null; // a table-valued function
+		}
+		List<String> columns = source.getColumnNames();
+		return columns == null ? null : indexOf(columns, column) >= 0;
+	}
+
+	private static boolean isRowid(String column) {
+		return column.equalsIgnoreCase("rowid") || column.equalsIgnoreCase("oid") || column.equalsIgnoreCase("_rowid_");
+	}
+
+	private static int indexOf(List<String> names, String name) {
+		for (int i = 0; i < names.size(); i++) {
+			if (names.get(i).equalsIgnoreCase(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean hasStar(List<SQLiteParser.Result_columnContext> results) {
+		for (SQLiteParser.Result_columnContext r : results) {
+			if (r.STAR() != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** The name a result column is known by: its alias, or the column it selects; {@code null} for neither. */
+	private static String resultName(SQLiteParser.Result_columnContext result) {
+		if (result.column_alias() != null) {
+			return aliasName(result.column_alias());
+		}
+		SQLiteParser.ExprContext expr = result.expr();
+		return expr != null && expr.column_name() != null ? SQLiteSchemaCatalog.Builder.name(expr.column_name()) : null;
+	}
+
+	private static String aliasName(SQLiteParser.Column_aliasContext alias) {
+		String text = alias.getText();
+		return text.isEmpty() ? text : SQLiteInsertStreamer.unquote(text, 0, text.length());
+	}
+
+	/** A query block or statement and the names it brings into scope. */
+	public static final class Scope {
+		private final ParserRuleContext owner;
+		private final Scope parent;
+		private final int depth;
+		private final int statement;
+		private final int start;
+		private final int end;
+		private final List<Source> sources = new ArrayList<>(2);
+		private final Map<String, Source> sourcesByName = new HashMap<>();
+		private Map<String, Source> ctes;
+		private Map<String, SQLiteParser.Result_columnContext> aliases;
+		/** For a {@code select_stmt}, its last core, whose sources and aliases {@code ORDER BY} sees. */
+		private Scope last;
+
+		Scope(ParserRuleContext owner, Scope parent, int statement) {
+			this.owner = owner;
+			this.parent = parent;
+			this.depth = parent != null ? parent.depth + 1 : 0;
+			this.statement = statement;
+			Token startToken = owner.getStart();
+			Token stopToken = owner.getStop();
+			this.start = startToken != null ? startToken.getStartIndex() : 0;
+			this.end = stopToken != null && stopToken.getType() != Token.EOF ? stopToken.getStopIndex() + 1 : start;
+		}
+
+		/** The rule that opened the scope. */
+		public ParserRuleContext getOwner() { return owner; }
+
+		/** The enclosing scope, or {@code null}. */
+		public Scope getParent() { return parent; }
+
+		/**
+		 * The tables, subqueries and functions of the block, in order; for a
+		 * {@code select_stmt}, those of its last core. {@code NEW}, {@code OLD} and
+		 * {@code excluded} are not among them; {@link #getSource} finds them.
+		 */
+		public List<Source> getSources() {
+			if (last != null) {
+				return last.getSources();
+			}
+			return Collections.unmodifiableList(sources);
+		}
+
+		/** The source the block calls {@code name}, ignoring case; not looking in enclosing blocks. */
+		public Source getSource(String name) {
+			if (last != null) {
+				return last.getSource(name);
+			}
+			return sourcesByName.get(SQLiteSchemaCatalog.fold(name));
+		}
+
+		/** The source called {@code name} here or in the nearest enclosing block that has one. */
+		public Source lookupSource(String name) {
+			for (Scope s = this; s != null; s = s.getOuter()) {
+				Source source = s.getSource(name);
+				if (source != null) {
+					return source;
+				}
+			}
+			return null;
+		}
+
+		/** The common table expression called {@code name} visible here, or {@code null}. */
+		public Source lookupCte(String name) {
+			String key = SQLiteSchemaCatalog.fold(name);
+			for (Scope s = this; s != null; s = s.parent) {
+				Source cte = s.ctes != null ? s.ctes.get(key) : null;
+				if (cte != null) {
+					return cte;
+				}
+			}
+			return null;
+		}
+
+		/** The result column with the alias {@code name}, ignoring case, or {@code null}. */
+		public SQLiteParser.Result_columnContext getColumnAlias(String name) {
+			if (last != null) {
+				return last.getColumnAlias(name);
+			}
+			return aliases != null ? aliases.get(SQLiteSchemaCatalog.fold(name)) : null;
+		}
+
+		/** The sources of this block and then of every enclosing one, as a correlated reference sees them. */
+		public List<Source> getVisibleSources() {
+			List<Source> visible = new ArrayList<>();
+			for (Scope s = this; s != null; s = s.getOuter()) {
+				visible.addAll(s.getSources());
+			}
+			return visible;
+		}
+
+		/**
+		 * The scope searched after this one: the parent, except that a core of a
+		 * compound select skips the select, which would show it the last core, and
+		 * a subquery in {@code FROM} skips the block whose sources it is among.
+		 */
+		Scope getOuter() {
+			if (parent == null) {
+				return null;
+			}
+			if (parent.owner instanceof SQLiteParser.Select_stmtContext && owner.getParent() == parent.owner) {
+				return parent.getOuter();
+			}
+			if (owner.getParent() instanceof SQLiteParser.Table_or_subqueryContext) {
+				return parent.getOuter();
+			}
+			return parent;
+		}
+
+		void addSource(Source source) {
+			sources.add(source);
+			if (source.name != null) {
+				sourcesByName.putIfAbsent(SQLiteSchemaCatalog.fold(source.name), source);
+			}
+		}
+
+		/** Adds a source that only a qualified name reaches. */
+		void addQualifiedSource(Source source) {
+			sourcesByName.putIfAbsent(SQLiteSchemaCatalog.fold(source.name), source);
+		}
+
+		void addCte(Source cte) {
+			if (ctes == null) {
+				ctes = new HashMap<>();
+			}
+			ctes.putIfAbsent(SQLiteSchemaCatalog.fold(cte.name), cte);
+		}
+
+		void addAlias(String name, SQLiteParser.Result_columnContext result) {
+			if (aliases == null) {
+				aliases = new HashMap<>();
+			}
+			aliases.putIfAbsent(SQLiteSchemaCatalog.fold(name), result);
+		}
+
+		@Override
+		public String toString() {
+			return SQLiteParser.ruleNames[owner.getRuleIndex()] + getSources();
+		}
+	}
+
+	/** What a name in a scope stands for. */
+	public enum Kind {
+		/** A table or view of the database. */
+		TABLE,
+		/** A common table expression. */
+		CTE,
+		/** A subquery in {@code FROM}. */
+		SUBQUERY,
+		/** A table-valued function such as {@code json_each}. */
+		FUNCTION
+	}
+
+	/** A table, common table expression, subquery or function that columns can be read from. */
+	public static final class Source {
+		private final Kind kind;
+		private final String name;
+		private final String schema;
+		private final String table;
+		private final ParserRuleContext definition;
+		private final SQLiteParser.Select_stmtContext query;
+		private final List<String> declaredColumns;
+
+		Source(Kind kind, String name, String schema, String table, ParserRuleContext definition,
+			   SQLiteParser.Select_stmtContext query, List<String> declaredColumns)
+		{
+			this.kind = kind;
+			this.name = name;
+			this.schema = schema;
+			this.table = table;
+			this.definition = definition;
+			this.query = query;
+			this.declaredColumns = declaredColumns;
+		}
+
+		public Kind getKind() { return kind; }
+
+		/** The name columns are qualified with: the alias, else the table, CTE or function name; {@code null} for an anonymous subquery. */
+		public String getName() { return name; }
+
+		/** The schema of a {@link Kind#TABLE}, or {@code null}. */
+		public String getSchema() { return schema; }
+
+		/** The table or view of a {@link Kind#TABLE}, which {@code NEW}, {@code OLD} and {@code excluded} are too; otherwise {@code null}. */
+		public String getTable() { return table; }
+
+		/**
+		 * Where the source was named: a {@code table_or_subquery}, a
+		 * {@code qualified_table_name}, the {@code insert_stmt} or {@code create_trigger_stmt},
+		 * or for a {@link Kind#CTE}, its {@code common_table_expression} or {@code cte_table_name}.
+		 */
+		public ParserRuleContext getDefinition() { return definition; }
+
+		/** The query of a {@link Kind#CTE} or {@link Kind#SUBQUERY}, or {@code null}. */
+		public SQLiteParser.Select_stmtContext getQuery() { return query; }
+
+		/**
+		 * The columns of a {@link Kind#CTE} or {@link Kind#SUBQUERY}: those declared
+		 * after the CTE name, else the names of its first core's result columns;
+		 * {@code null} if a {@code *} or an unnamed expression leaves them unknown,
+		 * and for tables and functions.
+		 */
+		public List<String> getColumnNames() {
+			if (declaredColumns != null || query == null) {
+				return declaredColumns;
+			}
+			SQLiteParser.Select_coreContext core = query.select_core(0);
+			if (core == null || core.values_clause() != null) {
+				return null;
+			}
+			List<String> names = new ArrayList<>();
+			for (SQLiteParser.Result_columnContext r : core.result_column()) {
+				String name = resultName(r);
+				if (name == null) {
+					return null;
+				}
+				names.add(name);
+			}
+			return Collections.unmodifiableList(names);
+		}
+
+		@Override
+		public String toString() {
+			String target = kind == Kind.TABLE ? (schema != null ? schema + "." : "") + table : kind.name();
+			return name != null && !name.equals(table) ? name + "=" + target : target;
+		}
+	}
+
+	/**
+	 * The outcome of {@link #resolve}: a source, a result column alias, several
+	 * sources that could each have the column, or nothing.
+	 */
+	public static final class Binding {
+		private final Source source;
+		private final String column;
+		private final SQLiteParser.Result_columnContext alias;
+		private final List<Source> candidates;
+		private final Binding origin;
+
+		Binding(Source source, String column, SQLiteParser.Result_columnContext alias, List<Source> candidates, Binding origin) {
+			this.source = source;
+			this.column = column;
+			this.alias = alias;
+			this.candidates = candidates;
+			this.origin = origin;
+		}
+
+		/** The source the column is read from, or {@code null}. */
+		public Source getSource() { return source; }
+
+		/** The column name, unquoted. */
+		public String getColumn() { return column; }
+
+		/** The result column whose alias the name is, or {@code null}. */
+		public SQLiteParser.Result_columnContext getAlias() { return alias; }
+
+		/** The sources the column could come from when it {@link #isAmbiguous()}. */
+		public List<Source> getCandidates() { return candidates; }
+
+		public boolean isResolved() {
+			return source != null || alias != null;
+		}
+
+		public boolean isAmbiguous() {
+			return !candidates.isEmpty();
+		}
+
+		/**
+		 * The binding to a {@link Kind#TABLE} that the column comes from, following
+		 * subqueries and common table expressions: this binding itself for a table
+		 * column, {@code null} for a computed column or one that cannot be followed.
+		 */
+		public Binding getOrigin() {
+			return origin;
+		}
+
+		@Override
+		public String toString() {
+			if (source != null) {
+				String s = source.getName() != null ? source.getName() + "." + column : column;
+				return origin != null && origin != this && origin.source != null
+					? s + " -> " + origin.source.table + "." + origin.column : s;
+			}
+			if (alias != null) {
+				return column + " (alias)";
+			}
+			return candidates.isEmpty() ? column + " (unresolved)" : column + " (ambiguous " + candidates + ")";
+		}
+	}
+
+	/** Opens scopes and registers names in one walk. */
+	private static final class Builder implements ParseTreeListener {
+		final List<Scope> scopes = new ArrayList<>();
+		final Map<ParserRuleContext, Scope> byOwner = new IdentityHashMap<>();
+		final List<Integer> statementStarts = new ArrayList<>();
+		final List<Integer> statementEnds = new ArrayList<>();
+		private final List<Scope> open = new ArrayList<>();
+
+		@Override
+		public void enterEveryRule(ParserRuleContext ctx) {
+			switch (ctx.getRuleIndex()) {
+				case SQLiteParser.RULE_sql_stmt:
+					statementStarts.add(ctx.getStart() != null ? ctx.getStart().getStartIndex() : 0);
+					statementEnds.add(Integer.MAX_VALUE);
+					break;
+				case SQLiteParser.RULE_select_stmt:
+				case SQLiteParser.RULE_select_core:
+				case SQLiteParser.RULE_update_stmt:
+				case SQLiteParser.RULE_update_stmt_limited:
+				case SQLiteParser.RULE_delete_stmt:
+				case SQLiteParser.RULE_delete_stmt_limited:
+					open(ctx);
+					break;
+				case SQLiteParser.RULE_insert_stmt: {
+					SQLiteParser.Insert_stmtContext insert = (SQLiteParser.Insert_stmtContext)ctx;
+					Scope scope = open(ctx);
+					String schema = SQLiteSchemaCatalog.Builder.name(insert.schema_name());
+					String table = SQLiteSchemaCatalog.Builder.name(insert.table_name());
+					if (table != null) {
+						String alias = SQLiteSchemaCatalog.Builder.name(insert.table_alias());
+						scope.addSource(new Source(Kind.TABLE, alias != null ? alias : table, schema, table, ctx, null, null));
+						scope.addQualifiedSource(new Source(Kind.TABLE, "excluded", schema, table, ctx, null, null));
+					}
+					break;
+				}
+				case SQLiteParser.RULE_create_trigger_stmt: {
+					SQLiteParser.Create_trigger_stmtContext trigger = (SQLiteParser.Create_trigger_stmtContext)ctx;
+					Scope scope = open(ctx);
+					String schema = SQLiteSchemaCatalog.Builder.name(trigger.schema_name());
+					String table = SQLiteSchemaCatalog.Builder.name(trigger.table_name());
+					if (table != null) {
+						scope.addQualifiedSource(new Source(Kind.TABLE, "new", schema, table, ctx, null, null));
+						scope.addQualifiedSource(new Source(Kind.TABLE, "old", schema, table, ctx, null, null));
+					}
+					break;
+				}
+				case SQLiteParser.RULE_common_table_expression: {
+					SQLiteParser.Common_table_expressionContext cte = (SQLiteParser.Common_table_expressionContext)ctx;
+					addCte(cte, cte.table_name(), cte.column_name(), cte.select_stmt());
+					break;
+				}
+				case SQLiteParser.RULE_with_clause: {
+					SQLiteParser.With_clauseContext with = (SQLiteParser.With_clauseContext)ctx;
+					for (int i = 0; i < with.cte_table_name().size(); i++) {
+						SQLiteParser.Cte_table_nameContext cte = with.cte_table_name(i);
+						addCte(cte, cte.table_name(), cte.column_name(), with.select_stmt(i));
+					}
+					break;
+				}
+				case SQLiteParser.RULE_qualified_table_name: {
+					SQLiteParser.Qualified_table_nameContext target = (SQLiteParser.Qualified_table_nameContext)ctx;
+					String table = SQLiteSchemaCatalog.Builder.name(target.table_name());
+					if (table != null && !open.isEmpty()) {
+						String alias = SQLiteSchemaCatalog.Builder.name(target.alias());
+						top().addSource(new Source(Kind.TABLE, alias != null ? alias : table,
+							SQLiteSchemaCatalog.Builder.name(target.schema_name()), table, ctx, null, null));
+					}
+					break;
+				}
+				case SQLiteParser.RULE_table_or_subquery:
+					if (!open.isEmpty()) {
+						addSource((SQLiteParser.Table_or_subqueryContext)ctx);
+					}
+					break;
+				case SQLiteParser.RULE_result_column: {
+					SQLiteParser.Result_columnContext result = (SQLiteParser.Result_columnContext)ctx;
+					if (result.column_alias() != null && !open.isEmpty()) {
+						top().addAlias(aliasName(result.column_alias()), result);
+					}
+					break;
+				}
+				default:
+					break;
+			}
+		}
+
+		@Override
+		public void exitEveryRule(ParserRuleContext ctx) {
+			if (!open.isEmpty() && top().owner == ctx) {
+				Scope scope = open.remove(open.size() - 1);
+				if (ctx.getRuleIndex() == SQLiteParser.RULE_select_core && !open.isEmpty()
+					&& top().owner.getRuleIndex() == SQLiteParser.RULE_select_stmt && top().owner == ctx.getParent())
+				{
+					top().last = scope;
+				}
+			}
+		}
+
+		@Override
+		public void visitTerminal(TerminalNode node) {
+			Token t = node.getSymbol();
+			if (t.getType() == SQLiteParser.SCOL && !statementEnds.isEmpty()
+				&& node.getParent() instanceof SQLiteParser.Sql_stmt_listContext)
+			{
+				int last = statementEnds.size() - 1;
+				if (statementEnds.get(last) == Integer.MAX_VALUE) {
+					statementEnds.set(last, t.getStartIndex());
+				}
+			}
+		}
+
+		@Override
+		public void visitErrorNode(ErrorNode node) {
+		}
+
+		private Scope top() {
+			return open.get(open.size() - 1);
+		}
+
+		private Scope open(ParserRuleContext owner) {
+			Scope scope = new Scope(owner, open.isEmpty() ? null : top(), statementStarts.size() - 1);
+			scopes.add(scope);
+			byOwner.put(owner, scope);
+			open.add(scope);
+			return scope;
+		}
+
+		private void addCte(ParserRuleContext definition, SQLiteParser.Table_nameContext nameCtx,
+							List<SQLiteParser.Column_nameContext> columns, SQLiteParser.Select_stmtContext query)
+		{
+			String name = SQLiteSchemaCatalog.Builder.name(nameCtx);
+			if (name == null || open.isEmpty()) {
+				return;
+			}
+			List<String> declared = null;
+			if (!columns.isEmpty()) {
+				declared = new ArrayList<>(columns.size());
+				for (SQLiteParser.Column_nameContext column : columns) {
+					declared.add(SQLiteSchemaCatalog.Builder.name(column));
+				}
+				declared = Collections.unmodifiableList(declared);
+			}
+			top().addCte(new Source(Kind.CTE, name, null, null, definition, query, declared));
+		}
+
+		private void addSource(SQLiteParser.Table_or_subqueryContext ctx) {
+			String alias = SQLiteSchemaCatalog.Builder.name(ctx.table_alias());
+			String schema = SQLiteSchemaCatalog.Builder.name(ctx.schema_name());
+			if (ctx.table_name() != null) {
+				String table = SQLiteSchemaCatalog.Builder.name(ctx.table_name());
+				Source cte = schema == null ? top().lookupCte(table) : null;
+				if (cte != null) {
+					top().addSource(new Source(Kind.CTE, alias != null ? alias : table, null, null,
+											   cte.definition, cte.query, cte.declaredColumns));
+				}
+				else {
+					top().addSource(new Source(Kind.TABLE, alias != null ? alias : table, schema, table, ctx, null, null));
+				}
+			}
+			else if (ctx.table_function_name() != null) {
+				String function = SQLiteSchemaCatalog.Builder.name(ctx.table_function_name());
+				top().addSource(new Source(Kind.FUNCTION, alias != null ? alias : function, schema, null, ctx, null, null));
+			}
+			else if (ctx.select_stmt() != null) {
+				top().addSource(new Source(Kind.SUBQUERY, alias, null, null, ctx, ctx.select_stmt(), null));
+			}
+			// a parenthesized join: its table_or_subquery children add themselves
+		}
+	}
+}
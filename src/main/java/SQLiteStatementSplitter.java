@@ -0,0 +1,535 @@
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Splits a UTF-8 SQL script into statements as it is read, and parses each
+ * statement on its own, so that scripts of any size (such as {@code sqlite3 .dump}
+ * output) are processed in memory bounded by the longest statement.
+ * <p>
+ * Statements end at a top-level {@code ;}. Semicolons inside string literals,
+ * quoted identifiers ({@code "..."}, {@code `...`}, {@code [...]}) and comments
+ * do not count, nor do those between {@code BEGIN} and {@code END} of a
+ * {@code CREATE TRIGGER}; the rules are those of SQLite's {@code sqlite3_complete()}.
+ * Empty statements are skipped, and text after the last semicolon is a final
+ * statement if it holds anything but whitespace and comments.
+ * <p>
+ * Each statement goes through a {@link SQLiteParseEngine}, which may share a
+ * {@link SQLiteDfaCache}; line numbers in its syntax errors are relative to the
+ * statement, whose own position is {@link Statement#getLine()}.
+ */
+public class SQLiteStatementSplitter {
+	/** Default for {@link #setMaxStatementLength(int)}. */
+	public static final int DEFAULT_MAX_STATEMENT_LENGTH = 64 * 1024 * 1024;
+
+	private static final int READ_BUFFER_BYTES = 64 * 1024;
+	/** Size of the windows in which {@link #split(Path, Consumer)} maps a file. */
+	private static final long MAP_WINDOW_BYTES = 256L * 1024 * 1024;
+
+	private final SQLiteParseEngine engine;
+	private int maxStatementLength = DEFAULT_MAX_STATEMENT_LENGTH;
+
+	public SQLiteStatementSplitter() {
+		this(new SQLiteParseEngine());
+	}
+
+	public SQLiteStatementSplitter(SQLiteParseEngine engine) {
+		this.engine = engine;
+	}
+
+	public SQLiteParseEngine getEngine() {
+		return engine;
+	}
+
+	public int getMaxStatementLength() {
+		return maxStatementLength;
+	}
+
+	/**
+	 * Caps the length, in chars, of a single statement; a longer statement fails
+	 * the split with an {@link IOException} instead of exhausting the heap.
+	 */
+	public void setMaxStatementLength(int maxStatementLength) {
+		if (maxStatementLength <= 0) {
+			throw new IllegalArgumentException("maxStatementLength must be positive: " + maxStatementLength);
+		}
+		this.maxStatementLength = maxStatementLength;
+	}
+
+	/**
+	 * Reads {@code in} to the end, passing every statement to {@code handler} in
+	 * order. Returns the number of statements. The channel is not closed.
+	 */
+	public long split(ReadableByteChannel in, Consumer<Statement> handler) throws IOException {
+		return scan(in, parsing(handler));
+	}
+
+	/**
+	 * Like {@link #split(ReadableByteChannel, Consumer)}, but hands the raw text
+	 * of every statement to {@code sink} without parsing it.
+	 */
+	public long scan(ReadableByteChannel in, Scanner.Sink sink) throws IOException {
+		Scanner scanner = new Scanner(sink, maxStatementLength);
+		CharsetDecoder decoder = newDecoder();
+		ByteBuffer bytes = ByteBuffer.allocate(READ_BUFFER_BYTES);
+		CharBuffer chars = CharBuffer.allocate(READ_BUFFER_BYTES);
+		boolean eof = false;
+		while (!eof) {
+			eof = in.read(bytes) < 0;
+			bytes.flip();
+			decode(decoder, bytes, chars, eof, scanner);
+			bytes.compact();
+		}
+		flush(decoder, chars, scanner);
+		scanner.finish();
+		return scanner.getStatementCount();
+	}
+
+	/**
+	 * Splits the file at {@code path}, mapping it into memory a window at a time.
+	 * Returns the number of statements.
+	 */
+	public long split(Path path, Consumer<Statement> handler) throws IOException {
+		return scan(path, parsing(handler));
+	}
+
+	/**
+	 * Like {@link #split(Path, Consumer)}, but hands the raw text of every
+	 * statement to {@code sink} without parsing it.
+	 */
+	public long scan(Path path, Scanner.Sink sink) throws IOException {
+		Scanner scanner = new Scanner(sink, maxStatementLength);
+		CharsetDecoder decoder = newDecoder();
+		CharBuffer chars = CharBuffer.allocate(READ_BUFFER_BYTES);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			while (position < size) {
+				long length = Math.min(MAP_WINDOW_BYTES, size - position);
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				boolean last = position + length == size;
+				decode(decoder, window, chars, last, scanner);
+				// a multi-byte sequence cut by the window is decoded from the next one
+				position += window.position();
+			}
+			if (size == 0) {
+				// the decoder must see the end of input before it is flushed
+				decode(decoder, ByteBuffer.allocate(0), chars, true, scanner);
+			}
+		}
+		flush(decoder, chars, scanner);
+		scanner.finish();
+		return scanner.getStatementCount();
+	}
+
+	/** Splits an in-memory script. Returns the number of statements. */
+	public long split(CharSequence sql, Consumer<Statement> handler) throws IOException {
+		return scan(sql, parsing(handler));
+	}
+
+	/** Hands the raw text of every statement of {@code sql} to {@code sink} without parsing it. */
+	public long scan(CharSequence sql, Scanner.Sink sink) throws IOException {
+		Scanner scanner = new Scanner(sink, maxStatementLength);
+		scanner.feed(sql, 0, sql.length());
+		scanner.finish();
+		return scanner.getStatementCount();
+	}
+
+	/**
+	 * Splits the code points of {@code input} from its current index to the end,
+	 * such as a {@link SQLiteMappedCharStream}. Returns the number of statements.
+	 */
+	public long split(CharStream input, Consumer<Statement> handler) throws IOException {
+		return scan(input, parsing(handler));
+	}
+
+	/**
+	 * Like {@link #split(CharStream, Consumer)}, but hands the raw text of every
+	 * statement to {@code sink} without parsing it. Statement offsets count UTF-16
+	 * chars from the index the stream was at.
+	 */
+	public long scan(CharStream input, Scanner.Sink sink) throws IOException {
+		Scanner scanner = new Scanner(sink, maxStatementLength);
+		CharBuffer chars = CharBuffer.allocate(READ_BUFFER_BYTES);
+		for (int c = input.LA(1); c != IntStream.EOF; c = input.LA(1)) {
+			if (chars.remaining() < 2) {
+				chars.flip();
+				scanner.feed(chars, 0, chars.length());
+				chars.clear();
+			}
+			if (Character.isBmpCodePoint(c)) {
+				chars.put((char)c);
+			}
+			else {
+				chars.put(Character.highSurrogate(c)).put(Character.lowSurrogate(c));
+			}
+			input.consume();
+		}
+		chars.flip();
+		scanner.feed(chars, 0, chars.length());
+		scanner.finish();
+		return scanner.getStatementCount();
+	}
+
+	/** Turns the raw statements of a {@link Scanner} into parsed {@link Statement}s. */
+	Scanner.Sink parsing(Consumer<Statement> handler) {
+		return (ordinal, text, offset, line) -> handler.accept(new Statement(ordinal, text, offset, line, engine.parse(text)));
+	}
+
+	private static CharsetDecoder newDecoder() {
+		return StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	private static void decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chars,
+							   boolean endOfInput, Scanner scanner) throws IOException
+	{
+		CoderResult result;
+		do {
+			result = decoder.decode(bytes, chars, endOfInput);
+			chars.flip();
+			scanner.feed(chars, 0, chars.length());
+			chars.clear();
+		}
+		while (result.isOverflow());
+	}
+
+	private static void flush(CharsetDecoder decoder, CharBuffer chars, Scanner scanner) throws IOException {
+		decoder.flush(chars);
+		chars.flip();
+		scanner.feed(chars, 0, chars.length());
+		chars.clear();
+	}
+
+	/**
+	 * Finds statement boundaries in text fed to it in arbitrary chunks. It keeps
+	 * only the text of the statement in progress.
+	 */
+	public static class Scanner {
+		/** Receives the text of every complete statement. */
+		public interface Sink {
+			void statement(long ordinal, String text, long offset, int line) throws IOException;
+		}
+
+		// lexical states
+		private static final int CODE = 0;
+		private static final int WORD = 1;
+		private static final int MINUS = 2;
+		private static final int SLASH = 3;
+		private static final int LINE_COMMENT = 4;
+		private static final int BLOCK_COMMENT = 5;
+		private static final int BLOCK_COMMENT_STAR = 6;
+		private static final int QUOTED = 7;
+		private static final int QUOTED_CLOSE = 8;
+
+		// tokens and states of sqlite3_complete()
+		private static final int T_SEMI = 0;
+		private static final int T_WS = 1;
+		private static final int T_OTHER = 2;
+		private static final int T_EXPLAIN = 3;
+		private static final int T_CREATE = 4;
+		private static final int T_TEMP = 5;
+		private static final int T_TRIGGER = 6;
+		private static final int T_END = 7;
+
+		private static final int S_START = 1;
+
+		private static final byte[][] TRANSITIONS = {
+			/*               SEMI WS OTHER EXPLAIN CREATE TEMP TRIGGER END */
+			/* 0 INVALID */ {1, 0, 2, 3, 4, 2, 2, 2},
+			/* 1 START   */ {1, 1, 2, 3, 4, 2, 2, 2},
+			/* 2 NORMAL  */ {1, 2, 2, 2, 2, 2, 2, 2},
+			/* 3 EXPLAIN */ {1, 3, 3, 2, 4, 2, 2, 2},
+			/* 4 CREATE  */ {1, 4, 2, 2, 2, 4, 5, 2},
+			/* 5 TRIGGER */ {6, 5, 5, 5, 5, 5, 5, 5},
+			/* 6 SEMI    */ {6, 6, 5, 5, 5, 5, 5, 7},
+			/* 7 END     */ {1, 7, 5, 5, 5, 5, 5, 5},
+		};
+
+		private final Sink sink;
+		private final int maxStatementLength;
+		private final StringBuilder buf = new StringBuilder();
+		/** Stream offset of {@code buf[0]}. */
+		private long base;
+		private int lexState = CODE;
+		private int state = S_START;
+		private char close;
+		private int wordStart;
+		/** Start of the statement in progress in {@code buf}, or -1. */
+		private int statementStart = -1;
+		private int statementLine;
+		private int line = 1;
+		private long statements;
+
+		public Scanner(Sink sink, int maxStatementLength) {
+			this.sink = sink;
+			this.maxStatementLength = maxStatementLength;
+		}
+
+		public long getStatementCount() {
+			return statements;
+		}
+
+		/** Scans {@code chars[start, end)}, emitting every statement it completes. */
+		public void feed(CharSequence chars, int start, int end) throws IOException {
+			int from = buf.length();
+			buf.append(chars, start, end);
+			for (int i = from; i < buf.length(); i++) {
+				i = scan(i, buf.charAt(i));
+			}
+			compact();
+		}
+
+		/** Ends the input, emitting the trailing statement if there is one. */
+		public void finish() throws IOException {
+			int end = buf.length();
+			switch (lexState) {
+				case WORD: token(keyword(wordStart, end), wordStart); break;
+				case MINUS:
+				case SLASH: token(T_OTHER, end - 1); break;
+				default: break;
+			}
+			lexState = CODE;
+			if (statementStart >= 0) {
+				emit(end);
+			}
+			state = S_START;
+		}
+
+		/**
+		 * Processes the char at {@code i} and returns the index of the last char
+		 * consumed, which is {@code i - 1} when the char must be looked at again.
+		 */
+		private int scan(int i, char c) throws IOException {
+			switch (lexState) {
+				case WORD:
+					if (isIdChar(c)) {
+						return i;
+					}
+					lexState = CODE;
+					token(keyword(wordStart, i), wordStart);
+					return i - 1;
+				case MINUS:
+					lexState = CODE;
+					if (c == '-') {
+						lexState = LINE_COMMENT;
+						return i;
+					}
+					token(T_OTHER, i - 1);
+					return i - 1;
+				case SLASH:
+					lexState = CODE;
+					if (c == '*') {
+						lexState = BLOCK_COMMENT;
+						return i;
+					}
+					token(T_OTHER, i - 1);
+					return i - 1;
+				case LINE_COMMENT:
+					if (c == '\n') {
+						line++;
+						lexState = CODE;
+					}
+					return i;
+				case BLOCK_COMMENT:
+				case BLOCK_COMMENT_STAR:
+					if (c == '\n') {
+						line++;
+					}
+					if (c == '/' && lexState == BLOCK_COMMENT_STAR) {
+						lexState = CODE;
+					}
+					else {
+						lexState = c == '*' ? BLOCK_COMMENT_STAR : BLOCK_COMMENT;
+					}
+					return i;
+				case QUOTED:
+					if (c == '\n') {
+						line++;
+					}
+					if (c == close) {
+						lexState = close == ']' ? CODE : QUOTED_CLOSE;
+					}
+					return i;
+				case QUOTED_CLOSE:
+					if (c == close) {
+						lexState = QUOTED;
+						return i;
+					}
+					lexState = CODE;
+					return i - 1;
+				default:
+					break;
+			}
+
+			switch (c) {
+				case ';':
+					token(T_SEMI, i);
+					break;
+				case '\n':
+					line++;
+					break;
+				case ' ':
+				case '\t':
+				case '\r':
+				case '\f':
+				case '\u000B':
+					break;
+				case '-':
+					lexState = MINUS;
+					break;
+				case '/':
+					lexState = SLASH;
+					break;
+				case '\'':
+				case '"':
+				case '`':
+					close = c;
+					lexState = QUOTED;
+					token(T_OTHER, i);
+					break;
+				case '[':
+					close = ']';
+					lexState = QUOTED;
+					token(T_OTHER, i);
+					break;
+				default:
+					if (isIdChar(c)) {
+						wordStart = i;
+						lexState = WORD;
+					}
+					else {
+						token(T_OTHER, i);
+					}
+			}
+			return i;
+		}
+
+		/** Advances the {@code sqlite3_complete()} state machine on a token starting at {@code start}. */
+		private void token(int token, int start) throws IOException {
+			if (token == T_SEMI) {
+				state = TRANSITIONS[state][T_SEMI];
+				if (state == S_START && statementStart >= 0) {
+					emit(start + 1);
+				}
+				return;
+			}
+			if (statementStart < 0) {
+				statementStart = start;
+				// a token never spans a newline before its first char is known
+				statementLine = line;
+			}
+			state = TRANSITIONS[state][token];
+		}
+
+		private int keyword(int start, int end) {
+			switch (SQLiteKeywords.lookup(buf, start, end)) {
+				case SQLiteLexer.EXPLAIN_: return T_EXPLAIN;
+				case SQLiteLexer.CREATE_: return T_CREATE;
+				case SQLiteLexer.TEMP_:
+				case SQLiteLexer.TEMPORARY_: return T_TEMP;
+				case SQLiteLexer.TRIGGER_: return T_TRIGGER;
+				case SQLiteLexer.END_: return T_END;
+				default: return T_OTHER;
+			}
+		}
+
+		private void emit(int end) throws IOException {
+			String text = buf.substring(statementStart, end);
+			long offset = base + statementStart;
+			int startLine = statementLine;
+			statementStart = -1;
+			sink.statement(statements++, text, offset, startLine);
+		}
+
+		/** Drops the text that can no longer be part of a statement. */
+		private void compact() throws IOException {
+			int keep;
+			if (statementStart >= 0) {
+				keep = statementStart;
+			}
+			else if (lexState == WORD) {
+				keep = wordStart;
+			}
+			else if (lexState == MINUS || lexState == SLASH) {
+				keep = buf.length() - 1;
+			}
+			else {
+				keep = buf.length();
+			}
+			if (keep > 0) {
+				buf.delete(0, keep);
+				base += keep;
+				if (statementStart >= 0) {
+					statementStart -= keep;
+				}
+				wordStart -= keep;
+			}
+			if (buf.length() > maxStatementLength) {
+				throw new IOException("statement at line " + statementLine + " is longer than "
+									  + maxStatementLength + " characters");
+			}
+		}
+
+		private static boolean isIdChar(char c) {
+			return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+				|| c == '_' || c == '$' || c >= 0x80;
+		}
+	}
+
+	/** One statement of a script, with its parse. */
+	public static class Statement {
+		private final long ordinal;
+		private final String text;
+		private final long offset;
+		private final int line;
+		private final SQLiteParseResult result;
+
+		Statement(long ordinal, String text, long offset, int line, SQLiteParseResult result) {
+			this.ordinal = ordinal;
+			this.text = text;
+			this.offset = offset;
+			this.line = line;
+			this.result = result;
+		}
+
+		/** Position of the statement in the script, counting from 0. */
+		public long getOrdinal() { return ordinal; }
+
+		/** The statement, including its terminating semicolon if it has one. */
+		public String getText() { return text; }
+
+		/** Offset of the statement in the script, in chars. */
+		public long getOffset() { return offset; }
+
+		/** Line of the script on which the statement starts. */
+		public int getLine() { return line; }
+
+		public SQLiteParseResult getResult() { return result; }
+
+		/** The parsed statement, or {@code null} if the parser could not recognize one. */
+		public SQLiteParser.Sql_stmtContext getSqlStmt() {
+			SQLiteParser.ParseContext tree = result.getTree();
+			if (tree.sql_stmt_list().isEmpty() || tree.sql_stmt_list(0).sql_stmt().isEmpty()) {
+				return null;
+			}
+			return tree.sql_stmt_list(0).sql_stmt(0);
+		}
+
+		public boolean hasErrors() { return result.hasErrors(); }
+	}
+}
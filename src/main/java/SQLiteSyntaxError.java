@@ -0,0 +1,33 @@
+import org.antlr.v4.runtime.Token;
+
+/**
+ * A syntax error reported while parsing, detached from the recognizer that
+ * produced it so it can outlive the parse.
+ */
+public final class SQLiteSyntaxError {
+	private final int line;
+	private final int charPositionInLine;
+	private final String message;
+	private final Token offendingToken;
+
+	public SQLiteSyntaxError(int line, int charPositionInLine, String message, Token offendingToken) {
+		this.line = line;
+		this.charPositionInLine = charPositionInLine;
+		this.message = message;
+		this.offendingToken = offendingToken;
+	}
+
+	public int getLine() { return line; }
+
+	public int getCharPositionInLine() { return charPositionInLine; }
+
+	public String getMessage() { return message; }
+
+	/** The token the parser was looking at, or {@code null} for lexer errors. */
+	public Token getOffendingToken() { return offendingToken; }
+
+	@Override
+	public String toString() {
+		return "line " + line + ":" + charPositionInLine + " " + message;
+	}
+}
@@ -0,0 +1,215 @@
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.WritableToken;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * A token that refers to its text by offsets into the input instead of holding
+ * a copy of it.
+ * <p>
+ * The token is itself a {@link CharSequence} over its span of the input, so
+ * listeners can compare, hash or scan token text without materializing a
+ * {@link String}; the view is backed directly by the input when it is read
+ * through a {@link SQLiteCharSequenceStream}. {@link #getText()} still returns a
+ * {@code String}: for {@link SQLiteLexer#IDENTIFIER} tokens created by a factory
+ * with a {@link SQLiteIdentifierInterner}, it is the interned instance.
+ * <p>
+ * As a {@code CharSequence}, {@link #toString()} returns the token text; use
+ * {@link #toString(Recognizer)} for the diagnostic form of {@code CommonToken}.
+ */
+public class SQLiteToken implements WritableToken, CharSequence {
+	private static final Pair<TokenSource, CharStream> EMPTY_SOURCE = new Pair<>(null, null);
+
+	private final Pair<TokenSource, CharStream> source;
+	private final SQLiteIdentifierInterner interner;
+	private int type;
+	private int channel;
+	private int start;
+	private int stop;
+	private int line;
+	private int charPositionInLine = -1;
+	private int index = -1;
+	/** Explicit text, or the materialized text of an input that is not a {@link SQLiteCharSequenceStream}. */
+	private String text;
+
+	public SQLiteToken(Pair<TokenSource, CharStream> source, int type, int channel, int start, int stop,
+					   SQLiteIdentifierInterner interner)
+	{
+		this.source = source;
+		this.type = type;
+		this.channel = channel;
+		this.start = start;
+		this.stop = stop;
+		this.interner = interner;
+	}
+
+	/** A token with explicit text and no input, such as one conjured up by error recovery. */
+	public SQLiteToken(int type, String text) {
+		this.source = EMPTY_SOURCE;
+		this.interner = null;
+		this.type = type;
+		this.channel = DEFAULT_CHANNEL;
+		this.text = text;
+	}
+
+	@Override
+	public String getText() {
+		if (text != null) {
+			return text;
+		}
+		CharStream input = getInputStream();
+		if (input == null) {
+			return null;
+		}
+		int n = input.size();
+		if (start >= n || stop >= n) {
+			return "<EOF>";
+		}
+		if (input instanceof SQLiteCharSequenceStream) {
+			CharSequence data = ((SQLiteCharSequenceStream)input).getData();
+			if (interner != null && type == SQLiteLexer.IDENTIFIER) {
+				return interner.intern(data, start, stop + 1);
+			}
+			return data.subSequence(start, stop + 1).toString();
+		}
+		String s = input.getText(Interval.of(start, stop));
+		return interner != null && type == SQLiteLexer.IDENTIFIER ? interner.intern(s) : s;
+	}
+
+	@Override
+	public void setText(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * The input the offsets refer to, or the token text if the input cannot be
+	 * viewed without copying.
+	 */
+	private CharSequence data() {
+		if (text == null) {
+			CharStream input = getInputStream();
+			if (type != EOF && input instanceof SQLiteCharSequenceStream) {
+				return ((SQLiteCharSequenceStream)input).getData();
+			}
+			text = getText();
+		}
+		return text;
+	}
+
+	/** Offset of this token's first character within {@link #data()}. */
+	private int offset() {
+		return text == null ? start : 0;
+	}
+
+	@Override
+	public int length() {
+		if (text == null && type != EOF && getInputStream() instanceof SQLiteCharSequenceStream) {
+			return stop - start + 1;
+		}
+		CharSequence data = data();
+		return data != null ? data.length() : 0;
+	}
+
+	@Override
+	public char charAt(int i) {
+		if (i < 0 || i >= length()) {
+			throw new IndexOutOfBoundsException(i);
+		}
+		CharSequence data = data();
+		return data.charAt(offset() + i);
+	}
+
+	@Override
+	public CharSequence subSequence(int from, int to) {
+		if (from < 0 || to > length() || from > to) {
+			throw new IndexOutOfBoundsException("[" + from + ", " + to + ")");
+		}
+		CharSequence data = data();
+		int offset = offset();
+		return data.subSequence(offset + from, offset + to);
+	}
+
+	/** Whether this token's text equals {@code s}, ignoring ASCII case. */
+	public boolean equalsIgnoreCase(CharSequence s) {
+		int n = length();
+		if (s.length() != n) {
+			return false;
+		}
+		for (int i = 0; i < n; i++) {
+			if (SQLiteKeywords.fold(charAt(i)) != SQLiteKeywords.fold(s.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int getType() { return type; }
+
+	@Override
+	public void setType(int type) { this.type = type; }
+
+	@Override
+	public int getLine() { return line; }
+
+	@Override
+	public void setLine(int line) { this.line = line; }
+
+	@Override
+	public int getCharPositionInLine() { return charPositionInLine; }
+
+	@Override
+	public void setCharPositionInLine(int charPositionInLine) { this.charPositionInLine = charPositionInLine; }
+
+	@Override
+	public int getChannel() { return channel; }
+
+	@Override
+	public void setChannel(int channel) { this.channel = channel; }
+
+	@Override
+	public int getTokenIndex() { return index; }
+
+	@Override
+	public void setTokenIndex(int index) { this.index = index; }
+
+	@Override
+	public int getStartIndex() { return start; }
+
+	public void setStartIndex(int start) { this.start = start; }
+
+	@Override
+	public int getStopIndex() { return stop; }
+
+	public void setStopIndex(int stop) { this.stop = stop; }
+
+	@Override
+	public TokenSource getTokenSource() { return source.a; }
+
+	@Override
+	public CharStream getInputStream() { return source.b; }
+
+	/** The token text, as required of a {@link CharSequence}. */
+	@Override
+	public String toString() {
+		String s = getText();
+		return s != null ? s : "";
+	}
+
+	/** The diagnostic form used by {@code CommonToken.toString()}. */
+	public String toString(Recognizer<?, ?> r) {
+		String txt = getText();
+		if (txt != null) {
+			txt = txt.replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+		}
+		else {
+			txt = "<no text>";
+		}
+		String typeString = r != null ? r.getVocabulary().getDisplayName(type) : String.valueOf(type);
+		return "[@" + index + "," + start + ":" + stop + "='" + txt + "',<" + typeString + ">"
+			+ (channel > 0 ? ",channel=" + channel : "") + "," + line + ":" + charPositionInLine + "]";
+	}
+}
@@ -0,0 +1,51 @@
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * Creates {@link SQLiteToken}s. Explicit text passed by the caller is kept, but
+ * the factory never copies text out of the input itself.
+ * <p>
+ * Works with {@link SQLiteFastLexer}, which uses {@link #DEFAULT}, and with
+ * {@link SQLiteLexer} through {@code setTokenFactory}; with the latter, the input
+ * is a code point stream, so the {@code CharSequence} view of a token copies its
+ * text on first use.
+ */
+public class SQLiteTokenFactory implements TokenFactory<SQLiteToken> {
+	/** A factory without identifier interning. */
+	public static final SQLiteTokenFactory DEFAULT = new SQLiteTokenFactory(null);
+
+	private final SQLiteIdentifierInterner interner;
+
+	/**
+	 * A factory whose {@link SQLiteLexer#IDENTIFIER} tokens return interned text
+	 * from {@code interner}, which may be {@code null}. The interner is not
+	 * thread-safe, so neither is a factory that has one.
+	 */
+	public SQLiteTokenFactory(SQLiteIdentifierInterner interner) {
+		this.interner = interner;
+	}
+
+	public SQLiteIdentifierInterner getInterner() {
+		return interner;
+	}
+
+	@Override
+	public SQLiteToken create(Pair<TokenSource, CharStream> source, int type, String text,
+							  int channel, int start, int stop, int line, int charPositionInLine)
+	{
+		SQLiteToken t = new SQLiteToken(source, type, channel, start, stop, interner);
+		t.setLine(line);
+		t.setCharPositionInLine(charPositionInLine);
+		if (text != null) {
+			t.setText(text);
+		}
+		return t;
+	}
+
+	@Override
+	public SQLiteToken create(int type, String text) {
+		return new SQLiteToken(type, text);
+	}
+}
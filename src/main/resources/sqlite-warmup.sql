@@ -0,0 +1,216 @@
+-- Warm-up corpus for SQLiteDfaSnapshot. Every sql_stmt alternative appears at
+-- least once, together with the common shapes of the larger sub-rules
+-- (expressions, joins, compound selects, window functions, constraints).
+
+-- alter_table_stmt
+ALTER TABLE users RENAME TO members;
+ALTER TABLE main.users RENAME COLUMN name TO full_name;
+ALTER TABLE users RENAME email TO mail;
+ALTER TABLE users ADD COLUMN created_at TEXT DEFAULT CURRENT_TIMESTAMP;
+ALTER TABLE users ADD age INTEGER NOT NULL DEFAULT 0 CHECK (age >= 0);
+ALTER TABLE users DROP COLUMN age;
+
+-- analyze_stmt
+ANALYZE;
+ANALYZE main;
+ANALYZE main.users;
+
+-- attach_stmt / detach_stmt
+ATTACH DATABASE 'archive.db' AS archive;
+ATTACH 'cache.db' AS cache;
+DETACH DATABASE archive;
+DETACH cache;
+
+-- begin_stmt / commit_stmt / rollback_stmt / savepoint_stmt / release_stmt
+BEGIN;
+BEGIN DEFERRED TRANSACTION;
+BEGIN IMMEDIATE TRANSACTION tx1;
+BEGIN EXCLUSIVE;
+COMMIT;
+COMMIT TRANSACTION;
+END TRANSACTION;
+SAVEPOINT sp1;
+RELEASE SAVEPOINT sp1;
+RELEASE sp1;
+ROLLBACK;
+ROLLBACK TRANSACTION TO SAVEPOINT sp1;
+ROLLBACK TO sp1;
+
+-- create_index_stmt
+CREATE INDEX idx_users_email ON users (email);
+CREATE UNIQUE INDEX IF NOT EXISTS main.idx_users_name ON users (last_name COLLATE NOCASE ASC, first_name DESC);
+CREATE INDEX idx_orders_open ON orders (customer_id, created_at) WHERE status <> 'closed';
+CREATE INDEX idx_lower ON users (lower(email));
+
+-- create_table_stmt
+CREATE TABLE users (
+    id INTEGER PRIMARY KEY AUTOINCREMENT,
+    email TEXT NOT NULL UNIQUE ON CONFLICT REPLACE,
+    first_name VARCHAR(64),
+    last_name VARCHAR(64) COLLATE NOCASE,
+    balance DECIMAL(10, 2) DEFAULT 0.0,
+    score REAL DEFAULT -1,
+    avatar BLOB,
+    flags INTEGER DEFAULT (0),
+    full_name TEXT GENERATED ALWAYS AS (first_name || ' ' || last_name) STORED,
+    initials TEXT AS (substr(first_name, 1, 1)) VIRTUAL,
+    team_id INTEGER CONSTRAINT fk_team REFERENCES teams (id) ON DELETE SET NULL ON UPDATE CASCADE
+);
+CREATE TEMP TABLE IF NOT EXISTS scratch (k TEXT, v);
+CREATE TEMPORARY TABLE main.log (ts, message TEXT) WITHOUT ROWID;
+CREATE TABLE orders (
+    id INTEGER NOT NULL,
+    customer_id INTEGER NOT NULL,
+    status TEXT NOT NULL DEFAULT 'open' CHECK (status IN ('open', 'closed', 'void')),
+    total NUMERIC,
+    created_at TEXT DEFAULT CURRENT_DATE,
+    CONSTRAINT pk_orders PRIMARY KEY (id, customer_id) ON CONFLICT ABORT,
+    UNIQUE (customer_id, created_at),
+    CHECK (total >= 0),
+    FOREIGN KEY (customer_id) REFERENCES users (id) ON DELETE CASCADE ON UPDATE NO ACTION
+        DEFERRABLE INITIALLY DEFERRED,
+    FOREIGN KEY (status) REFERENCES statuses MATCH FULL NOT DEFERRABLE
+);
+CREATE TABLE user_copy AS SELECT * FROM users WHERE id > 100;
+
+-- create_trigger_stmt
+CREATE TRIGGER IF NOT EXISTS users_audit AFTER UPDATE OF email, first_name ON users FOR EACH ROW
+WHEN old.email IS NOT new.email
+BEGIN
+    INSERT INTO audit (user_id, old_email, new_email) VALUES (old.id, old.email, new.email);
+    UPDATE users SET updated_at = CURRENT_TIMESTAMP WHERE id = new.id;
+    DELETE FROM scratch WHERE k = old.email;
+    SELECT RAISE(IGNORE) WHERE new.email IS NULL;
+END;
+CREATE TEMP TRIGGER orders_guard BEFORE DELETE ON orders
+BEGIN
+    SELECT CASE WHEN old.status = 'closed' THEN RAISE(ABORT, 'closed orders are immutable') END;
+END;
+CREATE TRIGGER view_insert INSTEAD OF INSERT ON user_view
+BEGIN
+    INSERT INTO users (email) VALUES (new.email);
+END;
+
+-- create_view_stmt
+CREATE VIEW active_users AS SELECT id, email FROM users WHERE flags & 1 = 1;
+CREATE TEMP VIEW IF NOT EXISTS main.user_names (id, name) AS SELECT id, first_name || ' ' || last_name FROM users;
+
+-- create_virtual_table_stmt
+CREATE VIRTUAL TABLE docs USING fts5(title, body);
+CREATE VIRTUAL TABLE IF NOT EXISTS main.geo USING rtree(id, min_x, max_x, min_y, max_y);
+
+-- delete_stmt / delete_stmt_limited
+DELETE FROM users;
+DELETE FROM main.users AS u INDEXED BY idx_users_email WHERE u.email LIKE '%@example.com' RETURNING id;
+WITH stale AS (SELECT id FROM orders WHERE created_at < date('now', '-1 year'))
+DELETE FROM orders NOT INDEXED WHERE id IN stale;
+DELETE FROM log WHERE ts < 1000 ORDER BY ts LIMIT 100;
+
+-- drop_stmt
+DROP TABLE users;
+DROP TABLE IF EXISTS main.scratch;
+DROP INDEX IF EXISTS idx_users_email;
+DROP TRIGGER users_audit;
+DROP VIEW IF EXISTS active_users;
+
+-- insert_stmt
+INSERT INTO users (email, first_name, last_name) VALUES ('a@example.com', 'Ada', 'Lovelace');
+INSERT INTO users VALUES (1, 'b@example.com', 'Bob', NULL, 1.5e3, -2, X'CAFE', 0, NULL, NULL, NULL),
+                         (2, 'c@example.com', 'Cy', 'Young', .25, +3, x'00ff', 0x10, NULL, NULL, 7);
+REPLACE INTO scratch (k, v) VALUES (?, ?1), (:key, @value), ($k, ?);
+INSERT OR REPLACE INTO main.scratch AS s (k, v) VALUES ('x', 1);
+INSERT OR IGNORE INTO scratch SELECT k, v FROM scratch WHERE v IS NOT NULL;
+INSERT OR ROLLBACK INTO scratch DEFAULT VALUES;
+INSERT OR ABORT INTO scratch (k) VALUES ('y') RETURNING *;
+INSERT OR FAIL INTO scratch (k) VALUES ('z') RETURNING k AS kk, v;
+INSERT INTO counters (name, hits) VALUES ('home', 1)
+    ON CONFLICT (name) DO UPDATE SET hits = hits + excluded.hits WHERE excluded.hits > 0;
+INSERT INTO counters (name, hits) VALUES ('about', 1) ON CONFLICT DO NOTHING;
+INSERT INTO pairs (a, b) VALUES (1, 2) ON CONFLICT (a) WHERE b > 0 DO UPDATE SET (a, b) = (excluded.a, excluded.b);
+WITH RECURSIVE seq (n) AS (SELECT 1 UNION ALL SELECT n + 1 FROM seq WHERE n < 10)
+INSERT INTO numbers (n) SELECT n FROM seq;
+
+-- pragma_stmt
+PRAGMA foreign_keys;
+PRAGMA foreign_keys = ON;
+PRAGMA main.journal_mode = 'WAL';
+PRAGMA cache_size = -2000;
+PRAGMA table_info(users);
+
+-- reindex_stmt
+REINDEX;
+REINDEX nocase;
+REINDEX main.idx_users_email;
+
+-- select_stmt
+SELECT 1;
+SELECT * FROM users;
+SELECT DISTINCT u.*, count(*) AS n FROM users u GROUP BY u.team_id HAVING count(*) > 1;
+SELECT ALL id, email 'address' FROM main.users AS u WHERE id BETWEEN 1 AND 10 ORDER BY id DESC NULLS LAST LIMIT 10 OFFSET 5;
+SELECT id FROM users WHERE email NOT LIKE '%test%' ESCAPE '\' AND team_id NOT IN (1, 2, 3) OR flags IS NULL;
+SELECT id FROM users WHERE name GLOB 'A*' OR name REGEXP '^B' OR name MATCH 'c' LIMIT 5, 10;
+SELECT a.id, b.total FROM users a
+    JOIN orders b ON b.customer_id = a.id
+    LEFT OUTER JOIN teams t USING (team_id)
+    NATURAL INNER JOIN extras
+    CROSS JOIN config
+    RIGHT JOIN archive.users au ON au.id = a.id
+    FULL OUTER JOIN misc ON 1;
+SELECT * FROM users, orders, (SELECT 1 AS one) AS sub WHERE users.id = orders.customer_id;
+SELECT * FROM (users JOIN orders ON users.id = orders.customer_id);
+SELECT value FROM json_each('[1, 2, 3]') AS j WHERE j.value > 1;
+SELECT * FROM users INDEXED BY idx_users_email WHERE email = 'x';
+SELECT * FROM users NOT INDEXED;
+SELECT id FROM users UNION SELECT id FROM archive.users UNION ALL SELECT 0 INTERSECT SELECT 0 EXCEPT SELECT 1;
+VALUES (1, 'one'), (2, 'two');
+WITH t (x) AS (SELECT 1), u AS (SELECT x FROM t) SELECT * FROM u;
+SELECT CASE status WHEN 'open' THEN 1 WHEN 'closed' THEN 2 ELSE 0 END,
+       CASE WHEN total > 100 THEN 'big' END,
+       CAST(total AS INTEGER), CAST('1.5' AS REAL),
+       -total, +total, ~flags, NOT flags,
+       total * 2 / 3 % 4 + 1 - 2,
+       flags << 1 >> 2 & 3 | 4,
+       total < 1, total <= 2, total > 3, total >= 4,
+       total = 1, total == 2, total != 3, total <> 4,
+       total IS 5, total IS NOT 6, total IS DISTINCT FROM 7, total IS NOT DISTINCT FROM 8,
+       status || '-' || id,
+       name COLLATE NOCASE,
+       total ISNULL, total NOTNULL, total NOT NULL,
+       EXISTS (SELECT 1 FROM users), NOT EXISTS (SELECT 1), (SELECT max(id) FROM users),
+       (1, 2) = (1, 2),
+       TRUE, FALSE, NULL, CURRENT_TIME, CURRENT_DATE, CURRENT_TIMESTAMP,
+       'it''s', x'00', 1e10, 1.5E-3, 0xFF, ?, ?7, :name, @name, $name,
+       main.users.id, users.id, "quoted id", [bracket id], `backtick id`
+FROM orders;
+SELECT id FROM users WHERE id IN (SELECT customer_id FROM orders) AND id NOT IN orders_ids
+    AND id IN main.orders_ids AND id IN json_each('[1]') AND id NOT IN ();
+SELECT count(DISTINCT team_id), group_concat(email, ','), max(id) FILTER (WHERE flags > 0) FROM users;
+SELECT id, row_number() OVER (PARTITION BY team_id ORDER BY id) AS rn,
+       sum(total) OVER (ORDER BY created_at ROWS BETWEEN UNBOUNDED PRECEDING AND CURRENT ROW),
+       avg(total) OVER (ORDER BY created_at RANGE BETWEEN 1 PRECEDING AND 1 FOLLOWING EXCLUDE NO OTHERS),
+       min(total) OVER (ORDER BY id GROUPS CURRENT ROW EXCLUDE TIES),
+       max(total) OVER (ORDER BY id ROWS 2 PRECEDING EXCLUDE CURRENT ROW),
+       rank() OVER win, lag(total, 1, 0) OVER win, lead(total) OVER (win)
+FROM orders
+WINDOW win AS (PARTITION BY customer_id ORDER BY created_at), win2 AS (ORDER BY id);
+SELECT * FROM users ORDER BY last_name COLLATE NOCASE ASC, id DESC NULLS FIRST;
+
+-- update_stmt / update_stmt_limited
+UPDATE users SET email = lower(email);
+UPDATE OR IGNORE main.users AS u INDEXED BY idx_users_email SET first_name = 'A', (last_name, flags) = ('B', 1)
+    FROM teams t WHERE t.id = u.team_id RETURNING u.id;
+UPDATE OR REPLACE users NOT INDEXED SET flags = flags | 2 WHERE id > 10;
+UPDATE OR ROLLBACK users SET flags = 0;
+UPDATE OR ABORT users SET flags = 0;
+UPDATE OR FAIL users SET flags = 0;
+WITH ids AS (SELECT id FROM users) UPDATE users SET flags = 1 WHERE id IN ids;
+UPDATE log SET message = NULL WHERE ts < 10 ORDER BY ts DESC LIMIT 10 OFFSET 2;
+
+-- vacuum_stmt
+VACUUM;
+VACUUM main;
+VACUUM INTO backup;
+
+-- EXPLAIN prefixes
+EXPLAIN SELECT * FROM users;
+EXPLAIN QUERY PLAN SELECT * FROM users WHERE id = 1;